@@ -1,77 +1,132 @@
-/*
- *  ptest-server and client provides you with a performance test utility
- *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
- *
- *  This program is free software: you can redistribute it and/or modify
- *  it under the terms of the GNU General Public License as published by
- *  the Free Software Foundation, either version 3 of the License, or
- *  (at your option) any later version.
- *
- *  This program is distributed in the hope that it will be useful,
- *  but WITHOUT ANY WARRANTY; without even the implied warranty of
- *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
- *  GNU General Public License for more details.
- *  
- *  You should have received a copy of the GNU General Public License
- *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
- *
- */
-
-package com.mnxfst.testing.consumer;
-
-import java.util.Map;
-
-import org.jboss.netty.channel.ChannelPipeline;
-import org.jboss.netty.channel.ChannelPipelineFactory;
-import org.jboss.netty.channel.Channels;
-import org.jboss.netty.handler.codec.http.HttpChunkAggregator;
-import org.jboss.netty.handler.codec.http.HttpContentCompressor;
-import org.jboss.netty.handler.codec.http.HttpRequestDecoder;
-import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
-
-import com.mnxfst.testing.consumer.handler.TSConsumerChannelUpstreamHandler;
-
-/**
- * Provides a pipeline factory implementation defining a handling process for incoming requests
- * @author ckreutzfeldt
- * @since 21.02.2012
- */
-public class TSConsumerPipelineFactory implements ChannelPipelineFactory {
-
-	private String hostname = null;
-	private int port = 0;
-	private int socketThreadPoolSize = 0;
-	private Map<String, String> additionalProperties = null;
-	private Map<String, String> configuredRequestHandlers = null;
-	
-	/**
-	 * Initializes the consumer pipeline factory
-	 * @param hostname
-	 * @param port
-	 * @param socketThreadPoolSize
-	 * @param additionalProperties
-	 */
-	public TSConsumerPipelineFactory(String hostname, int port, int socketThreadPoolSize, Map<String, String> additionalProperties, Map<String, String> configuredRequestHandlers) {
-		this.hostname = hostname;
-		this.port = port;
-		this.socketThreadPoolSize = socketThreadPoolSize;
-		this.additionalProperties = additionalProperties;
-		this.configuredRequestHandlers = configuredRequestHandlers;
-	}
-	
-	/**
-	 * @see org.jboss.netty.channel.ChannelPipelineFactory#getPipeline()
-	 */
-	public ChannelPipeline getPipeline() throws Exception {
-		ChannelPipeline channelPipeline = Channels.pipeline();
-
-		channelPipeline.addLast("decoder", new HttpRequestDecoder());
-		channelPipeline.addLast("aggregator", new HttpChunkAggregator(1048576));
-		channelPipeline.addLast("encoder", new HttpResponseEncoder());
-		channelPipeline.addLast("deflater", new HttpContentCompressor());
-		channelPipeline.addLast("handler", new TSConsumerChannelUpstreamHandler(hostname, port, socketThreadPoolSize, additionalProperties, configuredRequestHandlers));
-		
-		return channelPipeline;
-	}
-
-}
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer;
+
+import java.util.Map;
+
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.handler.codec.http.HttpContentCompressor;
+import org.jboss.netty.handler.codec.http.HttpRequestDecoder;
+import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
+import org.jboss.netty.handler.execution.ExecutionHandler;
+import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
+import org.jboss.netty.util.ExternalResourceReleasable;
+
+import com.mnxfst.testing.consumer.handler.ContextRequestRouter;
+import com.mnxfst.testing.consumer.handler.StreamingRequestDispatcher;
+import com.mnxfst.testing.consumer.handler.TSConsumerBlockingRequestHandler;
+import com.mnxfst.testing.consumer.handler.TSConsumerChannelUpstreamHandler;
+
+/**
+ * Provides a pipeline factory implementation defining a handling process for incoming requests
+ * @author ckreutzfeldt
+ * @since 21.02.2012
+ */
+public class TSConsumerPipelineFactory implements ChannelPipelineFactory, ExternalResourceReleasable {
+
+	private String hostname = null;
+	private int port = 0;
+	private int socketThreadPoolSize = 0;
+	private Map<String, String> additionalProperties = null;
+	private Map<String, String> configuredRequestHandlers = null;
+	// context -> max. size of request bodies, shared by all pipelines
+	private ContextRequestRouter<Long> maxBodySizes = new ContextRequestRouter<Long>();
+	// execution stage shared by all pipelines, null if blocking requests are processed on the i/o workers
+	private ExecutionHandler executionHandler = null;
+	// all open client connections, closed channels are removed by the group itself
+	private final ChannelGroup channels = new DefaultChannelGroup("ts-consumer");
+	
+	/**
+	 * Initializes the consumer pipeline factory
+	 * @param hostname
+	 * @param port
+	 * @param socketThreadPoolSize
+	 * @param additionalProperties
+	 * @param configuredRequestHandlers
+	 * @param maxBodySizes max. size of request bodies (in bytes) by context, contexts not listed accept {@link StreamingRequestDispatcher#DEFAULT_MAX_BODY_SIZE}
+	 * @param executionPoolSize number of threads processing blocking requests - values below 1 disable the execution stage
+	 * @param executionMaxChannelMemorySize max. size of requests (in bytes) queued for a single channel, 0 disables the limit
+	 * @param executionMaxTotalMemorySize max. size of requests (in bytes) queued for all channels, 0 disables the limit
+	 */
+	public TSConsumerPipelineFactory(String hostname, int port, int socketThreadPoolSize, Map<String, String> additionalProperties, Map<String, String> configuredRequestHandlers,
+			Map<String, Long> maxBodySizes, int executionPoolSize, long executionMaxChannelMemorySize, long executionMaxTotalMemorySize) {
+		this.hostname = hostname;
+		this.port = port;
+		this.socketThreadPoolSize = socketThreadPoolSize;
+		this.additionalProperties = additionalProperties;
+		this.configuredRequestHandlers = configuredRequestHandlers;
+		if(maxBodySizes != null) {
+			for(String context : maxBodySizes.keySet())
+				this.maxBodySizes.register(context, maxBodySizes.get(context));
+		}
+		
+		// requests of a single channel are processed in order of arrival
+		if(executionPoolSize > 0)
+			this.executionHandler = new ExecutionHandler(new OrderedMemoryAwareThreadPoolExecutor(executionPoolSize, executionMaxChannelMemorySize, executionMaxTotalMemorySize));
+	}
+	
+	/**
+	 * @see org.jboss.netty.channel.ChannelPipelineFactory#getPipeline()
+	 */
+	public ChannelPipeline getPipeline() throws Exception {
+		ChannelPipeline channelPipeline = Channels.pipeline();
+
+		// the handler builds the context router on first use, the streaming stage routes by means of it
+		TSConsumerChannelUpstreamHandler handler = new TSConsumerChannelUpstreamHandler(hostname, port, socketThreadPoolSize, additionalProperties, configuredRequestHandlers, executionHandler != null);
+		channelPipeline.addLast("channels", new SimpleChannelUpstreamHandler() {
+			public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent event) throws Exception {
+				channels.add(event.getChannel());
+				super.channelOpen(ctx, event);
+			}
+		});
+		channelPipeline.addLast("decoder", new HttpRequestDecoder());
+		channelPipeline.addLast("encoder", new HttpResponseEncoder());
+		channelPipeline.addLast("deflater", new HttpContentCompressor());
+		// request bodies are handled chunk by chunk as requested by the addressed context, they are never aggregated
+		channelPipeline.addLast("streaming", new StreamingRequestDispatcher(TSConsumerChannelUpstreamHandler.getContextRequestRouter(), maxBodySizes, StreamingRequestDispatcher.DEFAULT_MAX_BODY_SIZE));
+		channelPipeline.addLast("handler", handler);
+		if(executionHandler != null) {
+			channelPipeline.addLast("executor", executionHandler);
+			channelPipeline.addLast("blockingHandler", new TSConsumerBlockingRequestHandler());
+		}
+		
+		return channelPipeline;
+	}
+
+	/**
+	 * Closes all open client connections and shuts down the execution stage shared by all pipelines. Must be called once the 
+	 * server channel has been closed and before the channel factory is released as its i/o workers do not terminate while 
+	 * connections are open. Requests still queued for the execution stage are discarded 
+	 * @see org.jboss.netty.util.ExternalResourceReleasable#releaseExternalResources()
+	 */
+	public void releaseExternalResources() {
+		channels.close().awaitUninterruptibly();
+		if(executionHandler != null)
+			executionHandler.releaseExternalResources();
+	}
+
+}
@@ -0,0 +1,67 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.analyzer;
+
+import java.util.List;
+import java.util.Map;
+
+import com.mnxfst.testing.consumer.exception.AsyncInputConsumerException;
+import com.mnxfst.testing.consumer.handler.XmlResponseWriter;
+
+/**
+ * Common interface to all implementations analyzing received messages, eg. for computing the end-to-end latency from
+ * timestamps contained in the payload. Analyzers are configured per consumer type and run as a stage of a 
+ * {@link MessageAnalyzerPipeline}, thus they are never invoked on the thread receiving the messages. Each instance 
+ * is invoked by exactly one thread and does not need to be thread-safe - apart from {@link #writeStatistics(XmlResponseWriter)}
+ * which is called by the thread serving the statistics request.
+ * @author ckreutzfeldt
+ * @since 14.03.2012
+ */
+public interface IMessageAnalyzer {
+
+	/**
+	 * Initializes the analyzer
+	 * @param name name the analyzer is configured by
+	 * @param consumerType type of the consumer the analyzer belongs to
+	 * @param properties consumer settings
+	 * @throws AsyncInputConsumerException
+	 */
+	public void initialize(String name, String consumerType, Map<String, List<String>> properties) throws AsyncInputConsumerException;
+	
+	/**
+	 * Analyzes the given message. The envelope is reused once all stages are done with it, thus neither the envelope
+	 * nor its payload may be referenced after returning
+	 * @param message
+	 */
+	public void analyze(MessageEnvelope message);
+	
+	/**
+	 * Writes the analysis results to the currently open element of the given writer. Must not block
+	 * @param responseWriter
+	 */
+	public void writeStatistics(XmlResponseWriter responseWriter);
+	
+	/**
+	 * Returns the name the analyzer is configured by
+	 * @return
+	 */
+	public String getName();
+	
+}
@@ -0,0 +1,38 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.analyzer;
+
+import java.util.List;
+
+/**
+ * Implemented by consumers forwarding their messages to {@link MessageAnalyzerPipeline analyzer pipelines}. Allows the
+ * control endpoint to inspect the pipelines and to adjust their {@link SamplingPolicy sampling policies} at runtime.
+ * @author ckreutzfeldt
+ * @since 16.03.2012
+ */
+public interface IMessageAnalyzerHost {
+
+	/**
+	 * Returns the analyzer pipelines of the consumer
+	 * @return pipelines, empty if no analyzers are configured
+	 */
+	public List<MessageAnalyzerPipeline> getAnalyzerPipelines();
+	
+}
@@ -0,0 +1,584 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.analyzer;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+
+import com.mnxfst.testing.consumer.async.ConsumerSettings;
+import com.mnxfst.testing.consumer.exception.AsyncInputConsumerException;
+import com.mnxfst.testing.consumer.handler.XmlResponseWriter;
+
+/**
+ * Moves received messages from the receiving thread to a chain of {@link IMessageAnalyzer analyzers}. Messages are passed
+ * through a preallocated ring buffer of {@link MessageEnvelope envelopes}: the receiving thread - the only producer - 
+ * {@link #claim(long, long) claims} the next free envelope, fills it and {@link #publish() publishes} it. Each analyzer 
+ * runs as a stage on a thread of its own and processes an envelope once the preceding stage is done with it. The producer
+ * reuses an envelope as soon as the last stage has passed it. Stages and producer merely exchange sequence numbers, no 
+ * locks are involved. Idle stages park for up to 10ms and are woken up as soon as messages are handed over to them.<br/><br/>
+ * The receiving thread never waits for the analyzers: if all envelopes are still in use, the message is not analyzed and 
+ * counted as dropped. Analyzers are configured per consumer type:
+ * <ul>
+ *   <li><i>consumer.async.&lt;type&gt;.message-analyzer.&lt;name&gt;</i> - analyzer class, any number of analyzers may be configured</li>
+ *   <li><i>consumer.async.&lt;type&gt;.analysis.chain</i> - comma separated analyzer names defining the order of stages, 
+ *       default: all configured analyzers ordered by name</li>
+ *   <li><i>consumer.async.&lt;type&gt;.analysis.bufferSize</i> - number of envelopes, rounded up to the next power of two, default: 4096</li>
+ *   <li><i>consumer.async.&lt;type&gt;.message-analyzer.&lt;name&gt;.sampling</i> - {@link SamplingPolicy sampling policy} of the 
+ *       analyzer, default: all. May be changed at runtime via {@link #setSamplingPolicy(String, String)}</li>
+ * </ul>
+ * @author ckreutzfeldt
+ * @since 14.03.2012
+ */
+public class MessageAnalyzerPipeline {
+
+	private static final Logger logger = Logger.getLogger(MessageAnalyzerPipeline.class);
+	
+	public static final int DEFAULT_BUFFER_SIZE = 4096;
+	public static final int MAX_BUFFER_SIZE = 1 << 24;
+	
+	private static final String CFG_OPT_CONSUMER_TYPE_PREFIX = "consumer.async.";
+	private static final String CFG_OPT_ANALYZER = ".message-analyzer.";
+	private static final String CFG_OPT_CHAIN = ".analysis.chain";
+	private static final String CFG_OPT_BUFFER_SIZE = ".analysis.bufferSize";
+	private static final String CFG_OPT_SAMPLING = ".sampling";
+	
+	// idle stages spin first, then yield and finally park - for twice as long each time - until woken up by new messages
+	private static final int IDLE_SPINS = 100;
+	private static final int IDLE_YIELDS = 200;
+	private static final long IDLE_MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+	private static final long IDLE_MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+	
+	private static final String RESPONSE_PIPELINE_ELEMENT = "pipeline";
+	private static final String RESPONSE_PIPELINE_NAME_ATTRIBUTE = "name";
+	private static final String RESPONSE_PIPELINE_CAPACITY_ATTRIBUTE = "capacity";
+	private static final String RESPONSE_PIPELINE_PUBLISHED_ATTRIBUTE = "published";
+	private static final String RESPONSE_PIPELINE_DROPPED_ATTRIBUTE = "dropped";
+	private static final String RESPONSE_STAGE_ELEMENT = "stage";
+	private static final String RESPONSE_STAGE_NAME_ATTRIBUTE = "name";
+	private static final String RESPONSE_STAGE_DEPTH_ATTRIBUTE = "depth";
+	private static final String RESPONSE_STAGE_PROCESSED_ATTRIBUTE = "processed";
+	private static final String RESPONSE_STAGE_ERRORS_ATTRIBUTE = "errors";
+	private static final String RESPONSE_STAGE_BUSY_TIME_ATTRIBUTE = "busyTimeUs";
+	private static final String RESPONSE_STAGE_MEAN_TIME_ATTRIBUTE = "meanTimeNs";
+	private static final String RESPONSE_STAGE_SAMPLING_ATTRIBUTE = "sampling";
+	private static final String RESPONSE_STAGE_SAMPLED_ATTRIBUTE = "sampled";
+	
+	private final String name;
+	private final MessageEnvelope[] envelopes;
+	private final int mask;
+	private final Stage[] stages;
+	
+	// number of messages published so far
+	private final AtomicLong published = new AtomicLong(0);
+	private final AtomicLong dropped = new AtomicLong(0);
+	// producer state, accessed by the publishing thread only
+	private long claimedSequence = -1;
+	private long cachedGatingSequence = 0;
+	
+	private final AtomicBoolean started = new AtomicBoolean(false);
+	private volatile boolean running = true;
+	private volatile boolean aborted = false;
+	
+	/**
+	 * Initializes the pipeline
+	 * @param name used for naming the stage threads
+	 * @param bufferSize minimum number of envelopes, rounded up to the next power of two
+	 * @param analyzers stages in order of invocation
+	 */
+	public MessageAnalyzerPipeline(String name, int bufferSize, List<IMessageAnalyzer> analyzers) {
+		
+		if(analyzers == null || analyzers.isEmpty())
+			throw new IllegalArgumentException("At least one analyzer is required");
+		if(bufferSize < 1 || bufferSize > MAX_BUFFER_SIZE)
+			throw new IllegalArgumentException("Invalid buffer size: " + bufferSize);
+		
+		int capacity = Integer.highestOneBit(bufferSize);
+		if(capacity < bufferSize)
+			capacity <<= 1;
+		
+		this.name = name;
+		this.mask = capacity - 1;
+		this.envelopes = new MessageEnvelope[capacity];
+		for(int i = 0; i < capacity; i++)
+			this.envelopes[i] = new MessageEnvelope();
+		this.stages = new Stage[analyzers.size()];
+		for(int i = 0; i < stages.length; i++) {
+			this.stages[i] = new Stage(analyzers.get(i), (i > 0 ? stages[i - 1] : null));
+			if(i > 0)
+				this.stages[i - 1].downstream = this.stages[i];
+		}
+	}
+	
+	/**
+	 * Creates the pipeline for the analyzers configured for the given consumer type
+	 * @param name
+	 * @param consumerType
+	 * @param properties
+	 * @return pipeline or null if no analyzers are configured
+	 * @throws AsyncInputConsumerException thrown in case the settings are invalid or any analyzer cannot be initialized
+	 */
+	public static MessageAnalyzerPipeline create(String name, String consumerType, Map<String, List<String>> properties) throws AsyncInputConsumerException {
+		
+		// consumer.async.<type>.message-analyzer.<name> references an analyzer class, further dots belong to analyzer settings
+		String analyzerPrefix = CFG_OPT_CONSUMER_TYPE_PREFIX + consumerType + CFG_OPT_ANALYZER;
+		Map<String, String> analyzerClasses = new TreeMap<String, String>();
+		for(String key : properties.keySet()) {
+			if(key.startsWith(analyzerPrefix) && key.length() > analyzerPrefix.length() && key.indexOf('.', analyzerPrefix.length()) == -1) {
+				String className = ConsumerSettings.getString(properties, key, null);
+				if(className != null)
+					analyzerClasses.put(key.substring(analyzerPrefix.length()), className);
+			}
+		}
+		if(analyzerClasses.isEmpty())
+			return null;
+		
+		List<String> chain = new ArrayList<String>(analyzerClasses.keySet());
+		String chainSetting = ConsumerSettings.getString(properties, CFG_OPT_CONSUMER_TYPE_PREFIX + consumerType + CFG_OPT_CHAIN, null);
+		if(chainSetting != null) {
+			chain.clear();
+			for(String analyzerName : chainSetting.split(",")) {
+				analyzerName = analyzerName.trim();
+				if(analyzerName.isEmpty())
+					continue;
+				if(!analyzerClasses.containsKey(analyzerName))
+					throw new AsyncInputConsumerException("Analyzer '"+analyzerName+"' referenced by the chain of consumer type '"+consumerType+"' is not configured");
+				chain.add(analyzerName);
+			}
+			if(chain.isEmpty())
+				return null;
+		}
+		
+		int bufferSize = DEFAULT_BUFFER_SIZE;
+		String bufferSizeKey = CFG_OPT_CONSUMER_TYPE_PREFIX + consumerType + CFG_OPT_BUFFER_SIZE;
+		String bufferSizeSetting = ConsumerSettings.getString(properties, bufferSizeKey, null);
+		if(bufferSizeSetting != null) {
+			try {
+				bufferSize = Integer.parseInt(bufferSizeSetting);
+			} catch(NumberFormatException e) {
+				bufferSize = -1;
+			}
+			if(bufferSize < 1 || bufferSize > MAX_BUFFER_SIZE)
+				throw new AsyncInputConsumerException("Invalid value for '"+bufferSizeKey+"': " + bufferSizeSetting);
+		}
+		
+		List<IMessageAnalyzer> analyzers = new ArrayList<IMessageAnalyzer>(chain.size());
+		for(String analyzerName : chain)
+			analyzers.add(instantiateAnalyzer(analyzerName, analyzerClasses.get(analyzerName), consumerType, properties));
+		MessageAnalyzerPipeline pipeline = new MessageAnalyzerPipeline(name, bufferSize, analyzers);
+		
+		for(String analyzerName : chain) {
+			String samplingKey = analyzerPrefix + analyzerName + CFG_OPT_SAMPLING;
+			String samplingSetting = ConsumerSettings.getString(properties, samplingKey, null);
+			if(samplingSetting != null) {
+				try {
+					pipeline.setSamplingPolicy(analyzerName, samplingSetting);
+				} catch(IllegalArgumentException e) {
+					throw new AsyncInputConsumerException("Invalid value for '"+samplingKey+"': " + e.getMessage());
+				}
+			}
+		}
+		return pipeline;
+	}
+	
+	/**
+	 * Creates and initializes an instance of the referenced analyzer class
+	 * @param analyzerName
+	 * @param className
+	 * @param consumerType
+	 * @param properties
+	 * @return
+	 * @throws AsyncInputConsumerException
+	 */
+	protected static IMessageAnalyzer instantiateAnalyzer(String analyzerName, String className, String consumerType, Map<String, List<String>> properties) throws AsyncInputConsumerException {
+		try {
+			Class<?> analyzerClazz = Class.forName(className);
+			if(!IMessageAnalyzer.class.isAssignableFrom(analyzerClazz))
+				throw new AsyncInputConsumerException("Class '"+className+"' of analyzer '"+analyzerName+"' does not implement " + IMessageAnalyzer.class.getName());
+			IMessageAnalyzer analyzer = (IMessageAnalyzer)analyzerClazz.getDeclaredConstructor().newInstance();
+			analyzer.initialize(analyzerName, consumerType, properties);
+			return analyzer;
+		} catch(ClassNotFoundException e) {
+			throw new AsyncInputConsumerException("Class '"+className+"' of analyzer '"+analyzerName+"' not found");
+		} catch(InvocationTargetException e) {
+			// the constructor failed
+			throw new AsyncInputConsumerException("Failed to instantiate analyzer class '"+className+"'. Error: " + e.getCause(), e.getCause());
+		} catch(ReflectiveOperationException e) {
+			throw new AsyncInputConsumerException("Failed to instantiate analyzer class '"+className+"'. Error: " + e, e);
+		}
+	}
+	
+	/**
+	 * Starts a thread for each stage
+	 */
+	public void start() {
+		if(!started.compareAndSet(false, true))
+			return;
+		for(int i = 0; i < stages.length; i++) {
+			Thread thread = new Thread(stages[i], name + "-" + stages[i].analyzer.getName());
+			thread.setDaemon(true);
+			stages[i].thread = thread;
+			thread.start();
+		}
+	}
+	
+	/**
+	 * Claims the next envelope. Must be called by the producing thread only and be followed by {@link #publish()} before
+	 * the next envelope is claimed
+	 * @param receiveTimestamp
+	 * @param sentTimestamp
+	 * @return envelope or null if all envelopes are in use, in which case the message is counted as dropped
+	 */
+	public MessageEnvelope claim(long receiveTimestamp, long sentTimestamp) {
+		
+		if(claimedSequence != -1)
+			throw new IllegalStateException("The previously claimed envelope has not been published");
+		
+		long sequence = published.get();
+		long wrapPoint = sequence - envelopes.length;
+		if(wrapPoint >= cachedGatingSequence) {
+			// refresh the view on the last stage only if the cached one is not sufficient
+			cachedGatingSequence = stages[stages.length - 1].sequence.get();
+			if(wrapPoint >= cachedGatingSequence) {
+				dropped.incrementAndGet();
+				return null;
+			}
+		}
+		
+		MessageEnvelope envelope = envelopes[(int)(sequence & mask)];
+		envelope.reset(sequence, receiveTimestamp, sentTimestamp);
+		claimedSequence = sequence;
+		return envelope;
+	}
+	
+	/**
+	 * Hands the envelope claimed last over to the first stage
+	 */
+	public void publish() {
+		if(claimedSequence == -1)
+			throw new IllegalStateException("No envelope has been claimed");
+		long sequence = claimedSequence;
+		claimedSequence = -1;
+		published.lazySet(sequence + 1);
+		stages[0].wakeUp();
+	}
+	
+	/**
+	 * Stops the stages once they have processed all published messages. Must not be called before the producer has 
+	 * published its last message. Stages which have not finished within the given time are aborted
+	 * @param timeoutMillis
+	 * @return true if all published messages have been analyzed
+	 */
+	public boolean shutdown(long timeoutMillis) {
+		
+		running = false;
+		if(!started.get())
+			return true;
+		for(Stage stage : stages)
+			stage.wakeUp();
+		
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeoutMillis));
+		try {
+			for(Stage stage : stages) {
+				if(stage.thread == Thread.currentThread())
+					continue;
+				long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				if(remainingMillis > 0)
+					stage.thread.join(remainingMillis);
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		boolean drained = true;
+		for(Stage stage : stages)
+			drained &= stage.finished;
+		if(!drained) {
+			aborted = true;
+			logger.warn("Analyzer pipeline '"+name+"' aborted with " + getQueueDepth(0) + " messages pending");
+		}
+		return drained;
+	}
+	
+	/**
+	 * Replaces the sampling policy of the referenced analyzers. Running stages switch over before they process their 
+	 * next message, messages deferred by the previous policy are analyzed first. Each stage receives its own policy instance
+	 * @param analyzerName name of the analyzer, null or * references all analyzers of the pipeline
+	 * @param spec {@link SamplingPolicy#parse(String) policy specification}
+	 * @return number of stages using the new policy
+	 * @throws IllegalArgumentException thrown in case the specification is invalid
+	 */
+	public int setSamplingPolicy(String analyzerName, String spec) {
+		SamplingPolicy.parse(spec);
+		int count = 0;
+		for(Stage stage : stages) {
+			if(analyzerName == null || "*".equals(analyzerName) || analyzerName.equals(stage.analyzer.getName())) {
+				stage.samplingPolicy = SamplingPolicy.parse(spec);
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Writes the pipeline and stage statistics to the currently open element
+	 * @param responseWriter
+	 */
+	public void writeStatistics(XmlResponseWriter responseWriter) {
+		responseWriter.startElement(RESPONSE_PIPELINE_ELEMENT);
+		responseWriter.attribute(RESPONSE_PIPELINE_NAME_ATTRIBUTE, name);
+		responseWriter.attribute(RESPONSE_PIPELINE_CAPACITY_ATTRIBUTE, getCapacity());
+		responseWriter.attribute(RESPONSE_PIPELINE_PUBLISHED_ATTRIBUTE, getPublishedCount());
+		responseWriter.attribute(RESPONSE_PIPELINE_DROPPED_ATTRIBUTE, getDroppedCount());
+		for(int i = 0; i < stages.length; i++) {
+			long processed = getProcessedCount(i);
+			long busyNanos = getProcessingNanos(i);
+			responseWriter.startElement(RESPONSE_STAGE_ELEMENT);
+			responseWriter.attribute(RESPONSE_STAGE_NAME_ATTRIBUTE, stages[i].analyzer.getName());
+			responseWriter.attribute(RESPONSE_STAGE_DEPTH_ATTRIBUTE, getQueueDepth(i));
+			responseWriter.attribute(RESPONSE_STAGE_PROCESSED_ATTRIBUTE, processed);
+			responseWriter.attribute(RESPONSE_STAGE_ERRORS_ATTRIBUTE, getErrorCount(i));
+			responseWriter.attribute(RESPONSE_STAGE_BUSY_TIME_ATTRIBUTE, TimeUnit.NANOSECONDS.toMicros(busyNanos));
+			responseWriter.attribute(RESPONSE_STAGE_MEAN_TIME_ATTRIBUTE, (processed > 0 ? busyNanos / processed : 0));
+			responseWriter.attribute(RESPONSE_STAGE_SAMPLING_ATTRIBUTE, getSamplingPolicy(i));
+			responseWriter.attribute(RESPONSE_STAGE_SAMPLED_ATTRIBUTE, getSampledCount(i));
+			stages[i].analyzer.writeStatistics(responseWriter);
+			responseWriter.endElement();
+		}
+		responseWriter.endElement();
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Returns the number of envelopes
+	 * @return
+	 */
+	public int getCapacity() {
+		return envelopes.length;
+	}
+	
+	public long getPublishedCount() {
+		return published.get();
+	}
+	
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+	
+	public int getStageCount() {
+		return stages.length;
+	}
+	
+	public IMessageAnalyzer getAnalyzer(int stage) {
+		return stages[stage].analyzer;
+	}
+	
+	/**
+	 * Returns the number of messages waiting for the given stage
+	 * @param stage
+	 * @return
+	 */
+	public long getQueueDepth(int stage) {
+		long processed = stages[stage].sequence.get();
+		long available = (stage > 0 ? stages[stage - 1].sequence.get() : published.get());
+		return Math.max(0, available - processed);
+	}
+	
+	public long getProcessedCount(int stage) {
+		return stages[stage].sequence.get();
+	}
+	
+	public long getErrorCount(int stage) {
+		return stages[stage].errors.get();
+	}
+	
+	/**
+	 * Returns the number of messages handed over to the analyzer of the given stage. Compared to the 
+	 * {@link #getProcessedCount(int) number of processed messages} it reflects the share picked by the sampling policies
+	 * @param stage
+	 * @return
+	 */
+	public long getSampledCount(int stage) {
+		return stages[stage].sampled.get();
+	}
+	
+	/**
+	 * Returns the specification of the sampling policy requested for the given stage
+	 * @param stage
+	 * @return
+	 */
+	public String getSamplingPolicy(int stage) {
+		return stages[stage].samplingPolicy.getSpec();
+	}
+	
+	/**
+	 * Returns the time spent by the given stage inside its analyzer (ns)
+	 * @param stage
+	 * @return
+	 */
+	public long getProcessingNanos(int stage) {
+		return stages[stage].busyNanos.get();
+	}
+	
+	/**
+	 * Runs a single analyzer
+	 * @author ckreutzfeldt
+	 * @since 14.03.2012
+	 */
+	private final class Stage implements Runnable {
+		
+		private final IMessageAnalyzer analyzer;
+		private final Stage upstream;
+		private Stage downstream = null;
+		// number of messages processed so far
+		private final AtomicLong sequence = new AtomicLong(0);
+		private final AtomicLong errors = new AtomicLong(0);
+		private final AtomicLong busyNanos = new AtomicLong(0);
+		// number of messages handed over to the analyzer, kept across policy changes
+		private final AtomicLong sampled = new AtomicLong(0);
+		// requested policy, picked up by the stage thread
+		private volatile SamplingPolicy samplingPolicy = SamplingPolicy.all();
+		private volatile boolean finished = false;
+		// set while the stage parks, producer and upstream stage wake it up when handing over messages
+		private volatile boolean parked = false;
+		private Thread thread = null;
+		
+		private Stage(IMessageAnalyzer analyzer, Stage upstream) {
+			this.analyzer = analyzer;
+			this.upstream = upstream;
+		}
+		
+		public void run() {
+			
+			long next = sequence.get();
+			int idleCount = 0;
+			long parkNanos = IDLE_MIN_PARK_NANOS;
+			SamplingPolicy policy = samplingPolicy;
+			try {
+				while(!aborted) {
+					
+					long available = (upstream != null ? upstream.sequence.get() : published.get());
+					// read after the sequence: messages published after a policy change are sampled by the new policy
+					if(policy != samplingPolicy) {
+						flush(policy, Long.MAX_VALUE);
+						policy = samplingPolicy;
+					}
+					
+					if(next < available) {
+						long busy = busyNanos.get();
+						long sampledCount = sampled.get();
+						for(; next < available && !aborted; next++) {
+							long start = System.nanoTime();
+							try {
+								sampledCount += policy.offer(envelopes[(int)(next & mask)], analyzer);
+							} catch(RuntimeException e) {
+								if(errors.incrementAndGet() == 1)
+									logger.error("Analyzer '"+analyzer.getName()+"' of pipeline '"+name+"' failed to analyze message: " + e.getMessage(), e);
+							}
+							busy += System.nanoTime() - start;
+							busyNanos.lazySet(busy);
+							sampled.lazySet(sampledCount);
+							// hand the envelope over right away, downstream stages must not wait for the whole batch
+							sequence.lazySet(next + 1);
+						}
+						if(downstream != null)
+							downstream.wakeUp();
+						idleCount = 0;
+						parkNanos = IDLE_MIN_PARK_NANOS;
+						continue;
+					}
+					
+					// nothing left to do: stop once the upstream has finished as well, its final sequence is read afterwards
+					if(!running && (upstream == null || upstream.finished)) {
+						available = (upstream != null ? upstream.sequence.get() : published.get());
+						if(next >= available) {
+							if(!aborted)
+								flush(policy, Long.MAX_VALUE);
+							break;
+						}
+						continue;
+					}
+					
+					idleCount++;
+					if(idleCount > IDLE_SPINS) {
+						// deferred messages must not wait for the next message to arrive
+						flush(policy, System.currentTimeMillis());
+						if(idleCount > IDLE_SPINS + IDLE_YIELDS) {
+							// messages handed over after announcing the park wake the stage up. As the sequences are 
+							// published lazily, a wake up may be missed - the park time bounds the delay then
+							parked = true;
+							if(running && next >= (upstream != null ? upstream.sequence.get() : published.get()))
+								LockSupport.parkNanos(parkNanos);
+							parked = false;
+							parkNanos = Math.min(parkNanos * 2, IDLE_MAX_PARK_NANOS);
+						} else {
+							Thread.yield();
+						}
+					}
+				}
+			} finally {
+				finished = true;
+				if(downstream != null)
+					downstream.wakeUp();
+			}
+		}
+		
+		/**
+		 * Unparks the stage thread if it is waiting for messages
+		 */
+		private void wakeUp() {
+			if(parked)
+				LockSupport.unpark(thread);
+		}
+		
+		/**
+		 * Hands the messages deferred by the given policy over to the analyzer
+		 * @param policy
+		 * @param now
+		 */
+		private void flush(SamplingPolicy policy, long now) {
+			long start = System.nanoTime();
+			int count = 0;
+			try {
+				count = policy.flush(analyzer, now);
+			} catch(RuntimeException e) {
+				if(errors.incrementAndGet() == 1)
+					logger.error("Analyzer '"+analyzer.getName()+"' of pipeline '"+name+"' failed to analyze message: " + e.getMessage(), e);
+			}
+			// idle stages flush repeatedly, only time spent analyzing is accounted
+			if(count > 0) {
+				sampled.lazySet(sampled.get() + count);
+				busyNanos.lazySet(busyNanos.get() + System.nanoTime() - start);
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,378 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.analyzer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Flyweight message handed from the receiving thread to the {@link IMessageAnalyzer analyzers}. Envelopes are preallocated
+ * by the {@link MessageAnalyzerPipeline} and reused for each message passing the same ring buffer slot.<br/><br/>
+ * The payload is kept in the form the source provides it: either as a slice of a byte array or a direct buffer - which is
+ * referenced, not copied - or as text. Other representations are derived lazily and only if an analyzer asks for them:
+ * <ul>
+ *   <li>{@link #getPayloadArray()}, {@link #getPayloadOffset()}, {@link #getPayloadLength()} - raw UTF-8 bytes, text 
+ *       payloads are encoded and direct buffers are copied into a buffer owned by the envelope</li>
+ *   <li>{@link #getPayload()} - read-only {@link ByteBuffer} view on the same bytes</li>
+ *   <li>{@link #getText()} - decoded text, binary payloads are decoded as UTF-8 once per message</li>
+ *   <li>{@link #getPayloadChars()} - characters without any decoding: text payloads as they are, binary payloads byte by byte. 
+ *       Sufficient for scanning ASCII markup</li>
+ * </ul>
+ * Thus passing a binary payload from the source to an analyzer scanning its characters neither copies nor allocates.
+ * @author ckreutzfeldt
+ * @since 14.03.2012
+ */
+public class MessageEnvelope {
+
+	private static final byte[] EMPTY = new byte[0];
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+	
+	private long sequence = -1;
+	private long receiveTimestamp = 0;
+	private long sentTimestamp = 0;
+	private long size = 0;
+	
+	// payload slice, may reference the source or the buffer owned by the envelope
+	private byte[] payloadArray = EMPTY;
+	private int payloadOffset = 0;
+	private int payloadLength = 0;
+	private boolean payloadAvailable = false;
+	// buffer holding the payload instead of the array, eg. a memory-mapped file. Offset and length refer to this buffer 
+	private ByteBuffer payloadSource = null;
+	// textual payload, either provided or decoded
+	private String text = null;
+	// derived views, created on demand
+	private ByteBuffer payloadBuffer = null;
+	private byte[] ownedBuffer = EMPTY;
+	private final PayloadChars payloadChars = new PayloadChars();
+	
+	/**
+	 * Clears the envelope before it is filled with the next message
+	 * @param sequence
+	 * @param receiveTimestamp
+	 * @param sentTimestamp
+	 */
+	public void reset(long sequence, long receiveTimestamp, long sentTimestamp) {
+		this.sequence = sequence;
+		this.receiveTimestamp = receiveTimestamp;
+		this.sentTimestamp = sentTimestamp;
+		this.size = 0;
+		this.payloadArray = EMPTY;
+		this.payloadOffset = 0;
+		this.payloadLength = 0;
+		this.payloadAvailable = false;
+		this.payloadSource = null;
+		this.text = null;
+		this.payloadBuffer = null;
+	}
+	
+	/**
+	 * References the given slice as binary UTF-8 payload. The slice must not be modified until the envelope is reset
+	 * @param array
+	 * @param offset
+	 * @param length
+	 */
+	public void setPayload(byte[] array, int offset, int length) {
+		if(array == null || offset < 0 || length < 0 || offset + length > array.length)
+			throw new IllegalArgumentException("Invalid payload slice");
+		this.payloadArray = array;
+		this.payloadOffset = offset;
+		this.payloadLength = length;
+		this.payloadAvailable = true;
+		this.payloadSource = null;
+		this.text = null;
+		this.payloadBuffer = null;
+	}
+	
+	/**
+	 * References the given region of the buffer as binary UTF-8 payload. Buffers without accessible array - eg. memory-mapped 
+	 * ones - are read in place using absolute indexes, position and limit of the buffer are neither used nor changed. The 
+	 * bytes must not be modified and the limit must not be reduced below the region until the envelope is reset
+	 * @param buffer
+	 * @param index
+	 * @param length
+	 */
+	public void setPayload(ByteBuffer buffer, int index, int length) {
+		if(buffer == null || index < 0 || length < 0 || index + length > buffer.limit())
+			throw new IllegalArgumentException("Invalid payload region");
+		if(buffer.hasArray()) {
+			setPayload(buffer.array(), buffer.arrayOffset() + index, length);
+			return;
+		}
+		this.payloadArray = EMPTY;
+		this.payloadOffset = index;
+		this.payloadLength = length;
+		this.payloadAvailable = true;
+		this.payloadSource = buffer;
+		this.text = null;
+		this.payloadBuffer = null;
+	}
+	
+	/**
+	 * Sets a textual payload, its bytes are computed on demand
+	 * @param text
+	 */
+	public void setText(String text) {
+		this.text = text;
+		this.payloadArray = EMPTY;
+		this.payloadOffset = 0;
+		this.payloadLength = 0;
+		this.payloadAvailable = false;
+		this.payloadSource = null;
+		this.payloadBuffer = null;
+	}
+	
+	/**
+	 * Returns a buffer owned by the envelope of at least the given capacity. Meant for sources which cannot provide 
+	 * their payload as slice and need to copy it, the copied bytes must be referenced via {@link #setPayload(byte[], int, int)}
+	 * @param capacity
+	 * @return
+	 */
+	public byte[] getPayloadBuffer(int capacity) {
+		if(ownedBuffer.length < capacity)
+			ownedBuffer = new byte[capacity];
+		return ownedBuffer;
+	}
+
+	/**
+	 * Turns the envelope into a copy of the given one which remains valid after the source has been reused. Binary
+	 * payloads are copied into the buffer owned by this envelope
+	 * @param source
+	 */
+	public void copyFrom(MessageEnvelope source) {
+		reset(source.sequence, source.receiveTimestamp, source.sentTimestamp);
+		this.size = source.size;
+		if(source.payloadAvailable) {
+			byte[] buffer = getPayloadBuffer(source.payloadLength);
+			if(source.payloadSource != null)
+				source.copySource(buffer);
+			else
+				System.arraycopy(source.payloadArray, source.payloadOffset, buffer, 0, source.payloadLength);
+			setPayload(buffer, 0, source.payloadLength);
+		} else if(source.text != null) {
+			setText(source.text);
+		}
+	}
+
+	/**
+	 * Returns true if the message carries any payload
+	 * @return
+	 */
+	public boolean hasPayload() {
+		return payloadAvailable || text != null;
+	}
+	
+	/**
+	 * Returns true if the payload is available as bytes without encoding the text
+	 * @return
+	 */
+	public boolean hasBinaryPayload() {
+		return payloadAvailable;
+	}
+	
+	/**
+	 * Returns the array holding the payload bytes starting at {@link #getPayloadOffset()}. The array must not be modified
+	 * @return
+	 */
+	public byte[] getPayloadArray() {
+		encodeText();
+		return payloadArray;
+	}
+	
+	public int getPayloadOffset() {
+		encodeText();
+		return payloadOffset;
+	}
+	
+	public int getPayloadLength() {
+		// the length of a source buffer payload is known without copying it
+		if(payloadSource == null)
+			encodeText();
+		return payloadLength;
+	}
+	
+	/**
+	 * Returns a read-only view on the payload bytes. The view is created once per message
+	 * @return
+	 */
+	public ByteBuffer getPayload() {
+		if(payloadBuffer == null && payloadSource != null) {
+			ByteBuffer view = payloadSource.duplicate();
+			view.limit(payloadOffset + payloadLength).position(payloadOffset);
+			payloadBuffer = view.slice().asReadOnlyBuffer();
+		} else if(payloadBuffer == null) {
+			encodeText();
+			payloadBuffer = ByteBuffer.wrap(payloadArray, payloadOffset, payloadLength).slice().asReadOnlyBuffer();
+		}
+		return payloadBuffer.duplicate();
+	}
+	
+	/**
+	 * Returns the textual payload, binary payloads are decoded once per message
+	 * @return text or null if the message does not carry any payload
+	 */
+	public String getText() {
+		if(text == null && payloadAvailable && payloadSource != null)
+			text = UTF8.decode(getPayload()).toString();
+		else if(text == null && payloadAvailable)
+			text = new String(payloadArray, payloadOffset, payloadLength, UTF8);
+		return text;
+	}
+	
+	/**
+	 * Returns the payload characters without decoding binary payloads: each byte is taken as a single character. The 
+	 * returned sequence is reused for each message
+	 * @return characters or null if the message does not carry any payload
+	 */
+	public CharSequence getPayloadChars() {
+		if(text != null)
+			return text;
+		return (payloadAvailable ? payloadChars : null);
+	}
+	
+	/**
+	 * Copies the payload referenced in the source buffer to the given array
+	 * @param target
+	 */
+	private void copySource(byte[] target) {
+		ByteBuffer view = payloadSource.duplicate();
+		view.limit(payloadOffset + payloadLength).position(payloadOffset);
+		view.get(target, 0, payloadLength);
+	}
+	
+	/**
+	 * Encodes a textual payload into the buffer owned by the envelope, unless bytes are available already. Payloads
+	 * held by a source buffer are copied into the owned buffer
+	 */
+	private void encodeText() {
+		
+		if(payloadSource != null) {
+			byte[] buffer = getPayloadBuffer(payloadLength);
+			copySource(buffer);
+			payloadArray = buffer;
+			payloadOffset = 0;
+			payloadSource = null;
+			return;
+		}
+		
+		if(payloadAvailable || text == null)
+			return;
+		
+		int length = text.length();
+		byte[] buffer = getPayloadBuffer(length * 3);
+		int pos = 0;
+		for(int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if(c < 0x80) {
+				buffer[pos++] = (byte)c;
+			} else if(c < 0x800) {
+				buffer[pos++] = (byte)(0xC0 | (c >> 6));
+				buffer[pos++] = (byte)(0x80 | (c & 0x3F));
+			} else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, text.charAt(++i));
+				buffer[pos++] = (byte)(0xF0 | (codePoint >> 18));
+				buffer[pos++] = (byte)(0x80 | ((codePoint >> 12) & 0x3F));
+				buffer[pos++] = (byte)(0x80 | ((codePoint >> 6) & 0x3F));
+				buffer[pos++] = (byte)(0x80 | (codePoint & 0x3F));
+			} else if(Character.isSurrogate(c)) {
+				// unpaired surrogates cannot be encoded
+				buffer[pos++] = '?';
+			} else {
+				buffer[pos++] = (byte)(0xE0 | (c >> 12));
+				buffer[pos++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+				buffer[pos++] = (byte)(0x80 | (c & 0x3F));
+			}
+		}
+		payloadArray = buffer;
+		payloadOffset = 0;
+		payloadLength = pos;
+		payloadAvailable = true;
+	}
+	
+	/**
+	 * Returns the sequence number assigned by the pipeline
+	 * @return
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+	
+	/**
+	 * Returns the time the message was received (ms)
+	 * @return
+	 */
+	public long getReceiveTimestamp() {
+		return receiveTimestamp;
+	}
+
+	/**
+	 * Returns the time the message was sent according to the source (ms), 0 if unknown
+	 * @return
+	 */
+	public long getSentTimestamp() {
+		return sentTimestamp;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public void setSize(long size) {
+		this.size = size;
+	}
+	
+	/**
+	 * View on the binary payload taking each byte as a single character. Sub sequences are created the same way, thus 
+	 * they equal the characters of the view - not the decoded text
+	 * @author ckreutzfeldt
+	 * @since 16.03.2012
+	 */
+	private final class PayloadChars implements CharSequence {
+		
+		public int length() {
+			return payloadLength;
+		}
+		
+		public char charAt(int index) {
+			if(index < 0 || index >= payloadLength)
+				throw new IndexOutOfBoundsException("Invalid index: " + index);
+			if(payloadSource != null)
+				return (char)(payloadSource.get(payloadOffset + index) & 0xFF);
+			return (char)(payloadArray[payloadOffset + index] & 0xFF);
+		}
+		
+		public CharSequence subSequence(int start, int end) {
+			if(start < 0 || end > payloadLength || start > end)
+				throw new IndexOutOfBoundsException("Invalid range: " + start + " - " + end);
+			if(payloadSource != null) {
+				ByteBuffer view = payloadSource.duplicate();
+				view.limit(payloadOffset + end).position(payloadOffset + start);
+				return ISO_8859_1.decode(view).toString();
+			}
+			return new String(payloadArray, payloadOffset + start, end - start, ISO_8859_1);
+		}
+		
+		public String toString() {
+			return subSequence(0, payloadLength).toString();
+		}
+	}
+	
+}
@@ -0,0 +1,260 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.analyzer;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which messages are handed over to an {@link IMessageAnalyzer analyzer}. Expensive analyzers may look at a 
+ * share of the messages only while the {@link MessageAnalyzerPipeline pipeline} still counts all of them, the ratio 
+ * of both counts allows to extrapolate the analyzer results. Available policies:
+ * <ul>
+ *   <li><i>all</i> - each message is analyzed (default)</li>
+ *   <li><i>every:N</i> - the first and each Nth message thereafter are analyzed</li>
+ *   <li><i>rate:P</i> - each message is analyzed with probability P, between 0 and 1</li>
+ *   <li><i>reservoir:K/T</i> - K messages chosen uniformly from each window of T milliseconds are analyzed once the window
+ *       ends. Windows are based on the receive timestamps, the selected messages are copied as their envelopes are reused</li>
+ * </ul>
+ * Instances keep state and are confined to the thread running a single stage, each stage requires an instance of its own.
+ * @author ckreutzfeldt
+ * @since 16.03.2012
+ */
+public abstract class SamplingPolicy {
+
+	public static final String POLICY_ALL = "all";
+	public static final String POLICY_EVERY = "every";
+	public static final String POLICY_RATE = "rate";
+	public static final String POLICY_RESERVOIR = "reservoir";
+	
+	public static final int MAX_RESERVOIR_SIZE = 65536;
+	
+	/**
+	 * Offers the next message. The message may be analyzed right away, later on or not at all
+	 * @param message
+	 * @param analyzer
+	 * @return number of messages handed over to the analyzer by this call
+	 */
+	public abstract int offer(MessageEnvelope message, IMessageAnalyzer analyzer);
+	
+	/**
+	 * Hands over deferred messages whose sampling period has ended by the given time
+	 * @param analyzer
+	 * @param now current time (ms), {@link Long#MAX_VALUE} hands over all deferred messages
+	 * @return number of messages handed over to the analyzer by this call
+	 */
+	public int flush(IMessageAnalyzer analyzer, long now) {
+		return 0;
+	}
+	
+	/**
+	 * Returns the specification which {@link #parse(String)} turns into an equal policy
+	 * @return
+	 */
+	public abstract String getSpec();
+	
+	/**
+	 * Returns a policy analyzing each message
+	 * @return
+	 */
+	public static SamplingPolicy all() {
+		return new SamplingPolicy() {
+			public int offer(MessageEnvelope message, IMessageAnalyzer analyzer) {
+				analyzer.analyze(message);
+				return 1;
+			}
+			public String getSpec() {
+				return POLICY_ALL;
+			}
+		};
+	}
+	
+	/**
+	 * Returns a policy analyzing the first and each nth message thereafter
+	 * @param n
+	 * @return
+	 */
+	public static SamplingPolicy every(final int n) {
+		if(n < 1)
+			throw new IllegalArgumentException("An every policy requires a positive interval");
+		if(n == 1)
+			return all();
+		return new SamplingPolicy() {
+			private int skipped = n - 1;
+			public int offer(MessageEnvelope message, IMessageAnalyzer analyzer) {
+				if(++skipped < n)
+					return 0;
+				skipped = 0;
+				analyzer.analyze(message);
+				return 1;
+			}
+			public String getSpec() {
+				return POLICY_EVERY + ":" + n;
+			}
+		};
+	}
+	
+	/**
+	 * Returns a policy analyzing each message with the given probability
+	 * @param probability
+	 * @return
+	 */
+	public static SamplingPolicy rate(final double probability) {
+		if(!(probability >= 0 && probability <= 1))
+			throw new IllegalArgumentException("A rate policy requires a probability between 0 and 1");
+		if(probability == 1)
+			return all();
+		return new SamplingPolicy() {
+			public int offer(MessageEnvelope message, IMessageAnalyzer analyzer) {
+				if(ThreadLocalRandom.current().nextDouble() >= probability)
+					return 0;
+				analyzer.analyze(message);
+				return 1;
+			}
+			public String getSpec() {
+				return POLICY_RATE + ":" + probability;
+			}
+		};
+	}
+	
+	/**
+	 * Returns a policy analyzing a uniform sample of the given size taken from each time window
+	 * @param size
+	 * @param windowMillis
+	 * @return
+	 */
+	public static SamplingPolicy reservoir(int size, long windowMillis) {
+		if(size < 1 || size > MAX_RESERVOIR_SIZE)
+			throw new IllegalArgumentException("A reservoir policy requires a size between 1 and " + MAX_RESERVOIR_SIZE);
+		if(windowMillis < 1)
+			throw new IllegalArgumentException("A reservoir policy requires a positive window");
+		return new ReservoirSamplingPolicy(size, windowMillis);
+	}
+	
+	/**
+	 * Parses the given policy specification, eg. every:100, rate:0.05 or reservoir:50/1000
+	 * @param spec
+	 * @return
+	 * @throws IllegalArgumentException thrown in case the policy is unknown or its settings are invalid
+	 */
+	public static SamplingPolicy parse(String spec) {
+		
+		if(spec == null || spec.trim().isEmpty() || POLICY_ALL.equalsIgnoreCase(spec.trim()))
+			return all();
+		
+		spec = spec.trim();
+		int separatorIdx = spec.indexOf(':');
+		if(separatorIdx == -1)
+			throw new IllegalArgumentException("Unknown sampling policy: " + spec);
+		String policy = spec.substring(0, separatorIdx).trim();
+		String settings = spec.substring(separatorIdx + 1).trim();
+		
+		try {
+			if(POLICY_EVERY.equalsIgnoreCase(policy))
+				return every(Integer.parseInt(settings));
+			if(POLICY_RATE.equalsIgnoreCase(policy))
+				return rate(Double.parseDouble(settings));
+			if(POLICY_RESERVOIR.equalsIgnoreCase(policy)) {
+				int windowIdx = settings.indexOf('/');
+				if(windowIdx == -1)
+					throw new IllegalArgumentException("A reservoir policy requires its size and window, eg. reservoir:50/1000");
+				return reservoir(Integer.parseInt(settings.substring(0, windowIdx).trim()), Long.parseLong(settings.substring(windowIdx + 1).trim()));
+			}
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid settings for sampling policy: " + spec);
+		}
+		throw new IllegalArgumentException("Unknown sampling policy: " + spec);
+	}
+	
+	public String toString() {
+		return getSpec();
+	}
+	
+	/**
+	 * Keeps copies of the messages chosen from the current window (algorithm R) and hands them over once the window ends
+	 * @author ckreutzfeldt
+	 * @since 16.03.2012
+	 */
+	private static final class ReservoirSamplingPolicy extends SamplingPolicy {
+		
+		private final int size;
+		private final long windowMillis;
+		// envelopes are created on demand as they keep a copy of the payload
+		private final MessageEnvelope[] reservoir;
+		private int filled = 0;
+		// number of messages offered within the current window
+		private long offered = 0;
+		private long windowStart = -1;
+		
+		private ReservoirSamplingPolicy(int size, long windowMillis) {
+			this.size = size;
+			this.windowMillis = windowMillis;
+			this.reservoir = new MessageEnvelope[size];
+		}
+		
+		public int offer(MessageEnvelope message, IMessageAnalyzer analyzer) {
+			
+			int analyzed = 0;
+			long timestamp = message.getReceiveTimestamp();
+			if(windowStart == -1) {
+				windowStart = timestamp;
+			} else if(timestamp - windowStart >= windowMillis) {
+				analyzed = drain(analyzer);
+				windowStart = timestamp;
+			}
+			
+			offered++;
+			if(filled < size) {
+				if(reservoir[filled] == null)
+					reservoir[filled] = new MessageEnvelope();
+				reservoir[filled++].copyFrom(message);
+			} else {
+				long idx = ThreadLocalRandom.current().nextLong(offered);
+				if(idx < size)
+					reservoir[(int)idx].copyFrom(message);
+			}
+			return analyzed;
+		}
+		
+		public int flush(IMessageAnalyzer analyzer, long now) {
+			if(windowStart == -1 || (now != Long.MAX_VALUE && now - windowStart < windowMillis))
+				return 0;
+			windowStart = -1;
+			return drain(analyzer);
+		}
+		
+		/**
+		 * Hands the sampled messages over to the analyzer and starts an empty reservoir
+		 * @param analyzer
+		 * @return
+		 */
+		private int drain(IMessageAnalyzer analyzer) {
+			int count = filled;
+			filled = 0;
+			offered = 0;
+			for(int i = 0; i < count; i++)
+				analyzer.analyze(reservoir[i]);
+			return count;
+		}
+		
+		public String getSpec() {
+			return POLICY_RESERVOIR + ":" + size + "/" + windowMillis;
+		}
+	}
+}
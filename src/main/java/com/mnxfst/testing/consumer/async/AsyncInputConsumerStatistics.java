@@ -1,52 +1,218 @@
-/*
- *  ptest-server and client provides you with a performance test utility
- *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
- *
- *  This program is free software: you can redistribute it and/or modify
- *  it under the terms of the GNU General Public License as published by
- *  the Free Software Foundation, either version 3 of the License, or
- *  (at your option) any later version.
- *
- *  This program is distributed in the hope that it will be useful,
- *  but WITHOUT ANY WARRANTY; without even the implied warranty of
- *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
- *  GNU General Public License for more details.
- *  
- *  You should have received a copy of the GNU General Public License
- *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
- *
- */
-package com.mnxfst.testing.consumer.async;
-
-import java.io.Serializable;
-
-/**
- * Container for statistical information collected by an {@link IAsyncInputConsumer}
- * @author ckreutzfeldt
- * @since 23.02.2012
- */
-public class AsyncInputConsumerStatistics implements Serializable {
-
-	private static final long serialVersionUID = -3937915338751571102L;
-
-	private String consumerId = null;
-	private String consumerType = null;
-
-	
-	// TODO define
-
-	public String getConsumerId() {
-		return consumerId;
-	}
-	public void setConsumerId(String consumerId) {
-		this.consumerId = consumerId;
-	}
-	public String getConsumerType() {
-		return consumerType;
-	}
-	public void setConsumerType(String consumerType) {
-		this.consumerType = consumerType;
-	}
-	
-	
-}
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.consumer.async;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Container for statistical information collected by an {@link IAsyncInputConsumer}. The counters are meant to be
+ * updated from within the consumer hot loop: each one is striped across cells so that any number of receiver threads 
+ * may update them without contending on a single memory location. Reading the counters, eg. by taking a 
+ * {@link #snapshot() snapshot}, never blocks the updating threads.<br/><br/>
+ * End-to-end latencies (producer timestamp to consumer receipt) are expected in microseconds and kept inside a
+ * {@link LatencyHistogram} which may be configured per consumer type:
+ * <ul>
+ *   <li><i>consumer.async.&lt;type&gt;.latency.highestTrackableValue</i> - default: 1h</li>
+ *   <li><i>consumer.async.&lt;type&gt;.latency.significantDigits</i> - default: 2</li>
+ * </ul>
+ * Beside the totals, the recent throughput is kept inside a {@link ThroughputWindow} for computing current, peak and
+ * average rates:
+ * <ul>
+ *   <li><i>consumer.async.&lt;type&gt;.window.buckets</i> - number of buckets, default: 61</li>
+ *   <li><i>consumer.async.&lt;type&gt;.window.bucketMillis</i> - bucket width, default: 1000</li>
+ * </ul>
+ * @author ckreutzfeldt
+ * @since 23.02.2012
+ */
+public class AsyncInputConsumerStatistics implements Serializable {
+
+	private static final long serialVersionUID = -3937915338751571102L;
+
+	public static final long DEFAULT_LATENCY_HIGHEST_TRACKABLE_VALUE = 3600000000L;
+	public static final int DEFAULT_LATENCY_SIGNIFICANT_DIGITS = 2;
+	public static final int DEFAULT_WINDOW_BUCKETS = 61;
+	public static final long DEFAULT_WINDOW_BUCKET_MILLIS = 1000;
+	
+	private static final String CFG_OPT_CONSUMER_TYPE_PREFIX = "consumer.async.";
+	private static final String CFG_OPT_LATENCY_HIGHEST_TRACKABLE_VALUE = ".latency.highestTrackableValue";
+	private static final String CFG_OPT_LATENCY_SIGNIFICANT_DIGITS = ".latency.significantDigits";
+	private static final String CFG_OPT_WINDOW_BUCKETS = ".window.buckets";
+	private static final String CFG_OPT_WINDOW_BUCKET_MILLIS = ".window.bucketMillis";
+
+	private String consumerId = null;
+	private String consumerType = null;
+	private final long startTimestamp = System.currentTimeMillis();
+
+	private final LongAdder messages = new LongAdder();
+	private final LongAdder bytes = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder redeliveries = new LongAdder();
+	private final LatencyHistogram latencies;
+	private final ThroughputWindow throughputWindow;
+
+	/**
+	 * Initializes the statistics using the default latency histogram and throughput window settings
+	 */
+	public AsyncInputConsumerStatistics() {
+		this(DEFAULT_LATENCY_HIGHEST_TRACKABLE_VALUE, DEFAULT_LATENCY_SIGNIFICANT_DIGITS, DEFAULT_WINDOW_BUCKETS, DEFAULT_WINDOW_BUCKET_MILLIS);
+	}
+	
+	/**
+	 * Initializes the statistics using the provided latency histogram and throughput window settings
+	 * @param latencyHighestTrackableValue
+	 * @param latencySignificantDigits
+	 * @param windowBuckets
+	 * @param windowBucketMillis
+	 */
+	public AsyncInputConsumerStatistics(long latencyHighestTrackableValue, int latencySignificantDigits, int windowBuckets, long windowBucketMillis) {
+		this.latencies = new LatencyHistogram(latencyHighestTrackableValue, latencySignificantDigits);
+		this.throughputWindow = new ThroughputWindow(windowBuckets, windowBucketMillis);
+	}
+	
+	/**
+	 * Initializes the statistics for the given consumer and reads the latency histogram and throughput window settings 
+	 * configured for its type from the provided options 
+	 * @param consumerId
+	 * @param consumerType
+	 * @param configOptions
+	 */
+	public AsyncInputConsumerStatistics(String consumerId, String consumerType, Map<String, List<String>> configOptions) {
+		this(parseLong(configOptions, CFG_OPT_CONSUMER_TYPE_PREFIX + consumerType + CFG_OPT_LATENCY_HIGHEST_TRACKABLE_VALUE, DEFAULT_LATENCY_HIGHEST_TRACKABLE_VALUE),
+			(int)parseLong(configOptions, CFG_OPT_CONSUMER_TYPE_PREFIX + consumerType + CFG_OPT_LATENCY_SIGNIFICANT_DIGITS, DEFAULT_LATENCY_SIGNIFICANT_DIGITS),
+			(int)parseLong(configOptions, CFG_OPT_CONSUMER_TYPE_PREFIX + consumerType + CFG_OPT_WINDOW_BUCKETS, DEFAULT_WINDOW_BUCKETS),
+			parseLong(configOptions, CFG_OPT_CONSUMER_TYPE_PREFIX + consumerType + CFG_OPT_WINDOW_BUCKET_MILLIS, DEFAULT_WINDOW_BUCKET_MILLIS));
+		this.consumerId = consumerId;
+		this.consumerType = consumerType;
+	}
+
+	/**
+	 * Records a single received message of the given size
+	 * @param messageBytes
+	 */
+	public void recordMessage(long messageBytes) {
+		messages.increment();
+		if(messageBytes > 0)
+			bytes.add(messageBytes);
+		throughputWindow.record(1, messageBytes, 0, System.currentTimeMillis());
+	}
+	
+	/**
+	 * Records a batch of received messages
+	 * @param messageCount
+	 * @param messageBytes total size of all messages contained in the batch
+	 */
+	public void recordMessages(long messageCount, long messageBytes) {
+		messages.add(messageCount);
+		if(messageBytes > 0)
+			bytes.add(messageBytes);
+		throughputWindow.record(messageCount, messageBytes, 0, System.currentTimeMillis());
+	}
+	
+	/**
+	 * Records an error which occurred while receiving or processing a message
+	 */
+	public void recordError() {
+		errors.increment();
+		throughputWindow.record(0, 0, 1, System.currentTimeMillis());
+	}
+	
+	/**
+	 * Records the receipt of a message which has been delivered before
+	 */
+	public void recordRedelivery() {
+		redeliveries.increment();
+	}
+	
+	/**
+	 * Records the time passed between message creation and its receipt
+	 * @param latencyMicros latency in microseconds
+	 */
+	public void recordLatency(long latencyMicros) {
+		latencies.recordValue(latencyMicros);
+	}
+
+	/**
+	 * Returns a consistent-enough copy of the current counter values. The values are summed up
+	 * without locking, thus updates running concurrently may or may not be reflected
+	 * @return
+	 */
+	public AsyncInputConsumerStatisticsSnapshot snapshot() {
+		long now = System.currentTimeMillis();
+		return new AsyncInputConsumerStatisticsSnapshot(consumerId, consumerType, startTimestamp, now, 
+				messages.sum(), bytes.sum(), errors.sum(), redeliveries.sum(), latencies.snapshot(), throughputWindow.snapshot(now));
+	}
+	
+	/**
+	 * Reads a numerical value from the provided options
+	 * @param configOptions
+	 * @param key
+	 * @param defaultValue
+	 * @return
+	 * @throws IllegalArgumentException thrown in case the value does not represent a valid number
+	 */
+	protected static long parseLong(Map<String, List<String>> configOptions, String key, long defaultValue) {
+		List<String> values = (configOptions != null ? configOptions.get(key) : null);
+		if(values == null || values.isEmpty() || values.get(0) == null || values.get(0).trim().isEmpty())
+			return defaultValue;
+		try {
+			return Long.parseLong(values.get(0).trim());
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException("Value of '"+key+"' does not represent a valid numerical value: " + values.get(0));
+		}
+	}
+	
+	public long getMessageCount() {
+		return messages.sum();
+	}
+	public long getByteCount() {
+		return bytes.sum();
+	}
+	public long getErrorCount() {
+		return errors.sum();
+	}
+	public long getRedeliveryCount() {
+		return redeliveries.sum();
+	}
+	public long getStartTimestamp() {
+		return startTimestamp;
+	}
+	public LatencyHistogram getLatencies() {
+		return latencies;
+	}
+	public ThroughputWindow getThroughputWindow() {
+		return throughputWindow;
+	}
+	public String getConsumerId() {
+		return consumerId;
+	}
+	public void setConsumerId(String consumerId) {
+		this.consumerId = consumerId;
+	}
+	public String getConsumerType() {
+		return consumerType;
+	}
+	public void setConsumerType(String consumerType) {
+		this.consumerType = consumerType;
+	}
+	
+	
+}
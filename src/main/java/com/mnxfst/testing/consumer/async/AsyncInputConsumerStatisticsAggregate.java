@@ -0,0 +1,239 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.consumer.async;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merge target for the statistics of any number of {@link IAsyncInputConsumer consumers}. Counters are summed up,
+ * latency histograms and throughput windows are added bucket-wise straight from the recording structures, thus
+ * no per-consumer copy is created. Optionally the consumers showing the highest 99th percentile latency are kept.<br/><br/>
+ * All consumers are evaluated for the very same point in time which keeps the throughput buckets aligned. Windows
+ * of a bucket width differing from the one of the aggregate are not merged but counted as excluded. Instances are 
+ * not thread-safe: concurrently computed aggregates are combined via {@link #add(AsyncInputConsumerStatisticsAggregate)}.
+ * @author ckreutzfeldt
+ * @since 06.03.2012
+ */
+public class AsyncInputConsumerStatisticsAggregate {
+
+	private final long snapshotTimestamp;
+	private final int topCount;
+	
+	private int consumerCount = 0;
+	private long messageCount = 0;
+	private long byteCount = 0;
+	private long errorCount = 0;
+	private long redeliveryCount = 0;
+	private long startTimestamp = Long.MAX_VALUE;
+	private int excludedRateCount = 0;
+	private final LatencyHistogramSnapshot latencies;
+	private final ThroughputWindowSnapshot rates;
+	// min-heap: the head references the fastest of the slowest consumers found so far
+	private final PriorityQueue<ConsumerLatency> slowestConsumers;
+	// reused for computing the percentiles of a single consumer
+	private LatencyHistogramSnapshot consumerLatencies = null;
+	
+	/**
+	 * Initializes an empty aggregate
+	 * @param latencyLayout layout of the merged latency histogram
+	 * @param bucketMillis bucket width of the merged throughput window
+	 * @param bucketCount number of completed buckets kept by the merged throughput window
+	 * @param snapshotTimestamp point in time the consumer statistics are evaluated for
+	 * @param topCount number of slowest consumers to keep, 0 disables tracking them
+	 */
+	public AsyncInputConsumerStatisticsAggregate(LatencyHistogramLayout latencyLayout, long bucketMillis, int bucketCount, long snapshotTimestamp, int topCount) {
+		this.snapshotTimestamp = snapshotTimestamp;
+		this.topCount = topCount;
+		this.latencies = new LatencyHistogramSnapshot(latencyLayout);
+		this.rates = new ThroughputWindowSnapshot(bucketMillis, snapshotTimestamp / bucketMillis, bucketCount);
+		this.slowestConsumers = (topCount > 0 ? new PriorityQueue<ConsumerLatency>(topCount + 1) : null);
+	}
+	
+	/**
+	 * Adds the current values of the given consumer statistics
+	 * @param statistics
+	 */
+	public void add(AsyncInputConsumerStatistics statistics) {
+		
+		consumerCount++;
+		messageCount += statistics.getMessageCount();
+		byteCount += statistics.getByteCount();
+		errorCount += statistics.getErrorCount();
+		redeliveryCount += statistics.getRedeliveryCount();
+		startTimestamp = Math.min(startTimestamp, statistics.getStartTimestamp());
+		
+		ThroughputWindow window = statistics.getThroughputWindow();
+		if(window.getBucketMillis() == rates.getBucketMillis())
+			window.addTo(rates);
+		else
+			excludedRateCount++;
+		
+		LatencyHistogram histogram = statistics.getLatencies();
+		if(slowestConsumers == null) {
+			histogram.addTo(latencies);
+			return;
+		}
+		
+		// the percentiles of the consumer are required as well: collect its values first, add them afterwards
+		if(consumerLatencies == null || !consumerLatencies.getLayout().equals(histogram.getLayout()))
+			consumerLatencies = new LatencyHistogramSnapshot(histogram.getLayout());
+		else
+			consumerLatencies.reset();
+		histogram.addTo(consumerLatencies);
+		latencies.addRescaled(consumerLatencies);
+		
+		if(consumerLatencies.getTotalCount() > 0)
+			offer(new ConsumerLatency(statistics.getConsumerId(), statistics.getConsumerType(), consumerLatencies.getValueAtPercentile(99),
+					consumerLatencies.getMaxValue(), consumerLatencies.getTotalCount()));
+	}
+	
+	/**
+	 * Adds the values collected by the given aggregate which must have been evaluated for the same point in time
+	 * @param other
+	 */
+	public void add(AsyncInputConsumerStatisticsAggregate other) {
+		
+		consumerCount += other.consumerCount;
+		messageCount += other.messageCount;
+		byteCount += other.byteCount;
+		errorCount += other.errorCount;
+		redeliveryCount += other.redeliveryCount;
+		startTimestamp = Math.min(startTimestamp, other.startTimestamp);
+		
+		if(other.rates.getBucketMillis() == rates.getBucketMillis()) {
+			excludedRateCount += other.excludedRateCount;
+			rates.add(other.rates);
+		} else {
+			excludedRateCount += other.consumerCount;
+		}
+		
+		latencies.addRescaled(other.latencies);
+		
+		if(slowestConsumers != null && other.slowestConsumers != null) {
+			for(ConsumerLatency consumerLatency : other.slowestConsumers)
+				offer(consumerLatency);
+		}
+	}
+	
+	/**
+	 * Keeps the given consumer if it belongs to the slowest ones found so far
+	 * @param consumerLatency
+	 */
+	private void offer(ConsumerLatency consumerLatency) {
+		if(slowestConsumers.size() < topCount) {
+			slowestConsumers.add(consumerLatency);
+		} else if(slowestConsumers.peek().compareTo(consumerLatency) < 0) {
+			slowestConsumers.poll();
+			slowestConsumers.add(consumerLatency);
+		}
+	}
+	
+	/**
+	 * Returns the merged values as snapshot. Its start timestamp references the consumer started first, its throughput 
+	 * window does not reach back any further
+	 * @return
+	 */
+	public AsyncInputConsumerStatisticsSnapshot toSnapshot() {
+		long start = (consumerCount > 0 ? startTimestamp : snapshotTimestamp);
+		long bucketMillis = rates.getBucketMillis();
+		ThroughputWindowSnapshot window = rates.tail((int)Math.min(Integer.MAX_VALUE, rates.getEndSlot() - (start / bucketMillis)));
+		return new AsyncInputConsumerStatisticsSnapshot(null, null, start, snapshotTimestamp, messageCount, byteCount, errorCount, redeliveryCount, latencies, window);
+	}
+	
+	/**
+	 * Returns the slowest consumers ordered by descending 99th percentile latency
+	 * @return
+	 */
+	public List<ConsumerLatency> getSlowestConsumers() {
+		if(slowestConsumers == null)
+			return Collections.emptyList();
+		List<ConsumerLatency> result = new ArrayList<ConsumerLatency>(slowestConsumers);
+		Collections.sort(result, Collections.reverseOrder());
+		return result;
+	}
+	
+	public int getConsumerCount() {
+		return consumerCount;
+	}
+	
+	/**
+	 * Returns the number of consumers whose throughput window could not be merged due to a differing bucket width
+	 * @return
+	 */
+	public int getExcludedRateCount() {
+		return excludedRateCount;
+	}
+
+	public long getSnapshotTimestamp() {
+		return snapshotTimestamp;
+	}
+	
+	/**
+	 * Latency percentiles of a single consumer, ordered by 99th percentile and maximum 
+	 * @author ckreutzfeldt
+	 * @since 06.03.2012
+	 */
+	public static class ConsumerLatency implements Comparable<ConsumerLatency> {
+		
+		private final String consumerId;
+		private final String consumerType;
+		private final long p99;
+		private final long max;
+		private final long count;
+		
+		public ConsumerLatency(String consumerId, String consumerType, long p99, long max, long count) {
+			this.consumerId = consumerId;
+			this.consumerType = consumerType;
+			this.p99 = p99;
+			this.max = max;
+			this.count = count;
+		}
+
+		/**
+		 * @see java.lang.Comparable#compareTo(java.lang.Object)
+		 */
+		public int compareTo(ConsumerLatency other) {
+			if(p99 != other.p99)
+				return (p99 < other.p99 ? -1 : 1);
+			if(max != other.max)
+				return (max < other.max ? -1 : 1);
+			return 0;
+		}
+
+		public String getConsumerId() {
+			return consumerId;
+		}
+		public String getConsumerType() {
+			return consumerType;
+		}
+		public long getP99() {
+			return p99;
+		}
+		public long getMax() {
+			return max;
+		}
+		public long getCount() {
+			return count;
+		}
+	}
+	
+}
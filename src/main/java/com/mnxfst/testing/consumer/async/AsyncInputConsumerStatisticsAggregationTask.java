@@ -0,0 +1,110 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.consumer.async;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Merges the statistics of any number of consumers into a single {@link AsyncInputConsumerStatisticsAggregate}. The 
+ * provided statistics are split recursively until a range is small enough to be merged sequentially, partial aggregates
+ * are combined afterwards. Use {@link #aggregate(ForkJoinPool, AsyncInputConsumerStatistics[], int)} for running it.
+ * @author ckreutzfeldt
+ * @since 06.03.2012
+ */
+public class AsyncInputConsumerStatisticsAggregationTask extends RecursiveTask<AsyncInputConsumerStatisticsAggregate> {
+
+	private static final long serialVersionUID = 5309611813375127404L;
+
+	// number of consumers merged sequentially by a single task
+	public static final int SEQUENTIAL_THRESHOLD = 32;
+	
+	private final AsyncInputConsumerStatistics[] statistics;
+	private final int from;
+	private final int to;
+	private final LatencyHistogramLayout latencyLayout;
+	private final long bucketMillis;
+	private final int bucketCount;
+	private final long snapshotTimestamp;
+	private final int topCount;
+	
+	public AsyncInputConsumerStatisticsAggregationTask(AsyncInputConsumerStatistics[] statistics, int from, int to, LatencyHistogramLayout latencyLayout, 
+			long bucketMillis, int bucketCount, long snapshotTimestamp, int topCount) {
+		this.statistics = statistics;
+		this.from = from;
+		this.to = to;
+		this.latencyLayout = latencyLayout;
+		this.bucketMillis = bucketMillis;
+		this.bucketCount = bucketCount;
+		this.snapshotTimestamp = snapshotTimestamp;
+		this.topCount = topCount;
+	}
+	
+	/**
+	 * Merges the given statistics for the current point in time. Histogram layout and window settings are taken from 
+	 * the first statistics, the defaults apply if none are provided 
+	 * @param pool
+	 * @param statistics
+	 * @param topCount number of slowest consumers to keep
+	 * @return
+	 */
+	public static AsyncInputConsumerStatisticsAggregate aggregate(ForkJoinPool pool, AsyncInputConsumerStatistics[] statistics, int topCount) {
+		
+		LatencyHistogramLayout latencyLayout = null;
+		long bucketMillis = AsyncInputConsumerStatistics.DEFAULT_WINDOW_BUCKET_MILLIS;
+		int bucketCount = AsyncInputConsumerStatistics.DEFAULT_WINDOW_BUCKETS - 1;
+		if(statistics.length > 0) {
+			latencyLayout = statistics[0].getLatencies().getLayout();
+			bucketMillis = statistics[0].getThroughputWindow().getBucketMillis();
+			bucketCount = statistics[0].getThroughputWindow().getBucketCount() - 1;
+		} else {
+			latencyLayout = new LatencyHistogramLayout(AsyncInputConsumerStatistics.DEFAULT_LATENCY_HIGHEST_TRACKABLE_VALUE, AsyncInputConsumerStatistics.DEFAULT_LATENCY_SIGNIFICANT_DIGITS);
+		}
+		
+		AsyncInputConsumerStatisticsAggregationTask task = new AsyncInputConsumerStatisticsAggregationTask(statistics, 0, statistics.length, 
+				latencyLayout, bucketMillis, bucketCount, System.currentTimeMillis(), topCount);
+		
+		// small sets are not worth the hand-over
+		if(statistics.length <= SEQUENTIAL_THRESHOLD)
+			return task.compute();
+		return pool.invoke(task);
+	}
+
+	/**
+	 * @see java.util.concurrent.RecursiveTask#compute()
+	 */
+	protected AsyncInputConsumerStatisticsAggregate compute() {
+		
+		if(to - from <= SEQUENTIAL_THRESHOLD) {
+			AsyncInputConsumerStatisticsAggregate aggregate = new AsyncInputConsumerStatisticsAggregate(latencyLayout, bucketMillis, bucketCount, snapshotTimestamp, topCount);
+			for(int i = from; i < to; i++)
+				aggregate.add(statistics[i]);
+			return aggregate;
+		}
+		
+		int middle = (from + to) >>> 1;
+		AsyncInputConsumerStatisticsAggregationTask left = new AsyncInputConsumerStatisticsAggregationTask(statistics, from, middle, latencyLayout, bucketMillis, bucketCount, snapshotTimestamp, topCount);
+		AsyncInputConsumerStatisticsAggregationTask right = new AsyncInputConsumerStatisticsAggregationTask(statistics, middle, to, latencyLayout, bucketMillis, bucketCount, snapshotTimestamp, topCount);
+		left.fork();
+		AsyncInputConsumerStatisticsAggregate result = right.compute();
+		result.add(left.join());
+		return result;
+	}
+	
+}
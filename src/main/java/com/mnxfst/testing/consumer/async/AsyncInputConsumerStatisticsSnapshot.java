@@ -0,0 +1,96 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.consumer.async;
+
+import java.io.Serializable;
+
+/**
+ * Immutable point-in-time copy of the counters kept by {@link AsyncInputConsumerStatistics}
+ * @author ckreutzfeldt
+ * @since 01.03.2012
+ */
+public class AsyncInputConsumerStatisticsSnapshot implements Serializable {
+
+	private static final long serialVersionUID = 2217486354401734816L;
+
+	private final String consumerId;
+	private final String consumerType;
+	private final long startTimestamp;
+	private final long snapshotTimestamp;
+	private final long messageCount;
+	private final long byteCount;
+	private final long errorCount;
+	private final long redeliveryCount;
+	private final LatencyHistogramSnapshot latencies;
+	private final ThroughputWindowSnapshot rates;
+	
+	public AsyncInputConsumerStatisticsSnapshot(String consumerId, String consumerType, long startTimestamp, long snapshotTimestamp, 
+			long messageCount, long byteCount, long errorCount, long redeliveryCount, LatencyHistogramSnapshot latencies, ThroughputWindowSnapshot rates) {
+		this.consumerId = consumerId;
+		this.consumerType = consumerType;
+		this.startTimestamp = startTimestamp;
+		this.snapshotTimestamp = snapshotTimestamp;
+		this.messageCount = messageCount;
+		this.byteCount = byteCount;
+		this.errorCount = errorCount;
+		this.redeliveryCount = redeliveryCount;
+		this.latencies = latencies;
+		this.rates = rates;
+	}
+
+	/**
+	 * Returns the time (in milliseconds) passed between statistics creation and the snapshot
+	 * @return
+	 */
+	public long getUptime() {
+		return snapshotTimestamp - startTimestamp;
+	}
+	
+	public String getConsumerId() {
+		return consumerId;
+	}
+	public String getConsumerType() {
+		return consumerType;
+	}
+	public long getStartTimestamp() {
+		return startTimestamp;
+	}
+	public long getSnapshotTimestamp() {
+		return snapshotTimestamp;
+	}
+	public long getMessageCount() {
+		return messageCount;
+	}
+	public long getByteCount() {
+		return byteCount;
+	}
+	public long getErrorCount() {
+		return errorCount;
+	}
+	public long getRedeliveryCount() {
+		return redeliveryCount;
+	}
+	public LatencyHistogramSnapshot getLatencies() {
+		return latencies;
+	}
+	public ThroughputWindowSnapshot getRates() {
+		return rates;
+	}
+
+}
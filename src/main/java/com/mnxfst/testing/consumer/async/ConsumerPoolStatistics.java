@@ -0,0 +1,128 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.consumer.async;
+
+import java.io.Serializable;
+
+/**
+ * Point-in-time view on the pool a {@link ConsumerScheduler} keeps for a single consumer type
+ * @author ckreutzfeldt
+ * @since 07.03.2012
+ */
+public class ConsumerPoolStatistics implements Serializable {
+
+	private static final long serialVersionUID = -6178253090371514772L;
+
+	private final String consumerType;
+	private final int threads;
+	private final int queueBound;
+	private final ConsumerScheduler.RejectionPolicy rejectionPolicy;
+	private final ConsumerScheduler.ExecutionMode executionMode;
+	private final int activeCount;
+	private final int queuedCount;
+	private final int reservedCount;
+	private final long rejectedCount;
+	private final long completedCount;
+	
+	public ConsumerPoolStatistics(String consumerType, int threads, int queueBound, ConsumerScheduler.RejectionPolicy rejectionPolicy, 
+			ConsumerScheduler.ExecutionMode executionMode, int activeCount, int queuedCount, int reservedCount, long rejectedCount, long completedCount) {
+		this.consumerType = consumerType;
+		this.threads = threads;
+		this.queueBound = queueBound;
+		this.rejectionPolicy = rejectionPolicy;
+		this.executionMode = executionMode;
+		this.activeCount = activeCount;
+		this.queuedCount = queuedCount;
+		this.reservedCount = reservedCount;
+		this.rejectedCount = rejectedCount;
+		this.completedCount = completedCount;
+	}
+
+	/**
+	 * Returns the maximum number of consumers accepted by the pool: running and queued ones 
+	 * @return
+	 */
+	public int getCapacity() {
+		return threads + queueBound;
+	}
+	
+	/**
+	 * Returns the number of consumers which may still be admitted
+	 * @return
+	 */
+	public int getAvailable() {
+		return Math.max(0, getCapacity() - activeCount - queuedCount - reservedCount);
+	}
+	
+	public String getConsumerType() {
+		return consumerType;
+	}
+	public int getThreads() {
+		return threads;
+	}
+	public int getQueueBound() {
+		return queueBound;
+	}
+	public ConsumerScheduler.RejectionPolicy getRejectionPolicy() {
+		return rejectionPolicy;
+	}
+	/**
+	 * Returns the kind of threads the consumers actually run on
+	 * @return
+	 */
+	public ConsumerScheduler.ExecutionMode getExecutionMode() {
+		return executionMode;
+	}
+	/**
+	 * Returns the number of consumers currently running on a pool thread
+	 * @return
+	 */
+	public int getActiveCount() {
+		return activeCount;
+	}
+	/**
+	 * Returns the number of consumers waiting for a pool thread
+	 * @return
+	 */
+	public int getQueuedCount() {
+		return queuedCount;
+	}
+	/**
+	 * Returns the number of admitted consumers not handed over to the pool yet
+	 * @return
+	 */
+	public int getReservedCount() {
+		return reservedCount;
+	}
+	/**
+	 * Returns the number of consumers refused by admission control so far
+	 * @return
+	 */
+	public long getRejectedCount() {
+		return rejectedCount;
+	}
+	/**
+	 * Returns the number of consumers which have finished running
+	 * @return
+	 */
+	public long getCompletedCount() {
+		return completedCount;
+	}
+	
+}
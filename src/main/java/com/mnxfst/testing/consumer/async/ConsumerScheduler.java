@@ -0,0 +1,440 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.consumer.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Runs {@link IAsyncInputConsumer consumers} on bounded thread pools - one pool per consumer type. Each pool accepts
+ * a fixed number of consumers: those running on one of its threads plus those waiting inside its queue. Consumers
+ * must be admitted via {@link #reserve(String, int)} before being handed over via {@link #execute(String, Runnable)},
+ * thus a start request is refused before any consumer gets instantiated. The pools are configured per type:
+ * <ul>
+ *   <li><i>consumer.async.&lt;type&gt;.threads</i> - number of consumers running concurrently, default: 64</li>
+ *   <li><i>consumer.async.&lt;type&gt;.queue</i> - number of consumers waiting for a thread, default: 0</li>
+ *   <li><i>consumer.async.&lt;type&gt;.rejectionPolicy</i> - <i>abort</i> refuses immediately if the pool is exhausted, 
+ *       <i>wait</i> waits for capacity to become available, default: abort</li>
+ *   <li><i>consumer.async.&lt;type&gt;.rejectionTimeoutMillis</i> - maximum time to wait for, default: 5000</li>
+ *   <li><i>consumer.async.&lt;type&gt;.executionMode</i> - <i>platform</i> runs each consumer on a pooled platform thread,
+ *       <i>virtual</i> runs each consumer on its own virtual thread, default: platform</li>
+ * </ul>
+ * Virtual threads suit large numbers of consumers spending most of their time blocked on a receive. The pool then
+ * never queues: the number of threads bounds the number of consumers admitted. If the runtime does not provide
+ * virtual threads, the pool falls back to platform threads.
+ * @author ckreutzfeldt
+ * @since 07.03.2012
+ */
+public class ConsumerScheduler {
+
+	private static final Logger logger = Logger.getLogger(ConsumerScheduler.class);
+	
+	public static final int DEFAULT_THREADS = 64;
+	public static final int DEFAULT_QUEUE_BOUND = 0;
+	public static final long DEFAULT_REJECTION_TIMEOUT_MILLIS = 5000;
+	
+	private static final String CFG_OPT_CONSUMER_TYPE_PREFIX = "consumer.async.";
+	private static final String CFG_OPT_THREADS = ".threads";
+	private static final String CFG_OPT_QUEUE_BOUND = ".queue";
+	private static final String CFG_OPT_REJECTION_POLICY = ".rejectionPolicy";
+	private static final String CFG_OPT_REJECTION_TIMEOUT_MILLIS = ".rejectionTimeoutMillis";
+	private static final String CFG_OPT_EXECUTION_MODE = ".executionMode";
+	
+	/**
+	 * Describes how to deal with consumers exceeding the capacity of a pool
+	 * @author ckreutzfeldt
+	 * @since 07.03.2012
+	 */
+	public enum RejectionPolicy {
+		ABORT, WAIT
+	}
+	
+	/**
+	 * Describes the kind of threads consumers are run on
+	 * @author ckreutzfeldt
+	 * @since 08.03.2012
+	 */
+	public enum ExecutionMode {
+		PLATFORM, VIRTUAL
+	}
+	
+	private final ConcurrentMap<String, ConsumerPool> pools = new ConcurrentHashMap<String, ConsumerPool>();
+	
+	/**
+	 * Sets up the pool for the given consumer type using the settings found in the provided options. Types being 
+	 * configured already keep their pool
+	 * @param consumerType
+	 * @param configOptions
+	 * @throws IllegalArgumentException thrown in case the settings are invalid
+	 */
+	public void configure(String consumerType, Map<String, List<String>> configOptions) {
+		
+		String prefix = CFG_OPT_CONSUMER_TYPE_PREFIX + consumerType;
+		int threads = (int)AsyncInputConsumerStatistics.parseLong(configOptions, prefix + CFG_OPT_THREADS, DEFAULT_THREADS);
+		int queueBound = (int)AsyncInputConsumerStatistics.parseLong(configOptions, prefix + CFG_OPT_QUEUE_BOUND, DEFAULT_QUEUE_BOUND);
+		long rejectionTimeoutMillis = AsyncInputConsumerStatistics.parseLong(configOptions, prefix + CFG_OPT_REJECTION_TIMEOUT_MILLIS, DEFAULT_REJECTION_TIMEOUT_MILLIS);
+		
+		RejectionPolicy rejectionPolicy = parseEnum(RejectionPolicy.class, configOptions, prefix + CFG_OPT_REJECTION_POLICY, RejectionPolicy.ABORT);
+		ExecutionMode executionMode = parseEnum(ExecutionMode.class, configOptions, prefix + CFG_OPT_EXECUTION_MODE, ExecutionMode.PLATFORM);
+		
+		ConsumerPool pool = new ConsumerPool(consumerType, threads, queueBound, rejectionPolicy, rejectionTimeoutMillis, executionMode);
+		if(pools.putIfAbsent(consumerType, pool) == null)
+			logger.info("Configured consumer pool: [type="+consumerType+", threads="+threads+", queue="+pool.queueBound+", rejectionPolicy="+rejectionPolicy+", executionMode="+pool.executionMode+"]");
+		else
+			pool.executor.shutdown();
+	}
+	
+	/**
+	 * Reads the enum constant named by the referenced option, case is ignored
+	 * @param enumType
+	 * @param configOptions
+	 * @param key
+	 * @param defaultValue
+	 * @return
+	 * @throws IllegalArgumentException thrown in case the value does not name a constant
+	 */
+	protected static <T extends Enum<T>> T parseEnum(Class<T> enumType, Map<String, List<String>> configOptions, String key, T defaultValue) {
+		List<String> values = configOptions.get(key);
+		if(values == null || values.isEmpty() || values.get(0) == null || values.get(0).trim().isEmpty())
+			return defaultValue;
+		try {
+			return Enum.valueOf(enumType, values.get(0).trim().toUpperCase());
+		} catch(IllegalArgumentException e) {
+			throw new IllegalArgumentException("Value of '"+key+"' does not reference a valid option: " + values.get(0));
+		}
+	}
+	
+	/**
+	 * Creates an executor running each task on a new virtual thread. The executor is looked up reflectively as the
+	 * virtual thread api is not available on all supported runtimes
+	 * @param consumerType
+	 * @return executor or null if the runtime does not provide virtual threads
+	 */
+	protected static ExecutorService newVirtualThreadExecutor(String consumerType) {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "consumer-" + consumerType + "-", 1L);
+			ThreadFactory threadFactory = (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+			return (ExecutorService)Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, threadFactory);
+		} catch(ReflectiveOperationException e) {
+			// not available or - as preview feature - not enabled
+			return null;
+		} catch(RuntimeException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Admits the given number of consumers of the referenced type. All or none are admitted
+	 * @param consumerType
+	 * @param count
+	 * @return true if the consumers have been admitted, false if the pool has no sufficient capacity left
+	 * @throws InterruptedException
+	 */
+	public boolean reserve(String consumerType, int count) throws InterruptedException {
+		return getPool(consumerType).reserve(count);
+	}
+	
+	/**
+	 * Gives back admitted capacity which will not be used, eg. if instantiating a consumer failed
+	 * @param consumerType
+	 * @param count
+	 */
+	public void release(String consumerType, int count) {
+		getPool(consumerType).release(count);
+	}
+	
+	/**
+	 * Hands over the given consumer to the pool of its type, capacity must have been {@link #reserve(String, int) reserved} before.
+	 * The capacity is released as soon as the consumer finishes running or - if still queued - gets cancelled
+	 * @param consumerType
+	 * @param consumer
+	 * @return
+	 * @throws RejectedExecutionException thrown in case the scheduler has been shut down
+	 */
+	public Future<?> execute(String consumerType, Runnable consumer) {
+		return getPool(consumerType).execute(consumer);
+	}
+	
+	/**
+	 * Withdraws the given consumer if it is still waiting inside the queue of its pool. A withdrawn consumer never runs, 
+	 * its capacity is released right away
+	 * @param consumer future returned by {@link #execute(String, Runnable)}
+	 * @return true if the consumer has been withdrawn, false if it is running or has terminated already
+	 */
+	public boolean withdraw(Future<?> consumer) {
+		return (consumer instanceof ConsumerPool.ConsumerTask) && ((ConsumerPool.ConsumerTask)consumer).withdraw();
+	}
+	
+	/**
+	 * Waits for the given consumer to leave its run method. Unlike the future itself, a consumer cancelled while running 
+	 * is not considered terminated before its run method has actually returned
+	 * @param consumer future returned by {@link #execute(String, Runnable)}
+	 * @param timeout
+	 * @param unit
+	 * @return true if the consumer terminated or never ran, false if it is still running after the timeout has elapsed
+	 * @throws InterruptedException
+	 */
+	public boolean awaitTermination(Future<?> consumer, long timeout, TimeUnit unit) throws InterruptedException {
+		if(consumer instanceof ConsumerPool.ConsumerTask)
+			return ((ConsumerPool.ConsumerTask)consumer).terminated.await(timeout, unit);
+		return consumer.isDone();
+	}
+	
+	/**
+	 * Returns the statistics of the pool kept for the referenced type or null if there is none 
+	 * @param consumerType
+	 * @return
+	 */
+	public ConsumerPoolStatistics getPoolStatistics(String consumerType) {
+		ConsumerPool pool = pools.get(consumerType);
+		return (pool != null ? pool.statistics() : null);
+	}
+	
+	/**
+	 * Returns the statistics of all pools
+	 * @return
+	 */
+	public List<ConsumerPoolStatistics> getPoolStatistics() {
+		List<ConsumerPoolStatistics> statistics = new ArrayList<ConsumerPoolStatistics>();
+		for(ConsumerPool pool : pools.values())
+			statistics.add(pool.statistics());
+		return statistics;
+	}
+	
+	/**
+	 * Shuts down all pools, running consumers are not interrupted
+	 */
+	public void shutdown() {
+		for(ConsumerPool pool : pools.values())
+			pool.executor.shutdown();
+	}
+	
+	/**
+	 * Returns the pool of the referenced type, types not configured explicitly receive a pool using the defaults
+	 * @param consumerType
+	 * @return
+	 */
+	protected ConsumerPool getPool(String consumerType) {
+		ConsumerPool pool = pools.get(consumerType);
+		if(pool == null) {
+			pool = new ConsumerPool(consumerType, DEFAULT_THREADS, DEFAULT_QUEUE_BOUND, RejectionPolicy.ABORT, DEFAULT_REJECTION_TIMEOUT_MILLIS, ExecutionMode.PLATFORM);
+			ConsumerPool existing = pools.putIfAbsent(consumerType, pool);
+			if(existing != null)
+				pool = existing;
+		}
+		return pool;
+	}
+	
+	/**
+	 * Bounded pool running the consumers of a single type. Capacity is tracked via semaphore, the executor itself 
+	 * never refuses a consumer. In virtual mode every admitted consumer receives its own thread right away
+	 * @author ckreutzfeldt
+	 * @since 07.03.2012
+	 */
+	protected static class ConsumerPool {
+		
+		private final String consumerType;
+		private final int threads;
+		private final int queueBound;
+		private final RejectionPolicy rejectionPolicy;
+		private final long rejectionTimeoutMillis;
+		private final ExecutionMode executionMode;
+		private final Semaphore capacity;
+		private final ExecutorService executor;
+		
+		private final AtomicInteger reservedCount = new AtomicInteger(0);
+		private final AtomicInteger queuedCount = new AtomicInteger(0);
+		private final AtomicInteger activeCount = new AtomicInteger(0);
+		private final LongAdder rejectedCount = new LongAdder();
+		private final LongAdder completedCount = new LongAdder();
+		
+		protected ConsumerPool(final String consumerType, int threads, int queueBound, RejectionPolicy rejectionPolicy, long rejectionTimeoutMillis, ExecutionMode executionMode) {
+			
+			if(threads < 1)
+				throw new IllegalArgumentException("The pool for consumer type '"+consumerType+"' requires at least one thread");
+			if(queueBound < 0)
+				throw new IllegalArgumentException("The queue bound for consumer type '"+consumerType+"' must not be negative");
+			
+			this.consumerType = consumerType;
+			this.threads = threads;
+			this.rejectionPolicy = rejectionPolicy;
+			this.rejectionTimeoutMillis = rejectionTimeoutMillis;
+			
+			ExecutorService virtualThreadExecutor = (executionMode == ExecutionMode.VIRTUAL ? newVirtualThreadExecutor(consumerType) : null);
+			if(virtualThreadExecutor != null) {
+				// no queueing: each admitted consumer runs on a thread of its own
+				this.executionMode = ExecutionMode.VIRTUAL;
+				this.queueBound = 0;
+				this.capacity = new Semaphore(threads, true);
+				this.executor = virtualThreadExecutor;
+				return;
+			}
+			
+			if(executionMode == ExecutionMode.VIRTUAL)
+				logger.warn("Virtual threads are not available on this runtime, consumer type '"+consumerType+"' falls back to platform threads");
+			
+			// the queue itself is unbounded, the semaphore limits the number of consumers handed over
+			ThreadPoolExecutor platformThreadExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				private final AtomicInteger threadNumber = new AtomicInteger(1);
+				public Thread newThread(Runnable r) {
+					return new Thread(r, "consumer-" + consumerType + "-" + threadNumber.getAndIncrement());
+				}
+			});
+			platformThreadExecutor.allowCoreThreadTimeOut(true);
+			this.executionMode = ExecutionMode.PLATFORM;
+			this.queueBound = queueBound;
+			this.capacity = new Semaphore(threads + queueBound, true);
+			this.executor = platformThreadExecutor;
+		}
+		
+		protected boolean reserve(int count) throws InterruptedException {
+			
+			boolean admitted = false;
+			if(count <= threads + queueBound) {
+				if(rejectionPolicy == RejectionPolicy.WAIT)
+					admitted = capacity.tryAcquire(count, rejectionTimeoutMillis, TimeUnit.MILLISECONDS);
+				else
+					admitted = capacity.tryAcquire(count);
+			}
+			
+			if(admitted)
+				reservedCount.addAndGet(count);
+			else
+				rejectedCount.add(count);
+			return admitted;
+		}
+		
+		protected void release(int count) {
+			reservedCount.addAndGet(-count);
+			capacity.release(count);
+		}
+		
+		protected Future<?> execute(final Runnable consumer) {
+			
+			reservedCount.decrementAndGet();
+			queuedCount.incrementAndGet();
+			ConsumerTask task = new ConsumerTask(consumer);
+			try {
+				executor.execute(task);
+				return task;
+			} catch(RejectedExecutionException e) {
+				queuedCount.decrementAndGet();
+				capacity.release();
+				throw e;
+			}
+		}
+		
+		/**
+		 * Wraps a consumer handed over to the pool. Whoever leaves the queue first - the consumer when starting to run 
+		 * or a cancellation issued before - gives back the queue slot and the admitted capacity, thus a consumer 
+		 * cancelled while still waiting inside the queue does not shrink the pool. Leaving the run method - or the queue 
+		 * without ever running - is signalled separately as a cancelled future completes before the consumer returns
+		 * @author ckreutzfeldt
+		 * @since 07.03.2012
+		 */
+		protected class ConsumerTask extends FutureTask<Object> {
+			
+			private final AtomicBoolean dequeued;
+			private final CountDownLatch terminated;
+			
+			protected ConsumerTask(final Runnable consumer) {
+				this(consumer, new AtomicBoolean(false), new CountDownLatch(1));
+			}
+			
+			private ConsumerTask(final Runnable consumer, final AtomicBoolean dequeued, final CountDownLatch terminated) {
+				super(new Runnable() {
+					public void run() {
+						if(!dequeued.compareAndSet(false, true))
+							return; // cancelled while being handed to a thread
+						queuedCount.decrementAndGet();
+						activeCount.incrementAndGet();
+						try {
+							consumer.run();
+						} catch(RuntimeException e) {
+							logger.error("Consumer of type '"+consumerType+"' terminated unexpectedly: " + e.getMessage(), e);
+							throw e;
+						} finally {
+							activeCount.decrementAndGet();
+							completedCount.increment();
+							capacity.release();
+							terminated.countDown();
+						}
+					}
+				}, null);
+				this.dequeued = dequeued;
+				this.terminated = terminated;
+			}
+			
+			/**
+			 * Cancels the consumer if it has not left the queue yet
+			 * @return true if cancelled before running
+			 */
+			protected boolean withdraw() {
+				if(!leaveQueue())
+					return false;
+				cancel(false);
+				return true;
+			}
+			
+			/**
+			 * @see java.util.concurrent.FutureTask#done()
+			 */
+			protected void done() {
+				// cancelled before running: the consumer never releases by itself
+				leaveQueue();
+			}
+			
+			private boolean leaveQueue() {
+				if(!dequeued.compareAndSet(false, true))
+					return false;
+				queuedCount.decrementAndGet();
+				capacity.release();
+				terminated.countDown();
+				return true;
+			}
+		}
+		
+		protected ConsumerPoolStatistics statistics() {
+			return new ConsumerPoolStatistics(consumerType, threads, queueBound, rejectionPolicy, executionMode, activeCount.get(), 
+					queuedCount.get(), reservedCount.get(), rejectedCount.sum(), completedCount.sum());
+		}
+	}
+	
+}
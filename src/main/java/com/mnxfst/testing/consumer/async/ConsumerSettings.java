@@ -0,0 +1,125 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.async;
+
+import java.util.List;
+import java.util.Map;
+
+import com.mnxfst.testing.consumer.exception.AsyncInputConsumerException;
+
+/**
+ * Reads typed values from the multi-valued settings handed over to consumers and analyzers. Only the first value of a 
+ * setting is taken into account, leading and trailing whitespace is ignored and blank values count as missing
+ * @author ckreutzfeldt
+ * @since 27.03.2012
+ */
+public final class ConsumerSettings {
+
+	private ConsumerSettings() {
+	}
+	
+	/**
+	 * Returns the trimmed value of the referenced setting
+	 * @param properties
+	 * @param key
+	 * @param defaultValue
+	 * @return
+	 */
+	public static String getString(Map<String, List<String>> properties, String key, String defaultValue) {
+		List<String> values = properties.get(key);
+		if(values == null || values.isEmpty() || values.get(0) == null || values.get(0).trim().isEmpty())
+			return defaultValue;
+		return values.get(0).trim();
+	}
+	
+	/**
+	 * Returns the value of the referenced setting as integer
+	 * @param properties
+	 * @param key
+	 * @param defaultValue
+	 * @return
+	 * @throws AsyncInputConsumerException thrown in case the value is not an integer
+	 */
+	public static int getInt(Map<String, List<String>> properties, String key, int defaultValue) throws AsyncInputConsumerException {
+		String value = getString(properties, key, null);
+		if(value == null)
+			return defaultValue;
+		try {
+			return Integer.parseInt(value);
+		} catch(NumberFormatException e) {
+			throw new AsyncInputConsumerException("Invalid value for '"+key+"': " + value);
+		}
+	}
+	
+	/**
+	 * Returns the value of the referenced setting as long
+	 * @param properties
+	 * @param key
+	 * @param defaultValue
+	 * @return
+	 * @throws AsyncInputConsumerException thrown in case the value is not a long
+	 */
+	public static long getLong(Map<String, List<String>> properties, String key, long defaultValue) throws AsyncInputConsumerException {
+		String value = getString(properties, key, null);
+		if(value == null)
+			return defaultValue;
+		try {
+			return Long.parseLong(value);
+		} catch(NumberFormatException e) {
+			throw new AsyncInputConsumerException("Invalid value for '"+key+"': " + value);
+		}
+	}
+	
+	/**
+	 * Returns the value of the referenced setting as integer greater than 0
+	 * @param properties
+	 * @param key
+	 * @param defaultValue
+	 * @return
+	 * @throws AsyncInputConsumerException thrown in case the value is not a positive integer
+	 */
+	public static int getPositiveInt(Map<String, List<String>> properties, String key, int defaultValue) throws AsyncInputConsumerException {
+		int value = getInt(properties, key, defaultValue);
+		if(value < 1)
+			throw new AsyncInputConsumerException("Invalid value for '"+key+"': " + value);
+		return value;
+	}
+	
+	/**
+	 * Returns the enum constant named by the referenced setting, case is ignored
+	 * @param enumType
+	 * @param properties
+	 * @param key
+	 * @param defaultValue
+	 * @return
+	 * @throws AsyncInputConsumerException thrown in case the value does not name a constant
+	 */
+	public static <T extends Enum<T>> T getEnum(Class<T> enumType, Map<String, List<String>> properties, String key, T defaultValue) throws AsyncInputConsumerException {
+		String value = getString(properties, key, null);
+		if(value == null)
+			return defaultValue;
+		try {
+			return Enum.valueOf(enumType, value.toUpperCase());
+		} catch(IllegalArgumentException e) {
+			throw new AsyncInputConsumerException("Invalid value for '"+key+"': " + value);
+		}
+	}
+	
+}
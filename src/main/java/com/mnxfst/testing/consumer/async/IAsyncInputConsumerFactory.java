@@ -0,0 +1,39 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.async;
+
+import com.mnxfst.testing.consumer.exception.AsyncInputConsumerException;
+
+/**
+ * Creates fully initialized {@link IAsyncInputConsumer consumers} of a given type
+ * @author ckreutzfeldt
+ * @since 09.03.2012
+ */
+public interface IAsyncInputConsumerFactory {
+
+	/**
+	 * Creates and initializes a consumer of the referenced type
+	 * @param consumerType
+	 * @return
+	 * @throws AsyncInputConsumerException
+	 */
+	public IAsyncInputConsumer createConsumer(String consumerType) throws AsyncInputConsumerException;
+	
+}
@@ -0,0 +1,123 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.consumer.async;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-memory latency histogram following the {@link LatencyHistogramLayout HDR layout}. All counters are
+ * allocated on creation, thus recording a value neither allocates nor locks and may be done from any
+ * number of threads concurrently. Values exceeding the highest trackable value are counted as overflows 
+ * and recorded as the highest trackable value. Use {@link #snapshot()} for evaluating the recorded values.
+ * @author ckreutzfeldt
+ * @since 02.03.2012
+ */
+public class LatencyHistogram implements Serializable {
+
+	private static final long serialVersionUID = 6085203877212364618L;
+	
+	private final LatencyHistogramLayout layout;
+	private final AtomicLongArray counts;
+	private final AtomicLong minValue = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong maxValue = new AtomicLong(0);
+	private final AtomicLong overflowCount = new AtomicLong(0);
+	
+	/**
+	 * Initializes the histogram
+	 * @param highestTrackableValue
+	 * @param significantDigits
+	 */
+	public LatencyHistogram(long highestTrackableValue, int significantDigits) {
+		this(new LatencyHistogramLayout(highestTrackableValue, significantDigits));
+	}
+	
+	/**
+	 * Initializes the histogram
+	 * @param layout
+	 */
+	public LatencyHistogram(LatencyHistogramLayout layout) {
+		this.layout = layout;
+		this.counts = new AtomicLongArray(layout.getCountsLength());
+	}
+	
+	/**
+	 * Records the given value. Negative values are recorded as 0
+	 * @param value
+	 */
+	public void recordValue(long value) {
+		
+		if(value < 0) {
+			value = 0;
+		} else if(value > layout.getHighestTrackableValue()) {
+			overflowCount.incrementAndGet();
+			value = layout.getHighestTrackableValue();
+		}
+		
+		// extreme values change rarely, thus the read mostly avoids the write
+		long currentMax = maxValue.get();
+		while(value > currentMax && !maxValue.compareAndSet(currentMax, value))
+			currentMax = maxValue.get();
+		long currentMin = minValue.get();
+		while(value < currentMin && !minValue.compareAndSet(currentMin, value))
+			currentMin = minValue.get();
+		
+		// counted last: a snapshot reading a count also sees the extreme values recorded with it
+		counts.incrementAndGet(layout.countsIndex(value));
+	}
+
+	/**
+	 * Copies the current counters into a new snapshot. Recording threads are not blocked, values being 
+	 * recorded while the snapshot is taken may or may not be contained
+	 * @return
+	 */
+	public LatencyHistogramSnapshot snapshot() {
+		long[] copy = new long[counts.length()];
+		long totalCount = 0;
+		for(int i = 0; i < copy.length; i++) {
+			copy[i] = counts.get(i);
+			totalCount += copy[i];
+		}
+		return new LatencyHistogramSnapshot(layout, copy, totalCount, (totalCount > 0 ? minValue.get() : 0), maxValue.get(), overflowCount.get());
+	}
+	
+	/**
+	 * Adds the current counters to the given snapshot without creating an intermediate copy, eg. for aggregating
+	 * the histograms of many consumers. If the layouts differ, the values are re-recorded using the layout of 
+	 * the target 
+	 * @param target
+	 */
+	public void addTo(LatencyHistogramSnapshot target) {
+		long totalCount = 0;
+		for(int i = 0; i < counts.length(); i++) {
+			long count = counts.get(i);
+			if(count > 0) {
+				target.addCount(layout, i, count);
+				totalCount += count;
+			}
+		}
+		target.addTotals(totalCount, minValue.get(), maxValue.get(), overflowCount.get());
+	}
+	
+	public LatencyHistogramLayout getLayout() {
+		return layout;
+	}
+	
+}
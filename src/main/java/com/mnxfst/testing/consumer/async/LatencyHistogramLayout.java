@@ -0,0 +1,194 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.consumer.async;
+
+import java.io.Serializable;
+
+/**
+ * Describes the bucket layout shared by {@link LatencyHistogram} and {@link LatencyHistogramSnapshot}. Values are
+ * organized in buckets of exponentially growing width (HDR layout): each bucket is split into sub-buckets
+ * of equal width which ensures that any recorded value is kept with the configured number of significant
+ * decimal digits. Thus the memory required depends only on range and precision, never on the number of 
+ * recorded values.
+ * @author ckreutzfeldt
+ * @since 02.03.2012
+ */
+public final class LatencyHistogramLayout implements Serializable {
+
+	private static final long serialVersionUID = -1538472096335711294L;
+
+	private final long highestTrackableValue;
+	private final int significantDigits;
+	
+	private final int subBucketHalfCountMagnitude;
+	private final int subBucketHalfCount;
+	private final int subBucketCount;
+	private final long subBucketMask;
+	private final int leadingZeroCountBase;
+	private final int bucketCount;
+	private final int countsLength;
+
+	/**
+	 * Initializes the layout
+	 * @param highestTrackableValue highest value to be kept with full precision, must be at least 2
+	 * @param significantDigits number of significant decimal digits kept for each value, between 1 and 5
+	 */
+	public LatencyHistogramLayout(long highestTrackableValue, int significantDigits) {
+		
+		if(highestTrackableValue < 2)
+			throw new IllegalArgumentException("The highest trackable value must be at least 2");
+		if(significantDigits < 1 || significantDigits > 5)
+			throw new IllegalArgumentException("The number of significant digits must be between 1 and 5");
+		
+		this.highestTrackableValue = highestTrackableValue;
+		this.significantDigits = significantDigits;
+
+		// the sub-buckets must be able to keep 2 * 10^digits values with single unit resolution
+		long largestValueWithSingleUnitResolution = 2;
+		for(int i = 0; i < significantDigits; i++)
+			largestValueWithSingleUnitResolution *= 10;
+		int subBucketCountMagnitude = 64 - Long.numberOfLeadingZeros(largestValueWithSingleUnitResolution - 1);
+		
+		this.subBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+		this.subBucketCount = 1 << subBucketCountMagnitude;
+		this.subBucketHalfCount = subBucketCount / 2;
+		this.subBucketMask = subBucketCount - 1;
+		this.leadingZeroCountBase = 64 - subBucketHalfCountMagnitude - 1;
+		
+		// each additional bucket doubles the covered range
+		long smallestUntrackableValue = subBucketCount;
+		int buckets = 1;
+		while(smallestUntrackableValue <= highestTrackableValue) {
+			if(smallestUntrackableValue > Long.MAX_VALUE / 2) {
+				buckets++;
+				break;
+			}
+			smallestUntrackableValue <<= 1;
+			buckets++;
+		}
+		this.bucketCount = buckets;
+		this.countsLength = (bucketCount + 1) * subBucketHalfCount;
+	}
+
+	/**
+	 * Returns the index of the counter responsible for the given value. The value must be between 0 and the 
+	 * highest trackable value
+	 * @param value
+	 * @return
+	 */
+	public int countsIndex(long value) {
+		int bucketIndex = bucketIndex(value);
+		int subBucketIndex = (int)(value >>> bucketIndex);
+		return ((bucketIndex + 1) << subBucketHalfCountMagnitude) + (subBucketIndex - subBucketHalfCount);
+	}
+	
+	/**
+	 * Returns the lowest value which is counted by the referenced counter
+	 * @param index
+	 * @return
+	 */
+	public long valueFromIndex(int index) {
+		int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+		int subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+		if(bucketIndex < 0) {
+			subBucketIndex -= subBucketHalfCount;
+			bucketIndex = 0;
+		}
+		return ((long)subBucketIndex) << bucketIndex;
+	}
+
+	/**
+	 * Returns the lowest value which is counted along with the given value
+	 * @param value
+	 * @return
+	 */
+	public long lowestEquivalentValue(long value) {
+		int bucketIndex = bucketIndex(value);
+		return (value >>> bucketIndex) << bucketIndex;
+	}
+
+	/**
+	 * Returns the highest value which is counted along with the given value
+	 * @param value
+	 * @return
+	 */
+	public long highestEquivalentValue(long value) {
+		return lowestEquivalentValue(value) + sizeOfEquivalentValueRange(value) - 1;
+	}
+	
+	/**
+	 * Returns the value in the middle of the range of values counted along with the given value
+	 * @param value
+	 * @return
+	 */
+	public long medianEquivalentValue(long value) {
+		return lowestEquivalentValue(value) + (sizeOfEquivalentValueRange(value) >> 1);
+	}
+
+	/**
+	 * Returns the number of distinct values which are counted along with the given value
+	 * @param value
+	 * @return
+	 */
+	public long sizeOfEquivalentValueRange(long value) {
+		int bucketIndex = bucketIndex(value);
+		int subBucketIndex = (int)(value >>> bucketIndex);
+		return 1L << (subBucketIndex >= subBucketCount ? bucketIndex + 1 : bucketIndex);
+	}
+
+	private int bucketIndex(long value) {
+		return leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+	}
+	
+	public long getHighestTrackableValue() {
+		return highestTrackableValue;
+	}
+
+	public int getSignificantDigits() {
+		return significantDigits;
+	}
+
+	/**
+	 * Returns the number of counters required by this layout
+	 * @return
+	 */
+	public int getCountsLength() {
+		return countsLength;
+	}
+
+	/**
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	public boolean equals(Object obj) {
+		if(this == obj)
+			return true;
+		if(!(obj instanceof LatencyHistogramLayout))
+			return false;
+		LatencyHistogramLayout other = (LatencyHistogramLayout)obj;
+		return highestTrackableValue == other.highestTrackableValue && significantDigits == other.significantDigits;
+	}
+
+	/**
+	 * @see java.lang.Object#hashCode()
+	 */
+	public int hashCode() {
+		return (int)(highestTrackableValue ^ (highestTrackableValue >>> 32)) * 31 + significantDigits;
+	}
+	
+}
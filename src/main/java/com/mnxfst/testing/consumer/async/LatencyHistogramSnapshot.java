@@ -0,0 +1,206 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.consumer.async;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Point-in-time copy of a {@link LatencyHistogram}. Snapshots sharing the same layout may be merged, eg. for 
+ * evaluating the latencies of all consumers of a type. Merging modifies the target snapshot only, the recording
+ * histograms are never touched. Instances are not thread-safe.
+ * @author ckreutzfeldt
+ * @since 02.03.2012
+ */
+public class LatencyHistogramSnapshot implements Serializable {
+
+	private static final long serialVersionUID = 8232512974390357158L;
+
+	private final LatencyHistogramLayout layout;
+	private final long[] counts;
+	private long totalCount = 0;
+	private long minValue = 0;
+	private long maxValue = 0;
+	private long overflowCount = 0;
+	
+	/**
+	 * Initializes an empty snapshot for the given layout - to be used as merge target
+	 * @param layout
+	 */
+	public LatencyHistogramSnapshot(LatencyHistogramLayout layout) {
+		this(layout, new long[layout.getCountsLength()], 0, 0, 0, 0);
+	}
+	
+	protected LatencyHistogramSnapshot(LatencyHistogramLayout layout, long[] counts, long totalCount, long minValue, long maxValue, long overflowCount) {
+		this.layout = layout;
+		this.counts = counts;
+		this.totalCount = totalCount;
+		this.minValue = minValue;
+		this.maxValue = maxValue;
+		this.overflowCount = overflowCount;
+	}
+	
+	/**
+	 * Adds the values contained in the given snapshot to this one
+	 * @param other
+	 * @throws IllegalArgumentException thrown in case the layouts differ
+	 */
+	public void add(LatencyHistogramSnapshot other) {
+		
+		if(!layout.equals(other.layout))
+			throw new IllegalArgumentException("Snapshots with different layouts cannot be merged");
+		if(other.totalCount == 0)
+			return;
+		
+		for(int i = 0; i < counts.length; i++)
+			counts[i] += other.counts[i];
+		addTotals(other.totalCount, other.minValue, other.maxValue, other.overflowCount);
+	}
+	
+	/**
+	 * Adds the values contained in the given snapshot to this one. If the layouts differ, the values are re-recorded
+	 * and thus kept with the precision of the coarser layout. Values exceeding the range of this snapshot are counted
+	 * as overflows
+	 * @param other
+	 */
+	public void addRescaled(LatencyHistogramSnapshot other) {
+		
+		if(layout.equals(other.layout)) {
+			add(other);
+			return;
+		}
+		if(other.totalCount == 0)
+			return;
+		
+		for(int i = 0; i < other.counts.length; i++) {
+			if(other.counts[i] > 0)
+				addCount(other.layout, i, other.counts[i]);
+		}
+		addTotals(other.totalCount, other.minValue, other.maxValue, other.overflowCount);
+	}
+	
+	/**
+	 * Resets all counters, eg. for reusing the snapshot as merge target
+	 */
+	public void reset() {
+		Arrays.fill(counts, 0);
+		totalCount = 0;
+		minValue = 0;
+		maxValue = 0;
+		overflowCount = 0;
+	}
+	
+	/**
+	 * Adds the count found at the given index of a histogram using the provided layout. Totals must be updated
+	 * separately via {@link #addTotals(long, long, long, long)}
+	 * @param sourceLayout
+	 * @param sourceIndex
+	 * @param count
+	 */
+	void addCount(LatencyHistogramLayout sourceLayout, int sourceIndex, long count) {
+		
+		if(sourceLayout == layout || sourceLayout.equals(layout)) {
+			counts[sourceIndex] += count;
+			return;
+		}
+		
+		long value = sourceLayout.medianEquivalentValue(sourceLayout.valueFromIndex(sourceIndex));
+		if(value > layout.getHighestTrackableValue()) {
+			overflowCount += count;
+			value = layout.getHighestTrackableValue();
+		}
+		counts[layout.countsIndex(value)] += count;
+	}
+	
+	/**
+	 * Updates the totals after counts have been added via {@link #addCount(LatencyHistogramLayout, int, long)}
+	 * @param count
+	 * @param min
+	 * @param max
+	 * @param overflows
+	 */
+	void addTotals(long count, long min, long max, long overflows) {
+		if(count == 0)
+			return;
+		minValue = (totalCount > 0 ? Math.min(minValue, min) : min);
+		maxValue = Math.max(maxValue, max);
+		totalCount += count;
+		overflowCount += overflows;
+	}
+	
+	/**
+	 * Returns the value below which the given percentage of all recorded values fall. The value is reported with
+	 * the precision of the layout but never exceeds the highest recorded value
+	 * @param percentile between 0 and 100
+	 * @return
+	 */
+	public long getValueAtPercentile(double percentile) {
+		
+		if(totalCount == 0)
+			return 0;
+		
+		double requested = Math.min(Math.max(percentile, 0), 100);
+		long countAtPercentile = Math.max(1, (long)(((requested / 100) * totalCount) + 0.5));
+		long runningCount = 0;
+		for(int i = 0; i < counts.length; i++) {
+			runningCount += counts[i];
+			if(runningCount >= countAtPercentile)
+				return Math.min(layout.highestEquivalentValue(layout.valueFromIndex(i)), maxValue);
+		}
+		return maxValue;
+	}
+	
+	/**
+	 * Returns the arithmetic mean of all recorded values
+	 * @return
+	 */
+	public double getMean() {
+		
+		if(totalCount == 0)
+			return 0;
+		
+		double total = 0;
+		for(int i = 0; i < counts.length; i++) {
+			if(counts[i] > 0)
+				total += counts[i] * (double)layout.medianEquivalentValue(layout.valueFromIndex(i));
+		}
+		return total / totalCount;
+	}
+	
+	public LatencyHistogramLayout getLayout() {
+		return layout;
+	}
+
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	public long getMinValue() {
+		return minValue;
+	}
+
+	public long getMaxValue() {
+		return maxValue;
+	}
+
+	public long getOverflowCount() {
+		return overflowCount;
+	}
+	
+}
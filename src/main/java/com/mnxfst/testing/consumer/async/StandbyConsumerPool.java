@@ -0,0 +1,282 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps consumers which are already initialized - and thus connected to their source - on standby, so that starting
+ * them merely requires handing them over to the {@link ConsumerScheduler}. The pool is configured per type via
+ * <i>consumer.async.&lt;type&gt;.standby.size</i> (default: 0, ie. disabled) and refills itself in the background
+ * whenever consumers are taken. Consumers are created by the provided {@link IAsyncInputConsumerFactory factory} using
+ * the configured options only, thus the pool must not serve requests overriding any consumer settings.<br/><br/>
+ * If creating a consumer fails, refilling the affected type is retried after a delay.
+ * @author ckreutzfeldt
+ * @since 09.03.2012
+ */
+public class StandbyConsumerPool {
+
+	private static final Logger logger = Logger.getLogger(StandbyConsumerPool.class);
+	
+	public static final int DEFAULT_SIZE = 0;
+	public static final int DEFAULT_REFILL_THREADS = 2;
+	public static final long DEFAULT_RETRY_DELAY_MILLIS = 1000;
+	
+	private static final String CFG_OPT_CONSUMER_TYPE_PREFIX = "consumer.async.";
+	private static final String CFG_OPT_STANDBY_SIZE = ".standby.size";
+	
+	private final IAsyncInputConsumerFactory consumerFactory;
+	private final long retryDelayMillis;
+	private final ScheduledThreadPoolExecutor refillExecutor;
+	private final ConcurrentMap<String, StandbyConsumers> standbyConsumers = new ConcurrentHashMap<String, StandbyConsumers>();
+	private volatile boolean shutdown = false;
+	
+	/**
+	 * Initializes the pool
+	 * @param consumerFactory
+	 * @param refillThreads number of consumers initialized concurrently while refilling
+	 * @param retryDelayMillis time to wait before refilling a type again after creating a consumer failed
+	 */
+	public StandbyConsumerPool(IAsyncInputConsumerFactory consumerFactory, int refillThreads, long retryDelayMillis) {
+		
+		if(consumerFactory == null)
+			throw new IllegalArgumentException("Missing required consumer factory");
+		if(refillThreads < 1)
+			throw new IllegalArgumentException("The standby pool requires at least one refill thread");
+		
+		this.consumerFactory = consumerFactory;
+		this.retryDelayMillis = Math.max(0, retryDelayMillis);
+		this.refillExecutor = new ScheduledThreadPoolExecutor(refillThreads, new ThreadFactory() {
+			private final AtomicInteger threadNumber = new AtomicInteger(1);
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "consumer-standby-" + threadNumber.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	/**
+	 * Sets the number of standby consumers kept for the given type using the settings found in the provided options
+	 * and starts filling the pool. Types being configured already keep their settings
+	 * @param consumerType
+	 * @param configOptions
+	 * @throws IllegalArgumentException thrown in case the settings are invalid
+	 */
+	public void configure(String consumerType, Map<String, List<String>> configOptions) {
+		
+		int size = (int)AsyncInputConsumerStatistics.parseLong(configOptions, CFG_OPT_CONSUMER_TYPE_PREFIX + consumerType + CFG_OPT_STANDBY_SIZE, DEFAULT_SIZE);
+		if(size < 0)
+			throw new IllegalArgumentException("The standby pool size for consumer type '"+consumerType+"' must not be negative");
+		if(size == 0)
+			return;
+		
+		if(standbyConsumers.putIfAbsent(consumerType, new StandbyConsumers(consumerType, size)) == null) {
+			logger.info("Configured standby consumers: [type="+consumerType+", size="+size+"]");
+			refill(consumerType);
+		}
+	}
+	
+	/**
+	 * Takes up to the given number of standby consumers of the referenced type. The pool gets refilled in the background
+	 * @param consumerType
+	 * @param count
+	 * @return initialized consumers, possibly less than requested or none at all
+	 */
+	public List<IAsyncInputConsumer> take(String consumerType, int count) {
+		
+		List<IAsyncInputConsumer> consumers = new ArrayList<IAsyncInputConsumer>();
+		StandbyConsumers standby = standbyConsumers.get(consumerType);
+		if(standby == null || count < 1)
+			return consumers;
+		
+		while(consumers.size() < count) {
+			IAsyncInputConsumer consumer = standby.consumers.poll();
+			if(consumer == null)
+				break;
+			standby.available.decrementAndGet();
+			consumers.add(consumer);
+		}
+		
+		standby.hits.add(consumers.size());
+		standby.misses.add(count - consumers.size());
+		refill(consumerType);
+		return consumers;
+	}
+	
+	/**
+	 * Takes a single standby consumer of the referenced type
+	 * @param consumerType
+	 * @return consumer or null if none is available
+	 */
+	public IAsyncInputConsumer poll(String consumerType) {
+		List<IAsyncInputConsumer> consumers = take(consumerType, 1);
+		return (consumers.isEmpty() ? null : consumers.get(0));
+	}
+	
+	/**
+	 * Returns the statistics of the standby consumers kept for the referenced type or null if the type is not pooled
+	 * @param consumerType
+	 * @return
+	 */
+	public StandbyPoolStatistics getPoolStatistics(String consumerType) {
+		StandbyConsumers standby = standbyConsumers.get(consumerType);
+		return (standby != null ? standby.statistics() : null);
+	}
+	
+	/**
+	 * Stops refilling and shuts down all consumers on standby
+	 */
+	public void shutdown() {
+		shutdown = true;
+		refillExecutor.shutdownNow();
+		for(StandbyConsumers standby : standbyConsumers.values()) {
+			for(IAsyncInputConsumer consumer = standby.consumers.poll(); consumer != null; consumer = standby.consumers.poll()) {
+				standby.available.decrementAndGet();
+				shutdownConsumer(consumer);
+			}
+		}
+	}
+	
+	/**
+	 * Schedules the creation of as many consumers as required for filling up the pool of the referenced type. Consumers 
+	 * being created already are taken into account
+	 * @param consumerType
+	 */
+	protected void refill(String consumerType) {
+		
+		final StandbyConsumers standby = standbyConsumers.get(consumerType);
+		if(standby == null || shutdown)
+			return;
+		
+		while(true) {
+			int pending = standby.pending.get();
+			if(standby.available.get() + pending >= standby.size)
+				return;
+			if(!standby.pending.compareAndSet(pending, pending + 1))
+				continue;
+			try {
+				refillExecutor.execute(new Runnable() {
+					public void run() {
+						createStandbyConsumer(standby);
+					}
+				});
+			} catch(RejectedExecutionException e) {
+				standby.pending.decrementAndGet();
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Creates a single consumer and puts it on standby. Failures are counted and lead to a delayed refill
+	 * @param standby
+	 */
+	protected void createStandbyConsumer(final StandbyConsumers standby) {
+		
+		IAsyncInputConsumer consumer = null;
+		try {
+			consumer = consumerFactory.createConsumer(standby.consumerType);
+		} catch(Exception e) {
+			logger.error("Failed to create standby consumer of type '"+standby.consumerType+"': " + e.getMessage());
+		}
+		
+		if(consumer == null) {
+			standby.failures.increment();
+			standby.pending.decrementAndGet();
+			// a single retry per type is enough, it refills the pool completely
+			if(!shutdown && standby.retryScheduled.compareAndSet(false, true)) {
+				try {
+					refillExecutor.schedule(new Runnable() {
+						public void run() {
+							standby.retryScheduled.set(false);
+							refill(standby.consumerType);
+						}
+					}, retryDelayMillis, TimeUnit.MILLISECONDS);
+				} catch(RejectedExecutionException e) {
+					standby.retryScheduled.set(false);
+				}
+			}
+			return;
+		}
+		
+		// count the consumer as available before it stops being pending, the pool must never be overfilled
+		standby.consumers.offer(consumer);
+		standby.available.incrementAndGet();
+		standby.pending.decrementAndGet();
+		
+		// the pool may have been shut down meanwhile
+		if(shutdown && standby.consumers.remove(consumer)) {
+			standby.available.decrementAndGet();
+			shutdownConsumer(consumer);
+		}
+	}
+	
+	private static void shutdownConsumer(IAsyncInputConsumer consumer) {
+		try {
+			consumer.shutdown();
+		} catch(Exception e) {
+			logger.error("Failed to shutdown standby consumer '"+consumer.getId()+"': " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Standby consumers of a single type
+	 * @author ckreutzfeldt
+	 * @since 09.03.2012
+	 */
+	protected static class StandbyConsumers {
+		
+		private final String consumerType;
+		private final int size;
+		private final Queue<IAsyncInputConsumer> consumers = new ConcurrentLinkedQueue<IAsyncInputConsumer>();
+		private final AtomicInteger available = new AtomicInteger(0);
+		private final AtomicInteger pending = new AtomicInteger(0);
+		private final AtomicBoolean retryScheduled = new AtomicBoolean(false);
+		private final LongAdder hits = new LongAdder();
+		private final LongAdder misses = new LongAdder();
+		private final LongAdder failures = new LongAdder();
+		
+		protected StandbyConsumers(String consumerType, int size) {
+			this.consumerType = consumerType;
+			this.size = size;
+		}
+		
+		protected StandbyPoolStatistics statistics() {
+			return new StandbyPoolStatistics(consumerType, size, available.get(), pending.get(), hits.sum(), misses.sum(), failures.sum());
+		}
+	}
+	
+}
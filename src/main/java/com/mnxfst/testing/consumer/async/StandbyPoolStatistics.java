@@ -0,0 +1,97 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.async;
+
+import java.io.Serializable;
+
+/**
+ * Point-in-time view on the standby consumers a {@link StandbyConsumerPool} keeps for a single consumer type
+ * @author ckreutzfeldt
+ * @since 09.03.2012
+ */
+public class StandbyPoolStatistics implements Serializable {
+
+	private static final long serialVersionUID = 3386027413938311520L;
+
+	private final String consumerType;
+	private final int size;
+	private final int available;
+	private final int pending;
+	private final long hits;
+	private final long misses;
+	private final long failures;
+	
+	public StandbyPoolStatistics(String consumerType, int size, int available, int pending, long hits, long misses, long failures) {
+		this.consumerType = consumerType;
+		this.size = size;
+		this.available = available;
+		this.pending = pending;
+		this.hits = hits;
+		this.misses = misses;
+		this.failures = failures;
+	}
+
+	public String getConsumerType() {
+		return consumerType;
+	}
+	/**
+	 * Returns the number of standby consumers the pool is refilled to
+	 * @return
+	 */
+	public int getSize() {
+		return size;
+	}
+	/**
+	 * Returns the number of initialized consumers waiting to be started
+	 * @return
+	 */
+	public int getAvailable() {
+		return available;
+	}
+	/**
+	 * Returns the number of consumers currently being initialized for refilling the pool
+	 * @return
+	 */
+	public int getPending() {
+		return pending;
+	}
+	/**
+	 * Returns the number of consumers served from the pool
+	 * @return
+	 */
+	public long getHits() {
+		return hits;
+	}
+	/**
+	 * Returns the number of consumers requested while the pool was empty
+	 * @return
+	 */
+	public long getMisses() {
+		return misses;
+	}
+	/**
+	 * Returns the number of consumers which failed to initialize while refilling the pool
+	 * @return
+	 */
+	public long getFailures() {
+		return failures;
+	}
+	
+}
@@ -0,0 +1,181 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.consumer.async;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the number of messages, bytes and errors recorded within the recent past inside a preallocated ring 
+ * of fixed-width time buckets. Recording costs O(1), neither allocates nor locks. A bucket is reused as soon as 
+ * the ring wraps around: the first writer arriving for the new interval claims the bucket and resets it. Counts
+ * recorded concurrently to such a reset may get lost - the cumulative totals kept by {@link AsyncInputConsumerStatistics}
+ * are not affected by this.
+ * @author ckreutzfeldt
+ * @since 05.03.2012
+ */
+public class ThroughputWindow implements Serializable {
+
+	private static final long serialVersionUID = -4726815379360934311L;
+
+	// marks a bucket being reset by the writer that claimed it 
+	private static final long EPOCH_ROTATING = Long.MIN_VALUE;
+	
+	private final int bucketCount;
+	private final long bucketMillis;
+	private final long startSlot;
+	// interval number (time / bucketMillis) each bucket currently counts for
+	private final AtomicLongArray epochs;
+	private final AtomicLongArray messages;
+	private final AtomicLongArray bytes;
+	private final AtomicLongArray errors;
+	
+	/**
+	 * Initializes the window
+	 * @param bucketCount number of buckets kept, the current bucket included
+	 * @param bucketMillis width of a single bucket given in milliseconds
+	 */
+	public ThroughputWindow(int bucketCount, long bucketMillis) {
+		this(bucketCount, bucketMillis, System.currentTimeMillis());
+	}
+	
+	/**
+	 * Initializes the window
+	 * @param bucketCount number of buckets kept, the current bucket included
+	 * @param bucketMillis width of a single bucket given in milliseconds
+	 * @param startTimestamp point in time the recording starts at, the window never reaches back any further
+	 */
+	public ThroughputWindow(int bucketCount, long bucketMillis, long startTimestamp) {
+		
+		if(bucketCount < 2)
+			throw new IllegalArgumentException("The throughput window requires at least 2 buckets");
+		if(bucketMillis < 1)
+			throw new IllegalArgumentException("The bucket width must be at least 1ms");
+		
+		this.bucketCount = bucketCount;
+		this.bucketMillis = bucketMillis;
+		this.startSlot = startTimestamp / bucketMillis;
+		this.epochs = new AtomicLongArray(bucketCount);
+		this.messages = new AtomicLongArray(bucketCount);
+		this.bytes = new AtomicLongArray(bucketCount);
+		this.errors = new AtomicLongArray(bucketCount);
+		for(int i = 0; i < bucketCount; i++)
+			epochs.set(i, -1);
+	}
+	
+	/**
+	 * Adds the given values to the bucket responsible for the provided point in time
+	 * @param messageCount
+	 * @param byteCount
+	 * @param errorCount
+	 * @param timestamp milliseconds
+	 */
+	public void record(long messageCount, long byteCount, long errorCount, long timestamp) {
+		
+		long slot = timestamp / bucketMillis;
+		int idx = (int)(slot % bucketCount);
+		
+		long epoch = epochs.get(idx);
+		if(epoch != slot && epoch != EPOCH_ROTATING) {
+			// the bucket has already been claimed for a later interval: the writer is late, drop its values  
+			if(epoch > slot)
+				return;
+			if(epochs.compareAndSet(idx, epoch, EPOCH_ROTATING)) {
+				messages.set(idx, 0);
+				bytes.set(idx, 0);
+				errors.set(idx, 0);
+				epochs.set(idx, slot);
+			}
+		}
+		
+		if(messageCount != 0)
+			messages.addAndGet(idx, messageCount);
+		if(byteCount != 0)
+			bytes.addAndGet(idx, byteCount);
+		if(errorCount != 0)
+			errors.addAndGet(idx, errorCount);
+	}
+	
+	/**
+	 * Copies all completed buckets covered by the window, the currently filled bucket is not included
+	 * @param timestamp milliseconds, usually the current time
+	 * @return
+	 */
+	public ThroughputWindowSnapshot snapshot(long timestamp) {
+		
+		long currentSlot = timestamp / bucketMillis;
+		
+		// the window must not reach back beyond the point in time the recording started
+		int completedBuckets = (int)Math.min(bucketCount - 1, Math.max(0, currentSlot - startSlot));
+		long[] messageSeries = new long[completedBuckets];
+		long[] byteSeries = new long[completedBuckets];
+		long[] errorSeries = new long[completedBuckets];
+		
+		// series run from oldest to newest bucket, buckets without any records keep zeros
+		for(int i = 0; i < completedBuckets; i++) {
+			long slot = currentSlot - completedBuckets + i;
+			int idx = (int)(slot % bucketCount);
+			if(epochs.get(idx) == slot) {
+				messageSeries[i] = messages.get(idx);
+				byteSeries[i] = bytes.get(idx);
+				errorSeries[i] = errors.get(idx);
+			}
+		}
+		
+		return new ThroughputWindowSnapshot(bucketMillis, currentSlot, messageSeries, byteSeries, errorSeries);
+	}
+
+	/**
+	 * Adds the completed buckets of this window to the buckets of the given snapshot counting for the same intervals, 
+	 * without creating an intermediate copy  
+	 * @param target
+	 * @throws IllegalArgumentException thrown in case the bucket widths differ
+	 */
+	public void addTo(ThroughputWindowSnapshot target) {
+		
+		if(target.getBucketMillis() != bucketMillis)
+			throw new IllegalArgumentException("Windows with different bucket widths cannot be merged");
+
+		long[] messageSeries = target.getMessages();
+		long[] byteSeries = target.getBytes();
+		long[] errorSeries = target.getErrors();
+		long endSlot = target.getEndSlot();
+		for(int i = 0; i < messageSeries.length; i++) {
+			long slot = endSlot - messageSeries.length + i;
+			// same bounds as applied by the snapshot: completed buckets recorded after the window started
+			if(slot < startSlot || slot <= endSlot - bucketCount)
+				continue;
+			int idx = (int)(slot % bucketCount);
+			if(epochs.get(idx) == slot) {
+				messageSeries[i] += messages.get(idx);
+				byteSeries[i] += bytes.get(idx);
+				errorSeries[i] += errors.get(idx);
+			}
+		}
+	}
+
+	public int getBucketCount() {
+		return bucketCount;
+	}
+
+	public long getBucketMillis() {
+		return bucketMillis;
+	}
+	
+}
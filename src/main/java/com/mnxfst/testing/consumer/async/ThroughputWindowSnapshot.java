@@ -0,0 +1,199 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.consumer.async;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Copy of the completed buckets of a {@link ThroughputWindow}. All rates are given per second. Snapshots sharing
+ * the same bucket width may be merged, eg. for evaluating the throughput of all consumers of a type - buckets
+ * are aligned by the interval they count for.
+ * @author ckreutzfeldt
+ * @since 05.03.2012
+ */
+public class ThroughputWindowSnapshot implements Serializable {
+
+	private static final long serialVersionUID = -3094766051628871209L;
+
+	private final long bucketMillis;
+	// interval number of the bucket following the newest one contained in the series 
+	private final long endSlot;
+	private final long[] messages;
+	private final long[] bytes;
+	private final long[] errors;
+	
+	public ThroughputWindowSnapshot(long bucketMillis, long endSlot, long[] messages, long[] bytes, long[] errors) {
+		this.bucketMillis = bucketMillis;
+		this.endSlot = endSlot;
+		this.messages = messages;
+		this.bytes = bytes;
+		this.errors = errors;
+	}
+	
+	/**
+	 * Initializes an empty snapshot covering the given number of buckets preceding the end slot - to be used as merge target
+	 * @param bucketMillis
+	 * @param endSlot
+	 * @param bucketCount
+	 */
+	public ThroughputWindowSnapshot(long bucketMillis, long endSlot, int bucketCount) {
+		this(bucketMillis, endSlot, new long[bucketCount], new long[bucketCount], new long[bucketCount]);
+	}
+	
+	/**
+	 * Adds the buckets of the given snapshot to the buckets of this one counting for the same intervals. Buckets 
+	 * not covered by this snapshot are ignored
+	 * @param other
+	 * @throws IllegalArgumentException thrown in case the bucket widths differ
+	 */
+	public void add(ThroughputWindowSnapshot other) {
+		
+		if(other.bucketMillis != bucketMillis)
+			throw new IllegalArgumentException("Snapshots with different bucket widths cannot be merged");
+		
+		// index inside this series = index inside the other series + offset
+		long offset = (messages.length - endSlot) - (other.messages.length - other.endSlot);
+		for(int i = 0; i < other.messages.length; i++) {
+			long idx = i + offset;
+			if(idx >= 0 && idx < messages.length) {
+				messages[(int)idx] += other.messages[i];
+				bytes[(int)idx] += other.bytes[i];
+				errors[(int)idx] += other.errors[i];
+			}
+		}
+	}
+	
+	/**
+	 * Returns a copy holding the given number of newest buckets at most
+	 * @param bucketCount
+	 * @return
+	 */
+	public ThroughputWindowSnapshot tail(int bucketCount) {
+		int count = Math.max(0, Math.min(bucketCount, messages.length));
+		int from = messages.length - count;
+		return new ThroughputWindowSnapshot(bucketMillis, endSlot, Arrays.copyOfRange(messages, from, messages.length), 
+				Arrays.copyOfRange(bytes, from, bytes.length), Arrays.copyOfRange(errors, from, errors.length));
+	}
+	
+	/**
+	 * Returns the message rate observed within the newest completed bucket 
+	 * @return
+	 */
+	public double getCurrentMessageRate() {
+		return currentRate(messages);
+	}
+	
+	/**
+	 * Returns the highest message rate observed within a single bucket of the window 
+	 * @return
+	 */
+	public double getPeakMessageRate() {
+		return peakRate(messages);
+	}
+	
+	/**
+	 * Returns the average message rate observed within the window
+	 * @return
+	 */
+	public double getAverageMessageRate() {
+		return averageRate(messages);
+	}
+	
+	public double getCurrentByteRate() {
+		return currentRate(bytes);
+	}
+	
+	public double getPeakByteRate() {
+		return peakRate(bytes);
+	}
+	
+	public double getAverageByteRate() {
+		return averageRate(bytes);
+	}
+	
+	public double getCurrentErrorRate() {
+		return currentRate(errors);
+	}
+	
+	public double getPeakErrorRate() {
+		return peakRate(errors);
+	}
+	
+	public double getAverageErrorRate() {
+		return averageRate(errors);
+	}
+	
+	private double currentRate(long[] series) {
+		return (series.length > 0 ? toRate(series[series.length - 1]) : 0);
+	}
+	
+	private double peakRate(long[] series) {
+		long peak = 0;
+		for(int i = 0; i < series.length; i++)
+			peak = Math.max(peak, series[i]);
+		return toRate(peak);
+	}
+	
+	private double averageRate(long[] series) {
+		if(series.length == 0)
+			return 0;
+		long total = 0;
+		for(int i = 0; i < series.length; i++)
+			total += series[i];
+		return toRate(total) / series.length;
+	}
+	
+	private double toRate(long count) {
+		return count * 1000.0 / bucketMillis;
+	}
+	
+	/**
+	 * Returns the number of completed buckets covered
+	 * @return
+	 */
+	public int getBucketCount() {
+		return messages.length;
+	}
+
+	public long getBucketMillis() {
+		return bucketMillis;
+	}
+
+	public long getEndSlot() {
+		return endSlot;
+	}
+
+	/**
+	 * Returns the message counts of all completed buckets, ordered from oldest to newest 
+	 * @return
+	 */
+	public long[] getMessages() {
+		return messages;
+	}
+
+	public long[] getBytes() {
+		return bytes;
+	}
+
+	public long[] getErrors() {
+		return errors;
+	}
+	
+}
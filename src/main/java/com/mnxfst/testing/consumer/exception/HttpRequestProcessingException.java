@@ -1,48 +1,48 @@
-/*
- *  ptest-server and client provides you with a performance test utility
- *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
- *
- *  This program is free software: you can redistribute it and/or modify
- *  it under the terms of the GNU General Public License as published by
- *  the Free Software Foundation, either version 3 of the License, or
- *  (at your option) any later version.
- *
- *  This program is distributed in the hope that it will be useful,
- *  but WITHOUT ANY WARRANTY; without even the implied warranty of
- *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
- *  GNU General Public License for more details.
- *  
- *  You should have received a copy of the GNU General Public License
- *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
- *
- */
-
-package com.mnxfst.testing.consumer.exception;
-
-import com.mnxfst.testing.consumer.handler.IHttpRequestHandler;
-
-/**
- * Thrown in case {@link IHttpRequestHandler#handleRequest(org.jboss.netty.channel.MessageEvent) processing} an http request failed
- * @author ckreutzfeldt
- * @since 22.02.2012
- */
-public class HttpRequestProcessingException extends Exception {
-
-	private static final long serialVersionUID = 7199341246473976453L;
-
-	public HttpRequestProcessingException() {		
-	}
-	
-	public HttpRequestProcessingException(String msg) {
-		super(msg);
-	}
-	
-	public HttpRequestProcessingException(Throwable cause) {
-		super(cause);
-	}
-	
-	public HttpRequestProcessingException(String msg, Throwable cause) {
-		super(msg, cause);
-	}	
-
-}
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.exception;
+
+import com.mnxfst.testing.consumer.handler.IHttpRequestHandler;
+
+/**
+ * Thrown in case {@link IHttpRequestHandler#handleRequest(org.jboss.netty.channel.MessageEvent) processing} an http request failed
+ * @author ckreutzfeldt
+ * @since 22.02.2012
+ */
+public class HttpRequestProcessingException extends Exception {
+
+	private static final long serialVersionUID = 7199341246473976453L;
+
+	public HttpRequestProcessingException() {		
+	}
+	
+	public HttpRequestProcessingException(String msg) {
+		super(msg);
+	}
+	
+	public HttpRequestProcessingException(Throwable cause) {
+		super(cause);
+	}
+	
+	public HttpRequestProcessingException(String msg, Throwable cause) {
+		super(msg, cause);
+	}	
+
+}
@@ -0,0 +1,291 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.handler;
+
+/**
+ * Maps context paths (eg. /consumer) towards their handlers. The paths are stored inside a trie
+ * which is organized by path segments. Each trie node keeps its children inside an open addressing
+ * table, thus resolving a request uri costs one table lookup per uri segment - regardless of the
+ * number of registered contexts. The lookup works directly on the provided uri and does not allocate
+ * any substrings.<br/><br/>
+ * The router must be fully populated before it is handed over to concurrently reading threads. Once
+ * published, any number of threads may resolve uris without further synchronization.
+ * @author ckreutzfeldt
+ * @since 27.02.2012
+ */
+public class ContextRequestRouter<T> {
+
+	private final Node<T> root = new Node<T>();
+	private int size = 0;
+
+	/**
+	 * Registers the handler for the given context path. Previously registered handlers for the very same
+	 * path will be replaced
+	 * @param contextPath
+	 * @param handler
+	 */
+	public void register(String contextPath, T handler) {
+
+		if(contextPath == null)
+			throw new IllegalArgumentException("Missing required context path");
+		if(handler == null)
+			throw new IllegalArgumentException("Missing required handler for context path '"+contextPath+"'");
+
+		Node<T> node = root;
+		int end = pathEnd(contextPath);
+		int idx = pathStart(contextPath);
+		while(idx < end) {
+
+			// skip separators, empty segments are ignored
+			if(contextPath.charAt(idx) == '/') {
+				idx++;
+				continue;
+			}
+
+			int segmentEnd = segmentEnd(contextPath, idx, end);
+			String segment = contextPath.substring(idx, segmentEnd);
+			Node<T> child = node.getChild(contextPath, idx, segmentEnd, segment.hashCode());
+			if(child == null) {
+				child = new Node<T>();
+				node.putChild(segment, child);
+			}
+			node = child;
+			idx = segmentEnd;
+		}
+
+		if(node.handler == null)
+			size++;
+		node.handler = handler;
+	}
+
+	/**
+	 * Returns the handler registered for the longest context path which is a prefix of the path contained
+	 * in the provided uri, eg. /consumer matches /consumer, /consumer/ and /consumer/stats but neither
+	 * /consumerX nor /foo/consumer
+	 * @param uri
+	 * @return handler or null if no registered context path matches
+	 */
+	public T route(String uri) {
+		return route(uri, false);
+	}
+
+	/**
+	 * Returns the handler registered for exactly the path contained in the provided uri
+	 * @param uri
+	 * @return handler or null if no registered context path matches
+	 */
+	public T routeExact(String uri) {
+		return route(uri, true);
+	}
+
+	/**
+	 * Returns the number of registered context paths
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Walks down the trie along the segments of the provided uri
+	 * @param uri
+	 * @param exact
+	 * @return
+	 */
+	protected T route(String uri, boolean exact) {
+
+		if(uri == null)
+			return null;
+
+		Node<T> node = root;
+		T longestMatch = root.handler;
+		int end = pathEnd(uri);
+		int idx = pathStart(uri);
+		while(idx < end) {
+
+			if(uri.charAt(idx) == '/') {
+				idx++;
+				continue;
+			}
+
+			// compute the segment hash in place - same function as String#hashCode
+			int hash = 0;
+			int segmentEnd = idx;
+			for(; segmentEnd < end; segmentEnd++) {
+				char c = uri.charAt(segmentEnd);
+				if(c == '/')
+					break;
+				hash = 31 * hash + c;
+			}
+
+			node = node.getChild(uri, idx, segmentEnd, hash);
+			if(node == null)
+				return (exact ? null : longestMatch);
+			if(node.handler != null)
+				longestMatch = node.handler;
+			idx = segmentEnd;
+		}
+
+		return (exact ? node.handler : longestMatch);
+	}
+
+	/**
+	 * Returns the index of the first path character. Absolute uris (eg. http://host:port/path) are
+	 * stripped from scheme and authority
+	 * @param uri
+	 * @return
+	 */
+	protected static int pathStart(String uri) {
+		int schemeIdx = uri.indexOf("://");
+		if(schemeIdx == -1)
+			return 0;
+
+		// ensure that the separator is not part of the query string
+		int queryIdx = uri.indexOf('?');
+		if(queryIdx != -1 && queryIdx < schemeIdx)
+			return 0;
+
+		int pathIdx = uri.indexOf('/', schemeIdx + 3);
+		return (pathIdx != -1 ? pathIdx : uri.length());
+	}
+
+	/**
+	 * Returns the index of the first character following the path, ie. the start of the query string
+	 * or fragment, or the uri length
+	 * @param uri
+	 * @return
+	 */
+	protected static int pathEnd(String uri) {
+		for(int i = 0; i < uri.length(); i++) {
+			char c = uri.charAt(i);
+			if(c == '?' || c == '#')
+				return i;
+		}
+		return uri.length();
+	}
+
+	/**
+	 * Returns the index of the separator following the segment starting at the given index
+	 * @param path
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	protected static int segmentEnd(String path, int start, int end) {
+		for(int i = start; i < end; i++) {
+			if(path.charAt(i) == '/')
+				return i;
+		}
+		return end;
+	}
+
+	/**
+	 * Single trie node keeping its children inside an open addressing table
+	 * @author ckreutzfeldt
+	 * @since 27.02.2012
+	 */
+	private static final class Node<T> {
+
+		private static final int INITIAL_CAPACITY = 4;
+
+		private T handler = null;
+		private String[] keys = null;
+		private int[] hashes = null;
+		private Node<T>[] children = null;
+		private int childCount = 0;
+
+		/**
+		 * Returns the child referenced by the segment found between start and end
+		 * @param path
+		 * @param start
+		 * @param end
+		 * @param hash
+		 * @return
+		 */
+		private Node<T> getChild(String path, int start, int end, int hash) {
+
+			if(keys == null)
+				return null;
+
+			int length = end - start;
+			int mask = keys.length - 1;
+			for(int idx = spread(hash) & mask; keys[idx] != null; idx = (idx + 1) & mask) {
+				if(hashes[idx] == hash && keys[idx].length() == length && path.regionMatches(start, keys[idx], 0, length))
+					return children[idx];
+			}
+			return null;
+		}
+
+		/**
+		 * Adds a new child for the given segment. The caller must ensure that the segment is not registered yet
+		 * @param segment
+		 * @param child
+		 */
+		private void putChild(String segment, Node<T> child) {
+
+			if(keys == null) {
+				keys = new String[INITIAL_CAPACITY];
+				hashes = new int[INITIAL_CAPACITY];
+				children = newChildren(INITIAL_CAPACITY);
+			} else if((childCount + 1) * 2 > keys.length) {
+				// keep the load factor below 0.5 to keep probe sequences short
+				String[] oldKeys = keys;
+				int[] oldHashes = hashes;
+				Node<T>[] oldChildren = children;
+				keys = new String[oldKeys.length * 2];
+				hashes = new int[oldKeys.length * 2];
+				children = newChildren(oldKeys.length * 2);
+				childCount = 0;
+				for(int i = 0; i < oldKeys.length; i++) {
+					if(oldKeys[i] != null)
+						insert(oldKeys[i], oldHashes[i], oldChildren[i]);
+				}
+			}
+			insert(segment, segment.hashCode(), child);
+		}
+
+		private void insert(String segment, int hash, Node<T> child) {
+			int mask = keys.length - 1;
+			int idx = spread(hash) & mask;
+			while(keys[idx] != null)
+				idx = (idx + 1) & mask;
+			keys[idx] = segment;
+			hashes[idx] = hash;
+			children[idx] = child;
+			childCount++;
+		}
+
+		/**
+		 * Creates a child table of the given capacity. Generic arrays cannot be created directly, the cast is safe as 
+		 * the table never leaves its node and only ever receives nodes of the very same handler type
+		 * @param capacity
+		 * @return
+		 */
+		@SuppressWarnings("unchecked")
+		private static <T> Node<T>[] newChildren(int capacity) {
+			return (Node<T>[])new Node<?>[capacity];
+		}
+
+		private static int spread(int hash) {
+			return hash ^ (hash >>> 16);
+		}
+	}
+
+}
@@ -0,0 +1,161 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.handler;
+
+import java.nio.charset.Charset;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * Decodes an application/x-www-form-urlencoded request body chunk by chunk into the provided {@link QueryParameters}. Names and 
+ * values are percent-decoded while the bytes are read, only the name or value currently decoded is buffered between two
+ * chunks. The body is neither aggregated nor turned into a string as a whole, known parameter names are resolved without
+ * creating a string.<br/><br/>
+ * Instances are not thread-safe and are meant to be used for exactly one request body.
+ * @author ckreutzfeldt
+ * @since 24.03.2012
+ */
+public class FormBodyDecoder {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private final QueryParameters parameters;
+	
+	// decoded bytes of the name or value currently read
+	private byte[] token = new byte[64];
+	private int tokenLength = 0;
+	// name of the current pair, null as long as no '=' has been found
+	private String name = null;
+	// number of hex digits of the current escape sequence read so far, -1 if no escape sequence is open
+	private int escapeDigits = -1;
+	private int escapeValue = 0;
+	
+	/**
+	 * Initializes the decoder
+	 * @param parameters receives the decoded parameters
+	 */
+	public FormBodyDecoder(QueryParameters parameters) {
+		if(parameters == null)
+			throw new IllegalArgumentException("Missing required parameters");
+		this.parameters = parameters;
+	}
+	
+	/**
+	 * Decodes the readable bytes of the given chunk without modifying its indexes
+	 * @param chunk
+	 * @throws IllegalArgumentException thrown in case the chunk contains an invalid escape sequence
+	 */
+	public void decode(ChannelBuffer chunk) {
+		int end = chunk.writerIndex();
+		for(int i = chunk.readerIndex(); i < end; i++) {
+			byte b = chunk.getByte(i);
+			if(escapeDigits >= 0) {
+				escapeValue = (escapeValue << 4) | hexValue(b);
+				if(++escapeDigits == 2) {
+					append((byte)escapeValue);
+					escapeDigits = -1;
+				}
+				continue;
+			}
+			switch(b) {
+				case '%':
+					escapeDigits = 0;
+					escapeValue = 0;
+					break;
+				case '+':
+					append((byte)' ');
+					break;
+				case '=':
+					if(name == null) {
+						name = tokenString();
+						tokenLength = 0;
+					} else {
+						append(b);
+					}
+					break;
+				case '&':
+				case ';':
+					endPair();
+					break;
+				default:
+					append(b);
+			}
+		}
+	}
+	
+	/**
+	 * Adds the pending pair, must be called once the body has been received completely
+	 * @throws IllegalArgumentException thrown in case the body ends within an escape sequence
+	 */
+	public void finish() {
+		if(escapeDigits >= 0)
+			throw new IllegalArgumentException("Incomplete escape sequence at the end of the body");
+		endPair();
+	}
+	
+	/**
+	 * Returns the decoded parameters
+	 * @return
+	 */
+	public QueryParameters getParameters() {
+		return parameters;
+	}
+	
+	private void endPair() {
+		if(name == null) {
+			// a pair without '=' is taken as name with empty value, empty pairs are skipped
+			if(tokenLength > 0)
+				parameters.add(tokenString(), "");
+		} else if(!name.isEmpty()) {
+			parameters.add(name, new String(token, 0, tokenLength, UTF8));
+		}
+		name = null;
+		tokenLength = 0;
+	}
+	
+	/**
+	 * Returns the current token as parameter name
+	 * @return
+	 */
+	private String tokenString() {
+		String key = QueryParameters.knownKey(token, 0, tokenLength);
+		return (key != null ? key : new String(token, 0, tokenLength, UTF8));
+	}
+	
+	private void append(byte b) {
+		if(tokenLength == token.length) {
+			byte[] tmp = new byte[token.length * 2];
+			System.arraycopy(token, 0, tmp, 0, tokenLength);
+			token = tmp;
+		}
+		token[tokenLength++] = b;
+	}
+	
+	private static int hexValue(byte b) {
+		if(b >= '0' && b <= '9')
+			return b - '0';
+		if(b >= 'a' && b <= 'f')
+			return b - 'a' + 10;
+		if(b >= 'A' && b <= 'F')
+			return b - 'A' + 10;
+		throw new IllegalArgumentException("Invalid escape sequence in request body: '%" + (char)b + "'");
+	}
+	
+}
@@ -1,35 +1,35 @@
-/*
- *  ptest-server and client provides you with a performance test utility
- *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
- *
- *  This program is free software: you can redistribute it and/or modify
- *  it under the terms of the GNU General Public License as published by
- *  the Free Software Foundation, either version 3 of the License, or
- *  (at your option) any later version.
- *
- *  This program is distributed in the hope that it will be useful,
- *  but WITHOUT ANY WARRANTY; without even the implied warranty of
- *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
- *  GNU General Public License for more details.
- *  
- *  You should have received a copy of the GNU General Public License
- *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
- *
- */
-package com.mnxfst.testing.consumer.handler;
-
-import java.io.Serializable;
-
-/**
- * Defines a common statistics container that must be provided by each {@link IHttpRequestHandler} 
- * @author ckreutzfeldt
- * @since 22.02.2012
- */
-public class HttpRequestHandlerStatistics implements Serializable {
-
-	private static final long serialVersionUID = 4509670264462718244L;
-
-	
-	
-	// TODO implement
-}
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.consumer.handler;
+
+import java.io.Serializable;
+
+/**
+ * Defines a common statistics container that must be provided by each {@link IHttpRequestHandler} 
+ * @author ckreutzfeldt
+ * @since 22.02.2012
+ */
+public class HttpRequestHandlerStatistics implements Serializable {
+
+	private static final long serialVersionUID = 4509670264462718244L;
+
+	
+	
+	// TODO implement
+}
@@ -0,0 +1,42 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.handler;
+
+/**
+ * Contributes statistics which do not belong to a single consumer, eg. those of resources shared by many consumers,
+ * to the statistics response. Sections are made available via the {@link StatisticsSectionRegistry}
+ * @author ckreutzfeldt
+ * @since 13.03.2012
+ */
+public interface IStatisticsSection {
+
+	/**
+	 * Returns the unique name the section is referenced by
+	 * @return
+	 */
+	public String getSectionName();
+	
+	/**
+	 * Writes the current statistics to the currently open element of the given writer. Must not block
+	 * @param responseWriter
+	 */
+	public void writeStatistics(XmlResponseWriter responseWriter);
+	
+}
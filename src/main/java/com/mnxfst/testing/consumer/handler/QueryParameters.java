@@ -0,0 +1,349 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.handler;
+
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.netty.handler.codec.http.QueryStringDecoder;
+
+/**
+ * Request parameters parsed in a single pass over the request uri. Names and values are kept as flat pairs in order 
+ * of appearance instead of a map of lists. Parameter names registered as {@link #registerKnownKeys(String...) known keys} 
+ * are recognized in place and resolved to the registered string instance, thus control requests consisting of known 
+ * keys only allocate nothing but their values. Components are percent-decoded only if they contain escapes.<br/><br/>
+ * Lookups by {@link #get(Object)} and {@link #containsKey(Object)} scan the pairs, which is cheaper than hashing for the 
+ * handful of parameters a request carries. The map view is built on first iteration only. Parameters are added by the 
+ * parser and the {@link FormBodyDecoder}, instances must not be modified concurrently and are meant to be used for a 
+ * single request. Once complete they may be read by several threads.
+ * @author ckreutzfeldt
+ * @since 24.03.2012
+ */
+public class QueryParameters extends AbstractMap<String, List<String>> {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	public static final int DEFAULT_MAX_PARAMS = 1024;
+	
+	// open addressing table of known keys, replaced as a whole on registration
+	private static volatile String[] knownKeys = new String[16];
+	private static final Object knownKeysLock = new Object();
+	
+	private String[] names = null;
+	private String[] values = null;
+	private int size = 0;
+	private final int maxParams;
+	// immutable map view, built on first request - racing threads build equal views
+	private volatile Map<String, List<String>> map = null;
+	
+	/**
+	 * Initializes an empty instance accepting {@link #DEFAULT_MAX_PARAMS} parameters
+	 */
+	public QueryParameters() {
+		this(DEFAULT_MAX_PARAMS);
+	}
+	
+	/**
+	 * Initializes an empty instance
+	 * @param maxParams max. number of parameters accepted, further ones are ignored
+	 */
+	public QueryParameters(int maxParams) {
+		if(maxParams < 1)
+			throw new IllegalArgumentException("The max. number of parameters must be positive");
+		this.maxParams = maxParams;
+	}
+	
+	/**
+	 * Parses the query string of the given uri
+	 * @param uri
+	 * @return
+	 * @throws IllegalArgumentException thrown in case a component contains an invalid escape sequence
+	 */
+	public static QueryParameters parse(String uri) {
+		QueryParameters parameters = new QueryParameters();
+		if(uri == null)
+			return parameters;
+		int queryStart = uri.indexOf('?');
+		if(queryStart == -1)
+			return parameters;
+		
+		int length = uri.length();
+		int pairStart = queryStart + 1;
+		int separator = -1;
+		boolean escapedName = false;
+		boolean escapedValue = false;
+		for(int i = pairStart; i <= length; i++) {
+			char c = (i < length ? uri.charAt(i) : '&');
+			switch(c) {
+				case '=':
+					if(separator == -1)
+						separator = i;
+					break;
+				case '%':
+				case '+':
+					if(separator == -1)
+						escapedName = true;
+					else
+						escapedValue = true;
+					break;
+				case '&':
+				case ';':
+				case '#':
+					parameters.addPair(uri, pairStart, separator, i, escapedName, escapedValue);
+					if(c == '#')
+						return parameters;
+					pairStart = i + 1;
+					separator = -1;
+					escapedName = false;
+					escapedValue = false;
+					break;
+			}
+		}
+		return parameters;
+	}
+	
+	/**
+	 * Adds the pair found between start and end, the separator is -1 if the pair has no value
+	 */
+	private void addPair(String uri, int start, int separator, int end, boolean escapedName, boolean escapedValue) {
+		int nameEnd = (separator != -1 ? separator : end);
+		if(nameEnd == start)
+			return;
+		String name = null;
+		if(escapedName)
+			name = QueryStringDecoder.decodeComponent(uri.substring(start, nameEnd), UTF8);
+		else if((name = knownKey(uri, start, nameEnd)) == null)
+			name = uri.substring(start, nameEnd);
+		String value = "";
+		if(separator != -1 && separator + 1 < end)
+			value = (escapedValue ? QueryStringDecoder.decodeComponent(uri.substring(separator + 1, end), UTF8) : uri.substring(separator + 1, end));
+		add(name, value);
+	}
+	
+	/**
+	 * Adds a parameter
+	 * @param name
+	 * @param value
+	 */
+	public void add(String name, String value) {
+		if(size >= maxParams)
+			return;
+		if(names == null) {
+			names = new String[4];
+			values = new String[4];
+		} else if(size == names.length) {
+			String[] tmpNames = new String[size * 2];
+			String[] tmpValues = new String[size * 2];
+			System.arraycopy(names, 0, tmpNames, 0, size);
+			System.arraycopy(values, 0, tmpValues, 0, size);
+			names = tmpNames;
+			values = tmpValues;
+		}
+		names[size] = name;
+		values[size] = value;
+		size++;
+		map = null;
+	}
+	
+	/**
+	 * Returns the first value of the given parameter
+	 * @param name
+	 * @return value or null if the parameter is missing
+	 */
+	public String getFirst(String name) {
+		int idx = indexOf(name, 0);
+		return (idx != -1 ? values[idx] : null);
+	}
+	
+	/**
+	 * @see java.util.AbstractMap#containsKey(java.lang.Object)
+	 */
+	public boolean containsKey(Object key) {
+		return indexOf(key, 0) != -1;
+	}
+	
+	/**
+	 * @see java.util.AbstractMap#get(java.lang.Object)
+	 */
+	public List<String> get(Object key) {
+		int idx = indexOf(key, 0);
+		if(idx == -1)
+			return null;
+		int next = indexOf(key, idx + 1);
+		if(next == -1)
+			return Collections.singletonList(values[idx]);
+		List<String> result = new ArrayList<String>();
+		for(; idx != -1; idx = indexOf(key, idx + 1))
+			result.add(values[idx]);
+		return result;
+	}
+	
+	/**
+	 * @see java.util.AbstractMap#isEmpty()
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * @see java.util.AbstractMap#entrySet()
+	 */
+	public Set<Map.Entry<String, List<String>>> entrySet() {
+		Map<String, List<String>> view = map;
+		if(view == null) {
+			Map<String, List<String>> entries = new LinkedHashMap<String, List<String>>();
+			for(int i = 0; i < size; i++) {
+				List<String> entryValues = entries.get(names[i]);
+				if(entryValues == null) {
+					entryValues = new ArrayList<String>(1);
+					entries.put(names[i], entryValues);
+				}
+				entryValues.add(values[i]);
+			}
+			for(Map.Entry<String, List<String>> entry : entries.entrySet())
+				entry.setValue(Collections.unmodifiableList(entry.getValue()));
+			view = Collections.unmodifiableMap(entries);
+			map = view;
+		}
+		return view.entrySet();
+	}
+	
+	/**
+	 * Returns the number of name/value pairs, parameters holding multiple values are counted once per value 
+	 * @return
+	 */
+	public int getPairCount() {
+		return size;
+	}
+	
+	private int indexOf(Object key, int from) {
+		// known keys are compared by identity first
+		for(int i = from; i < size; i++) {
+			if(names[i] == key)
+				return i;
+		}
+		if(!(key instanceof String))
+			return -1;
+		for(int i = from; i < size; i++) {
+			if(names[i].equals(key))
+				return i;
+		}
+		return -1;
+	}
+	
+	/////////////////////////////////////////// KNOWN KEYS ///////////////////////////////////////////
+	
+	/**
+	 * Registers parameter names which are resolved to the given instances while parsing 
+	 * @param keys
+	 */
+	public static void registerKnownKeys(String... keys) {
+		synchronized(knownKeysLock) {
+			String[] table = knownKeys;
+			int count = keys.length;
+			for(int i = 0; i < table.length; i++) {
+				if(table[i] != null)
+					count++;
+			}
+			// keep the table at most half full
+			int capacity = table.length;
+			while(capacity < count * 2)
+				capacity *= 2;
+			String[] updated = new String[capacity];
+			for(int i = 0; i < table.length; i++) {
+				if(table[i] != null)
+					insert(updated, table[i]);
+			}
+			for(int i = 0; i < keys.length; i++) {
+				if(keys[i] != null && !keys[i].isEmpty())
+					insert(updated, keys[i]);
+			}
+			knownKeys = updated;
+		}
+	}
+	
+	private static void insert(String[] table, String key) {
+		int mask = table.length - 1;
+		for(int idx = key.hashCode() & mask; ; idx = (idx + 1) & mask) {
+			if(table[idx] == null) {
+				table[idx] = key;
+				return;
+			}
+			if(table[idx].equals(key))
+				return;
+		}
+	}
+	
+	/**
+	 * Returns the registered instance of the key found between start and end of the given string
+	 * @param source
+	 * @param start
+	 * @param end
+	 * @return key or null if the key is not registered
+	 */
+	public static String knownKey(String source, int start, int end) {
+		int hash = 0;
+		for(int i = start; i < end; i++)
+			hash = 31 * hash + source.charAt(i);
+		String[] table = knownKeys;
+		int mask = table.length - 1;
+		int length = end - start;
+		for(int idx = hash & mask; table[idx] != null; idx = (idx + 1) & mask) {
+			if(table[idx].length() == length && source.regionMatches(start, table[idx], 0, length))
+				return table[idx];
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the registered instance of the key held by the given bytes, keys are expected to be ASCII 
+	 * @param source
+	 * @param offset
+	 * @param length
+	 * @return key or null if the key is not registered
+	 */
+	public static String knownKey(byte[] source, int offset, int length) {
+		int hash = 0;
+		for(int i = 0; i < length; i++)
+			hash = 31 * hash + (source[offset + i] & 0xFF);
+		String[] table = knownKeys;
+		int mask = table.length - 1;
+		for(int idx = hash & mask; table[idx] != null; idx = (idx + 1) & mask) {
+			if(table[idx].length() == length && matches(table[idx], source, offset))
+				return table[idx];
+		}
+		return null;
+	}
+	
+	private static boolean matches(String key, byte[] source, int offset) {
+		for(int i = 0; i < key.length(); i++) {
+			if(key.charAt(i) != (source[offset + i] & 0xFF))
+				return false;
+		}
+		return true;
+	}
+	
+}
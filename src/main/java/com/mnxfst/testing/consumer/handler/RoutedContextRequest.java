@@ -0,0 +1,84 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.handler;
+
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.util.EstimatableObjectWrapper;
+
+import com.mnxfst.testing.consumer.handler.async.IContextRequestHandler;
+
+/**
+ * Carries a request which has already been routed towards its {@link IContextRequestHandler} and whose body has been
+ * decoded from the {@link StreamingRequestDispatcher} to the {@link TSConsumerChannelUpstreamHandler} and, if blocking, 
+ * through the execution stage to the {@link TSConsumerBlockingRequestHandler}. The memory aware execution stage accounts 
+ * for the request content only.
+ * @author ckreutzfeldt
+ * @since 29.02.2012
+ */
+public class RoutedContextRequest implements EstimatableObjectWrapper {
+
+	private final IContextRequestHandler contextHandler;
+	private final HttpRequest httpRequest;
+	private final Map<String, List<String>> queryParams;
+	private final boolean keepAlive;
+	private final MessageEvent event;
+	
+	public RoutedContextRequest(IContextRequestHandler contextHandler, HttpRequest httpRequest, Map<String, List<String>> queryParams, boolean keepAlive, MessageEvent event) {
+		this.contextHandler = contextHandler;
+		this.httpRequest = httpRequest;
+		this.queryParams = queryParams;
+		this.keepAlive = keepAlive;
+		this.event = event;
+	}
+
+	/**
+	 * @see org.jboss.netty.util.EstimatableObjectWrapper#unwrap()
+	 */
+	public Object unwrap() {
+		ChannelBuffer content = httpRequest.getContent();
+		return (content != null ? content : httpRequest);
+	}
+
+	public IContextRequestHandler getContextHandler() {
+		return contextHandler;
+	}
+
+	public HttpRequest getHttpRequest() {
+		return httpRequest;
+	}
+
+	public Map<String, List<String>> getQueryParams() {
+		return queryParams;
+	}
+
+	public boolean isKeepAlive() {
+		return keepAlive;
+	}
+
+	public MessageEvent getEvent() {
+		return event;
+	}
+	
+}
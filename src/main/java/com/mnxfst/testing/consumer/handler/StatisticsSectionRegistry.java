@@ -0,0 +1,85 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.handler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps track of all {@link IStatisticsSection statistics sections} available for collection. Sections register 
+ * themselves, typically as soon as the shared resource they report on gets created
+ * @author ckreutzfeldt
+ * @since 13.03.2012
+ */
+public class StatisticsSectionRegistry {
+
+	private static final ConcurrentMap<String, IStatisticsSection> sections = new ConcurrentHashMap<String, IStatisticsSection>();
+	
+	private StatisticsSectionRegistry() {
+	}
+	
+	/**
+	 * Registers the given section, sections previously registered for the same name are replaced
+	 * @param section
+	 */
+	public static void register(IStatisticsSection section) {
+		if(section == null || section.getSectionName() == null)
+			throw new IllegalArgumentException("Missing required section or section name");
+		sections.put(section.getSectionName(), section);
+	}
+	
+	/**
+	 * Removes the section registered for the given name
+	 * @param sectionName
+	 */
+	public static void unregister(String sectionName) {
+		if(sectionName != null)
+			sections.remove(sectionName);
+	}
+	
+	/**
+	 * Returns the section registered for the given name
+	 * @param sectionName
+	 * @return section or null if there is none
+	 */
+	public static IStatisticsSection getSection(String sectionName) {
+		return (sectionName != null ? sections.get(sectionName) : null);
+	}
+	
+	/**
+	 * Returns all registered sections ordered by name
+	 * @return
+	 */
+	public static List<IStatisticsSection> getSections() {
+		List<String> names = new ArrayList<String>(sections.keySet());
+		Collections.sort(names);
+		List<IStatisticsSection> result = new ArrayList<IStatisticsSection>(names.size());
+		for(String name : names) {
+			IStatisticsSection section = sections.get(name);
+			if(section != null)
+				result.add(section);
+		}
+		return result;
+	}
+	
+}
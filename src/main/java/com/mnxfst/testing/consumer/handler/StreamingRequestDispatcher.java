@@ -0,0 +1,302 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.handler;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpChunk;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+
+import com.mnxfst.testing.consumer.handler.async.IContextRequestHandler;
+import com.mnxfst.testing.consumer.handler.async.IRequestBodyHandler;
+import com.mnxfst.testing.consumer.handler.async.IStreamingContextRequestHandler;
+
+/**
+ * Located behind the http request decoder, receives request heads and body chunks and handles the body as requested
+ * by the context the request is routed to:
+ * <ul>
+ *   <li>{@link IStreamingContextRequestHandler streaming context handlers} receive the raw body chunks as they arrive</li>
+ *   <li>the bodies of POST requests towards any other context are decoded as form chunk by chunk by a {@link FormBodyDecoder}, 
+ *   	the parameters are added to the query parameters and the request is passed on as {@link RoutedContextRequest}</li>
+ * </ul>
+ * Bodies are never aggregated. Each context may limit the size of the request bodies it accepts, larger requests are 
+ * answered by 413 and the connection is closed. Requests which cannot be routed are passed on untouched, their body is
+ * dropped. Each channel requires an instance of its own as the handler keeps track of the request currently received.
+ * @author ckreutzfeldt
+ * @since 23.03.2012
+ */
+public class StreamingRequestDispatcher extends SimpleChannelUpstreamHandler {
+
+	public static final long DEFAULT_MAX_BODY_SIZE = 1048576;
+	
+	private final ContextRequestRouter<IContextRequestHandler> contextRequestRouter;
+	// context -> max. body size, contexts not found here accept the default size
+	private final ContextRequestRouter<Long> maxBodySizes;
+	private final long defaultMaxBodySize;
+	
+	// body handler of the request currently received, null if there is none
+	private IRequestBodyHandler currentBody = null;
+	private long currentBodySize = 0;
+	private long currentMaxBodySize = 0;
+	// true while the chunks of a request which cannot be handled are dropped
+	private boolean discarding = false;
+	
+	/**
+	 * Initializes the dispatcher
+	 * @param contextRequestRouter
+	 * @param maxBodySizes max. body sizes by context, may be null
+	 * @param defaultMaxBodySize max. body size of contexts without a size of their own
+	 */
+	public StreamingRequestDispatcher(ContextRequestRouter<IContextRequestHandler> contextRequestRouter, ContextRequestRouter<Long> maxBodySizes, long defaultMaxBodySize) {
+		if(contextRequestRouter == null)
+			throw new IllegalArgumentException("Missing required context request router");
+		if(defaultMaxBodySize < 1)
+			throw new IllegalArgumentException("The max. body size must be positive");
+		this.contextRequestRouter = contextRequestRouter;
+		this.maxBodySizes = (maxBodySizes != null ? maxBodySizes : new ContextRequestRouter<Long>());
+		this.defaultMaxBodySize = defaultMaxBodySize;
+	}
+	
+	/**
+	 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#messageReceived(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.MessageEvent)
+	 */
+	public void messageReceived(ChannelHandlerContext ctx, MessageEvent event) throws Exception {
+		
+		Object message = event.getMessage();
+		if(message instanceof HttpChunk) {
+			HttpChunk chunk = (HttpChunk)message;
+			if(currentBody != null) {
+				if(content(chunk.getContent(), event) && chunk.isLast()) {
+					IRequestBodyHandler body = currentBody;
+					currentBody = null;
+					body.finish(event);
+				}
+			} else if(discarding && chunk.isLast()) {
+				discarding = false;
+			}
+			return;
+		}
+		
+		if(!(message instanceof HttpRequest)) {
+			ctx.sendUpstream(event);
+			return;
+		}
+		
+		HttpRequest httpRequest = (HttpRequest)message;
+		currentBody = null;
+		discarding = false;
+		IContextRequestHandler contextHandler = contextRequestRouter.route(httpRequest.getUri());
+		if(contextHandler == null) {
+			// the upstream handler answers requests towards unknown contexts
+			discarding = httpRequest.isChunked();
+			httpRequest.setContent(null);
+			ctx.sendUpstream(event);
+			return;
+		}
+		
+		boolean keepAlive = HttpHeaders.Values.KEEP_ALIVE.equalsIgnoreCase(httpRequest.getHeader(HttpHeaders.Names.CONNECTION));
+		Long contextMaxBodySize = maxBodySizes.route(httpRequest.getUri());
+		currentMaxBodySize = (contextMaxBodySize != null ? contextMaxBodySize.longValue() : defaultMaxBodySize);
+		currentBodySize = 0;
+		if(HttpHeaders.getContentLength(httpRequest, 0) > currentMaxBodySize) {
+			rejectTooLarge(event);
+			return;
+		}
+		
+		QueryParameters queryParams = null;
+		try {
+			queryParams = QueryParameters.parse(httpRequest.getUri());
+		} catch(IllegalArgumentException e) {
+			discarding = httpRequest.isChunked();
+			sendErrorResponse(e.getMessage(), keepAlive, event);
+			return;
+		}
+		if(contextHandler instanceof IStreamingContextRequestHandler) {
+			if(HttpHeaders.is100ContinueExpected(httpRequest))
+				event.getChannel().write(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE));
+			currentBody = ((IStreamingContextRequestHandler)contextHandler).startRequest(httpRequest, queryParams, keepAlive, event);
+		} else if(httpRequest.getMethod() == HttpMethod.POST && (httpRequest.isChunked() || httpRequest.getContent().readable())) {
+			if(HttpHeaders.is100ContinueExpected(httpRequest))
+				event.getChannel().write(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE));
+			currentBody = new FormRequestBody(ctx, contextHandler, httpRequest, queryParams, keepAlive, event);
+		} else {
+			discarding = httpRequest.isChunked();
+			Channels.fireMessageReceived(ctx, new RoutedContextRequest(contextHandler, httpRequest, queryParams, keepAlive, event), event.getRemoteAddress());
+			return;
+		}
+		
+		if(httpRequest.getContent().readable() && !content(httpRequest.getContent(), event))
+			return;
+		if(!httpRequest.isChunked()) {
+			IRequestBodyHandler body = currentBody;
+			currentBody = null;
+			body.finish(event);
+		}
+	}
+	
+	/**
+	 * Hands the given content over to the body handler of the current request unless the body exceeds the max. size
+	 * of the context
+	 * @param content
+	 * @param event
+	 * @return false if the request has been rejected
+	 */
+	private boolean content(ChannelBuffer content, MessageEvent event) {
+		currentBodySize += content.readableBytes();
+		if(currentBodySize > currentMaxBodySize) {
+			IRequestBodyHandler body = currentBody;
+			currentBody = null;
+			body.abort();
+			rejectTooLarge(event);
+			return false;
+		}
+		if(content.readable())
+			currentBody.content(content);
+		return true;
+	}
+	
+	/**
+	 * Answers the current request by 413 and closes the connection as the remaining body is not read
+	 * @param event
+	 */
+	private void rejectTooLarge(MessageEvent event) {
+		discarding = true;
+		XmlResponseWriter responseWriter = new XmlResponseWriter();
+		responseWriter.startElement(TSConsumerChannelUpstreamHandler.CONSUMER_RESPONSE_ROOT_ELEMENT).startElement("errors")
+			.element("error", "request body exceeds the max. size of " + currentMaxBodySize + " bytes");
+		sendResponse(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE, responseWriter.finish(), false, event);
+	}
+	
+	/**
+	 * Aborts the request currently received
+	 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#channelClosed(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ChannelStateEvent)
+	 */
+	public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent event) throws Exception {
+		if(currentBody != null) {
+			IRequestBodyHandler body = currentBody;
+			currentBody = null;
+			body.abort();
+		}
+		super.channelClosed(ctx, event);
+	}
+	
+	/**
+	 * Sends a response containing the given error message to the calling client
+	 * @param errorMessage
+	 * @param keepAlive
+	 * @param event
+	 */
+	protected void sendErrorResponse(String errorMessage, boolean keepAlive, MessageEvent event) {
+		XmlResponseWriter responseWriter = new XmlResponseWriter();
+		responseWriter.startElement(TSConsumerChannelUpstreamHandler.CONSUMER_RESPONSE_ROOT_ELEMENT).startElement("errors").element("error", errorMessage);
+		sendResponse(HttpResponseStatus.OK, responseWriter.finish(), keepAlive, event);
+	}
+	
+	/**
+	 * Sends a response containing the given message to the calling client
+	 * @param status
+	 * @param responseMessage
+	 * @param keepAlive
+	 * @param event
+	 */
+	protected void sendResponse(HttpResponseStatus status, ChannelBuffer responseMessage, boolean keepAlive, MessageEvent event) {
+		HttpResponse httpResponse = new DefaultHttpResponse(HttpVersion.HTTP_1_1, status);
+		
+		httpResponse.setContent(responseMessage);
+		httpResponse.setHeader(HttpHeaders.Names.CONTENT_TYPE, "text/plain; charset=UTF-8");
+		
+		if(keepAlive)
+			httpResponse.setHeader(HttpHeaders.Names.CONTENT_LENGTH, httpResponse.getContent().readableBytes());
+		
+		ChannelFuture future = event.getChannel().write(httpResponse);
+		if(!keepAlive)
+			future.addListener(ChannelFutureListener.CLOSE);
+	}
+	
+	/**
+	 * Decodes the form body of a request towards a regular context handler and passes the request on once the body
+	 * has been received completely
+	 * @author ckreutzfeldt
+	 * @since 24.03.2012
+	 */
+	private class FormRequestBody implements IRequestBodyHandler {
+		
+		private final ChannelHandlerContext ctx;
+		private final IContextRequestHandler contextHandler;
+		private final HttpRequest httpRequest;
+		private final boolean keepAlive;
+		private final MessageEvent event;
+		private final FormBodyDecoder decoder;
+		private String error = null;
+		
+		private FormRequestBody(ChannelHandlerContext ctx, IContextRequestHandler contextHandler, HttpRequest httpRequest, QueryParameters parameters, 
+				boolean keepAlive, MessageEvent event) {
+			this.ctx = ctx;
+			this.contextHandler = contextHandler;
+			this.httpRequest = httpRequest;
+			this.keepAlive = keepAlive;
+			this.event = event;
+			this.decoder = new FormBodyDecoder(parameters);
+		}
+		
+		public void content(ChannelBuffer content) {
+			if(error != null)
+				return;
+			try {
+				decoder.decode(content);
+			} catch(IllegalArgumentException e) {
+				error = e.getMessage();
+			}
+		}
+		
+		public void finish(MessageEvent lastEvent) {
+			if(error == null) {
+				try {
+					decoder.finish();
+				} catch(IllegalArgumentException e) {
+					error = e.getMessage();
+				}
+			}
+			if(error != null) {
+				sendErrorResponse(error, keepAlive, event);
+				return;
+			}
+			// the body has been consumed, the request is passed on without it
+			httpRequest.setContent(null);
+			Channels.fireMessageReceived(ctx, new RoutedContextRequest(contextHandler, httpRequest, decoder.getParameters(), keepAlive, event), event.getRemoteAddress());
+		}
+		
+		public void abort() {
+		}
+	}
+	
+}
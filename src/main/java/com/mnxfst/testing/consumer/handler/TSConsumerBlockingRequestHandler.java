@@ -0,0 +1,61 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.handler;
+
+import org.apache.log4j.Logger;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+
+import com.mnxfst.testing.consumer.handler.async.ContextRequestExecutionMode;
+
+/**
+ * Located behind the execution stage, this handler processes all requests the {@link TSConsumerChannelUpstreamHandler} 
+ * identified as {@link ContextRequestExecutionMode#BLOCKING blocking}. Thus it never runs on a netty i/o worker thread
+ * @author ckreutzfeldt
+ * @since 29.02.2012
+ */
+public class TSConsumerBlockingRequestHandler extends SimpleChannelUpstreamHandler {
+
+	private static final Logger logger = Logger.getLogger(TSConsumerBlockingRequestHandler.class);
+	
+	/**
+	 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#messageReceived(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.MessageEvent)
+	 */
+	public void messageReceived(ChannelHandlerContext ctx, MessageEvent event) throws Exception {
+		
+		if(!(event.getMessage() instanceof RoutedContextRequest)) {
+			super.messageReceived(ctx, event);
+			return;
+		}
+		
+		RoutedContextRequest request = (RoutedContextRequest)event.getMessage();
+		request.getContextHandler().processRequest(request.getHttpRequest(), request.getQueryParams(), request.isKeepAlive(), request.getEvent());
+	}
+
+	/**
+	 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#exceptionCaught(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ExceptionEvent)
+	 */
+	public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
+		logger.error("Exception raised during blocking http request processing: " + e.getCause().getMessage(), e.getCause());
+	}
+	
+}
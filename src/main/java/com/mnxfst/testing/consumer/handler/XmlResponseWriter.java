@@ -0,0 +1,298 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.handler;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * Streams an xml response directly into a {@link ChannelBuffer} which may be handed over to the
+ * http response without any further copy. Characters are encoded as UTF-8 and escaped while being
+ * written, no intermediate document tree or string representation is built. Element and attribute
+ * names are expected to be valid xml names and are written as they are.<br/><br/>
+ * Instances are not thread-safe and are meant to be used for exactly one response.
+ * @author ckreutzfeldt
+ * @since 28.02.2012
+ */
+public class XmlResponseWriter {
+
+	public static final int DEFAULT_INITIAL_CAPACITY = 512;
+
+	private static final byte[] XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>".getBytes();
+	private static final byte[] AMP = "&amp;".getBytes();
+	private static final byte[] LT = "&lt;".getBytes();
+	private static final byte[] GT = "&gt;".getBytes();
+	private static final byte[] QUOT = "&quot;".getBytes();
+	private static final byte[] LONG_MIN_VALUE = String.valueOf(Long.MIN_VALUE).getBytes();
+
+	private final ChannelBuffer buffer;
+	// names of all currently open elements
+	private String[] openElements = new String[8];
+	private int depth = 0;
+	// true as long as the start tag of the innermost element has not been closed by '>'
+	private boolean startTagOpen = false;
+	// scratch space used for rendering numbers without creating strings
+	private final byte[] digits = new byte[20];
+
+	/**
+	 * Initializes the writer using a dynamic buffer of {@link #DEFAULT_INITIAL_CAPACITY default capacity}
+	 */
+	public XmlResponseWriter() {
+		this(DEFAULT_INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Initializes the writer using a dynamic buffer of the given initial capacity. Providing a good estimate
+	 * of the final response size avoids resizing the buffer while writing
+	 * @param initialCapacity
+	 */
+	public XmlResponseWriter(int initialCapacity) {
+		this.buffer = ChannelBuffers.dynamicBuffer(initialCapacity > 0 ? initialCapacity : DEFAULT_INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Writes the xml declaration. Must be called before anything else is written
+	 * @return
+	 */
+	public XmlResponseWriter startDocument() {
+		buffer.writeBytes(XML_DECLARATION);
+		return this;
+	}
+
+	/**
+	 * Opens a new element
+	 * @param name
+	 * @return
+	 */
+	public XmlResponseWriter startElement(String name) {
+		closeStartTag();
+		if(depth == openElements.length) {
+			String[] tmp = new String[openElements.length * 2];
+			System.arraycopy(openElements, 0, tmp, 0, openElements.length);
+			openElements = tmp;
+		}
+		openElements[depth++] = name;
+		buffer.writeByte('<');
+		writeAscii(name);
+		startTagOpen = true;
+		return this;
+	}
+
+	/**
+	 * Adds an attribute to the element opened last. Must be called before any content is written to that element
+	 * @param name
+	 * @param value
+	 * @return
+	 */
+	public XmlResponseWriter attribute(String name, String value) {
+		if(!startTagOpen)
+			throw new IllegalStateException("Attribute '"+name+"' must be written before any element content");
+		buffer.writeByte(' ');
+		writeAscii(name);
+		buffer.writeByte('=');
+		buffer.writeByte('"');
+		writeEscaped(value != null ? value : "");
+		buffer.writeByte('"');
+		return this;
+	}
+
+	/**
+	 * Adds a numeric attribute to the element opened last
+	 * @param name
+	 * @param value
+	 * @return
+	 */
+	public XmlResponseWriter attribute(String name, long value) {
+		if(!startTagOpen)
+			throw new IllegalStateException("Attribute '"+name+"' must be written before any element content");
+		buffer.writeByte(' ');
+		writeAscii(name);
+		buffer.writeByte('=');
+		buffer.writeByte('"');
+		writeLong(value);
+		buffer.writeByte('"');
+		return this;
+	}
+
+	/**
+	 * Writes escaped text content to the element opened last
+	 * @param text
+	 * @return
+	 */
+	public XmlResponseWriter text(String text) {
+		closeStartTag();
+		if(text != null)
+			writeEscaped(text);
+		return this;
+	}
+
+	/**
+	 * Writes a numeric text content to the element opened last
+	 * @param value
+	 * @return
+	 */
+	public XmlResponseWriter text(long value) {
+		closeStartTag();
+		writeLong(value);
+		return this;
+	}
+
+	/**
+	 * Writes a complete element holding the provided text
+	 * @param name
+	 * @param text
+	 * @return
+	 */
+	public XmlResponseWriter element(String name, String text) {
+		startElement(name);
+		if(text != null && !text.isEmpty())
+			text(text);
+		return endElement();
+	}
+
+	/**
+	 * Writes a complete element holding the provided numeric value
+	 * @param name
+	 * @param value
+	 * @return
+	 */
+	public XmlResponseWriter element(String name, long value) {
+		return startElement(name).text(value).endElement();
+	}
+
+	/**
+	 * Closes the element opened last. Elements without any content are written as empty elements
+	 * @return
+	 */
+	public XmlResponseWriter endElement() {
+		if(depth == 0)
+			throw new IllegalStateException("No open element");
+		String name = openElements[--depth];
+		openElements[depth] = null;
+		if(startTagOpen) {
+			buffer.writeByte('/');
+			buffer.writeByte('>');
+			startTagOpen = false;
+		} else {
+			buffer.writeByte('<');
+			buffer.writeByte('/');
+			writeAscii(name);
+			buffer.writeByte('>');
+		}
+		return this;
+	}
+
+	/**
+	 * Closes all open elements and returns the buffer holding the response
+	 * @return
+	 */
+	public ChannelBuffer finish() {
+		while(depth > 0)
+			endElement();
+		return buffer;
+	}
+
+	/**
+	 * Returns the number of bytes written so far
+	 * @return
+	 */
+	public int size() {
+		return buffer.writerIndex();
+	}
+
+	private void closeStartTag() {
+		if(startTagOpen) {
+			buffer.writeByte('>');
+			startTagOpen = false;
+		}
+	}
+
+	private void writeAscii(String value) {
+		for(int i = 0; i < value.length(); i++)
+			buffer.writeByte(value.charAt(i));
+	}
+
+	/**
+	 * Writes the escaped UTF-8 representation of the given value
+	 * @param value
+	 */
+	private void writeEscaped(String value) {
+		int length = value.length();
+		for(int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			switch(c) {
+				case '&':
+					buffer.writeBytes(AMP);
+					break;
+				case '<':
+					buffer.writeBytes(LT);
+					break;
+				case '>':
+					buffer.writeBytes(GT);
+					break;
+				case '"':
+					buffer.writeBytes(QUOT);
+					break;
+				default:
+					if(c < 0x80) {
+						buffer.writeByte(c);
+					} else if(c < 0x800) {
+						buffer.writeByte(0xC0 | (c >> 6));
+						buffer.writeByte(0x80 | (c & 0x3F));
+					} else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+						int codePoint = Character.toCodePoint(c, value.charAt(++i));
+						buffer.writeByte(0xF0 | (codePoint >> 18));
+						buffer.writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+						buffer.writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+						buffer.writeByte(0x80 | (codePoint & 0x3F));
+					} else if(Character.isSurrogate(c)) {
+						// unpaired surrogates cannot be encoded
+						buffer.writeByte('?');
+					} else {
+						buffer.writeByte(0xE0 | (c >> 12));
+						buffer.writeByte(0x80 | ((c >> 6) & 0x3F));
+						buffer.writeByte(0x80 | (c & 0x3F));
+					}
+			}
+		}
+	}
+
+	/**
+	 * Writes the decimal representation of the given value
+	 * @param value
+	 */
+	private void writeLong(long value) {
+		if(value == Long.MIN_VALUE) {
+			buffer.writeBytes(LONG_MIN_VALUE);
+			return;
+		}
+		if(value < 0) {
+			buffer.writeByte('-');
+			value = -value;
+		}
+		int pos = digits.length;
+		do {
+			digits[--pos] = (byte)('0' + (value % 10));
+			value /= 10;
+		} while(value != 0);
+		buffer.writeBytes(digits, pos, digits.length - pos);
+	}
+
+}
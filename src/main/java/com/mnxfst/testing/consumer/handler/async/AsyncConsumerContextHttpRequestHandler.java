@@ -1,603 +1,1876 @@
-/*
- *  ptest-server and client provides you with a performance test utility
- *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
- *
- *  This program is free software: you can redistribute it and/or modify
- *  it under the terms of the GNU General Public License as published by
- *  the Free Software Foundation, either version 3 of the License, or
- *  (at your option) any later version.
- *
- *  This program is distributed in the hope that it will be useful,
- *  but WITHOUT ANY WARRANTY; without even the implied warranty of
- *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
- *  GNU General Public License for more details.
- *  
- *  You should have received a copy of the GNU General Public License
- *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
- *
- */
-package com.mnxfst.testing.consumer.handler.async;
-
-import java.io.ByteArrayOutputStream;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Result;
-import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.TransformerFactoryConfigurationError;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-
-import org.apache.log4j.Logger;
-import org.jboss.netty.buffer.ChannelBuffers;
-import org.jboss.netty.channel.ChannelFuture;
-import org.jboss.netty.channel.ChannelFutureListener;
-import org.jboss.netty.channel.MessageEvent;
-import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
-import org.jboss.netty.handler.codec.http.HttpHeaders;
-import org.jboss.netty.handler.codec.http.HttpRequest;
-import org.jboss.netty.handler.codec.http.HttpResponse;
-import org.jboss.netty.handler.codec.http.HttpResponseStatus;
-import org.jboss.netty.handler.codec.http.HttpVersion;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Text;
-
-import com.eaio.uuid.UUID;
-import com.mnxfst.testing.consumer.async.AsyncInputConsumerStatistics;
-import com.mnxfst.testing.consumer.async.IAsyncInputConsumer;
-import com.mnxfst.testing.consumer.exception.AsyncInputConsumerException;
-import com.mnxfst.testing.consumer.exception.HttpRequestProcessingException;
-import com.mnxfst.testing.consumer.handler.TSConsumerChannelUpstreamHandler;
-
-/**
- * The asynchronous consumer context is in charge of initializing and ramping up asynchronous consumers
- * of any source, eg. JMS. Instances of this handler receive incoming requests, parse them for actions
- * requested and execute them
- * @author ckreutzfeldt
- * @since 23.02.2012
- */
-public class AsyncConsumerContextHttpRequestHandler implements IContextRequestHandler {
-
-	private static final Logger logger = Logger.getLogger(AsyncConsumerContextHttpRequestHandler.class);
-	
-	/////////////////////////////////////////////////////////////////////////////////////////////
-	// cfg options
-	private static final String CFG_OPT_CONSUMER_TYPE_PREFIX = "consumer.async.";
-	
-	/////////////////////////////////////////////////////////////////////////////////////////////
-	// available request parameters required for starting/stopping/collecting stats from consumer 
-	private static final String REQUEST_PARAM_OP_CODE_START_CONSUMER = "start";
-	private static final String REQUEST_PARAM_OP_CODE_STOP_CONSUMER = "stop";
-	private static final String REQUEST_PARAM_OP_CODE_COLLECT_CONSUMER_STATS = "collectStats";
-	/////////////////////////////////////////////////////////////////////////////////////////////
-
-	/////////////////////////////////////////////////////////////////////////////////////////////
-	// response xml tags
-	private static final String CONSUMER_RESPONSE_STATS_ROOT_ELEMENT = "statistics";
-	private static final String CONSUMER_RESPONSE_SINGLE_CONSUMER_STAT_ELEMENT = "consumerStats";
-	private static final String CONSUMER_RESPONSE_ERRORS_ROOT_ELEMENT = "errors";
-	private static final String CONSUMER_RESPONSE_ERROR_ELEMENT = "error";
-	private static final String CONSUMER_RESPONSE_ERROR_ID_ELEMENT = "id";
-	private static final String CONSUMER_RESPONSE_ERROR_MSG_ELEMENT = "msg";	
-	private static final String CONSUMER_RESPONSE_SHUTDOWN_ROOT_ELEMENT = "shutdownConsumers";
-	private static final String CONSUMER_RESPONSE_SHUTDOWN_CONSUMER_ELEMENT = "consumer";
-	private static final String CONSUMER_RESPONSE_SHUTDOWN_CONSUMER_ID_ELEMENT = "id";
-	private static final String CONSUMER_RESPONSE_SHUTDOWN_CONSUMER_STATE_ELEMENT = "state";
-	private static final String CONSUMER_RESPONSE_SHUTDOWN_CONSUMER_STATE_MESSAGE_ELEMENT = "msg";
-	private static final String CONSUMER_RESPONSE_START_ROOT_ELEMENT = "startConsumers";
-	private static final String CONSUMER_RESPONSE_START_CONSUMER_ELEMENT = "consumer";
-	private static final String CONSUMER_RESPONSE_START_CONSUMER_ID_ELEMENT = "id";
-	private static final String CONSUMER_RESPONSE_START_CONSUMER_TYPE_ELEMENT = "type";
-	/////////////////////////////////////////////////////////////////////////////////////////////
-
-	/////////////////////////////////////////////////////////////////////////////////////////////
-	// general response codes	
-	private static final int ERROR_CODE_NO_CONSUMER_TYPES_FOUND = 1;
-	private static final int ERROR_CODE_NO_CONSUMER_IDENTIFIERS_FOUND = 2;
-	private static final int ERROR_CODE_COLLECTING_STATS_FAILED = 3;
-	private static final int ERROR_CODE_CONSUMER_START_FAILED = 4;
-	private static final int ERROR_CODE_CONSUMER_STOP_FAILED = 5;
-	private static final int ERROR_CODE_UNKNOWN_OP_CODE = 6;
-
-	private static final int CONSUMER_SHUTDOWN_STATE_SUCCESS = 1;
-	private static final int CONSUMER_SHUTDOWN_STATE_UNKNOWN_ID = 2;
-	private static final int CONSUMER_SHUTDOWN_STATE_FAILED = 3;
-	/////////////////////////////////////////////////////////////////////////////////////////////
-
-	/////////////////////////////////////////////////////////////////////////////////////////////
-	// tracking running async consumers
-	// keeps track of all running async consumer instances
-	private static ConcurrentMap<String, IAsyncInputConsumer> runningAsyncInputConsumers = new ConcurrentHashMap<String, IAsyncInputConsumer>();
-	// keeps track of all available async consumers referenced by a unique type string
-	private static ConcurrentMap<String, Class<? extends IAsyncInputConsumer>> availableAsyncInputConsumers = new ConcurrentHashMap<String, Class<? extends IAsyncInputConsumer>>();
-	// provides a runtime async environment
-	private static ExecutorService asyncConsumerExecutorService = Executors.newCachedThreadPool(); // TODO restrict number of available threads
-	/////////////////////////////////////////////////////////////////////////////////////////////
-
-	
-	/////////////////////////////////////////////////////////////////////////////////////////////
-	// required for response building 	
-	private DocumentBuilder documentBuilder = null;
-	private Transformer documentTransformer = null;
-	/////////////////////////////////////////////////////////////////////////////////////////////
-
-	// holds the configuration options provided on initialization -> mapping to list is required for faster merge process with optional parameters on instance creation
-	private Map<String, List<String>> configurationOptions = new HashMap<String, List<String>>();
-	
-	/**
-	 * Default constructor
-	 */
-	public AsyncConsumerContextHttpRequestHandler() {
-	}
-	
-	/**
-	 * @see com.mnxfst.testing.consumer.handler.async.IContextRequestHandler#initialize(java.util.Map)
-	 */
-	@SuppressWarnings("unchecked")
-	public void initialize(Map<String, String> configOptions) {
-		try {
-			this.documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-		} catch(ParserConfigurationException e) {
-			throw new RuntimeException("Failed to initialize consumer channel upstream handler. Error: " + e.getMessage(), e);
-		}
-		
-		try {
-			this.documentTransformer = TransformerFactory.newInstance().newTransformer();
-		} catch (TransformerConfigurationException e) {
-			throw new RuntimeException("Failed to initialize document transformer. Error: " + e.getMessage(), e);
-		} catch (TransformerFactoryConfigurationError e) {
-			throw new RuntimeException("Failed to initialize document transformer. Error: " + e.getMessage(), e);
-		}
-
-		// copy config options
-		for(String cfgKey : configOptions.keySet()) {
-			String cfgValue = configOptions.get(cfgKey);
-			if(cfgValue != null && !cfgKey.isEmpty()) {
-				List<String> values = new ArrayList<String>();
-				values.add(cfgValue);
-				configurationOptions.put(cfgKey, values);
-			}
-			
-			if(cfgKey.startsWith(CFG_OPT_CONSUMER_TYPE_PREFIX)) {
-				String consumerType = cfgKey.substring(CFG_OPT_CONSUMER_TYPE_PREFIX.length());
-				try {
-					Class<? extends IAsyncInputConsumer> inputConsumer = (Class<? extends IAsyncInputConsumer>) Class.forName(cfgValue);
-					availableAsyncInputConsumers.put(consumerType, inputConsumer);
-					logger.info("Added asynchronous consumer: [type="+consumerType+", class="+cfgValue+"]");
-				} catch(ClassNotFoundException e) {
-					throw new RuntimeException("Asynchronous consumer class not found: " + cfgValue);
-				}
-			}	
-		}
-		
-		
-		
-		logger.info("Successfully initialized " + AsyncConsumerContextHttpRequestHandler.class.getName());
-	}
-
-	/**
-	 * @see com.mnxfst.testing.consumer.handler.async.IContextRequestHandler#processRequest(org.jboss.netty.handler.codec.http.HttpRequest, java.util.Map, boolean, org.jboss.netty.channel.MessageEvent)
-	 */
-	public void processRequest(HttpRequest httpRequest, Map<String, List<String>> queryParams, boolean keepAlive, MessageEvent event) {
-	
-//		// ensure that the provided http request as well as the request parameters are valid
-//		if(httpRequest == null)
-//			throw new HttpRequestProcessingException("Invalid incoming request: null");
-//		if(queryParams == null)
-//			throw new HttpRequestProcessingException("Invalid incoming request parameters: null");
-		
-		// create a new response object and root element
-		Document responseDocument = documentBuilder.newDocument();
-		Element responseRootElement = responseDocument.createElement(TSConsumerChannelUpstreamHandler.CONSUMER_RESPONSE_ROOT_ELEMENT);
-		
-		// map of errors which will be added to response in the end
-		Map<Integer, String> errors = new HashMap<Integer, String>();
-		
-		// if the caller requests to start a new consumer, extract the required information and keep on going
-		if(queryParams.containsKey(REQUEST_PARAM_OP_CODE_START_CONSUMER)) {
-
-			if(logger.isDebugEnabled())
-				logger.debug("Incoming request for starting a consumer");
-			
-			// extract the types to fire up consumer for
-			String[] consumerTypes = null;
-			try {
-				consumerTypes = extractMultiParameterValues(REQUEST_PARAM_OP_CODE_START_CONSUMER, queryParams);
-			}  catch(HttpRequestProcessingException e) {
-				errors.put(ERROR_CODE_NO_CONSUMER_TYPES_FOUND, "No consumer types provided");
-			}
-			
-			// validate the set of consumer types and instantiate the referenced ones
-			if(consumerTypes != null && consumerTypes.length > 0) {
-				try {
-					Element startConsumerElement = startConsumer(consumerTypes, responseDocument, queryParams);
-					responseRootElement.appendChild(startConsumerElement);
-				} catch(HttpRequestProcessingException e) {
-					errors.put(ERROR_CODE_CONSUMER_START_FAILED, e.getMessage()); 
-				}
-			}
-		} else if(queryParams.containsKey(REQUEST_PARAM_OP_CODE_STOP_CONSUMER)) {
-			
-			if(logger.isDebugEnabled())
-				logger.debug("Incoming request for shutting down a consumer");
-			
-			// extract the identifier of those consumers to shutdown
-			String[] consumerIds = null;
-			try {
-				consumerIds = extractMultiParameterValues(REQUEST_PARAM_OP_CODE_STOP_CONSUMER, queryParams);
-			} catch(HttpRequestProcessingException e) {
-				errors.put(ERROR_CODE_NO_CONSUMER_IDENTIFIERS_FOUND, "No consumer identifiers provided");
-			}
-			
-			// validate consumer identifier array and collect statistical information from the associated instances
-			if(consumerIds != null && consumerIds.length > 0) {
-				try {
-					Element stopConsumerElement = shutdownConsumer(consumerIds, responseDocument);
-					responseRootElement.appendChild(stopConsumerElement);
-				} catch(HttpRequestProcessingException e) {
-					errors.put(ERROR_CODE_CONSUMER_STOP_FAILED, e.getMessage());
-				}
-			}
-		} else if(queryParams.containsKey(REQUEST_PARAM_OP_CODE_COLLECT_CONSUMER_STATS)) {
-
-			if(logger.isDebugEnabled())
-				logger.debug("Incoming request for collecting consumer statistics");
-
-			// extract the identifier of those consumers to collect statistical information form
-			String[] consumerIds = null;
-			try {
-				consumerIds = extractMultiParameterValues(REQUEST_PARAM_OP_CODE_COLLECT_CONSUMER_STATS, queryParams);
-			} catch(HttpRequestProcessingException e) {
-				errors.put(ERROR_CODE_NO_CONSUMER_IDENTIFIERS_FOUND, "No consumer identifiers provided");
-			}
-			
-			// validate consumer identifier array and collect statistical information from the associated instances
-			if(consumerIds != null && consumerIds.length > 0) {
-				try {
-					Element statsResponseElement = collectHandlerStatistics(consumerIds, responseDocument);
-					responseRootElement.appendChild(statsResponseElement);
-				} catch(HttpRequestProcessingException e) {
-					errors.put(ERROR_CODE_COLLECTING_STATS_FAILED, e.getMessage());
-				}
-			}
-		} else {
-			// report error
-			errors.put(ERROR_CODE_UNKNOWN_OP_CODE, "No valid op-code provided");
-		}
-
-		// add error response
-		if(errors != null && !errors.isEmpty()) {
-			Element errorsElement = createErrorElement(errors, responseDocument);
-			responseRootElement.appendChild(errorsElement);
-		}
-		
-		// finalize document, convert it into its byte representation and send it back as response
-		responseDocument.appendChild(responseRootElement);		
-		byte[] responseMessage = null;
-		try {
-			responseMessage = convertDocument(responseDocument);
-		} catch(HttpRequestProcessingException e) {
-			responseMessage = e.getMessage().getBytes();
-		}
-		sendResponse(responseMessage, keepAlive, event);
-	}
-
-	/////////////////////////////////////// CONSUMER ACTIONS //////////////////////////////////////////////
-	
-	/**
-	 * Starts the referenced consumer types and returns an xml document containing all required information for controlling the service
-	 * @param consumerTypes
-	 * @param responseDocument
-	 * @return
-	 * @throws HttpRequestProcessingException
-	 */
-	protected Element startConsumer(String[] consumerTypes, Document responseDocument, Map<String, List<String>> queryParams) throws HttpRequestProcessingException {
-		
-		// create response root element
-		Element startConsumersRootElement = responseDocument.createElement(CONSUMER_RESPONSE_START_ROOT_ELEMENT);
-		
-		// prepare configuration options
-		Map<String, List<String>> configOptions = new HashMap<String, List<String>>(configurationOptions);
-		configOptions.putAll(queryParams);
-		
-		Set<IAsyncInputConsumer> createdConsumers = new HashSet<IAsyncInputConsumer>();
-		
-		// iterate through the set of requested consumer types and instantiate the consumer
-		for(int i = 0; i < consumerTypes.length; i++) {			
-			try {
-				IAsyncInputConsumer asyncInputConsumer = instantiateAsyncInputConsumer(consumerTypes[i], configOptions);
-				createdConsumers.add(asyncInputConsumer);
-			} catch(AsyncInputConsumerException e) {
-				for(IAsyncInputConsumer c : createdConsumers) {
-					try {
-						c.shutdown();
-					} catch(Exception e1) {
-						logger.error("Failed to shutdown async consumer: " + e1.getMessage(), e1);
-					}
-				}
-				throw new HttpRequestProcessingException("Failed to instantiate consumer for type '"+consumerTypes[i]+"'. Error: " + e.getMessage());
-			} 
-		}
-		
-		// if there are any consumers and there has been no previous exception, provide the consumers for the executor service
-		if(!createdConsumers.isEmpty()) {
-			for(IAsyncInputConsumer asyncInputConsumer : createdConsumers) {
-			
-				asyncConsumerExecutorService.execute(asyncInputConsumer);
-				runningAsyncInputConsumers.putIfAbsent(asyncInputConsumer.getId(), asyncInputConsumer);
-				
-				Element startConsumerElement = responseDocument.createElement(CONSUMER_RESPONSE_START_CONSUMER_ELEMENT);
-				
-				Element consumerIdElement = responseDocument.createElement(CONSUMER_RESPONSE_START_CONSUMER_ID_ELEMENT);
-				Text consumerIdText = responseDocument.createTextNode(asyncInputConsumer.getId());
-				consumerIdElement.appendChild(consumerIdText);
-				
-				Element consumerTypeElement = responseDocument.createElement(CONSUMER_RESPONSE_START_CONSUMER_TYPE_ELEMENT);
-				Text consumerTypeText = responseDocument.createTextNode(asyncInputConsumer.getType());
-				consumerTypeElement.appendChild(consumerTypeText);
-				
-				startConsumerElement.appendChild(consumerIdElement);
-				startConsumerElement.appendChild(consumerTypeElement);
-				
-				startConsumersRootElement.appendChild(startConsumerElement);
-				
-				if(logger.isDebugEnabled())
-					logger.debug("asyncConsumer[id="+asyncInputConsumer.getId()+", type="+asyncInputConsumer.getType()+"] successfully started");
-			}
-		} else {
-			throw new HttpRequestProcessingException("No consumers created");
-		}
-		
-		return startConsumersRootElement;
-		
-	}	
-	
-	/**
-	 * Shuts down the referenced consumers
-	 * @param consumerIds
-	 * @param responseDocument
-	 * @return
-	 * @throws HttpRequestProcessingException
-	 */
-	protected Element shutdownConsumer(String[] consumerIds, Document responseDocument) throws HttpRequestProcessingException {
-		
-		// create shutdown response root element
-		Element shutdownRootElement = responseDocument.createElement(CONSUMER_RESPONSE_SHUTDOWN_ROOT_ELEMENT);
-		
-		for(int i = 0; i < consumerIds.length; i++) {
-			
-			IAsyncInputConsumer asyncInputConsumer = runningAsyncInputConsumers.get(consumerIds[i]);
-			
-			// create response elements
-			Element shutdownElement = responseDocument.createElement(CONSUMER_RESPONSE_SHUTDOWN_CONSUMER_ELEMENT);
-			Element consumerIdElement = responseDocument.createElement(CONSUMER_RESPONSE_SHUTDOWN_CONSUMER_ID_ELEMENT);
-			Element stateElement = responseDocument.createElement(CONSUMER_RESPONSE_SHUTDOWN_CONSUMER_STATE_ELEMENT);
-			Element stateMessageElement = responseDocument.createElement(CONSUMER_RESPONSE_SHUTDOWN_CONSUMER_STATE_MESSAGE_ELEMENT);
-			
-			// add consumer id to consumer id element
-			Text consumerIdText = responseDocument.createTextNode(consumerIds[i]);
-			consumerIdElement.appendChild(consumerIdText);
-			
-			Text stateText = null;
-			Text stateMessage = null;
-			if(asyncInputConsumer != null) {
-				try {
-					asyncInputConsumer.shutdown();
-					stateText = responseDocument.createTextNode(String.valueOf(CONSUMER_SHUTDOWN_STATE_SUCCESS));
-					stateMessage = responseDocument.createTextNode("");					
-				} catch(AsyncInputConsumerException e) {
-					stateText = responseDocument.createTextNode(String.valueOf(CONSUMER_SHUTDOWN_STATE_FAILED));
-					stateMessage = responseDocument.createTextNode(e.getMessage());
-				}
-			} else {
-				stateText = responseDocument.createTextNode(String.valueOf(CONSUMER_SHUTDOWN_STATE_UNKNOWN_ID));
-				stateMessage = responseDocument.createTextNode("");
-			}
-			// add state text
-			stateElement.appendChild(stateText);
-			stateMessageElement.appendChild(stateMessage);
-			
-			// append consumer id and state to shutdown element
-			shutdownElement.appendChild(consumerIdElement);
-			shutdownElement.appendChild(stateElement);
-			shutdownElement.appendChild(stateMessageElement);
-			
-			shutdownRootElement.appendChild(shutdownElement);
-		}
-		
-		return shutdownRootElement;
-		
-	}	
-	
-	/**
-	 * Collects the statistics for the referenced consumers, creates a response xml element and returns the result.
-	 * The result will be contained in the provided element. The caller must add the element to the document. Beside
-	 * that the caller must ensure that the provided input is neither null nor empty.
-	 * @param consumerIds
-	 * @return
-	 * @throws HttpRequestProcessingException
-	 * @throws TransformerFactoryConfigurationError 
-	 * @throws TransformerConfigurationException 
-	 */
-	protected Element collectHandlerStatistics(String[] consumerIds, Document responseDocument) throws HttpRequestProcessingException {
-		
-		// create statistics root element
-		Element statsRootElement = responseDocument.createElement(CONSUMER_RESPONSE_STATS_ROOT_ELEMENT);
-
-		for(int i = 0; i < consumerIds.length; i++) {
-			
-			IAsyncInputConsumer consumer = runningAsyncInputConsumers.get(consumerIds[i]);
-			if(consumer == null)
-				throw new HttpRequestProcessingException("No such consumer: " + consumerIds[i]);
-			
-			Element consumerStatElement = responseDocument.createElement(CONSUMER_RESPONSE_SINGLE_CONSUMER_STAT_ELEMENT);
-			consumerStatElement.setAttribute("consumerId" , consumerIds[i]);
-			consumerStatElement.setAttribute("id", consumer.getId());
-			consumerStatElement.setAttribute("type", consumer.getType());
-			
-			AsyncInputConsumerStatistics stats = consumer.getConsumerStatistics();
-			if(stats != null) {
-				// TODO implement
-			}
-			
-			statsRootElement.appendChild(consumerStatElement);
-		}
-		
-		return statsRootElement;		
-	}
-	
-	/**
-	 * Creates an instance from the {@link IAsyncInputConsumer consumer class} referenced by the given type. The instance
-	 * will be initialized using the provided configuration options
-	 * @param consumerType
-	 * @param configOptions
-	 * @return
-	 * @throws HttpRequestProcessingException
-	 */
-	protected IAsyncInputConsumer instantiateAsyncInputConsumer(String consumerType, Map<String, List<String>> configOptions) throws AsyncInputConsumerException {
-
-		// validate the consumer type
-		if(consumerType == null || consumerType.isEmpty())
-			throw new AsyncInputConsumerException("Missing required consumer type");
-		
-		// fetch the consumer class referenced 
-		Class<? extends IAsyncInputConsumer> consumerClazz = availableAsyncInputConsumers.get(consumerType);
-		if(consumerClazz == null)
-			throw new AsyncInputConsumerException("Consumer type '"+consumerType+"' does not reference an available consumer class");
-		
-		// instantiate the consumer, set the identifier and type and provide config options
-		try {
-			IAsyncInputConsumer instance = consumerClazz.newInstance();
-			instance.setType(consumerType);
-			instance.setId(new UUID().toString());
-			instance.initialize(configOptions);
-			return instance;
-		} catch(InstantiationException e) {
-			throw new AsyncInputConsumerException("Failed to instantiate consumer class '"+consumerClazz+"'. Error: " + e.getMessage());
-		} catch (IllegalAccessException e) {
-			throw new AsyncInputConsumerException("Failed to access consumer class '"+consumerClazz+"'. Error: " + e.getMessage());		
-		}
-		
-	}
-	
-	/////////////////////////////////////// REQUEST SPECIFC METHODS ///////////////////////////////////////
-
-	/**
-	 * Returns an array of strings containing the values received for the referenced parameter 
-	 * @param parameter
-	 * @param queryParams
-	 * @return
-	 * @throws HttpRequestProcessingException thrown in case there are no values 
-	 */
-	protected String[] extractMultiParameterValues(String parameter, Map<String, List<String>> queryParams) throws HttpRequestProcessingException {
-		
-		List<String> values = queryParams.get(parameter);
-		if(values != null && !values.isEmpty()) {
-			String[] result = new String[values.size()];
-			for(int i = 0; i < values.size(); i++) {
-				String v = values.get(i);				
-				result[i] = (v != null ? v.trim() : "");
-			}
-			return result;
-		}
-		
-		throw new HttpRequestProcessingException("Parameter '"+parameter+"' references no values");
-	}
-
-	/**
-	 * Sends a response containing the given message to the calling client
-	 * @param responseMessage
-	 * @param keepAlive
-	 * @param event
-	 */
-	protected void sendResponse(byte[] responseMessage, boolean keepAlive, MessageEvent event) {
-		HttpResponse httpResponse = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
-		
-		httpResponse.setContent(ChannelBuffers.copiedBuffer(responseMessage));
-		httpResponse.setHeader(HttpHeaders.Names.CONTENT_TYPE, "text/plain; charset=UTF-8");
-		
-		if(keepAlive)
-			httpResponse.setHeader(HttpHeaders.Names.CONTENT_LENGTH, httpResponse.getContent().readableBytes());
-		
-		ChannelFuture future = event.getChannel().write(httpResponse);
-		if(!keepAlive)
-			future.addListener(ChannelFutureListener.CLOSE);
-	}
-
-	/**
-	 * Creates a response element from the provided set of error code / error message mappings
-	 * @param errorCodeMessages
-	 * @return
-	 */
-	protected Element createErrorElement(Map<Integer, String> errorCodeMessages, Document responseDocument) {
-		
-		// create error response root element
-		Element errorRootElement = responseDocument.createElement(CONSUMER_RESPONSE_ERRORS_ROOT_ELEMENT);
-		
-		// step through identifiers and fetch associated messages
-		for(Integer id : errorCodeMessages.keySet()) {			
-			String msg = errorCodeMessages.get(id);
-			
-			// create required elements
-			Element errorElement = responseDocument.createElement(CONSUMER_RESPONSE_ERROR_ELEMENT);
-			Element errorIdElement = responseDocument.createElement(CONSUMER_RESPONSE_ERROR_ID_ELEMENT);
-			Element errorMsgElement = responseDocument.createElement(CONSUMER_RESPONSE_ERROR_MSG_ELEMENT);
-			
-			Text idTextElement = responseDocument.createTextNode(id.toString());
-			Text msgTextElement = responseDocument.createTextNode(msg);
-			
-			// set node values for id and message
-			errorIdElement.appendChild(idTextElement);
-			errorMsgElement.appendChild(msgTextElement);
-			
-			// append id and msg element to error element
-			errorElement.appendChild(errorIdElement);
-			errorElement.appendChild(errorMsgElement);
-			
-			// append error element to errors root
-			errorRootElement.appendChild(errorElement);
-		}
-		
-		return errorRootElement;		
-	}
-
-	/**
-	 * Converts a provided document into its byte array representation
-	 * @param document
-	 * @return
-	 * @throws HttpRequestProcessingException
-	 */
-	protected byte[] convertDocument(Document document) throws HttpRequestProcessingException {
-		
-		try {
-			ByteArrayOutputStream result = new ByteArrayOutputStream();
-			Source input = new DOMSource(document);
-			Result output = new StreamResult(result);
-			documentTransformer.transform(input, output);
-			return result.toByteArray();
-		} catch(TransformerConfigurationException e) {
-			throw new HttpRequestProcessingException("Failed to convert provided document into a processable representation. Error: " + e.getMessage());
-		} catch (TransformerException e) {
-			throw new HttpRequestProcessingException("Failed to convert provided document into a processable representation. Error: " + e.getMessage());
-		}		
-	}
-
-	//////////////////////////////////////////////////////////////////////////////////////////////////////////////////
-	
-}
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.consumer.handler.async;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+
+import com.eaio.uuid.UUID;
+import com.mnxfst.testing.consumer.analyzer.IMessageAnalyzerHost;
+import com.mnxfst.testing.consumer.analyzer.MessageAnalyzerPipeline;
+import com.mnxfst.testing.consumer.analyzer.SamplingPolicy;
+import com.mnxfst.testing.consumer.async.AsyncInputConsumerStatistics;
+import com.mnxfst.testing.consumer.async.AsyncInputConsumerStatisticsAggregate;
+import com.mnxfst.testing.consumer.async.AsyncInputConsumerStatisticsAggregate.ConsumerLatency;
+import com.mnxfst.testing.consumer.async.AsyncInputConsumerStatisticsAggregationTask;
+import com.mnxfst.testing.consumer.async.ConsumerPoolStatistics;
+import com.mnxfst.testing.consumer.async.ConsumerScheduler;
+import com.mnxfst.testing.consumer.async.AsyncInputConsumerStatisticsSnapshot;
+import com.mnxfst.testing.consumer.async.IAsyncInputConsumer;
+import com.mnxfst.testing.consumer.async.IAsyncInputConsumerFactory;
+import com.mnxfst.testing.consumer.async.LatencyHistogramSnapshot;
+import com.mnxfst.testing.consumer.async.StandbyConsumerPool;
+import com.mnxfst.testing.consumer.async.StandbyPoolStatistics;
+import com.mnxfst.testing.consumer.async.ThroughputWindowSnapshot;
+import com.mnxfst.testing.consumer.exception.AsyncInputConsumerException;
+import com.mnxfst.testing.consumer.exception.HttpRequestProcessingException;
+import com.mnxfst.testing.consumer.handler.IStatisticsSection;
+import com.mnxfst.testing.consumer.handler.QueryParameters;
+import com.mnxfst.testing.consumer.handler.StatisticsSectionRegistry;
+import com.mnxfst.testing.consumer.handler.TSConsumerChannelUpstreamHandler;
+import com.mnxfst.testing.consumer.handler.XmlResponseWriter;
+
+/**
+ * The asynchronous consumer context is in charge of initializing and ramping up asynchronous consumers
+ * of any source, eg. JMS. Instances of this handler receive incoming requests, parse them for actions
+ * requested and execute them
+ * @author ckreutzfeldt
+ * @since 23.02.2012
+ */
+public class AsyncConsumerContextHttpRequestHandler implements IContextRequestHandler {
+
+	private static final Logger logger = Logger.getLogger(AsyncConsumerContextHttpRequestHandler.class);
+	
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// cfg options
+	private static final String CFG_OPT_CONSUMER_TYPE_PREFIX = "consumer.async.";
+	// maximum number of consumers initialized concurrently
+	private static final String CFG_OPT_START_CONCURRENCY = "consumer.start.concurrency";
+	private static final int DEFAULT_START_CONCURRENCY = 16;
+	// interval at which ramps are evaluated
+	private static final String CFG_OPT_RAMP_TICK_MILLIS = "consumer.ramp.tickMillis";
+	private static final int DEFAULT_RAMP_TICK_MILLIS = 50;
+	// number of finished ramps kept for status queries
+	private static final int MAX_FINISHED_RAMPS = 64;
+	// number of standby consumers initialized concurrently while refilling
+	private static final String CFG_OPT_STANDBY_REFILL_THREADS = "consumer.standby.refillThreads";
+	// time granted to stopped consumers for leaving their run method
+	private static final String CFG_OPT_STOP_DRAIN_TIMEOUT_MILLIS = "consumer.stop.drainTimeoutMillis";
+	private static final int DEFAULT_STOP_DRAIN_TIMEOUT_MILLIS = 5000;
+	// maximum number of consumers shut down concurrently
+	private static final String CFG_OPT_STOP_CONCURRENCY = "consumer.stop.concurrency";
+	private static final int DEFAULT_STOP_CONCURRENCY = 16;
+	// number of stopped consumers whose final statistics are kept
+	private static final String CFG_OPT_STOP_RETAINED_STATISTICS = "consumer.stop.retainedStatistics";
+	private static final int DEFAULT_STOP_RETAINED_STATISTICS = 256;
+	
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// available request parameters required for starting/stopping/collecting stats from consumer 
+	private static final String REQUEST_PARAM_OP_CODE_START_CONSUMER = "start";
+	private static final String REQUEST_PARAM_OP_CODE_STOP_CONSUMER = "stop";
+	private static final String REQUEST_PARAM_OP_CODE_COLLECT_CONSUMER_STATS = "collectStats";
+	private static final String REQUEST_PARAM_OP_CODE_COLLECT_SCHEDULER_STATS = "schedulerStats";
+	private static final String REQUEST_PARAM_OP_CODE_RAMP = "ramp";
+	private static final String REQUEST_PARAM_OP_CODE_RAMP_STATUS = "rampStatus";
+	private static final String REQUEST_PARAM_OP_CODE_RAMP_CANCEL = "rampCancel";
+	private static final String REQUEST_PARAM_OP_CODE_SAMPLING = "sampling";
+	// optional: number of consumers started for each type referenced by start, count.<type> applies to a single type
+	private static final String REQUEST_PARAM_START_COUNT = "count";
+	// optional: number of consumers initialized concurrently, limited by the configured start concurrency
+	private static final String REQUEST_PARAM_START_CONCURRENCY = "concurrency";
+	// ramp settings: direction (up, down), duration (ms), profile (linear, step, curve), steps and curve (comma separated points)
+	private static final String REQUEST_PARAM_RAMP_DIRECTION = "direction";
+	private static final String REQUEST_PARAM_RAMP_DURATION = "duration";
+	private static final String REQUEST_PARAM_RAMP_PROFILE = "profile";
+	private static final String REQUEST_PARAM_RAMP_STEPS = "steps";
+	private static final String REQUEST_PARAM_RAMP_CURVE = "curve";
+	// optional: time granted to stopped consumers for leaving their run method, given in milliseconds
+	private static final String REQUEST_PARAM_STOP_DRAIN_TIMEOUT = "drainTimeout";
+	// optional: if set to false, consumers are always created instead of being taken from the standby pool
+	private static final String REQUEST_PARAM_STANDBY = "standby";
+	// optional: if set to true, statistics include the raw throughput window buckets 
+	private static final String REQUEST_PARAM_STATS_SERIES = "series";
+	// optional: number of slowest consumers listed by aggregated statistics
+	private static final String REQUEST_PARAM_STATS_TOP = "top";
+	// sampling settings: analyzer name (all analyzers if missing) and policy specification (report only if missing)
+	private static final String REQUEST_PARAM_SAMPLING_ANALYZER = "analyzer";
+	private static final String REQUEST_PARAM_SAMPLING_POLICY = "policy";
+	// collectStats values addressing all running consumers or all running consumers of a type instead of a single one
+	private static final String STATS_SELECTOR_ALL_CONSUMERS = "*";
+	private static final String STATS_SELECTOR_TYPE_PREFIX = "type:";
+	// collectStats values addressing statistics sections contributed by shared resources, section:* addresses all of them
+	private static final String STATS_SELECTOR_SECTION_PREFIX = "section:";
+	// parameters controlling start requests, any other parameter overrides consumer settings
+	private static final Set<String> CONSUMER_START_CONTROL_PARAMS = new HashSet<String>(Arrays.asList(REQUEST_PARAM_OP_CODE_START_CONSUMER, 
+			REQUEST_PARAM_OP_CODE_RAMP, REQUEST_PARAM_START_COUNT, REQUEST_PARAM_START_CONCURRENCY, REQUEST_PARAM_RAMP_DIRECTION, REQUEST_PARAM_RAMP_DURATION, 
+			REQUEST_PARAM_RAMP_PROFILE, REQUEST_PARAM_RAMP_STEPS, REQUEST_PARAM_RAMP_CURVE, REQUEST_PARAM_STANDBY));
+	
+	// the request parser resolves these names without creating strings for them
+	static {
+		QueryParameters.registerKnownKeys(REQUEST_PARAM_OP_CODE_START_CONSUMER, REQUEST_PARAM_OP_CODE_STOP_CONSUMER, REQUEST_PARAM_OP_CODE_COLLECT_CONSUMER_STATS, 
+				REQUEST_PARAM_OP_CODE_COLLECT_SCHEDULER_STATS, REQUEST_PARAM_OP_CODE_RAMP, REQUEST_PARAM_OP_CODE_RAMP_STATUS, REQUEST_PARAM_OP_CODE_RAMP_CANCEL, 
+				REQUEST_PARAM_OP_CODE_SAMPLING, REQUEST_PARAM_START_COUNT, REQUEST_PARAM_START_CONCURRENCY, REQUEST_PARAM_RAMP_DIRECTION, REQUEST_PARAM_RAMP_DURATION, 
+				REQUEST_PARAM_RAMP_PROFILE, REQUEST_PARAM_RAMP_STEPS, REQUEST_PARAM_RAMP_CURVE, REQUEST_PARAM_STOP_DRAIN_TIMEOUT, REQUEST_PARAM_STANDBY, 
+				REQUEST_PARAM_STATS_SERIES, REQUEST_PARAM_STATS_TOP, REQUEST_PARAM_SAMPLING_ANALYZER, REQUEST_PARAM_SAMPLING_POLICY);
+	}
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// response xml tags
+	private static final String CONSUMER_RESPONSE_STATS_ROOT_ELEMENT = "statistics";
+	private static final String CONSUMER_RESPONSE_SINGLE_CONSUMER_STAT_ELEMENT = "consumerStats";
+	private static final String CONSUMER_RESPONSE_AGGREGATE_STAT_ELEMENT = "aggregateStats";
+	private static final String CONSUMER_RESPONSE_AGGREGATE_SELECTOR_ATTRIBUTE = "selector";
+	private static final String CONSUMER_RESPONSE_AGGREGATE_CONSUMERS_ATTRIBUTE = "consumers";
+	private static final String CONSUMER_RESPONSE_AGGREGATE_RATES_EXCLUDED_ELEMENT = "ratesExcluded";
+	private static final String CONSUMER_RESPONSE_SLOWEST_ROOT_ELEMENT = "slowest";
+	private static final String CONSUMER_RESPONSE_SLOWEST_BY_ATTRIBUTE = "by";
+	private static final String CONSUMER_RESPONSE_SLOWEST_CONSUMER_ELEMENT = "consumer";
+	private static final String CONSUMER_RESPONSE_STATS_MESSAGES_ELEMENT = "messages";
+	private static final String CONSUMER_RESPONSE_STATS_BYTES_ELEMENT = "bytes";
+	private static final String CONSUMER_RESPONSE_STATS_ERRORS_ELEMENT = "messageErrors";
+	private static final String CONSUMER_RESPONSE_STATS_REDELIVERIES_ELEMENT = "redeliveries";
+	private static final String CONSUMER_RESPONSE_STATS_UPTIME_ELEMENT = "uptime";
+	private static final String CONSUMER_RESPONSE_LATENCY_ROOT_ELEMENT = "latency";
+	private static final String CONSUMER_RESPONSE_LATENCY_UNIT_ATTRIBUTE = "unit";
+	private static final String CONSUMER_RESPONSE_LATENCY_UNIT_VALUE = "us";
+	private static final String CONSUMER_RESPONSE_LATENCY_COUNT_ELEMENT = "count";
+	private static final String CONSUMER_RESPONSE_LATENCY_MIN_ELEMENT = "min";
+	private static final String CONSUMER_RESPONSE_LATENCY_MEAN_ELEMENT = "mean";
+	private static final String CONSUMER_RESPONSE_LATENCY_P50_ELEMENT = "p50";
+	private static final String CONSUMER_RESPONSE_LATENCY_P90_ELEMENT = "p90";
+	private static final String CONSUMER_RESPONSE_LATENCY_P99_ELEMENT = "p99";
+	private static final String CONSUMER_RESPONSE_LATENCY_P999_ELEMENT = "p999";
+	private static final String CONSUMER_RESPONSE_LATENCY_MAX_ELEMENT = "max";
+	private static final String CONSUMER_RESPONSE_LATENCY_OVERFLOWS_ELEMENT = "overflows";
+	private static final String CONSUMER_RESPONSE_RATES_ROOT_ELEMENT = "rates";
+	private static final String CONSUMER_RESPONSE_RATES_UNIT_ATTRIBUTE = "unit";
+	private static final String CONSUMER_RESPONSE_RATES_UNIT_VALUE = "1/s";
+	private static final String CONSUMER_RESPONSE_RATES_BUCKET_MILLIS_ATTRIBUTE = "bucketMillis";
+	private static final String CONSUMER_RESPONSE_RATES_BUCKETS_ATTRIBUTE = "buckets";
+	private static final String CONSUMER_RESPONSE_RATES_CURRENT_ELEMENT = "current";
+	private static final String CONSUMER_RESPONSE_RATES_PEAK_ELEMENT = "peak";
+	private static final String CONSUMER_RESPONSE_RATES_AVERAGE_ELEMENT = "average";
+	private static final String CONSUMER_RESPONSE_RATES_SERIES_ELEMENT = "series";
+	private static final String CONSUMER_RESPONSE_RATES_BUCKET_ELEMENT = "bucket";
+	private static final String CONSUMER_RESPONSE_ERRORS_ROOT_ELEMENT = "errors";
+	private static final String CONSUMER_RESPONSE_ERROR_ELEMENT = "error";
+	private static final String CONSUMER_RESPONSE_ERROR_ID_ELEMENT = "id";
+	private static final String CONSUMER_RESPONSE_ERROR_MSG_ELEMENT = "msg";	
+	private static final String CONSUMER_RESPONSE_SHUTDOWN_ROOT_ELEMENT = "shutdownConsumers";
+	private static final String CONSUMER_RESPONSE_SHUTDOWN_CONSUMER_ELEMENT = "consumer";
+	private static final String CONSUMER_RESPONSE_SHUTDOWN_CONSUMER_ID_ELEMENT = "id";
+	private static final String CONSUMER_RESPONSE_SHUTDOWN_CONSUMER_STATE_ELEMENT = "state";
+	private static final String CONSUMER_RESPONSE_SHUTDOWN_CONSUMER_STATE_MESSAGE_ELEMENT = "msg";
+	private static final String CONSUMER_RESPONSE_SHUTDOWN_DRAIN_TIME_ELEMENT = "drainTime";
+	private static final String CONSUMER_RESPONSE_STATS_STATE_ATTRIBUTE = "state";
+	private static final String CONSUMER_RESPONSE_STATS_STATE_STOPPED = "stopped";
+	private static final String CONSUMER_RESPONSE_SECTION_ELEMENT = "section";
+	private static final String CONSUMER_RESPONSE_SECTION_NAME_ATTRIBUTE = "name";
+	private static final String CONSUMER_RESPONSE_START_ROOT_ELEMENT = "startConsumers";
+	private static final String CONSUMER_RESPONSE_START_CONSUMER_ELEMENT = "consumer";
+	private static final String CONSUMER_RESPONSE_START_CONSUMER_ID_ELEMENT = "id";
+	private static final String CONSUMER_RESPONSE_START_CONSUMER_TYPE_ELEMENT = "type";
+	private static final String CONSUMER_RESPONSE_START_CONSUMER_STANDBY_ELEMENT = "standby";
+	private static final String CONSUMER_RESPONSE_START_LATENCY_ELEMENT = "startLatency";
+	private static final String CONSUMER_RESPONSE_START_LATENCY_UNIT_ATTRIBUTE = "unit";
+	private static final String CONSUMER_RESPONSE_START_LATENCY_UNIT_VALUE = "us";
+	private static final String CONSUMER_RESPONSE_ADMISSION_ELEMENT = "admission";
+	private static final String CONSUMER_RESPONSE_ADMISSION_REQUESTED_ATTRIBUTE = "requested";
+	private static final String CONSUMER_RESPONSE_ADMISSION_ADMITTED_ATTRIBUTE = "admitted";
+	private static final String CONSUMER_RESPONSE_SCHEDULER_ROOT_ELEMENT = "scheduler";
+	private static final String CONSUMER_RESPONSE_RAMPS_ROOT_ELEMENT = "ramps";
+	private static final String CONSUMER_RESPONSE_RAMP_ELEMENT = "ramp";
+	private static final String CONSUMER_RESPONSE_RAMP_ID_ATTRIBUTE = "id";
+	private static final String CONSUMER_RESPONSE_RAMP_TYPE_ATTRIBUTE = "type";
+	private static final String CONSUMER_RESPONSE_RAMP_DIRECTION_ATTRIBUTE = "direction";
+	private static final String CONSUMER_RESPONSE_RAMP_PROFILE_ATTRIBUTE = "profile";
+	private static final String CONSUMER_RESPONSE_RAMP_COUNT_ATTRIBUTE = "count";
+	private static final String CONSUMER_RESPONSE_RAMP_DURATION_ATTRIBUTE = "duration";
+	private static final String CONSUMER_RESPONSE_RAMP_STATE_ATTRIBUTE = "state";
+	private static final String CONSUMER_RESPONSE_RAMP_ELAPSED_ELEMENT = "elapsed";
+	private static final String CONSUMER_RESPONSE_RAMP_TARGET_ELEMENT = "target";
+	private static final String CONSUMER_RESPONSE_RAMP_DISPATCHED_ELEMENT = "dispatched";
+	private static final String CONSUMER_RESPONSE_RAMP_SUCCEEDED_ELEMENT = "succeeded";
+	private static final String CONSUMER_RESPONSE_RAMP_FAILED_ELEMENT = "failed";
+	private static final String CONSUMER_RESPONSE_POOL_ELEMENT = "pool";
+	private static final String CONSUMER_RESPONSE_POOL_TYPE_ATTRIBUTE = "type";
+	private static final String CONSUMER_RESPONSE_POOL_THREADS_ATTRIBUTE = "threads";
+	private static final String CONSUMER_RESPONSE_POOL_QUEUE_ATTRIBUTE = "queue";
+	private static final String CONSUMER_RESPONSE_POOL_REJECTION_POLICY_ATTRIBUTE = "rejectionPolicy";
+	private static final String CONSUMER_RESPONSE_POOL_EXECUTION_MODE_ATTRIBUTE = "executionMode";
+	private static final String CONSUMER_RESPONSE_POOL_ACTIVE_ATTRIBUTE = "active";
+	private static final String CONSUMER_RESPONSE_POOL_QUEUED_ATTRIBUTE = "queued";
+	private static final String CONSUMER_RESPONSE_POOL_AVAILABLE_ATTRIBUTE = "available";
+	private static final String CONSUMER_RESPONSE_POOL_REJECTED_ATTRIBUTE = "rejected";
+	private static final String CONSUMER_RESPONSE_POOL_COMPLETED_ATTRIBUTE = "completed";
+	private static final String CONSUMER_RESPONSE_STANDBY_ELEMENT = "standby";
+	private static final String CONSUMER_RESPONSE_STANDBY_SIZE_ATTRIBUTE = "size";
+	private static final String CONSUMER_RESPONSE_STANDBY_AVAILABLE_ATTRIBUTE = "available";
+	private static final String CONSUMER_RESPONSE_STANDBY_PENDING_ATTRIBUTE = "pending";
+	private static final String CONSUMER_RESPONSE_STANDBY_HITS_ATTRIBUTE = "hits";
+	private static final String CONSUMER_RESPONSE_STANDBY_MISSES_ATTRIBUTE = "misses";
+	private static final String CONSUMER_RESPONSE_STANDBY_FAILURES_ATTRIBUTE = "failures";
+	private static final String CONSUMER_RESPONSE_SAMPLING_ROOT_ELEMENT = "sampling";
+	private static final String CONSUMER_RESPONSE_SAMPLING_CONSUMER_ELEMENT = "consumer";
+	private static final String CONSUMER_RESPONSE_SAMPLING_CONSUMER_ID_ATTRIBUTE = "id";
+	private static final String CONSUMER_RESPONSE_SAMPLING_CONSUMER_TYPE_ATTRIBUTE = "type";
+	private static final String CONSUMER_RESPONSE_SAMPLING_STAGE_ELEMENT = "stage";
+	private static final String CONSUMER_RESPONSE_SAMPLING_PIPELINE_ATTRIBUTE = "pipeline";
+	private static final String CONSUMER_RESPONSE_SAMPLING_ANALYZER_ATTRIBUTE = "analyzer";
+	private static final String CONSUMER_RESPONSE_SAMPLING_POLICY_ATTRIBUTE = "policy";
+	private static final String CONSUMER_RESPONSE_SAMPLING_PROCESSED_ATTRIBUTE = "processed";
+	private static final String CONSUMER_RESPONSE_SAMPLING_SAMPLED_ATTRIBUTE = "sampled";
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// general response codes	
+	private static final int ERROR_CODE_NO_CONSUMER_TYPES_FOUND = 1;
+	private static final int ERROR_CODE_NO_CONSUMER_IDENTIFIERS_FOUND = 2;
+	private static final int ERROR_CODE_COLLECTING_STATS_FAILED = 3;
+	private static final int ERROR_CODE_CONSUMER_START_FAILED = 4;
+	private static final int ERROR_CODE_CONSUMER_STOP_FAILED = 5;
+	private static final int ERROR_CODE_UNKNOWN_OP_CODE = 6;
+	private static final int ERROR_CODE_RAMP_FAILED = 7;
+	private static final int ERROR_CODE_SAMPLING_FAILED = 8;
+
+	private static final int CONSUMER_SHUTDOWN_STATE_SUCCESS = 1;
+	private static final int CONSUMER_SHUTDOWN_STATE_UNKNOWN_ID = 2;
+	private static final int CONSUMER_SHUTDOWN_STATE_FAILED = 3;
+	private static final int CONSUMER_SHUTDOWN_STATE_DRAIN_TIMEOUT = 4;
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// tracking running async consumers
+	// keeps track of all running async consumer instances
+	private static ConcurrentMap<String, IAsyncInputConsumer> runningAsyncInputConsumers = new ConcurrentHashMap<String, IAsyncInputConsumer>();
+	// completes as soon as the run method of the consumer registered for the same identifier returned
+	private static ConcurrentMap<String, Future<?>> runningAsyncInputConsumerFutures = new ConcurrentHashMap<String, Future<?>>();
+	// final statistics of recently stopped consumers, the least recently accessed ones are evicted first
+	private static volatile int stoppedConsumerStatisticsCapacity = DEFAULT_STOP_RETAINED_STATISTICS;
+	@SuppressWarnings("serial")
+	private static Map<String, AsyncInputConsumerStatisticsSnapshot> stoppedConsumerStatistics = Collections.synchronizedMap(
+			new LinkedHashMap<String, AsyncInputConsumerStatisticsSnapshot>(16, 0.75f, true) {
+				protected boolean removeEldestEntry(Map.Entry<String, AsyncInputConsumerStatisticsSnapshot> eldest) {
+					return size() > stoppedConsumerStatisticsCapacity;
+				}
+			});
+	// keeps track of all available async consumers referenced by a unique type string
+	private static ConcurrentMap<String, Class<? extends IAsyncInputConsumer>> availableAsyncInputConsumers = new ConcurrentHashMap<String, Class<? extends IAsyncInputConsumer>>();
+	// provides a runtime async environment: bounded thread pools, one per consumer type
+	private static ConsumerScheduler consumerScheduler = new ConsumerScheduler();
+	// merges the statistics of many consumers in parallel
+	private static ForkJoinPool statisticsAggregationPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	// initializes consumers concurrently, the pool size bounds the start concurrency
+	private static ThreadPoolExecutor consumerStartExecutorService = newConsumerExecutor(DEFAULT_START_CONCURRENCY, "consumer-start-");
+	// shuts down consumers concurrently, kept apart from the start executor thus stopping never waits for pending starts
+	private static ThreadPoolExecutor consumerStopExecutorService = newConsumerExecutor(DEFAULT_STOP_CONCURRENCY, "consumer-stop-");
+	// single timer thread evaluating all ramps, consumers due are handed over to the start or stop executor
+	private static ScheduledThreadPoolExecutor consumerRampTimer = newConsumerRampTimer();
+	// keeps track of running and recently finished ramps
+	private static ConcurrentMap<String, ConsumerRamp> consumerRamps = new ConcurrentHashMap<String, ConsumerRamp>();
+	private static AtomicLong consumerRampSequence = new AtomicLong(0);
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// required for response building: size of the previous response used as estimate for the next one 	
+	private volatile int responseSizeHint = XmlResponseWriter.DEFAULT_INITIAL_CAPACITY;
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	// holds the configuration options provided on initialization -> mapping to list is required for faster merge process with optional parameters on instance creation
+	private Map<String, List<String>> configurationOptions = new HashMap<String, List<String>>();
+	// maximum number of consumers initialized concurrently
+	private int startConcurrency = DEFAULT_START_CONCURRENCY;
+	// interval at which ramps are evaluated
+	private int rampTickMillis = DEFAULT_RAMP_TICK_MILLIS;
+	// time granted to stopped consumers for leaving their run method
+	private int stopDrainTimeoutMillis = DEFAULT_STOP_DRAIN_TIMEOUT_MILLIS;
+	// initialized consumers waiting to be started, created using the configuration options only
+	private StandbyConsumerPool standbyConsumerPool = null;
+	
+	/**
+	 * Default constructor
+	 */
+	public AsyncConsumerContextHttpRequestHandler() {
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.consumer.handler.async.IContextRequestHandler#initialize(java.util.Map)
+	 */
+	@SuppressWarnings("unchecked")
+	public void initialize(Map<String, String> configOptions) {
+
+		// copy config options
+		for(String cfgKey : configOptions.keySet()) {
+			String cfgValue = configOptions.get(cfgKey);
+			if(cfgValue != null && !cfgKey.isEmpty()) {
+				List<String> values = new ArrayList<String>();
+				values.add(cfgValue);
+				configurationOptions.put(cfgKey, values);
+			}
+			
+			// consumer.async.<type> references a consumer class, consumer.async.<type>.<option> holds a type specific setting
+			if(cfgKey.startsWith(CFG_OPT_CONSUMER_TYPE_PREFIX) && cfgKey.indexOf('.', CFG_OPT_CONSUMER_TYPE_PREFIX.length()) == -1) {
+				String consumerType = cfgKey.substring(CFG_OPT_CONSUMER_TYPE_PREFIX.length());
+				try {
+					Class<? extends IAsyncInputConsumer> inputConsumer = (Class<? extends IAsyncInputConsumer>) Class.forName(cfgValue);
+					availableAsyncInputConsumers.put(consumerType, inputConsumer);
+					logger.info("Added asynchronous consumer: [type="+consumerType+", class="+cfgValue+"]");
+				} catch(ClassNotFoundException e) {
+					throw new RuntimeException("Asynchronous consumer class not found: " + cfgValue);
+				}
+			}	
+		}
+		
+		rampTickMillis = parsePositiveIntOption(configOptions, CFG_OPT_RAMP_TICK_MILLIS, DEFAULT_RAMP_TICK_MILLIS);
+		stopDrainTimeoutMillis = parsePositiveIntOption(configOptions, CFG_OPT_STOP_DRAIN_TIMEOUT_MILLIS, DEFAULT_STOP_DRAIN_TIMEOUT_MILLIS);
+		stoppedConsumerStatisticsCapacity = parsePositiveIntOption(configOptions, CFG_OPT_STOP_RETAINED_STATISTICS, DEFAULT_STOP_RETAINED_STATISTICS);
+		
+		// resize the start and stop executors if requested
+		if(configOptions.containsKey(CFG_OPT_START_CONCURRENCY)) {
+			startConcurrency = parsePositiveIntOption(configOptions, CFG_OPT_START_CONCURRENCY, DEFAULT_START_CONCURRENCY);
+			resizeExecutor(consumerStartExecutorService, startConcurrency);
+		}
+		if(configOptions.containsKey(CFG_OPT_STOP_CONCURRENCY))
+			resizeExecutor(consumerStopExecutorService, parsePositiveIntOption(configOptions, CFG_OPT_STOP_CONCURRENCY, DEFAULT_STOP_CONCURRENCY));
+		
+		// set up the bounded pools and standby consumers once all type specific settings are known
+		standbyConsumerPool = new StandbyConsumerPool(new IAsyncInputConsumerFactory() {
+			public IAsyncInputConsumer createConsumer(String consumerType) throws AsyncInputConsumerException {
+				return instantiateAsyncInputConsumer(consumerType, configurationOptions);
+			}
+		}, parsePositiveIntOption(configOptions, CFG_OPT_STANDBY_REFILL_THREADS, StandbyConsumerPool.DEFAULT_REFILL_THREADS), StandbyConsumerPool.DEFAULT_RETRY_DELAY_MILLIS);
+		for(String consumerType : availableAsyncInputConsumers.keySet()) {
+			try {
+				consumerScheduler.configure(consumerType, configurationOptions);
+				standbyConsumerPool.configure(consumerType, configurationOptions);
+			} catch(IllegalArgumentException e) {
+				throw new RuntimeException("Invalid pool settings for asynchronous consumer type '"+consumerType+"': " + e.getMessage());
+			}
+		}
+		
+		logger.info("Successfully initialized " + AsyncConsumerContextHttpRequestHandler.class.getName());
+	}
+	
+	/**
+	 * Reads a positive integer from the provided configuration options
+	 * @param configOptions
+	 * @param key
+	 * @param defaultValue
+	 * @return
+	 * @throws RuntimeException thrown in case the value is not a positive integer
+	 */
+	private static int parsePositiveIntOption(Map<String, String> configOptions, String key, int defaultValue) {
+		String value = configOptions.get(key);
+		if(value == null || value.trim().isEmpty())
+			return defaultValue;
+		int result = 0;
+		try {
+			result = Integer.parseInt(value.trim());
+		} catch(NumberFormatException e) {
+			throw new RuntimeException("Invalid value for '"+key+"': " + value);
+		}
+		if(result < 1)
+			throw new RuntimeException("Invalid value for '"+key+"': " + value);
+		return result;
+	}
+
+	/**
+	 * Collecting statistics for single consumers is served directly from the i/o worker, starting and stopping consumers involves 
+	 * connection handling and must therefore be offloaded. Same applies to aggregated statistics as they wait for the merge 
+	 * of possibly hundreds of consumers 
+	 * @see com.mnxfst.testing.consumer.handler.async.IContextRequestHandler#getExecutionMode(org.jboss.netty.handler.codec.http.HttpRequest, java.util.Map)
+	 */
+	public ContextRequestExecutionMode getExecutionMode(HttpRequest httpRequest, Map<String, List<String>> requestParameters) {
+		if(requestParameters.containsKey(REQUEST_PARAM_OP_CODE_START_CONSUMER) || requestParameters.containsKey(REQUEST_PARAM_OP_CODE_STOP_CONSUMER)
+				|| requestParameters.containsKey(REQUEST_PARAM_OP_CODE_RAMP))
+			return ContextRequestExecutionMode.BLOCKING;
+		
+		List<String> statsSelectors = requestParameters.get(REQUEST_PARAM_OP_CODE_COLLECT_CONSUMER_STATS);
+		if(statsSelectors != null) {
+			for(String selector : statsSelectors) {
+				if(isAggregateSelector(selector))
+					return ContextRequestExecutionMode.BLOCKING;
+			}
+		}
+		return ContextRequestExecutionMode.FAST;
+	}
+
+	/**
+	 * @see com.mnxfst.testing.consumer.handler.async.IContextRequestHandler#processRequest(org.jboss.netty.handler.codec.http.HttpRequest, java.util.Map, boolean, org.jboss.netty.channel.MessageEvent)
+	 */
+	public void processRequest(HttpRequest httpRequest, Map<String, List<String>> queryParams, boolean keepAlive, MessageEvent event) {
+	
+//		// ensure that the provided http request as well as the request parameters are valid
+//		if(httpRequest == null)
+//			throw new HttpRequestProcessingException("Invalid incoming request: null");
+//		if(queryParams == null)
+//			throw new HttpRequestProcessingException("Invalid incoming request parameters: null");
+		
+		// create a new response writer and open the root element
+		XmlResponseWriter responseWriter = new XmlResponseWriter(responseSizeHint);
+		responseWriter.startDocument().startElement(TSConsumerChannelUpstreamHandler.CONSUMER_RESPONSE_ROOT_ELEMENT);
+		
+		// map of errors which will be added to response in the end
+		Map<Integer, String> errors = new HashMap<Integer, String>();
+		
+		// if the caller requests to start a new consumer, extract the required information and keep on going
+		if(queryParams.containsKey(REQUEST_PARAM_OP_CODE_START_CONSUMER)) {
+
+			if(logger.isDebugEnabled())
+				logger.debug("Incoming request for starting a consumer");
+			
+			// extract the types to fire up consumer for
+			String[] consumerTypes = null;
+			try {
+				consumerTypes = extractMultiParameterValues(REQUEST_PARAM_OP_CODE_START_CONSUMER, queryParams);
+			}  catch(HttpRequestProcessingException e) {
+				errors.put(ERROR_CODE_NO_CONSUMER_TYPES_FOUND, "No consumer types provided");
+			}
+			
+			// validate the set of consumer types and instantiate the referenced ones
+			if(consumerTypes != null && consumerTypes.length > 0) {
+				try {
+					startConsumer(consumerTypes, responseWriter, queryParams);
+				} catch(HttpRequestProcessingException e) {
+					errors.put(ERROR_CODE_CONSUMER_START_FAILED, e.getMessage()); 
+				}
+			}
+		} else if(queryParams.containsKey(REQUEST_PARAM_OP_CODE_STOP_CONSUMER)) {
+			
+			if(logger.isDebugEnabled())
+				logger.debug("Incoming request for shutting down a consumer");
+			
+			// extract the identifier of those consumers to shutdown
+			String[] consumerIds = null;
+			try {
+				consumerIds = extractMultiParameterValues(REQUEST_PARAM_OP_CODE_STOP_CONSUMER, queryParams);
+			} catch(HttpRequestProcessingException e) {
+				errors.put(ERROR_CODE_NO_CONSUMER_IDENTIFIERS_FOUND, "No consumer identifiers provided");
+			}
+			
+			// validate consumer identifier array and collect statistical information from the associated instances
+			if(consumerIds != null && consumerIds.length > 0) {
+				try {
+					shutdownConsumer(consumerIds, responseWriter, queryParams);
+				} catch(HttpRequestProcessingException e) {
+					errors.put(ERROR_CODE_CONSUMER_STOP_FAILED, e.getMessage());
+				}
+			}
+		} else if(queryParams.containsKey(REQUEST_PARAM_OP_CODE_COLLECT_CONSUMER_STATS)) {
+
+			if(logger.isDebugEnabled())
+				logger.debug("Incoming request for collecting consumer statistics");
+
+			// extract the identifier of those consumers to collect statistical information form
+			String[] consumerIds = null;
+			try {
+				consumerIds = extractMultiParameterValues(REQUEST_PARAM_OP_CODE_COLLECT_CONSUMER_STATS, queryParams);
+			} catch(HttpRequestProcessingException e) {
+				errors.put(ERROR_CODE_NO_CONSUMER_IDENTIFIERS_FOUND, "No consumer identifiers provided");
+			}
+			
+			// validate consumer identifier array and collect statistical information from the associated instances
+			if(consumerIds != null && consumerIds.length > 0) {
+				try {
+					int topCount = parseInt(REQUEST_PARAM_STATS_TOP, queryParams, 0);
+					collectHandlerStatistics(consumerIds, isTrue(REQUEST_PARAM_STATS_SERIES, queryParams), topCount, responseWriter);
+				} catch(HttpRequestProcessingException e) {
+					errors.put(ERROR_CODE_COLLECTING_STATS_FAILED, e.getMessage());
+				}
+			}
+		} else if(queryParams.containsKey(REQUEST_PARAM_OP_CODE_RAMP)) {
+			
+			if(logger.isDebugEnabled())
+				logger.debug("Incoming request for ramping consumers");
+			
+			String[] consumerTypes = null;
+			try {
+				consumerTypes = extractMultiParameterValues(REQUEST_PARAM_OP_CODE_RAMP, queryParams);
+			}  catch(HttpRequestProcessingException e) {
+				errors.put(ERROR_CODE_NO_CONSUMER_TYPES_FOUND, "No consumer types provided");
+			}
+			
+			if(consumerTypes != null && consumerTypes.length > 0) {
+				try {
+					startRamp(consumerTypes, responseWriter, queryParams);
+				} catch(HttpRequestProcessingException e) {
+					errors.put(ERROR_CODE_RAMP_FAILED, e.getMessage());
+				}
+			}
+		} else if(queryParams.containsKey(REQUEST_PARAM_OP_CODE_RAMP_STATUS) || queryParams.containsKey(REQUEST_PARAM_OP_CODE_RAMP_CANCEL)) {
+			
+			boolean cancel = queryParams.containsKey(REQUEST_PARAM_OP_CODE_RAMP_CANCEL);
+			if(logger.isDebugEnabled())
+				logger.debug("Incoming request for " + (cancel ? "cancelling" : "collecting the status of") + " ramps");
+			
+			String[] rampIds = null;
+			try {
+				rampIds = extractMultiParameterValues(cancel ? REQUEST_PARAM_OP_CODE_RAMP_CANCEL : REQUEST_PARAM_OP_CODE_RAMP_STATUS, queryParams);
+			} catch(HttpRequestProcessingException e) {
+				errors.put(ERROR_CODE_NO_CONSUMER_IDENTIFIERS_FOUND, "No ramp identifiers provided");
+			}
+			
+			if(rampIds != null && rampIds.length > 0) {
+				try {
+					collectRampStatus(rampIds, cancel, responseWriter);
+				} catch(HttpRequestProcessingException e) {
+					errors.put(ERROR_CODE_RAMP_FAILED, e.getMessage());
+				}
+			}
+		} else if(queryParams.containsKey(REQUEST_PARAM_OP_CODE_SAMPLING)) {
+			
+			if(logger.isDebugEnabled())
+				logger.debug("Incoming request for adjusting analyzer sampling");
+			
+			String[] selectors = null;
+			try {
+				selectors = extractMultiParameterValues(REQUEST_PARAM_OP_CODE_SAMPLING, queryParams);
+			} catch(HttpRequestProcessingException e) {
+				errors.put(ERROR_CODE_NO_CONSUMER_IDENTIFIERS_FOUND, "No consumer identifiers provided");
+			}
+			
+			if(selectors != null && selectors.length > 0) {
+				try {
+					adjustSampling(selectors, queryParams, responseWriter);
+				} catch(HttpRequestProcessingException e) {
+					errors.put(ERROR_CODE_SAMPLING_FAILED, e.getMessage());
+				}
+			}
+		} else if(queryParams.containsKey(REQUEST_PARAM_OP_CODE_COLLECT_SCHEDULER_STATS)) {
+			
+			if(logger.isDebugEnabled())
+				logger.debug("Incoming request for collecting scheduler statistics");
+			
+			// all pools are reported unless specific types are requested
+			String[] consumerTypes = null;
+			try {
+				consumerTypes = extractMultiParameterValues(REQUEST_PARAM_OP_CODE_COLLECT_SCHEDULER_STATS, queryParams);
+			} catch(HttpRequestProcessingException e) {
+				// no types provided: report all pools
+			}
+			collectSchedulerStatistics(consumerTypes, responseWriter);
+		} else {
+			// report error
+			errors.put(ERROR_CODE_UNKNOWN_OP_CODE, "No valid op-code provided");
+		}
+
+		// add error response
+		if(errors != null && !errors.isEmpty())
+			writeErrorElement(errors, responseWriter);
+		
+		// finalize the response and send it back - the buffer is handed over as it is
+		ChannelBuffer responseMessage = responseWriter.finish();
+		responseSizeHint = responseMessage.readableBytes();
+		sendResponse(responseMessage, keepAlive, event);
+	}
+
+	/////////////////////////////////////// CONSUMER ACTIONS //////////////////////////////////////////////
+	
+	/**
+	 * Starts the referenced consumer types and writes all information required for controlling the service to the response.
+	 * The number of consumers started for each referenced type is controlled via <i>count</i> or <i>count.&lt;type&gt;</i>.
+	 * The consumers are admitted by the {@link ConsumerScheduler} before being instantiated: the outcome of the admission is
+	 * reported for each type. Admitted consumers are taken from the {@link StandbyConsumerPool standby pool} as long as
+	 * the request does not override any consumer settings, the remaining ones are initialized concurrently. If any of 
+	 * them fails all are shut down again and nothing else is written. Otherwise the response contains the start latency of each consumer as well as 
+	 * the latency of the whole request 
+	 * @param consumerTypes
+	 * @param responseWriter
+	 * @throws HttpRequestProcessingException
+	 */
+	protected void startConsumer(String[] consumerTypes, XmlResponseWriter responseWriter, Map<String, List<String>> queryParams) throws HttpRequestProcessingException {
+		
+		long startTime = System.nanoTime();
+		
+		// request parameters override the configuration options, neither of them is copied
+		Map<String, List<String>> configOptions = new LayeredConfigurationOptions(configurationOptions, queryParams);
+		
+		// count the consumers requested for each type, the order of the request is kept
+		int defaultCount = parsePositiveInt(REQUEST_PARAM_START_COUNT, queryParams, 1);
+		Map<String, Integer> requestedConsumers = new LinkedHashMap<String, Integer>();
+		for(int i = 0; i < consumerTypes.length; i++) {
+			if(!availableAsyncInputConsumers.containsKey(consumerTypes[i]))
+				throw new HttpRequestProcessingException("Failed to instantiate consumer for type '"+consumerTypes[i]+"'. Error: Consumer type '"+consumerTypes[i]+"' does not reference an available consumer class");
+			int count = parsePositiveInt(REQUEST_PARAM_START_COUNT + "." + consumerTypes[i], queryParams, defaultCount);
+			Integer previousCount = requestedConsumers.get(consumerTypes[i]);
+			requestedConsumers.put(consumerTypes[i], (previousCount != null ? previousCount.intValue() + count : count));
+		}
+		
+		// admit all consumers before creating any of them - all or nothing
+		responseWriter.startElement(CONSUMER_RESPONSE_START_ROOT_ELEMENT);
+		Map<String, Integer> reservedConsumers = new HashMap<String, Integer>();
+		String rejectedType = null;
+		for(String consumerType : requestedConsumers.keySet()) {
+			int count = requestedConsumers.get(consumerType);
+			boolean admitted = false;
+			try {
+				admitted = consumerScheduler.reserve(consumerType, count);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			writeAdmission(consumerType, count, admitted, responseWriter);
+			if(!admitted) {
+				rejectedType = consumerType;
+				break;
+			}
+			reservedConsumers.put(consumerType, count);
+		}
+		
+		if(rejectedType != null) {
+			for(String consumerType : reservedConsumers.keySet())
+				consumerScheduler.release(consumerType, reservedConsumers.get(consumerType));
+			responseWriter.endElement();
+			throw new HttpRequestProcessingException("Admission rejected for consumer type '"+rejectedType+"': " + requestedConsumers.get(rejectedType) + " consumer(s) requested");
+		}
+		
+		// take as many consumers as possible from standby, expand the remaining types into one entry per consumer
+		boolean standbyAllowed = isStandbyAllowed(queryParams);
+		List<IAsyncInputConsumer> standbyConsumers = new ArrayList<IAsyncInputConsumer>();
+		List<Long> standbyLatencies = new ArrayList<Long>();
+		List<String> expandedConsumerTypes = new ArrayList<String>();
+		for(String consumerType : requestedConsumers.keySet()) {
+			int count = requestedConsumers.get(consumerType);
+			if(standbyAllowed) {
+				long takeStart = System.nanoTime();
+				List<IAsyncInputConsumer> consumers = standbyConsumerPool.take(consumerType, count);
+				long takeLatency = (System.nanoTime() - takeStart) / 1000;
+				for(IAsyncInputConsumer consumer : consumers) {
+					standbyConsumers.add(consumer);
+					standbyLatencies.add(takeLatency);
+				}
+				count = count - consumers.size();
+			}
+			for(int i = 0; i < count; i++)
+				expandedConsumerTypes.add(consumerType);
+		}
+		
+		IAsyncInputConsumer[] createdConsumers = null;
+		long[] startLatencies = new long[expandedConsumerTypes.size()];
+		try {
+			int concurrency = Math.min(startConcurrency, parsePositiveInt(REQUEST_PARAM_START_CONCURRENCY, queryParams, startConcurrency));
+			createdConsumers = instantiateAsyncInputConsumers(expandedConsumerTypes, configOptions, concurrency, startLatencies);
+		} catch(HttpRequestProcessingException e) {
+			for(IAsyncInputConsumer consumer : standbyConsumers) {
+				try {
+					consumer.shutdown();
+				} catch(Exception e1) {
+					logger.error("Failed to shutdown async consumer: " + e1.getMessage(), e1);
+				}
+			}
+			for(String consumerType : reservedConsumers.keySet())
+				consumerScheduler.release(consumerType, reservedConsumers.get(consumerType));
+			responseWriter.endElement();
+			throw e;
+		}
+		
+		// no previous exception, hand the consumers over to the scheduler - standby consumers first
+		for(int i = 0; i < standbyConsumers.size() + createdConsumers.length; i++) {
+		
+			boolean standby = i < standbyConsumers.size();
+			IAsyncInputConsumer asyncInputConsumer = (standby ? standbyConsumers.get(i) : createdConsumers[i - standbyConsumers.size()]);
+			runningAsyncInputConsumerFutures.put(asyncInputConsumer.getId(), consumerScheduler.execute(asyncInputConsumer.getType(), asyncInputConsumer));
+			runningAsyncInputConsumers.putIfAbsent(asyncInputConsumer.getId(), asyncInputConsumer);
+			
+			responseWriter.startElement(CONSUMER_RESPONSE_START_CONSUMER_ELEMENT);
+			responseWriter.element(CONSUMER_RESPONSE_START_CONSUMER_ID_ELEMENT, asyncInputConsumer.getId());
+			responseWriter.element(CONSUMER_RESPONSE_START_CONSUMER_TYPE_ELEMENT, asyncInputConsumer.getType());
+			responseWriter.element(CONSUMER_RESPONSE_START_CONSUMER_STANDBY_ELEMENT, String.valueOf(standby));
+			writeStartLatency((standby ? standbyLatencies.get(i) : startLatencies[i - standbyConsumers.size()]), responseWriter);
+			responseWriter.endElement();
+			
+			if(logger.isDebugEnabled())
+				logger.debug("asyncConsumer[id="+asyncInputConsumer.getId()+", type="+asyncInputConsumer.getType()+"] successfully started");
+		}
+		writeStartLatency((System.nanoTime() - startTime) / 1000, responseWriter);
+		responseWriter.endElement();
+	}	
+	
+	/**
+	 * Instantiates and initializes one consumer for each of the given types using the provided number of concurrent
+	 * workers. Workers pull the next consumer to create until all are created or any creation failed. In the latter 
+	 * case all consumers created so far are shut down before the exception is thrown
+	 * @param consumerTypes
+	 * @param configOptions
+	 * @param concurrency
+	 * @param startLatencies receives the time required for creating each consumer, given in microseconds
+	 * @return consumers ordered as their types
+	 * @throws HttpRequestProcessingException
+	 */
+	protected IAsyncInputConsumer[] instantiateAsyncInputConsumers(final List<String> consumerTypes, final Map<String, List<String>> configOptions, int concurrency, 
+			final long[] startLatencies) throws HttpRequestProcessingException {
+		
+		final IAsyncInputConsumer[] consumers = new IAsyncInputConsumer[consumerTypes.size()];
+		// number the consumers of each type in order of the request
+		final int[] sequences = new int[consumers.length];
+		Map<String, Integer> nextSequences = new HashMap<String, Integer>();
+		for(int i = 0; i < sequences.length; i++) {
+			Integer sequence = nextSequences.get(consumerTypes.get(i));
+			sequences[i] = (sequence != null ? sequence.intValue() : 0);
+			nextSequences.put(consumerTypes.get(i), sequences[i] + 1);
+		}
+		final AtomicInteger nextConsumer = new AtomicInteger(0);
+		final AtomicReference<String> failure = new AtomicReference<String>(null);
+		
+		Runnable worker = new Runnable() {
+			public void run() {
+				for(int idx = nextConsumer.getAndIncrement(); idx < consumers.length && failure.get() == null; idx = nextConsumer.getAndIncrement()) {
+					long start = System.nanoTime();
+					try {
+						consumers[idx] = instantiateAsyncInputConsumer(consumerTypes.get(idx), withSequence(configOptions, sequences[idx]));
+						startLatencies[idx] = (System.nanoTime() - start) / 1000;
+					} catch(AsyncInputConsumerException e) {
+						failure.compareAndSet(null, "Failed to instantiate consumer for type '"+consumerTypes.get(idx)+"'. Error: " + e.getMessage());
+					} catch(RuntimeException e) {
+						failure.compareAndSet(null, "Failed to instantiate consumer for type '"+consumerTypes.get(idx)+"'. Error: " + e.getMessage());
+					}
+				}
+			}
+		};
+		
+		// a single consumer is created right away, larger batches are spread across the start executor
+		int workers = Math.max(1, Math.min(concurrency, consumers.length));
+		if(workers == 1) {
+			worker.run();
+		} else {
+			List<Future<?>> futures = new ArrayList<Future<?>>(workers);
+			for(int i = 0; i < workers; i++)
+				futures.add(consumerStartExecutorService.submit(worker));
+			for(Future<?> future : futures) {
+				try {
+					future.get();
+				} catch(InterruptedException e) {
+					failure.compareAndSet(null, "Interrupted while waiting for consumers being initialized");
+					nextConsumer.set(consumers.length);
+					Thread.currentThread().interrupt();
+				} catch(ExecutionException e) {
+					failure.compareAndSet(null, "Failed to initialize consumers. Error: " + e.getMessage());
+				}
+			}
+		}
+		
+		if(failure.get() != null) {
+			for(int i = 0; i < consumers.length; i++) {
+				if(consumers[i] != null) {
+					try {
+						consumers[i].shutdown();
+					} catch(Exception e) {
+						logger.error("Failed to shutdown async consumer: " + e.getMessage(), e);
+					}
+				}
+			}
+			throw new HttpRequestProcessingException(failure.get());
+		}
+		
+		return consumers;
+	}
+	
+	/**
+	 * Creates a ramp for each referenced consumer type starting (direction=up) or stopping (direction=down) the requested 
+	 * number of consumers over the given duration. Capacity for upward ramps is admitted in advance - all or nothing. The
+	 * ramps are evaluated by a single timer, starting is done by the start executor, stopping by the stop executor
+	 * @param consumerTypes
+	 * @param responseWriter
+	 * @param queryParams
+	 * @throws HttpRequestProcessingException
+	 */
+	protected void startRamp(String[] consumerTypes, XmlResponseWriter responseWriter, Map<String, List<String>> queryParams) throws HttpRequestProcessingException {
+		
+		// parse and validate the ramp settings first
+		ConsumerRamp.Direction direction = ConsumerRamp.Direction.UP;
+		List<String> directionValues = queryParams.get(REQUEST_PARAM_RAMP_DIRECTION);
+		if(directionValues != null && !directionValues.isEmpty()) {
+			try {
+				direction = ConsumerRamp.Direction.valueOf(directionValues.get(0).trim().toUpperCase());
+			} catch(IllegalArgumentException e) {
+				throw new HttpRequestProcessingException("Invalid ramp direction: " + directionValues.get(0));
+			}
+		}
+		int count = parsePositiveInt(REQUEST_PARAM_START_COUNT, queryParams, 1);
+		int duration = parseInt(REQUEST_PARAM_RAMP_DURATION, queryParams, 0);
+		RampProfile profile = null;
+		try {
+			List<String> curve = queryParams.get(REQUEST_PARAM_RAMP_CURVE);
+			List<String> profileName = queryParams.get(REQUEST_PARAM_RAMP_PROFILE);
+			profile = RampProfile.parse((profileName != null && !profileName.isEmpty() ? profileName.get(0) : null), 
+					parsePositiveInt(REQUEST_PARAM_RAMP_STEPS, queryParams, 10), (curve != null && !curve.isEmpty() ? curve.get(0) : null));
+		} catch(IllegalArgumentException e) {
+			throw new HttpRequestProcessingException(e.getMessage());
+		}
+		for(int i = 0; i < consumerTypes.length; i++) {
+			if(!availableAsyncInputConsumers.containsKey(consumerTypes[i]))
+				throw new HttpRequestProcessingException("Consumer type '"+consumerTypes[i]+"' does not reference an available consumer class");
+		}
+		
+		// prepare configuration options for consumers to start, request parameters override the configuration options
+		final Map<String, List<String>> configOptions = new LayeredConfigurationOptions(configurationOptions, queryParams);
+
+		long now = System.currentTimeMillis();
+		List<ConsumerRamp> ramps = new ArrayList<ConsumerRamp>();
+		responseWriter.startElement(CONSUMER_RESPONSE_RAMPS_ROOT_ELEMENT);
+		for(int i = 0; i < consumerTypes.length; i++) {
+			
+			int rampCount = count;
+			if(direction == ConsumerRamp.Direction.UP) {
+				// admit all consumers right away, the ramp consumes the reserved capacity
+				boolean admitted = false;
+				try {
+					admitted = consumerScheduler.reserve(consumerTypes[i], count);
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				writeAdmission(consumerTypes[i], count, admitted, responseWriter);
+				if(!admitted) {
+					for(ConsumerRamp ramp : ramps)
+						consumerScheduler.release(ramp.getConsumerType(), ramp.getCount());
+					responseWriter.endElement();
+					throw new HttpRequestProcessingException("Admission rejected for consumer type '"+consumerTypes[i]+"': " + count + " consumer(s) requested");
+				}
+			}
+			
+			// ramping down stops running consumers of the type, never more than available
+			List<IAsyncInputConsumer> candidates = new ArrayList<IAsyncInputConsumer>();
+			if(direction == ConsumerRamp.Direction.DOWN) {
+				for(IAsyncInputConsumer consumer : runningAsyncInputConsumers.values()) {
+					if(consumerTypes[i].equals(consumer.getType()) && candidates.size() < count)
+						candidates.add(consumer);
+				}
+				rampCount = candidates.size();
+			}
+			
+			ConsumerRamp ramp = new ConsumerRamp("ramp-" + consumerRampSequence.incrementAndGet(), consumerTypes[i], direction, profile, rampCount, duration, now);
+			ramp.getConsumers().addAll(candidates);
+			ramps.add(ramp);
+		}
+		
+		// all set: schedule the ramps
+		pruneFinishedRamps();
+		final boolean standbyAllowed = isStandbyAllowed(queryParams);
+		for(final ConsumerRamp ramp : ramps) {
+			consumerRamps.put(ramp.getId(), ramp);
+			ramp.setTimer(consumerRampTimer.scheduleAtFixedRate(new Runnable() {
+				public void run() {
+					tickRamp(ramp, configOptions, standbyAllowed);
+				}
+			}, 0, rampTickMillis, TimeUnit.MILLISECONDS));
+			writeRamp(ramp, now, responseWriter);
+		}
+		responseWriter.endElement();
+	}
+	
+	/**
+	 * Hands over the consumers which became due since the previous tick to the start or stop executor. Runs on the timer thread,
+	 * thus must never block
+	 * @param ramp
+	 * @param configOptions
+	 * @param standbyAllowed
+	 */
+	protected void tickRamp(final ConsumerRamp ramp, final Map<String, List<String>> configOptions, final boolean standbyAllowed) {
+		try {
+			int due = ramp.claimDue(System.currentTimeMillis());
+			// consumers are numbered in order of dispatch, the timer thread is the only one claiming them
+			int firstSequence = ramp.getDispatched() - due;
+			for(int i = 0; i < due; i++) {
+				if(ramp.getDirection() == ConsumerRamp.Direction.UP) {
+					final Map<String, List<String>> consumerOptions = withSequence(configOptions, firstSequence + i);
+					consumerStartExecutorService.execute(new Runnable() {
+						public void run() {
+							rampUpConsumer(ramp, consumerOptions, standbyAllowed);
+						}
+					});
+				} else {
+					consumerStopExecutorService.execute(new Runnable() {
+						public void run() {
+							rampDownConsumer(ramp);
+						}
+					});
+				}
+			}
+			if(ramp.isFullyDispatched() && ramp.getTimer() != null)
+				ramp.getTimer().cancel(false);
+		} catch(RuntimeException e) {
+			logger.error("Failed to evaluate ramp '"+ramp.getId()+"': " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Starts a single consumer on behalf of the given ramp, using capacity reserved when the ramp was created. The consumer 
+	 * is taken from standby if allowed and available
+	 * @param ramp
+	 * @param configOptions
+	 * @param standbyAllowed
+	 */
+	protected void rampUpConsumer(ConsumerRamp ramp, Map<String, List<String>> configOptions, boolean standbyAllowed) {
+		
+		IAsyncInputConsumer asyncInputConsumer = (standbyAllowed ? standbyConsumerPool.poll(ramp.getConsumerType()) : null);
+		try {
+			if(asyncInputConsumer == null)
+				asyncInputConsumer = instantiateAsyncInputConsumer(ramp.getConsumerType(), configOptions);
+		} catch(Exception e) {
+			consumerScheduler.release(ramp.getConsumerType(), 1);
+			ramp.recordFailure();
+			logger.error("Failed to instantiate consumer for ramp '"+ramp.getId()+"': " + e.getMessage(), e);
+			return;
+		}
+		
+		try {
+			runningAsyncInputConsumerFutures.put(asyncInputConsumer.getId(), consumerScheduler.execute(asyncInputConsumer.getType(), asyncInputConsumer));
+		} catch(RejectedExecutionException e) {
+			ramp.recordFailure();
+			logger.error("Failed to execute consumer for ramp '"+ramp.getId()+"': " + e.getMessage());
+			try {
+				asyncInputConsumer.shutdown();
+			} catch(AsyncInputConsumerException e1) {
+				logger.error("Failed to shutdown async consumer: " + e1.getMessage(), e1);
+			}
+			return;
+		}
+		
+		runningAsyncInputConsumers.putIfAbsent(asyncInputConsumer.getId(), asyncInputConsumer);
+		ramp.getConsumers().add(asyncInputConsumer);
+		ramp.recordSuccess();
+	}
+	
+	/**
+	 * Stops a single consumer on behalf of the given ramp, granting it the configured drain timeout
+	 * @param ramp
+	 */
+	protected void rampDownConsumer(ConsumerRamp ramp) {
+		IAsyncInputConsumer asyncInputConsumer = ramp.getConsumers().poll();
+		if(asyncInputConsumer == null) {
+			ramp.recordFailure();
+			return;
+		}
+		String[] messages = new String[1];
+		if(stopConsumers(new IAsyncInputConsumer[]{asyncInputConsumer}, stopDrainTimeoutMillis, messages)[0] == CONSUMER_SHUTDOWN_STATE_SUCCESS) {
+			ramp.recordSuccess();
+		} else {
+			ramp.recordFailure();
+			logger.error("Failed to shutdown consumer '"+asyncInputConsumer.getId()+"' for ramp '"+ramp.getId()+"': " + messages[0]);
+		}
+	}
+	
+	/**
+	 * Writes the progress of the referenced ramps, optionally cancelling them before. Nothing is written in case any 
+	 * of the referenced ramps is unknown
+	 * @param rampIds ramp identifiers, '*' references all known ramps
+	 * @param cancel
+	 * @param responseWriter
+	 * @throws HttpRequestProcessingException
+	 */
+	protected void collectRampStatus(String[] rampIds, boolean cancel, XmlResponseWriter responseWriter) throws HttpRequestProcessingException {
+		
+		List<ConsumerRamp> ramps = new ArrayList<ConsumerRamp>();
+		for(int i = 0; i < rampIds.length; i++) {
+			if(STATS_SELECTOR_ALL_CONSUMERS.equals(rampIds[i])) {
+				ramps.addAll(consumerRamps.values());
+			} else {
+				ConsumerRamp ramp = consumerRamps.get(rampIds[i]);
+				if(ramp == null)
+					throw new HttpRequestProcessingException("No such ramp: " + rampIds[i]);
+				ramps.add(ramp);
+			}
+		}
+		
+		long now = System.currentTimeMillis();
+		responseWriter.startElement(CONSUMER_RESPONSE_RAMPS_ROOT_ELEMENT);
+		for(ConsumerRamp ramp : ramps) {
+			if(cancel) {
+				int undispatched = ramp.cancel();
+				if(ramp.getDirection() == ConsumerRamp.Direction.UP && undispatched > 0)
+					consumerScheduler.release(ramp.getConsumerType(), undispatched);
+			}
+			writeRamp(ramp, now, responseWriter);
+		}
+		responseWriter.endElement();
+	}
+	
+	/**
+	 * Writes the settings and progress of the given ramp
+	 * @param ramp
+	 * @param now
+	 * @param responseWriter
+	 */
+	protected void writeRamp(ConsumerRamp ramp, long now, XmlResponseWriter responseWriter) {
+		responseWriter.startElement(CONSUMER_RESPONSE_RAMP_ELEMENT);
+		responseWriter.attribute(CONSUMER_RESPONSE_RAMP_ID_ATTRIBUTE, ramp.getId());
+		responseWriter.attribute(CONSUMER_RESPONSE_RAMP_TYPE_ATTRIBUTE, ramp.getConsumerType());
+		responseWriter.attribute(CONSUMER_RESPONSE_RAMP_DIRECTION_ATTRIBUTE, ramp.getDirection().name().toLowerCase());
+		responseWriter.attribute(CONSUMER_RESPONSE_RAMP_PROFILE_ATTRIBUTE, ramp.getProfile().getName());
+		responseWriter.attribute(CONSUMER_RESPONSE_RAMP_COUNT_ATTRIBUTE, ramp.getCount());
+		responseWriter.attribute(CONSUMER_RESPONSE_RAMP_DURATION_ATTRIBUTE, ramp.getDurationMillis());
+		responseWriter.attribute(CONSUMER_RESPONSE_RAMP_STATE_ATTRIBUTE, ramp.getState().name().toLowerCase());
+		responseWriter.element(CONSUMER_RESPONSE_RAMP_ELAPSED_ELEMENT, Math.max(0, now - ramp.getStartTimestamp()));
+		responseWriter.element(CONSUMER_RESPONSE_RAMP_TARGET_ELEMENT, ramp.getTarget(now));
+		responseWriter.element(CONSUMER_RESPONSE_RAMP_DISPATCHED_ELEMENT, ramp.getDispatched());
+		responseWriter.element(CONSUMER_RESPONSE_RAMP_SUCCEEDED_ELEMENT, ramp.getSucceeded());
+		responseWriter.element(CONSUMER_RESPONSE_RAMP_FAILED_ELEMENT, ramp.getFailed());
+		responseWriter.endElement();
+	}
+	
+	/**
+	 * Removes finished ramps once there are more than {@link #MAX_FINISHED_RAMPS}
+	 */
+	protected void pruneFinishedRamps() {
+		if(consumerRamps.size() <= MAX_FINISHED_RAMPS)
+			return;
+		for(ConsumerRamp ramp : consumerRamps.values()) {
+			if(ramp.getState() != ConsumerRamp.State.RUNNING)
+				consumerRamps.remove(ramp.getId());
+		}
+	}
+	
+	/**
+	 * Writes the given start latency as element to the currently open element
+	 * @param latencyMicros
+	 * @param responseWriter
+	 */
+	protected void writeStartLatency(long latencyMicros, XmlResponseWriter responseWriter) {
+		responseWriter.startElement(CONSUMER_RESPONSE_START_LATENCY_ELEMENT);
+		responseWriter.attribute(CONSUMER_RESPONSE_START_LATENCY_UNIT_ATTRIBUTE, CONSUMER_RESPONSE_START_LATENCY_UNIT_VALUE);
+		responseWriter.text(latencyMicros);
+		responseWriter.endElement();
+	}
+	
+	/**
+	 * Creates the timer evaluating ramps
+	 * @return
+	 */
+	private static ScheduledThreadPoolExecutor newConsumerRampTimer() {
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "consumer-ramp-timer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		timer.setRemoveOnCancelPolicy(true);
+		return timer;
+	}
+	
+	/**
+	 * Creates an executor initializing or shutting down consumers concurrently. Idle threads are released
+	 * @param threads
+	 * @param threadNamePrefix
+	 * @return
+	 */
+	private static ThreadPoolExecutor newConsumerExecutor(int threads, final String threadNamePrefix) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			private final AtomicInteger threadNumber = new AtomicInteger(1);
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, threadNamePrefix + threadNumber.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+	
+	/**
+	 * Sets the number of threads of the given executor, the core size must never exceed the maximum size 
+	 * @param executor
+	 * @param threads
+	 */
+	private static void resizeExecutor(ThreadPoolExecutor executor, int threads) {
+		if(threads > executor.getMaximumPoolSize()) {
+			executor.setMaximumPoolSize(threads);
+			executor.setCorePoolSize(threads);
+		} else {
+			executor.setCorePoolSize(threads);
+			executor.setMaximumPoolSize(threads);
+		}
+	}
+	
+	/**
+	 * Writes the outcome of an admission along with the state of the pool the consumers were requested from
+	 * @param consumerType
+	 * @param requested
+	 * @param admitted
+	 * @param responseWriter
+	 */
+	protected void writeAdmission(String consumerType, int requested, boolean admitted, XmlResponseWriter responseWriter) {
+		responseWriter.startElement(CONSUMER_RESPONSE_ADMISSION_ELEMENT);
+		responseWriter.attribute(CONSUMER_RESPONSE_ADMISSION_ADMITTED_ATTRIBUTE, String.valueOf(admitted));
+		responseWriter.attribute(CONSUMER_RESPONSE_ADMISSION_REQUESTED_ATTRIBUTE, requested);
+		writePoolAttributes(consumerScheduler.getPoolStatistics(consumerType), responseWriter);
+		responseWriter.endElement();
+	}
+	
+	/**
+	 * Writes the statistics of the pools kept for the referenced consumer types
+	 * @param consumerTypes types to report, all pools are reported if null or containing '*'
+	 * @param responseWriter
+	 */
+	protected void collectSchedulerStatistics(String[] consumerTypes, XmlResponseWriter responseWriter) {
+		
+		List<ConsumerPoolStatistics> poolStatistics = null;
+		if(consumerTypes == null || Arrays.asList(consumerTypes).contains(STATS_SELECTOR_ALL_CONSUMERS) || (consumerTypes.length == 1 && consumerTypes[0].isEmpty())) {
+			poolStatistics = consumerScheduler.getPoolStatistics();
+		} else {
+			poolStatistics = new ArrayList<ConsumerPoolStatistics>();
+			for(int i = 0; i < consumerTypes.length; i++) {
+				ConsumerPoolStatistics stats = consumerScheduler.getPoolStatistics(consumerTypes[i]);
+				if(stats != null)
+					poolStatistics.add(stats);
+			}
+		}
+		
+		responseWriter.startElement(CONSUMER_RESPONSE_SCHEDULER_ROOT_ELEMENT);
+		for(ConsumerPoolStatistics stats : poolStatistics) {
+			responseWriter.startElement(CONSUMER_RESPONSE_POOL_ELEMENT);
+			writePoolAttributes(stats, responseWriter);
+			StandbyPoolStatistics standbyStats = (standbyConsumerPool != null ? standbyConsumerPool.getPoolStatistics(stats.getConsumerType()) : null);
+			if(standbyStats != null) {
+				responseWriter.startElement(CONSUMER_RESPONSE_STANDBY_ELEMENT);
+				responseWriter.attribute(CONSUMER_RESPONSE_STANDBY_SIZE_ATTRIBUTE, standbyStats.getSize());
+				responseWriter.attribute(CONSUMER_RESPONSE_STANDBY_AVAILABLE_ATTRIBUTE, standbyStats.getAvailable());
+				responseWriter.attribute(CONSUMER_RESPONSE_STANDBY_PENDING_ATTRIBUTE, standbyStats.getPending());
+				responseWriter.attribute(CONSUMER_RESPONSE_STANDBY_HITS_ATTRIBUTE, standbyStats.getHits());
+				responseWriter.attribute(CONSUMER_RESPONSE_STANDBY_MISSES_ATTRIBUTE, standbyStats.getMisses());
+				responseWriter.attribute(CONSUMER_RESPONSE_STANDBY_FAILURES_ATTRIBUTE, standbyStats.getFailures());
+				responseWriter.endElement();
+			}
+			responseWriter.endElement();
+		}
+		responseWriter.endElement();
+	}
+	
+	/**
+	 * Writes the provided pool statistics as attributes of the currently open element
+	 * @param stats
+	 * @param responseWriter
+	 */
+	protected void writePoolAttributes(ConsumerPoolStatistics stats, XmlResponseWriter responseWriter) {
+		responseWriter.attribute(CONSUMER_RESPONSE_POOL_TYPE_ATTRIBUTE, stats.getConsumerType());
+		responseWriter.attribute(CONSUMER_RESPONSE_POOL_THREADS_ATTRIBUTE, stats.getThreads());
+		responseWriter.attribute(CONSUMER_RESPONSE_POOL_QUEUE_ATTRIBUTE, stats.getQueueBound());
+		responseWriter.attribute(CONSUMER_RESPONSE_POOL_REJECTION_POLICY_ATTRIBUTE, stats.getRejectionPolicy().name().toLowerCase());
+		responseWriter.attribute(CONSUMER_RESPONSE_POOL_EXECUTION_MODE_ATTRIBUTE, stats.getExecutionMode().name().toLowerCase());
+		responseWriter.attribute(CONSUMER_RESPONSE_POOL_ACTIVE_ATTRIBUTE, stats.getActiveCount());
+		responseWriter.attribute(CONSUMER_RESPONSE_POOL_QUEUED_ATTRIBUTE, stats.getQueuedCount());
+		responseWriter.attribute(CONSUMER_RESPONSE_POOL_AVAILABLE_ATTRIBUTE, stats.getAvailable());
+		responseWriter.attribute(CONSUMER_RESPONSE_POOL_REJECTED_ATTRIBUTE, stats.getRejectedCount());
+		responseWriter.attribute(CONSUMER_RESPONSE_POOL_COMPLETED_ATTRIBUTE, stats.getCompletedCount());
+	}
+	
+	/**
+	 * Shuts down the referenced consumers in parallel and waits for their run methods to return, the drain timeout is 
+	 * shared by all consumers. Consumers which have terminated are removed from the registry, their final statistics 
+	 * remain available for collection until evicted from the bounded cache of recently stopped consumers. Consumers 
+	 * exceeding the drain timeout are interrupted, reported and kept in the registry, thus may be stopped again
+	 * @param consumerIds
+	 * @param responseWriter
+	 * @param queryParams
+	 * @throws HttpRequestProcessingException
+	 */
+	protected void shutdownConsumer(String[] consumerIds, XmlResponseWriter responseWriter, Map<String, List<String>> queryParams) throws HttpRequestProcessingException {
+		
+		long startTime = System.nanoTime();
+		int drainTimeout = parsePositiveInt(REQUEST_PARAM_STOP_DRAIN_TIMEOUT, queryParams, stopDrainTimeoutMillis);
+		
+		// resolve the consumers, unknown identifiers are reported only
+		IAsyncInputConsumer[] consumers = new IAsyncInputConsumer[consumerIds.length];
+		List<IAsyncInputConsumer> knownConsumers = new ArrayList<IAsyncInputConsumer>();
+		for(int i = 0; i < consumerIds.length; i++) {
+			consumers[i] = runningAsyncInputConsumers.get(consumerIds[i]);
+			if(consumers[i] != null && !knownConsumers.contains(consumers[i]))
+				knownConsumers.add(consumers[i]);
+		}
+		
+		String[] messages = new String[knownConsumers.size()];
+		int[] states = stopConsumers(knownConsumers.toArray(new IAsyncInputConsumer[knownConsumers.size()]), drainTimeout, messages);
+		
+		// open shutdown response root element
+		responseWriter.startElement(CONSUMER_RESPONSE_SHUTDOWN_ROOT_ELEMENT);
+		
+		for(int i = 0; i < consumerIds.length; i++) {
+			
+			int state = CONSUMER_SHUTDOWN_STATE_UNKNOWN_ID;
+			String stateMessage = null;
+			if(consumers[i] != null) {
+				int idx = knownConsumers.indexOf(consumers[i]);
+				state = states[idx];
+				stateMessage = messages[idx];
+			}
+			
+			// write consumer id and state to shutdown element
+			responseWriter.startElement(CONSUMER_RESPONSE_SHUTDOWN_CONSUMER_ELEMENT);
+			responseWriter.element(CONSUMER_RESPONSE_SHUTDOWN_CONSUMER_ID_ELEMENT, consumerIds[i]);
+			responseWriter.element(CONSUMER_RESPONSE_SHUTDOWN_CONSUMER_STATE_ELEMENT, state);
+			responseWriter.element(CONSUMER_RESPONSE_SHUTDOWN_CONSUMER_STATE_MESSAGE_ELEMENT, stateMessage);
+			responseWriter.endElement();
+		}
+		
+		responseWriter.startElement(CONSUMER_RESPONSE_SHUTDOWN_DRAIN_TIME_ELEMENT);
+		responseWriter.attribute(CONSUMER_RESPONSE_LATENCY_UNIT_ATTRIBUTE, CONSUMER_RESPONSE_LATENCY_UNIT_VALUE);
+		responseWriter.text((System.nanoTime() - startTime) / 1000);
+		responseWriter.endElement();
+		responseWriter.endElement();
+		
+	}
+	
+	/**
+	 * Shuts down the given consumers in parallel and waits until either all of them left their run methods or the 
+	 * drain timeout expired. Consumers still waiting for a thread of their pool are withdrawn right away. Terminated 
+	 * consumers are evicted from the registry and their final statistics are retained
+	 * @param consumers
+	 * @param drainTimeoutMillis
+	 * @param messages receives an error message for each consumer which failed to stop
+	 * @return shutdown state of each consumer
+	 */
+	protected int[] stopConsumers(final IAsyncInputConsumer[] consumers, long drainTimeoutMillis, String[] messages) {
+		
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeoutMillis);
+		
+		// signal all consumers first, a single one is signalled right away
+		List<Future<String>> shutdownFutures = new ArrayList<Future<String>>(consumers.length);
+		for(int i = 0; i < consumers.length; i++) {
+			final IAsyncInputConsumer consumer = consumers[i];
+			Callable<String> shutdownTask = new Callable<String>() {
+				public String call() {
+					try {
+						consumer.shutdown();
+						return null;
+					} catch(Exception e) {
+						return (e.getMessage() != null ? e.getMessage() : e.getClass().getName());
+					}
+				}
+			};
+			if(consumers.length == 1) {
+				FutureTask<String> future = new FutureTask<String>(shutdownTask);
+				future.run();
+				shutdownFutures.add(future);
+			} else {
+				shutdownFutures.add(consumerStopExecutorService.submit(shutdownTask));
+			}
+		}
+		
+		// wait for the signals being delivered and the run methods to return - all within the same deadline
+		int[] states = new int[consumers.length];
+		for(int i = 0; i < consumers.length; i++) {
+			
+			String shutdownError = null;
+			boolean signalled = true;
+			try {
+				shutdownError = shutdownFutures.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			} catch(TimeoutException e) {
+				// do not leave the signal queued behind other shutdowns beyond the deadline
+				shutdownFutures.get(i).cancel(true);
+				signalled = false;
+			} catch(ExecutionException e) {
+				shutdownError = e.getMessage();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				signalled = false;
+			}
+			
+			// a consumer which never left the queue of its pool does not need to drain. A cancelled run future does not
+			// tell whether the consumer left its run method, thus the scheduler is asked instead
+			Future<?> runFuture = runningAsyncInputConsumerFutures.get(consumers[i].getId());
+			boolean terminated = (runFuture == null || consumerScheduler.withdraw(runFuture));
+			if(!terminated) {
+				try {
+					terminated = consumerScheduler.awaitTermination(runFuture, (signalled ? Math.max(0, deadline - System.nanoTime()) : 0), TimeUnit.NANOSECONDS);
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			
+			if(terminated) {
+				evictConsumer(consumers[i]);
+				states[i] = (shutdownError == null ? CONSUMER_SHUTDOWN_STATE_SUCCESS : CONSUMER_SHUTDOWN_STATE_FAILED);
+				messages[i] = shutdownError;
+			} else {
+				// interrupt the consumer but keep it registered, it may be stopped again later on. Its capacity is
+				// released by the scheduler as soon as it leaves its run method
+				runFuture.cancel(true);
+				states[i] = (shutdownError == null ? CONSUMER_SHUTDOWN_STATE_DRAIN_TIMEOUT : CONSUMER_SHUTDOWN_STATE_FAILED);
+				messages[i] = (shutdownError == null ? "Consumer did not terminate within " + drainTimeoutMillis + "ms" : shutdownError);
+			}
+		}
+		return states;
+	}
+	
+	/**
+	 * Removes the given consumer from the registry and retains its final statistics
+	 * @param consumer
+	 */
+	protected void evictConsumer(IAsyncInputConsumer consumer) {
+		AsyncInputConsumerStatistics stats = consumer.getConsumerStatistics();
+		if(stats != null) {
+			synchronized(stoppedConsumerStatistics) {
+				stoppedConsumerStatistics.put(consumer.getId(), stats.snapshot());
+				// a single insertion evicts a single entry only, the capacity may have been lowered meanwhile
+				Iterator<String> leastRecentlyAccessed = stoppedConsumerStatistics.keySet().iterator();
+				while(stoppedConsumerStatistics.size() > stoppedConsumerStatisticsCapacity && leastRecentlyAccessed.hasNext()) {
+					leastRecentlyAccessed.next();
+					leastRecentlyAccessed.remove();
+				}
+			}
+		}
+		runningAsyncInputConsumers.remove(consumer.getId(), consumer);
+		runningAsyncInputConsumerFutures.remove(consumer.getId());
+	}
+	
+	/**
+	 * Collects the statistics for the referenced consumers and writes them to the response. Besides consumer identifiers the
+	 * selectors may address all running consumers (*) or all running consumers of a type (type:&lt;type&gt;) - their statistics 
+	 * are merged into a single aggregate. Identifiers of recently stopped consumers resolve to their final statistics. 
+	 * Statistics not belonging to consumers are addressed by the name of their {@link IStatisticsSection section} 
+	 * (section:&lt;name&gt;) or all at once (section:*). Nothing is written in case any of the referenced consumers or 
+	 * sections is unknown. The caller must ensure that the provided input is neither null nor empty.
+	 * @param selectors
+	 * @param includeSeries
+	 * @param topCount number of slowest consumers listed for each aggregate
+	 * @param responseWriter
+	 * @throws HttpRequestProcessingException
+	 */
+	protected void collectHandlerStatistics(String[] selectors, boolean includeSeries, int topCount, XmlResponseWriter responseWriter) throws HttpRequestProcessingException {
+		
+		// resolve all consumers before writing anything, aggregates are computed right away
+		IAsyncInputConsumer[] consumers = new IAsyncInputConsumer[selectors.length];
+		AsyncInputConsumerStatisticsSnapshot[] stoppedConsumers = new AsyncInputConsumerStatisticsSnapshot[selectors.length];
+		AsyncInputConsumerStatisticsAggregate[] aggregates = new AsyncInputConsumerStatisticsAggregate[selectors.length];
+		List<List<IStatisticsSection>> sections = new ArrayList<List<IStatisticsSection>>(selectors.length);
+		for(int i = 0; i < selectors.length; i++) {
+			sections.add(null);
+			if(selectors[i].startsWith(STATS_SELECTOR_SECTION_PREFIX)) {
+				String sectionName = selectors[i].substring(STATS_SELECTOR_SECTION_PREFIX.length()).trim();
+				if(STATS_SELECTOR_ALL_CONSUMERS.equals(sectionName)) {
+					sections.set(i, StatisticsSectionRegistry.getSections());
+				} else {
+					IStatisticsSection section = StatisticsSectionRegistry.getSection(sectionName);
+					if(section == null)
+						throw new HttpRequestProcessingException("No such statistics section: " + sectionName);
+					sections.set(i, Collections.singletonList(section));
+				}
+			} else if(isAggregateSelector(selectors[i])) {
+				aggregates[i] = AsyncInputConsumerStatisticsAggregationTask.aggregate(statisticsAggregationPool, selectStatistics(selectors[i]), topCount);
+			} else {
+				consumers[i] = runningAsyncInputConsumers.get(selectors[i]);
+				if(consumers[i] == null)
+					stoppedConsumers[i] = stoppedConsumerStatistics.get(selectors[i]);
+				if(consumers[i] == null && stoppedConsumers[i] == null)
+					throw new HttpRequestProcessingException("No such consumer: " + selectors[i]);
+			}
+		}
+		
+		// open statistics root element
+		responseWriter.startElement(CONSUMER_RESPONSE_STATS_ROOT_ELEMENT);
+
+		for(int i = 0; i < selectors.length; i++) {
+			
+			if(sections.get(i) != null) {
+				for(IStatisticsSection section : sections.get(i)) {
+					responseWriter.startElement(CONSUMER_RESPONSE_SECTION_ELEMENT);
+					responseWriter.attribute(CONSUMER_RESPONSE_SECTION_NAME_ATTRIBUTE, section.getSectionName());
+					section.writeStatistics(responseWriter);
+					responseWriter.endElement();
+				}
+				continue;
+			}
+			
+			if(aggregates[i] != null) {
+				writeAggregateStatistics(selectors[i], aggregates[i], includeSeries, responseWriter);
+				continue;
+			}
+			
+			if(stoppedConsumers[i] != null) {
+				responseWriter.startElement(CONSUMER_RESPONSE_SINGLE_CONSUMER_STAT_ELEMENT);
+				responseWriter.attribute("consumerId" , selectors[i]);
+				responseWriter.attribute("id", stoppedConsumers[i].getConsumerId());
+				responseWriter.attribute("type", stoppedConsumers[i].getConsumerType());
+				responseWriter.attribute(CONSUMER_RESPONSE_STATS_STATE_ATTRIBUTE, CONSUMER_RESPONSE_STATS_STATE_STOPPED);
+				writeConsumerStatistics(stoppedConsumers[i], includeSeries, responseWriter);
+				responseWriter.endElement();
+				continue;
+			}
+			
+			IAsyncInputConsumer consumer = consumers[i];
+			responseWriter.startElement(CONSUMER_RESPONSE_SINGLE_CONSUMER_STAT_ELEMENT);
+			responseWriter.attribute("consumerId" , selectors[i]);
+			responseWriter.attribute("id", consumer.getId());
+			responseWriter.attribute("type", consumer.getType());
+			
+			AsyncInputConsumerStatistics stats = consumer.getConsumerStatistics();
+			if(stats != null)
+				writeConsumerStatistics(stats.snapshot(), includeSeries, responseWriter);
+			
+			// consumers may contribute further statistics, eg. those of their analyzers
+			if(consumer instanceof IStatisticsSection) {
+				IStatisticsSection section = (IStatisticsSection)consumer;
+				responseWriter.startElement(CONSUMER_RESPONSE_SECTION_ELEMENT);
+				responseWriter.attribute(CONSUMER_RESPONSE_SECTION_NAME_ATTRIBUTE, section.getSectionName());
+				section.writeStatistics(responseWriter);
+				responseWriter.endElement();
+			}
+			
+			responseWriter.endElement();
+		}
+		
+		responseWriter.endElement();
+	}
+	
+	/**
+	 * Applies the requested {@link SamplingPolicy sampling policy} to the analyzers of the referenced consumers and reports 
+	 * the policy as well as the number of processed and sampled messages of each affected stage. The selectors address 
+	 * running consumers by identifier, all running consumers (*) or all running consumers of a type (type:&lt;type&gt;). 
+	 * Changes apply to running consumers only, consumers started later on use the configured policies. Nothing is changed
+	 * in case the policy is invalid or any of the referenced consumers is unknown.
+	 * @param selectors
+	 * @param queryParams
+	 * @param responseWriter
+	 * @throws HttpRequestProcessingException
+	 */
+	protected void adjustSampling(String[] selectors, Map<String, List<String>> queryParams, XmlResponseWriter responseWriter) throws HttpRequestProcessingException {
+		
+		List<String> analyzerValues = queryParams.get(REQUEST_PARAM_SAMPLING_ANALYZER);
+		String analyzerName = (analyzerValues != null && !analyzerValues.isEmpty() && !analyzerValues.get(0).trim().isEmpty() ? analyzerValues.get(0).trim() : null);
+		List<String> policyValues = queryParams.get(REQUEST_PARAM_SAMPLING_POLICY);
+		String policy = (policyValues != null && !policyValues.isEmpty() && !policyValues.get(0).trim().isEmpty() ? policyValues.get(0).trim() : null);
+		if(policy != null) {
+			try {
+				SamplingPolicy.parse(policy);
+			} catch(IllegalArgumentException e) {
+				throw new HttpRequestProcessingException("Invalid sampling policy: " + e.getMessage());
+			}
+		}
+		
+		// resolve all consumers before changing anything, each one is addressed once
+		Map<String, IAsyncInputConsumer> consumers = new LinkedHashMap<String, IAsyncInputConsumer>();
+		for(String selector : selectors) {
+			if(isAggregateSelector(selector)) {
+				String consumerType = (selector.startsWith(STATS_SELECTOR_TYPE_PREFIX) ? selector.substring(STATS_SELECTOR_TYPE_PREFIX.length()).trim() : null);
+				for(IAsyncInputConsumer consumer : runningAsyncInputConsumers.values()) {
+					if(consumerType == null || consumerType.equals(consumer.getType()))
+						consumers.put(consumer.getId(), consumer);
+				}
+			} else {
+				IAsyncInputConsumer consumer = runningAsyncInputConsumers.get(selector);
+				if(consumer == null)
+					throw new HttpRequestProcessingException("No such consumer: " + selector);
+				consumers.put(selector, consumer);
+			}
+		}
+		
+		responseWriter.startElement(CONSUMER_RESPONSE_SAMPLING_ROOT_ELEMENT);
+		for(IAsyncInputConsumer consumer : consumers.values()) {
+			responseWriter.startElement(CONSUMER_RESPONSE_SAMPLING_CONSUMER_ELEMENT);
+			responseWriter.attribute(CONSUMER_RESPONSE_SAMPLING_CONSUMER_ID_ATTRIBUTE, consumer.getId());
+			responseWriter.attribute(CONSUMER_RESPONSE_SAMPLING_CONSUMER_TYPE_ATTRIBUTE, consumer.getType());
+			if(consumer instanceof IMessageAnalyzerHost) {
+				for(MessageAnalyzerPipeline pipeline : ((IMessageAnalyzerHost)consumer).getAnalyzerPipelines()) {
+					if(policy != null)
+						pipeline.setSamplingPolicy(analyzerName, policy);
+					for(int i = 0; i < pipeline.getStageCount(); i++) {
+						String stageAnalyzer = pipeline.getAnalyzer(i).getName();
+						if(analyzerName != null && !analyzerName.equals(stageAnalyzer))
+							continue;
+						responseWriter.startElement(CONSUMER_RESPONSE_SAMPLING_STAGE_ELEMENT);
+						responseWriter.attribute(CONSUMER_RESPONSE_SAMPLING_PIPELINE_ATTRIBUTE, pipeline.getName());
+						responseWriter.attribute(CONSUMER_RESPONSE_SAMPLING_ANALYZER_ATTRIBUTE, stageAnalyzer);
+						responseWriter.attribute(CONSUMER_RESPONSE_SAMPLING_POLICY_ATTRIBUTE, pipeline.getSamplingPolicy(i));
+						responseWriter.attribute(CONSUMER_RESPONSE_SAMPLING_PROCESSED_ATTRIBUTE, pipeline.getProcessedCount(i));
+						responseWriter.attribute(CONSUMER_RESPONSE_SAMPLING_SAMPLED_ATTRIBUTE, pipeline.getSampledCount(i));
+						responseWriter.endElement();
+					}
+				}
+			}
+			responseWriter.endElement();
+		}
+		responseWriter.endElement();
+	}
+	
+	/**
+	 * Returns the statistics of all running consumers matching the given aggregate selector
+	 * @param selector
+	 * @return
+	 */
+	protected AsyncInputConsumerStatistics[] selectStatistics(String selector) {
+		
+		String consumerType = null;
+		if(selector.startsWith(STATS_SELECTOR_TYPE_PREFIX))
+			consumerType = selector.substring(STATS_SELECTOR_TYPE_PREFIX.length()).trim();
+		
+		List<AsyncInputConsumerStatistics> statistics = new ArrayList<AsyncInputConsumerStatistics>();
+		for(IAsyncInputConsumer consumer : runningAsyncInputConsumers.values()) {
+			if(consumerType == null || consumerType.equals(consumer.getType())) {
+				AsyncInputConsumerStatistics stats = consumer.getConsumerStatistics();
+				if(stats != null)
+					statistics.add(stats);
+			}
+		}
+		return statistics.toArray(new AsyncInputConsumerStatistics[statistics.size()]);
+	}
+	
+	/**
+	 * Returns true if the given collectStats value addresses a set of consumers rather than a single one
+	 * @param selector
+	 * @return
+	 */
+	protected static boolean isAggregateSelector(String selector) {
+		if(selector == null)
+			return false;
+		String s = selector.trim();
+		return s.equals(STATS_SELECTOR_ALL_CONSUMERS) || s.startsWith(STATS_SELECTOR_TYPE_PREFIX);
+	}
+	
+	/**
+	 * Writes the merged statistics including the list of slowest consumers 
+	 * @param selector
+	 * @param aggregate
+	 * @param includeSeries
+	 * @param responseWriter
+	 */
+	protected void writeAggregateStatistics(String selector, AsyncInputConsumerStatisticsAggregate aggregate, boolean includeSeries, XmlResponseWriter responseWriter) {
+		
+		responseWriter.startElement(CONSUMER_RESPONSE_AGGREGATE_STAT_ELEMENT);
+		responseWriter.attribute(CONSUMER_RESPONSE_AGGREGATE_SELECTOR_ATTRIBUTE, selector);
+		responseWriter.attribute(CONSUMER_RESPONSE_AGGREGATE_CONSUMERS_ATTRIBUTE, aggregate.getConsumerCount());
+		
+		writeConsumerStatistics(aggregate.toSnapshot(), includeSeries, responseWriter);
+		if(aggregate.getExcludedRateCount() > 0)
+			responseWriter.element(CONSUMER_RESPONSE_AGGREGATE_RATES_EXCLUDED_ELEMENT, aggregate.getExcludedRateCount());
+		
+		List<ConsumerLatency> slowestConsumers = aggregate.getSlowestConsumers();
+		if(!slowestConsumers.isEmpty()) {
+			responseWriter.startElement(CONSUMER_RESPONSE_SLOWEST_ROOT_ELEMENT);
+			responseWriter.attribute(CONSUMER_RESPONSE_SLOWEST_BY_ATTRIBUTE, CONSUMER_RESPONSE_LATENCY_P99_ELEMENT);
+			for(ConsumerLatency consumerLatency : slowestConsumers) {
+				responseWriter.startElement(CONSUMER_RESPONSE_SLOWEST_CONSUMER_ELEMENT);
+				responseWriter.attribute("id", consumerLatency.getConsumerId());
+				responseWriter.attribute("type", consumerLatency.getConsumerType());
+				responseWriter.attribute(CONSUMER_RESPONSE_LATENCY_P99_ELEMENT, consumerLatency.getP99());
+				responseWriter.attribute(CONSUMER_RESPONSE_LATENCY_MAX_ELEMENT, consumerLatency.getMax());
+				responseWriter.attribute(CONSUMER_RESPONSE_LATENCY_COUNT_ELEMENT, consumerLatency.getCount());
+				responseWriter.endElement();
+			}
+			responseWriter.endElement();
+		}
+		
+		responseWriter.endElement();
+	}
+	
+	/**
+	 * Writes the counters contained in the provided snapshot to the currently open element
+	 * @param snapshot
+	 * @param includeSeries
+	 * @param responseWriter
+	 */
+	protected void writeConsumerStatistics(AsyncInputConsumerStatisticsSnapshot snapshot, boolean includeSeries, XmlResponseWriter responseWriter) {
+		responseWriter.element(CONSUMER_RESPONSE_STATS_MESSAGES_ELEMENT, snapshot.getMessageCount());
+		responseWriter.element(CONSUMER_RESPONSE_STATS_BYTES_ELEMENT, snapshot.getByteCount());
+		responseWriter.element(CONSUMER_RESPONSE_STATS_ERRORS_ELEMENT, snapshot.getErrorCount());
+		responseWriter.element(CONSUMER_RESPONSE_STATS_REDELIVERIES_ELEMENT, snapshot.getRedeliveryCount());
+		responseWriter.element(CONSUMER_RESPONSE_STATS_UPTIME_ELEMENT, snapshot.getUptime());
+		if(snapshot.getLatencies() != null)
+			writeLatencyStatistics(snapshot.getLatencies(), responseWriter);
+		if(snapshot.getRates() != null)
+			writeRateStatistics(snapshot.getRates(), includeSeries, responseWriter);
+	}
+	
+	/**
+	 * Writes current, peak and average rates of the provided throughput window to the currently open element
+	 * @param rates
+	 * @param includeSeries if true, the raw bucket values are written as well
+	 * @param responseWriter
+	 */
+	protected void writeRateStatistics(ThroughputWindowSnapshot rates, boolean includeSeries, XmlResponseWriter responseWriter) {
+		responseWriter.startElement(CONSUMER_RESPONSE_RATES_ROOT_ELEMENT);
+		responseWriter.attribute(CONSUMER_RESPONSE_RATES_UNIT_ATTRIBUTE, CONSUMER_RESPONSE_RATES_UNIT_VALUE);
+		responseWriter.attribute(CONSUMER_RESPONSE_RATES_BUCKET_MILLIS_ATTRIBUTE, rates.getBucketMillis());
+		responseWriter.attribute(CONSUMER_RESPONSE_RATES_BUCKETS_ATTRIBUTE, rates.getBucketCount());
+		
+		responseWriter.startElement(CONSUMER_RESPONSE_STATS_MESSAGES_ELEMENT);
+		responseWriter.element(CONSUMER_RESPONSE_RATES_CURRENT_ELEMENT, Math.round(rates.getCurrentMessageRate()));
+		responseWriter.element(CONSUMER_RESPONSE_RATES_PEAK_ELEMENT, Math.round(rates.getPeakMessageRate()));
+		responseWriter.element(CONSUMER_RESPONSE_RATES_AVERAGE_ELEMENT, Math.round(rates.getAverageMessageRate()));
+		responseWriter.endElement();
+
+		responseWriter.startElement(CONSUMER_RESPONSE_STATS_BYTES_ELEMENT);
+		responseWriter.element(CONSUMER_RESPONSE_RATES_CURRENT_ELEMENT, Math.round(rates.getCurrentByteRate()));
+		responseWriter.element(CONSUMER_RESPONSE_RATES_PEAK_ELEMENT, Math.round(rates.getPeakByteRate()));
+		responseWriter.element(CONSUMER_RESPONSE_RATES_AVERAGE_ELEMENT, Math.round(rates.getAverageByteRate()));
+		responseWriter.endElement();
+
+		responseWriter.startElement(CONSUMER_RESPONSE_STATS_ERRORS_ELEMENT);
+		responseWriter.element(CONSUMER_RESPONSE_RATES_CURRENT_ELEMENT, Math.round(rates.getCurrentErrorRate()));
+		responseWriter.element(CONSUMER_RESPONSE_RATES_PEAK_ELEMENT, Math.round(rates.getPeakErrorRate()));
+		responseWriter.element(CONSUMER_RESPONSE_RATES_AVERAGE_ELEMENT, Math.round(rates.getAverageErrorRate()));
+		responseWriter.endElement();
+		
+		if(includeSeries) {
+			// buckets hold plain counts, ordered from oldest to newest
+			long[] messages = rates.getMessages();
+			long[] bytes = rates.getBytes();
+			long[] errors = rates.getErrors();
+			responseWriter.startElement(CONSUMER_RESPONSE_RATES_SERIES_ELEMENT);
+			for(int i = 0; i < messages.length; i++) {
+				responseWriter.startElement(CONSUMER_RESPONSE_RATES_BUCKET_ELEMENT);
+				responseWriter.attribute(CONSUMER_RESPONSE_STATS_MESSAGES_ELEMENT, messages[i]);
+				responseWriter.attribute(CONSUMER_RESPONSE_STATS_BYTES_ELEMENT, bytes[i]);
+				responseWriter.attribute(CONSUMER_RESPONSE_STATS_ERRORS_ELEMENT, errors[i]);
+				responseWriter.endElement();
+			}
+			responseWriter.endElement();
+		}
+		
+		responseWriter.endElement();
+	}
+	
+	/**
+	 * Writes the percentiles of the provided latency histogram to the currently open element
+	 * @param latencies
+	 * @param responseWriter
+	 */
+	protected void writeLatencyStatistics(LatencyHistogramSnapshot latencies, XmlResponseWriter responseWriter) {
+		responseWriter.startElement(CONSUMER_RESPONSE_LATENCY_ROOT_ELEMENT);
+		responseWriter.attribute(CONSUMER_RESPONSE_LATENCY_UNIT_ATTRIBUTE, CONSUMER_RESPONSE_LATENCY_UNIT_VALUE);
+		responseWriter.element(CONSUMER_RESPONSE_LATENCY_COUNT_ELEMENT, latencies.getTotalCount());
+		responseWriter.element(CONSUMER_RESPONSE_LATENCY_MIN_ELEMENT, latencies.getMinValue());
+		responseWriter.element(CONSUMER_RESPONSE_LATENCY_MEAN_ELEMENT, Math.round(latencies.getMean()));
+		responseWriter.element(CONSUMER_RESPONSE_LATENCY_P50_ELEMENT, latencies.getValueAtPercentile(50));
+		responseWriter.element(CONSUMER_RESPONSE_LATENCY_P90_ELEMENT, latencies.getValueAtPercentile(90));
+		responseWriter.element(CONSUMER_RESPONSE_LATENCY_P99_ELEMENT, latencies.getValueAtPercentile(99));
+		responseWriter.element(CONSUMER_RESPONSE_LATENCY_P999_ELEMENT, latencies.getValueAtPercentile(99.9));
+		responseWriter.element(CONSUMER_RESPONSE_LATENCY_MAX_ELEMENT, latencies.getMaxValue());
+		responseWriter.element(CONSUMER_RESPONSE_LATENCY_OVERFLOWS_ELEMENT, latencies.getOverflowCount());
+		responseWriter.endElement();
+	}
+	
+	/**
+	 * Returns the given options extended by the {@link IAsyncInputConsumer#CFG_OPT_SEQUENCE sequence} of a single consumer
+	 * @param configOptions
+	 * @param sequence
+	 * @return
+	 */
+	protected static Map<String, List<String>> withSequence(Map<String, List<String>> configOptions, int sequence) {
+		return new LayeredConfigurationOptions(configOptions, Collections.singletonMap(IAsyncInputConsumer.CFG_OPT_SEQUENCE, Collections.singletonList(String.valueOf(sequence))));
+	}
+	
+	/**
+	 * Creates an instance from the {@link IAsyncInputConsumer consumer class} referenced by the given type. The instance
+	 * will be initialized using the provided configuration options
+	 * @param consumerType
+	 * @param configOptions
+	 * @return
+	 * @throws HttpRequestProcessingException
+	 */
+	protected IAsyncInputConsumer instantiateAsyncInputConsumer(String consumerType, Map<String, List<String>> configOptions) throws AsyncInputConsumerException {
+
+		// validate the consumer type
+		if(consumerType == null || consumerType.isEmpty())
+			throw new AsyncInputConsumerException("Missing required consumer type");
+		
+		// fetch the consumer class referenced 
+		Class<? extends IAsyncInputConsumer> consumerClazz = availableAsyncInputConsumers.get(consumerType);
+		if(consumerClazz == null)
+			throw new AsyncInputConsumerException("Consumer type '"+consumerType+"' does not reference an available consumer class");
+		
+		// instantiate the consumer, set the identifier and type and provide config options
+		try {
+			IAsyncInputConsumer instance = consumerClazz.getDeclaredConstructor().newInstance();
+			instance.setType(consumerType);
+			instance.setId(new UUID().toString());
+			instance.initialize(configOptions);
+			return instance;
+		} catch(InvocationTargetException e) {
+			// the constructor failed
+			throw new AsyncInputConsumerException("Failed to instantiate consumer class '"+consumerClazz+"'. Error: " + e.getCause(), e.getCause());
+		} catch(ReflectiveOperationException e) {
+			throw new AsyncInputConsumerException("Failed to instantiate consumer class '"+consumerClazz+"'. Error: " + e, e);
+		}
+		
+	}
+	
+	/////////////////////////////////////// REQUEST SPECIFC METHODS ///////////////////////////////////////
+
+	/**
+	 * Returns an array of strings containing the values received for the referenced parameter 
+	 * @param parameter
+	 * @param queryParams
+	 * @return
+	 * @throws HttpRequestProcessingException thrown in case there are no values 
+	 */
+	protected String[] extractMultiParameterValues(String parameter, Map<String, List<String>> queryParams) throws HttpRequestProcessingException {
+		
+		List<String> values = queryParams.get(parameter);
+		if(values != null && !values.isEmpty()) {
+			String[] result = new String[values.size()];
+			for(int i = 0; i < values.size(); i++) {
+				String v = values.get(i);				
+				result[i] = (v != null ? v.trim() : "");
+			}
+			return result;
+		}
+		
+		throw new HttpRequestProcessingException("Parameter '"+parameter+"' references no values");
+	}
+
+	/**
+	 * Returns the non-negative integer value of the referenced parameter
+	 * @param parameter
+	 * @param queryParams
+	 * @param defaultValue returned if the parameter is missing
+	 * @return
+	 * @throws HttpRequestProcessingException thrown in case the value is not a valid non-negative integer
+	 */
+	protected int parseInt(String parameter, Map<String, List<String>> queryParams, int defaultValue) throws HttpRequestProcessingException {
+		List<String> values = queryParams.get(parameter);
+		if(values == null || values.isEmpty() || values.get(0) == null || values.get(0).trim().isEmpty())
+			return defaultValue;
+		
+		int value = -1;
+		try {
+			value = Integer.parseInt(values.get(0).trim());
+		} catch(NumberFormatException e) {
+			throw new HttpRequestProcessingException("Parameter '"+parameter+"' does not hold a valid integer: " + values.get(0));
+		}
+		if(value < 0)
+			throw new HttpRequestProcessingException("Parameter '"+parameter+"' must not be negative: " + value);
+		return value;
+	}
+
+	/**
+	 * Returns the positive integer value of the referenced parameter
+	 * @param parameter
+	 * @param queryParams
+	 * @param defaultValue returned if the parameter is missing
+	 * @return
+	 * @throws HttpRequestProcessingException thrown in case the value is not a valid positive integer
+	 */
+	protected int parsePositiveInt(String parameter, Map<String, List<String>> queryParams, int defaultValue) throws HttpRequestProcessingException {
+		int value = parseInt(parameter, queryParams, defaultValue);
+		if(value == 0)
+			throw new HttpRequestProcessingException("Parameter '"+parameter+"' must be positive");
+		return value;
+	}
+
+	/**
+	 * Returns true if the referenced parameter holds the value 'true'
+	 * @param parameter
+	 * @param queryParams
+	 * @return
+	 */
+	protected boolean isTrue(String parameter, Map<String, List<String>> queryParams) {
+		List<String> values = queryParams.get(parameter);
+		return values != null && !values.isEmpty() && "true".equalsIgnoreCase(values.get(0).trim());
+	}
+	
+	/**
+	 * Returns true if consumers requested by the given parameters may be taken from the standby pool: standby consumers
+	 * are initialized with the configuration options only, thus requests overriding any setting must not receive them
+	 * @param queryParams
+	 * @return
+	 */
+	protected boolean isStandbyAllowed(Map<String, List<String>> queryParams) {
+		List<String> values = queryParams.get(REQUEST_PARAM_STANDBY);
+		if(values != null && !values.isEmpty() && "false".equalsIgnoreCase(values.get(0).trim()))
+			return false;
+		for(String parameter : queryParams.keySet()) {
+			if(!CONSUMER_START_CONTROL_PARAMS.contains(parameter) && !parameter.startsWith(REQUEST_PARAM_START_COUNT + "."))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Sends a response containing the given message to the calling client
+	 * @param responseMessage
+	 * @param keepAlive
+	 * @param event
+	 */
+	protected void sendResponse(ChannelBuffer responseMessage, boolean keepAlive, MessageEvent event) {
+		HttpResponse httpResponse = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+		
+		httpResponse.setContent(responseMessage);
+		httpResponse.setHeader(HttpHeaders.Names.CONTENT_TYPE, "text/plain; charset=UTF-8");
+		
+		if(keepAlive)
+			httpResponse.setHeader(HttpHeaders.Names.CONTENT_LENGTH, httpResponse.getContent().readableBytes());
+		
+		ChannelFuture future = event.getChannel().write(httpResponse);
+		if(!keepAlive)
+			future.addListener(ChannelFutureListener.CLOSE);
+	}
+
+	/**
+	 * Writes a response element from the provided set of error code / error message mappings
+	 * @param errorCodeMessages
+	 * @param responseWriter
+	 */
+	protected void writeErrorElement(Map<Integer, String> errorCodeMessages, XmlResponseWriter responseWriter) {
+		
+		// open error response root element
+		responseWriter.startElement(CONSUMER_RESPONSE_ERRORS_ROOT_ELEMENT);
+		
+		// step through identifiers and fetch associated messages
+		for(Integer id : errorCodeMessages.keySet()) {			
+			responseWriter.startElement(CONSUMER_RESPONSE_ERROR_ELEMENT);
+			responseWriter.element(CONSUMER_RESPONSE_ERROR_ID_ELEMENT, id.intValue());
+			responseWriter.element(CONSUMER_RESPONSE_ERROR_MSG_ELEMENT, errorCodeMessages.get(id));
+			responseWriter.endElement();
+		}
+		
+		responseWriter.endElement();		
+	}
+
+	//////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+	
+}
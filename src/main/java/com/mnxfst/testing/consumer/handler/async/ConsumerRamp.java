@@ -0,0 +1,202 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.consumer.handler.async;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.mnxfst.testing.consumer.async.IAsyncInputConsumer;
+
+/**
+ * Schedule for starting or stopping a number of consumers of a single type over a given duration. The {@link RampProfile}
+ * determines how many consumers must have been handled at any point in time: a timer periodically {@link #claimDue(long) claims}
+ * the consumers due since its previous run and hands them over for execution, the outcome is reported back. The ramp 
+ * keeps the consumers it affects: consumers started by an upward ramp, candidates to stop for a downward ramp.
+ * @author ckreutzfeldt
+ * @since 09.03.2012
+ */
+public class ConsumerRamp {
+
+	public enum Direction {
+		UP, DOWN
+	}
+	
+	public enum State {
+		RUNNING, COMPLETED, CANCELLED
+	}
+	
+	private final String id;
+	private final String consumerType;
+	private final Direction direction;
+	private final RampProfile profile;
+	private final int count;
+	private final long durationMillis;
+	private final long startTimestamp;
+	
+	// number of consumers handed over for execution
+	private int dispatched = 0;
+	private boolean cancelled = false;
+	private final AtomicInteger succeeded = new AtomicInteger(0);
+	private final AtomicInteger failed = new AtomicInteger(0);
+	private final Queue<IAsyncInputConsumer> consumers = new ConcurrentLinkedQueue<IAsyncInputConsumer>();
+	private volatile ScheduledFuture<?> timer = null;
+	
+	/**
+	 * Initializes the ramp
+	 * @param id
+	 * @param consumerType
+	 * @param direction
+	 * @param profile
+	 * @param count number of consumers to start or stop
+	 * @param durationMillis
+	 * @param startTimestamp
+	 */
+	public ConsumerRamp(String id, String consumerType, Direction direction, RampProfile profile, int count, long durationMillis, long startTimestamp) {
+		
+		if(count < 0)
+			throw new IllegalArgumentException("The number of consumers must not be negative");
+		if(durationMillis < 0)
+			throw new IllegalArgumentException("The ramp duration must not be negative");
+		
+		this.id = id;
+		this.consumerType = consumerType;
+		this.direction = direction;
+		this.profile = profile;
+		this.count = count;
+		this.durationMillis = durationMillis;
+		this.startTimestamp = startTimestamp;
+	}
+	
+	/**
+	 * Returns the number of consumers which must have been handled at the given point in time
+	 * @param timestamp
+	 * @return
+	 */
+	public int getTarget(long timestamp) {
+		long elapsed = timestamp - startTimestamp;
+		if(elapsed >= durationMillis)
+			return count;
+		double progress = (double)Math.max(0, elapsed) / durationMillis;
+		return (int)Math.min(count, Math.floor(count * profile.fraction(progress) + 1e-9));
+	}
+	
+	/**
+	 * Returns the number of consumers which became due since the previous call and marks them as dispatched
+	 * @param timestamp
+	 * @return
+	 */
+	public synchronized int claimDue(long timestamp) {
+		if(cancelled)
+			return 0;
+		int due = Math.max(0, getTarget(timestamp) - dispatched);
+		dispatched += due;
+		return due;
+	}
+	
+	/**
+	 * Cancels the ramp, consumers not dispatched yet will not be handled anymore
+	 * @return number of consumers not dispatched
+	 */
+	public synchronized int cancel() {
+		if(cancelled)
+			return 0;
+		cancelled = true;
+		ScheduledFuture<?> t = timer;
+		if(t != null)
+			t.cancel(false);
+		return count - dispatched;
+	}
+	
+	public synchronized boolean isFullyDispatched() {
+		return cancelled || dispatched == count;
+	}
+	
+	public void recordSuccess() {
+		succeeded.incrementAndGet();
+	}
+	
+	public void recordFailure() {
+		failed.incrementAndGet();
+	}
+	
+	/**
+	 * Returns the current state: completed once all consumers have been handled
+	 * @return
+	 */
+	public synchronized State getState() {
+		if(cancelled)
+			return State.CANCELLED;
+		return (succeeded.get() + failed.get() >= count ? State.COMPLETED : State.RUNNING);
+	}
+	
+	public synchronized int getDispatched() {
+		return dispatched;
+	}
+	
+	public int getSucceeded() {
+		return succeeded.get();
+	}
+	
+	public int getFailed() {
+		return failed.get();
+	}
+
+	public Queue<IAsyncInputConsumer> getConsumers() {
+		return consumers;
+	}
+	
+	public void setTimer(ScheduledFuture<?> timer) {
+		this.timer = timer;
+	}
+
+	public ScheduledFuture<?> getTimer() {
+		return timer;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getConsumerType() {
+		return consumerType;
+	}
+
+	public Direction getDirection() {
+		return direction;
+	}
+
+	public RampProfile getProfile() {
+		return profile;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	public long getStartTimestamp() {
+		return startTimestamp;
+	}
+	
+}
@@ -0,0 +1,33 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.consumer.handler.async;
+
+/**
+ * Tells the upstream handler where a {@link IContextRequestHandler} expects a request to be processed
+ * @author ckreutzfeldt
+ * @since 29.02.2012
+ */
+public enum ContextRequestExecutionMode {
+
+	/** the request is cheap and will be processed directly on the netty i/o worker thread */
+	FAST,
+	/** the request may block (eg. broker connects) and will be handed over to the execution stage */
+	BLOCKING
+	
+}
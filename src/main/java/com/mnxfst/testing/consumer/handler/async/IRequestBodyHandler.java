@@ -0,0 +1,50 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.handler.async;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.MessageEvent;
+
+/**
+ * Receives the body of a single request chunk by chunk, see {@link IStreamingContextRequestHandler}. All methods of
+ * an instance are invoked by the same thread, one after another
+ * @author ckreutzfeldt
+ * @since 23.03.2012
+ */
+public interface IRequestBodyHandler {
+
+	/**
+	 * Handles the next chunk of the body. The chunk is valid during this call only
+	 * @param content
+	 */
+	public void content(ChannelBuffer content);
+	
+	/**
+	 * Called once the whole body has been received, sends the response
+	 * @param event event carrying the last chunk
+	 */
+	public void finish(MessageEvent event);
+	
+	/**
+	 * Called if the connection has been closed before the body has been received completely
+	 */
+	public void abort();
+	
+}
@@ -0,0 +1,49 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.handler.async;
+
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+
+/**
+ * Context request handler receiving request bodies as a stream: the body chunks are handed over as they arrive instead 
+ * of being aggregated into a single request first. Thus request bodies are limited by neither an aggregation buffer nor
+ * the available memory. {@link #processRequest(HttpRequest, Map, boolean, MessageEvent)} remains in charge of requests
+ * whose body is available as a whole
+ * @author ckreutzfeldt
+ * @since 23.03.2012
+ */
+public interface IStreamingContextRequestHandler extends IContextRequestHandler {
+
+	/**
+	 * Called as soon as the head of a request has been received. The returned body handler receives all body chunks of
+	 * the request and sends the response once the last one has arrived
+	 * @param httpRequest request head, its content holds the first bytes of the body unless the request is chunked
+	 * @param requestParameters
+	 * @param keepAlive
+	 * @param event
+	 * @return
+	 */
+	public IRequestBodyHandler startRequest(HttpRequest httpRequest, Map<String, List<String>> requestParameters, boolean keepAlive, MessageEvent event);
+	
+}
@@ -0,0 +1,153 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.handler.async;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read-only view merging request specific overrides into the configuration options without copying the latter: 
+ * values found among the overrides hide the values of the same key found in the base options. The base options are
+ * referenced and must not be modified as long as the view is in use. The overrides - the handful of parameters of a 
+ * request - are copied on creation. The view keeps no lazily computed state, thus it may be handed to several threads, 
+ * eg. all consumers initialized on behalf of the same request.
+ * @author ckreutzfeldt
+ * @since 24.03.2012
+ */
+public class LayeredConfigurationOptions extends AbstractMap<String, List<String>> {
+
+	private final Map<String, List<String>> base;
+	private final Map<String, List<String>> overrides;
+	private final int size;
+	private final Set<Map.Entry<String, List<String>>> entrySet;
+	
+	/**
+	 * Initializes the view
+	 * @param base
+	 * @param overrides may be null
+	 */
+	public LayeredConfigurationOptions(Map<String, List<String>> base, Map<String, List<String>> overrides) {
+		if(base == null)
+			throw new IllegalArgumentException("Missing required base options");
+		this.base = base;
+		this.overrides = (overrides != null && !overrides.isEmpty() ? Collections.unmodifiableMap(new HashMap<String, List<String>>(overrides)) : null);
+		
+		// the visible entries: all overrides plus the base entries not hidden by any of them
+		int hidden = 0;
+		if(this.overrides != null) {
+			for(String key : this.overrides.keySet()) {
+				if(base.containsKey(key))
+					hidden++;
+			}
+		}
+		this.size = base.size() + (this.overrides != null ? this.overrides.size() : 0) - hidden;
+		this.entrySet = new AbstractSet<Map.Entry<String, List<String>>>() {
+			public Iterator<Map.Entry<String, List<String>>> iterator() {
+				return new LayeredIterator();
+			}
+			public int size() {
+				return size;
+			}
+		};
+	}
+	
+	/**
+	 * @see java.util.AbstractMap#get(java.lang.Object)
+	 */
+	public List<String> get(Object key) {
+		if(overrides != null) {
+			List<String> values = overrides.get(key);
+			if(values != null)
+				return values;
+		}
+		return base.get(key);
+	}
+	
+	/**
+	 * @see java.util.AbstractMap#containsKey(java.lang.Object)
+	 */
+	public boolean containsKey(Object key) {
+		return (overrides != null && overrides.containsKey(key)) || base.containsKey(key);
+	}
+	
+	/**
+	 * @see java.util.AbstractMap#size()
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns all entries of the overrides followed by the base entries not hidden by any of them
+	 * @see java.util.AbstractMap#entrySet()
+	 */
+	public Set<Map.Entry<String, List<String>>> entrySet() {
+		return entrySet;
+	}
+	
+	/**
+	 * Iterates through the overrides first and through the visible base entries afterwards 
+	 * @author ckreutzfeldt
+	 * @since 24.03.2012
+	 */
+	private class LayeredIterator implements Iterator<Map.Entry<String, List<String>>> {
+		
+		private final Iterator<Map.Entry<String, List<String>>> overrideIterator = (overrides != null ? overrides.entrySet().iterator() : null);
+		private final Iterator<Map.Entry<String, List<String>>> baseIterator = base.entrySet().iterator();
+		private Map.Entry<String, List<String>> next = null;
+		
+		public boolean hasNext() {
+			if(next != null)
+				return true;
+			if(overrideIterator != null && overrideIterator.hasNext()) {
+				next = overrideIterator.next();
+				return true;
+			}
+			while(baseIterator.hasNext()) {
+				Map.Entry<String, List<String>> entry = baseIterator.next();
+				if(overrides == null || !overrides.containsKey(entry.getKey())) {
+					next = entry;
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		public Map.Entry<String, List<String>> next() {
+			if(!hasNext())
+				throw new NoSuchElementException();
+			Map.Entry<String, List<String>> entry = next;
+			next = null;
+			return entry;
+		}
+		
+		public void remove() {
+			throw new UnsupportedOperationException("The configuration options are read-only");
+		}
+	}
+	
+}
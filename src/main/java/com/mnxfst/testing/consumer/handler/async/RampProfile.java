@@ -0,0 +1,158 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.consumer.handler.async;
+
+/**
+ * Describes how a {@link ConsumerRamp} spreads its consumers over time: maps the elapsed share of the ramp duration 
+ * to the share of consumers which must have been started (or stopped) by then. Available profiles:
+ * <ul>
+ *   <li><i>linear</i> - constant rate over the whole duration</li>
+ *   <li><i>step</i> - equally sized batches at equally spaced points in time, the first one right away</li>
+ *   <li><i>curve</i> - piecewise linear curve through cumulative points placed evenly across the duration</li>
+ * </ul>
+ * @author ckreutzfeldt
+ * @since 09.03.2012
+ */
+public abstract class RampProfile {
+
+	public static final String PROFILE_LINEAR = "linear";
+	public static final String PROFILE_STEP = "step";
+	public static final String PROFILE_CURVE = "curve";
+	
+	/**
+	 * Returns the share of consumers due at the given progress
+	 * @param progress elapsed share of the duration, between 0 and 1
+	 * @return share of consumers, between 0 and 1
+	 */
+	public abstract double fraction(double progress);
+	
+	/**
+	 * Returns the profile name
+	 * @return
+	 */
+	public abstract String getName();
+	
+	/**
+	 * Returns a profile starting consumers at a constant rate
+	 * @return
+	 */
+	public static RampProfile linear() {
+		return new RampProfile() {
+			public double fraction(double progress) {
+				return Math.min(1, Math.max(0, progress));
+			}
+			public String getName() {
+				return PROFILE_LINEAR;
+			}
+		};
+	}
+	
+	/**
+	 * Returns a profile starting consumers in the given number of equally sized batches
+	 * @param steps
+	 * @return
+	 */
+	public static RampProfile step(final int steps) {
+		if(steps < 1)
+			throw new IllegalArgumentException("A step profile requires at least one step");
+		return new RampProfile() {
+			public double fraction(double progress) {
+				if(progress >= 1)
+					return 1;
+				return Math.min(steps, Math.floor(Math.max(0, progress) * steps) + 1) / steps;
+			}
+			public String getName() {
+				return PROFILE_STEP;
+			}
+		};
+	}
+	
+	/**
+	 * Returns a profile following the given cumulative points which are placed evenly across the duration, the first 
+	 * one at its start, the last one at its end. Points are relative to the last one, eg. 0,1,4 starts a quarter of the
+	 * consumers during the first half
+	 * @param points at least two finite, non-decreasing, non-negative values, the last one must be positive
+	 * @return
+	 */
+	public static RampProfile curve(double[] points) {
+		
+		if(points == null || points.length < 2)
+			throw new IllegalArgumentException("A curve profile requires at least two points");
+		for(int i = 0; i < points.length; i++) {
+			// NaN passes any comparison below, infinite values break the normalization
+			if(Double.isNaN(points[i]) || Double.isInfinite(points[i]))
+				throw new IllegalArgumentException("The points of a curve profile must be finite");
+			if(points[i] < 0 || (i > 0 && points[i] < points[i - 1]))
+				throw new IllegalArgumentException("The points of a curve profile must be non-negative and non-decreasing");
+		}
+		if(points[points.length - 1] <= 0)
+			throw new IllegalArgumentException("The last point of a curve profile must be positive");
+		
+		final double[] normalized = new double[points.length];
+		for(int i = 0; i < points.length; i++)
+			normalized[i] = points[i] / points[points.length - 1];
+		
+		return new RampProfile() {
+			public double fraction(double progress) {
+				if(progress <= 0)
+					return normalized[0];
+				if(progress >= 1)
+					return 1;
+				double position = progress * (normalized.length - 1);
+				int segment = (int)position;
+				return normalized[segment] + (normalized[segment + 1] - normalized[segment]) * (position - segment);
+			}
+			public String getName() {
+				return PROFILE_CURVE;
+			}
+		};
+	}
+	
+	/**
+	 * Parses the profile referenced by its name
+	 * @param name linear, step or curve - linear if null
+	 * @param steps number of steps, required by step profile only
+	 * @param curve comma separated list of points, required by curve profile only
+	 * @return
+	 * @throws IllegalArgumentException thrown in case the profile is unknown or its settings are invalid
+	 */
+	public static RampProfile parse(String name, int steps, String curve) {
+		
+		if(name == null || name.trim().isEmpty() || PROFILE_LINEAR.equalsIgnoreCase(name.trim()))
+			return linear();
+		if(PROFILE_STEP.equalsIgnoreCase(name.trim()))
+			return step(steps);
+		if(PROFILE_CURVE.equalsIgnoreCase(name.trim())) {
+			if(curve == null || curve.trim().isEmpty())
+				throw new IllegalArgumentException("A curve profile requires its points");
+			String[] values = curve.split(",");
+			double[] points = new double[values.length];
+			for(int i = 0; i < values.length; i++) {
+				try {
+					points[i] = Double.parseDouble(values[i].trim());
+				} catch(NumberFormatException e) {
+					throw new IllegalArgumentException("Invalid curve point: " + values[i]);
+				}
+			}
+			return curve(points);
+		}
+		throw new IllegalArgumentException("Unknown ramp profile: " + name);
+	}
+	
+}
@@ -0,0 +1,511 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.ingest;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+
+import com.mnxfst.testing.consumer.analyzer.MessageAnalyzerPipeline;
+import com.mnxfst.testing.consumer.analyzer.MessageEnvelope;
+import com.mnxfst.testing.consumer.async.AsyncInputConsumerStatistics;
+import com.mnxfst.testing.consumer.exception.AsyncInputConsumerException;
+import com.mnxfst.testing.consumer.handler.IStatisticsSection;
+import com.mnxfst.testing.consumer.handler.QueryParameters;
+import com.mnxfst.testing.consumer.handler.StatisticsSectionRegistry;
+import com.mnxfst.testing.consumer.handler.TSConsumerChannelUpstreamHandler;
+import com.mnxfst.testing.consumer.handler.XmlResponseWriter;
+import com.mnxfst.testing.consumer.handler.async.ContextRequestExecutionMode;
+import com.mnxfst.testing.consumer.handler.async.IRequestBodyHandler;
+import com.mnxfst.testing.consumer.handler.async.IStreamingContextRequestHandler;
+import com.mnxfst.testing.consumer.socket.FrameDecoder;
+
+/**
+ * Context handler accepting messages pushed by the load generator: each request body carries a batch of messages, either
+ * separated by a delimiter or preceded by their length. The body is decoded chunk by chunk while it is received, the 
+ * messages are counted and handed over to the analyzers configured for consumer type <i>ingest</i> without creating any 
+ * intermediate strings. Only messages spanning two chunks are copied into a buffer of the request before being decoded.
+ * The response reports the number of messages and bytes found in the body.<br/><br/>
+ * Settings: <i>ingest.framing</i> (delimiter or length, may be overridden by the request parameter <i>framing</i>), 
+ * <i>ingest.delimiter</i>, <i>ingest.lengthFieldSize</i> and <i>ingest.maxFrameSize</i>. Statistics and analyzer settings 
+ * are read for consumer type <i>ingest</i>, eg. consumer.async.ingest.message-analyzer.&lt;name&gt;
+ * @author ckreutzfeldt
+ * @since 23.03.2012
+ */
+public class IngestContextRequestHandler implements IStreamingContextRequestHandler, IStatisticsSection {
+
+	private static final Logger logger = Logger.getLogger(IngestContextRequestHandler.class);
+	
+	public static final String CONSUMER_TYPE = "ingest";
+	public static final String STATISTICS_SECTION_NAME = "ingest";
+	
+	public static final String CFG_OPT_FRAMING = "ingest.framing";
+	public static final String CFG_OPT_DELIMITER = "ingest.delimiter";
+	public static final String CFG_OPT_LENGTH_FIELD_SIZE = "ingest.lengthFieldSize";
+	public static final String CFG_OPT_MAX_FRAME_SIZE = "ingest.maxFrameSize";
+	
+	public static final String REQUEST_PARAM_FRAMING = "framing";
+	
+	public static final String DEFAULT_DELIMITER = "\\n";
+	public static final int DEFAULT_LENGTH_FIELD_SIZE = 4;
+	public static final int DEFAULT_MAX_FRAME_SIZE = 65536;
+	
+	private static final String RESPONSE_INGEST_ELEMENT = "ingest";
+	private static final String RESPONSE_MESSAGES_ATTRIBUTE = "messages";
+	private static final String RESPONSE_BYTES_ATTRIBUTE = "bytes";
+	private static final String RESPONSE_ERRORS_ELEMENT = "errors";
+	private static final String RESPONSE_ERROR_ELEMENT = "error";
+	private static final String RESPONSE_FRAMING_ATTRIBUTE = "framing";
+	private static final String RESPONSE_REQUESTS_ATTRIBUTE = "requests";
+	private static final String RESPONSE_ACTIVE_ATTRIBUTE = "active";
+	private static final String RESPONSE_FRAMING_ERRORS_ATTRIBUTE = "framingErrors";
+	private static final String RESPONSE_ABORTED_ATTRIBUTE = "aborted";
+	private static final String RESPONSE_CARRIED_ATTRIBUTE = "carried";
+	
+	private String framing = FrameDecoder.FRAMING_DELIMITER;
+	private byte[] delimiter = null;
+	private int lengthFieldSize = DEFAULT_LENGTH_FIELD_SIZE;
+	private int maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+	
+	private AsyncInputConsumerStatistics statistics = null;
+	// pipelines accept a single producer only, requests forward their messages while holding its monitor
+	private MessageAnalyzerPipeline pipeline = null;
+	
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong activeRequests = new AtomicLong();
+	private final AtomicLong framingErrors = new AtomicLong();
+	private final AtomicLong abortedRequests = new AtomicLong();
+	private final AtomicLong carriedBytes = new AtomicLong();
+	
+	static {
+		QueryParameters.registerKnownKeys(REQUEST_PARAM_FRAMING);
+	}
+	
+	/**
+	 * Default constructor
+	 */
+	public IngestContextRequestHandler() {
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.consumer.handler.async.IContextRequestHandler#initialize(java.util.Map)
+	 */
+	public void initialize(Map<String, String> configOptions) {
+		
+		String framingSetting = configOptions.get(CFG_OPT_FRAMING);
+		if(framingSetting != null && !framingSetting.trim().isEmpty())
+			framing = framingSetting.trim().toLowerCase();
+		if(!FrameDecoder.FRAMING_DELIMITER.equals(framing) && !FrameDecoder.FRAMING_LENGTH.equals(framing))
+			throw new RuntimeException("Invalid value for '"+CFG_OPT_FRAMING+"': " + framingSetting);
+		
+		String delimiterSetting = configOptions.get(CFG_OPT_DELIMITER);
+		try {
+			delimiter = FrameDecoder.parseDelimiter(delimiterSetting != null && !delimiterSetting.isEmpty() ? delimiterSetting : DEFAULT_DELIMITER);
+		} catch(IllegalArgumentException e) {
+			throw new RuntimeException("Invalid value for '"+CFG_OPT_DELIMITER+"': " + delimiterSetting);
+		}
+		lengthFieldSize = parsePositiveIntOption(configOptions, CFG_OPT_LENGTH_FIELD_SIZE, DEFAULT_LENGTH_FIELD_SIZE);
+		if(lengthFieldSize != 1 && lengthFieldSize != 2 && lengthFieldSize != 4)
+			throw new RuntimeException("Invalid value for '"+CFG_OPT_LENGTH_FIELD_SIZE+"': " + lengthFieldSize);
+		maxFrameSize = parsePositiveIntOption(configOptions, CFG_OPT_MAX_FRAME_SIZE, DEFAULT_MAX_FRAME_SIZE);
+		
+		// statistics and analyzers expect the multi-valued representation used for consumer settings
+		Map<String, List<String>> properties = new HashMap<String, List<String>>();
+		for(String key : configOptions.keySet()) {
+			List<String> values = new ArrayList<String>(1);
+			values.add(configOptions.get(key));
+			properties.put(key, values);
+		}
+		statistics = new AsyncInputConsumerStatistics(CONSUMER_TYPE, CONSUMER_TYPE, properties);
+		try {
+			pipeline = MessageAnalyzerPipeline.create("analyzer-" + CONSUMER_TYPE, CONSUMER_TYPE, properties);
+		} catch(AsyncInputConsumerException e) {
+			throw new RuntimeException("Failed to set up the analyzers for '"+CONSUMER_TYPE+"'. Error: " + e.getMessage());
+		}
+		if(pipeline != null)
+			pipeline.start();
+		
+		StatisticsSectionRegistry.register(this);
+		logger.info("ingest[framing="+framing+", lengthFieldSize="+lengthFieldSize+", maxFrameSize="+maxFrameSize+", analyzers="+(pipeline != null ? pipeline.getStageCount() : 0)+"]");
+	}
+
+	/**
+	 * Reads a positive integer from the provided configuration options
+	 * @param configOptions
+	 * @param key
+	 * @param defaultValue
+	 * @return
+	 * @throws RuntimeException thrown in case the value is not a positive integer
+	 */
+	private static int parsePositiveIntOption(Map<String, String> configOptions, String key, int defaultValue) {
+		String value = configOptions.get(key);
+		if(value == null || value.trim().isEmpty())
+			return defaultValue;
+		int result = 0;
+		try {
+			result = Integer.parseInt(value.trim());
+		} catch(NumberFormatException e) {
+			throw new RuntimeException("Invalid value for '"+key+"': " + value);
+		}
+		if(result < 1)
+			throw new RuntimeException("Invalid value for '"+key+"': " + value);
+		return result;
+	}
+	
+	/**
+	 * Ingest requests never block
+	 * @see com.mnxfst.testing.consumer.handler.async.IContextRequestHandler#getExecutionMode(org.jboss.netty.handler.codec.http.HttpRequest, java.util.Map)
+	 */
+	public ContextRequestExecutionMode getExecutionMode(HttpRequest httpRequest, Map<String, List<String>> requestParameters) {
+		return ContextRequestExecutionMode.FAST;
+	}
+
+	/**
+	 * Handles a request which has been received as a whole
+	 * @see com.mnxfst.testing.consumer.handler.async.IContextRequestHandler#processRequest(org.jboss.netty.handler.codec.http.HttpRequest, java.util.Map, boolean, org.jboss.netty.channel.MessageEvent)
+	 */
+	public void processRequest(HttpRequest httpRequest, Map<String, List<String>> requestParameters, boolean keepAlive, MessageEvent event) {
+		IRequestBodyHandler body = startRequest(httpRequest, requestParameters, keepAlive, event);
+		body.content(httpRequest.getContent());
+		body.finish(event);
+	}
+
+	/**
+	 * @see com.mnxfst.testing.consumer.handler.async.IStreamingContextRequestHandler#startRequest(org.jboss.netty.handler.codec.http.HttpRequest, java.util.Map, boolean, org.jboss.netty.channel.MessageEvent)
+	 */
+	public IRequestBodyHandler startRequest(HttpRequest httpRequest, Map<String, List<String>> requestParameters, boolean keepAlive, MessageEvent event) {
+		
+		requests.incrementAndGet();
+		activeRequests.incrementAndGet();
+		
+		String requestFraming = framing;
+		List<String> framingParams = requestParameters.get(REQUEST_PARAM_FRAMING);
+		if(framingParams != null && !framingParams.isEmpty())
+			requestFraming = framingParams.get(0).trim().toLowerCase();
+		
+		IngestRequest request = null;
+		if(FrameDecoder.FRAMING_LENGTH.equals(requestFraming))
+			request = new IngestRequest(FrameDecoder.lengthPrefixed(lengthFieldSize, maxFrameSize), false, keepAlive);
+		else if(FrameDecoder.FRAMING_DELIMITER.equals(requestFraming))
+			request = new IngestRequest(FrameDecoder.delimited(delimiter, maxFrameSize), true, keepAlive);
+		else
+			request = new IngestRequest(null, false, keepAlive);
+		if(request.decoder == null)
+			request.fail("Unknown framing: " + requestFraming);
+		return request;
+	}
+	
+	/**
+	 * Shuts down the analyzers and removes the statistics section
+	 * @param timeoutMillis
+	 */
+	public void shutdown(long timeoutMillis) {
+		StatisticsSectionRegistry.unregister(STATISTICS_SECTION_NAME);
+		if(pipeline != null)
+			pipeline.shutdown(timeoutMillis);
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.consumer.handler.IStatisticsSection#getSectionName()
+	 */
+	public String getSectionName() {
+		return STATISTICS_SECTION_NAME;
+	}
+	
+	/**
+	 * Writes the ingest counters followed by the statistics of the analyzer pipeline
+	 * @see com.mnxfst.testing.consumer.handler.IStatisticsSection#writeStatistics(com.mnxfst.testing.consumer.handler.XmlResponseWriter)
+	 */
+	public void writeStatistics(XmlResponseWriter responseWriter) {
+		responseWriter.startElement(RESPONSE_INGEST_ELEMENT);
+		responseWriter.attribute(RESPONSE_FRAMING_ATTRIBUTE, framing);
+		responseWriter.attribute(RESPONSE_REQUESTS_ATTRIBUTE, requests.get());
+		responseWriter.attribute(RESPONSE_ACTIVE_ATTRIBUTE, activeRequests.get());
+		responseWriter.attribute(RESPONSE_MESSAGES_ATTRIBUTE, statistics.getMessageCount());
+		responseWriter.attribute(RESPONSE_BYTES_ATTRIBUTE, statistics.getByteCount());
+		responseWriter.attribute(RESPONSE_FRAMING_ERRORS_ATTRIBUTE, framingErrors.get());
+		responseWriter.attribute(RESPONSE_ABORTED_ATTRIBUTE, abortedRequests.get());
+		responseWriter.attribute(RESPONSE_CARRIED_ATTRIBUTE, carriedBytes.get());
+		responseWriter.endElement();
+		if(pipeline != null)
+			pipeline.writeStatistics(responseWriter);
+	}
+	
+	/**
+	 * Sends a response containing the given message to the calling client
+	 * @param responseMessage
+	 * @param keepAlive
+	 * @param event
+	 */
+	protected void sendResponse(ChannelBuffer responseMessage, boolean keepAlive, MessageEvent event) {
+		HttpResponse httpResponse = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+		
+		httpResponse.setContent(responseMessage);
+		httpResponse.setHeader(HttpHeaders.Names.CONTENT_TYPE, "text/plain; charset=UTF-8");
+		
+		if(keepAlive)
+			httpResponse.setHeader(HttpHeaders.Names.CONTENT_LENGTH, httpResponse.getContent().readableBytes());
+		
+		ChannelFuture future = event.getChannel().write(httpResponse);
+		if(!keepAlive)
+			future.addListener(ChannelFutureListener.CLOSE);
+	}
+	
+	public AsyncInputConsumerStatistics getStatistics() {
+		return statistics;
+	}
+	
+	public MessageAnalyzerPipeline getPipeline() {
+		return pipeline;
+	}
+	
+	public long getFramingErrorCount() {
+		return framingErrors.get();
+	}
+	
+	public long getAbortedRequestCount() {
+		return abortedRequests.get();
+	}
+	
+	/**
+	 * Returns the number of bytes copied for completing messages which span the boundary between two chunks
+	 * @return
+	 */
+	public long getCarriedByteCount() {
+		return carriedBytes.get();
+	}
+	
+	/**
+	 * Decodes the body of a single request. Chunks are decoded in place, only the bytes of a message spanning the
+	 * boundary between two chunks are carried over into a buffer which is allocated once such a message shows up. The
+	 * next chunk contributes the bytes completing that message only, its remaining messages are decoded in place again
+	 * @author ckreutzfeldt
+	 * @since 23.03.2012
+	 */
+	private class IngestRequest implements IRequestBodyHandler, FrameDecoder.FrameHandler {
+		
+		private final FrameDecoder decoder;
+		// delimited bodies may end without a delimiter, their blank lines carry no message
+		private final boolean delimited;
+		private final boolean keepAlive;
+		// holds the beginning of a message spanning two chunks
+		private ByteBuffer carry = null;
+		private String error = null;
+		private boolean done = false;
+		
+		private long messages = 0;
+		private long bytes = 0;
+		// counters of the chunk currently decoded
+		private long receiveTimestamp = 0;
+		private long chunkMessages = 0;
+		private long chunkBytes = 0;
+		
+		private IngestRequest(FrameDecoder decoder, boolean delimited, boolean keepAlive) {
+			this.decoder = decoder;
+			this.delimited = delimited;
+			this.keepAlive = keepAlive;
+		}
+		
+		/**
+		 * @see com.mnxfst.testing.consumer.handler.async.IRequestBodyHandler#content(org.jboss.netty.buffer.ChannelBuffer)
+		 */
+		public void content(ChannelBuffer content) {
+			if(error != null || done || !content.readable())
+				return;
+			
+			receiveTimestamp = System.currentTimeMillis();
+			chunkMessages = 0;
+			chunkBytes = 0;
+			// shares the bytes of heap and direct buffers, only composite buffers are copied
+			ByteBuffer input = content.toByteBuffer();
+			try {
+				if(pipeline != null) {
+					synchronized(pipeline) {
+						decode(input);
+					}
+				} else {
+					decode(input);
+				}
+			} catch(AsyncInputConsumerException e) {
+				fail(e.getMessage());
+			}
+			recordChunk();
+		}
+		
+		/**
+		 * Decodes the given chunk, completing the message carried over from the previous chunk first
+		 * @param input
+		 * @throws AsyncInputConsumerException
+		 */
+		private void decode(ByteBuffer input) throws AsyncInputConsumerException {
+			// copies the bytes missing from the carried message only, the rest of the chunk is decoded in place
+			while(carry != null && carry.position() > 0 && input.hasRemaining()) {
+				carry.flip();
+				int missing = decoder.getMissingBytes(carry, input);
+				carry.position(carry.limit());
+				carry.limit(carry.capacity());
+				int count = Math.min(missing, input.remaining());
+				if(count > carry.remaining())
+					throw new AsyncInputConsumerException("Message exceeds the maximum frame size of " + maxFrameSize);
+				int limit = input.limit();
+				input.limit(input.position() + count);
+				carry.put(input);
+				input.limit(limit);
+				carriedBytes.addAndGet(count);
+				carry.flip();
+				decoder.decode(carry, this);
+				carry.compact();
+			}
+			if(carry == null || carry.position() == 0) {
+				decoder.decode(input, this);
+				if(input.hasRemaining()) {
+					if(carry == null)
+						carry = ByteBuffer.allocate(decoder.getMaxBufferedBytes());
+					carriedBytes.addAndGet(input.remaining());
+					carry.put(input);
+				}
+			}
+		}
+		
+		/**
+		 * @see com.mnxfst.testing.consumer.socket.FrameDecoder.FrameHandler#frame(java.nio.ByteBuffer, int, int)
+		 */
+		public void frame(ByteBuffer buffer, int offset, int length) {
+			
+			if(length == 0 && delimited)
+				return;
+			chunkMessages++;
+			chunkBytes += length;
+			if(pipeline == null)
+				return;
+			
+			// pushed messages carry no sent timestamp
+			MessageEnvelope envelope = pipeline.claim(receiveTimestamp, 0);
+			if(envelope == null)
+				return;
+			try {
+				byte[] payload = envelope.getPayloadBuffer(length);
+				int position = buffer.position();
+				buffer.position(offset);
+				buffer.get(payload, 0, length);
+				buffer.position(position);
+				envelope.setPayload(payload, 0, length);
+				envelope.setSize(length);
+			} finally {
+				// the claimed envelope must be published in any case
+				pipeline.publish();
+			}
+		}
+		
+		/**
+		 * Records the messages of the chunk decoded last
+		 */
+		private void recordChunk() {
+			if(chunkMessages > 0) {
+				statistics.recordMessages(chunkMessages, chunkBytes);
+				messages += chunkMessages;
+				bytes += chunkBytes;
+				chunkMessages = 0;
+				chunkBytes = 0;
+			}
+		}
+		
+		/**
+		 * Marks the request as failed, the remaining body is ignored
+		 * @param message
+		 */
+		private void fail(String message) {
+			error = message;
+			carry = null;
+			framingErrors.incrementAndGet();
+			statistics.recordError();
+		}
+		
+		/**
+		 * Takes any bytes left over as final message if the body is delimited, an incomplete length prefixed message 
+		 * fails the request. Sends the response afterwards
+		 * @see com.mnxfst.testing.consumer.handler.async.IRequestBodyHandler#finish(org.jboss.netty.channel.MessageEvent)
+		 */
+		public void finish(MessageEvent event) {
+			if(done)
+				return;
+			done = true;
+			activeRequests.decrementAndGet();
+			
+			if(error == null && carry != null && carry.position() > 0) {
+				int remaining = carry.position();
+				if(!delimited) {
+					fail("Incomplete message of " + remaining + " bytes at the end of the body");
+				} else if(remaining > maxFrameSize) {
+					fail("Message exceeds the maximum frame size of " + maxFrameSize);
+				} else {
+					receiveTimestamp = System.currentTimeMillis();
+					if(pipeline != null) {
+						synchronized(pipeline) {
+							frame(carry, 0, remaining);
+						}
+					} else {
+						frame(carry, 0, remaining);
+					}
+					recordChunk();
+				}
+			}
+			carry = null;
+			
+			XmlResponseWriter responseWriter = new XmlResponseWriter();
+			responseWriter.startElement(TSConsumerChannelUpstreamHandler.CONSUMER_RESPONSE_ROOT_ELEMENT);
+			responseWriter.startElement(RESPONSE_INGEST_ELEMENT);
+			responseWriter.attribute(RESPONSE_MESSAGES_ATTRIBUTE, messages);
+			responseWriter.attribute(RESPONSE_BYTES_ATTRIBUTE, bytes);
+			responseWriter.endElement();
+			if(error != null)
+				responseWriter.startElement(RESPONSE_ERRORS_ELEMENT).element(RESPONSE_ERROR_ELEMENT, error);
+			sendResponse(responseWriter.finish(), keepAlive, event);
+		}
+		
+		/**
+		 * @see com.mnxfst.testing.consumer.handler.async.IRequestBodyHandler#abort()
+		 */
+		public void abort() {
+			if(done)
+				return;
+			done = true;
+			carry = null;
+			activeRequests.decrementAndGet();
+			abortedRequests.incrementAndGet();
+		}
+	}
+	
+}
@@ -0,0 +1,375 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.jms;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+
+import org.apache.log4j.Logger;
+
+import com.mnxfst.testing.consumer.handler.IStatisticsSection;
+import com.mnxfst.testing.consumer.handler.StatisticsSectionRegistry;
+import com.mnxfst.testing.consumer.handler.XmlResponseWriter;
+
+/**
+ * Lets many consumers share a small number of broker connections. Connections are pooled by broker url and credentials, 
+ * each pool holds up to the number of connections requested by the leasing consumers. A lease returns the pooled 
+ * connection having the fewest leases, new connections are opened as long as the pool is not full and all existing 
+ * connections are in use. Connections are reference counted and closed as soon as their last lease is released. 
+ * Connections reporting an error are not leased again. A pool is dropped together with its last connection. Pools are 
+ * looked up by a digest of the password, the password itself is not kept.<br/><br/>
+ * Shared connections are started right away, thus consumers must not create their message consumers before they are
+ * meant to receive. The pool statistics are reported as statistics section named {@link #SECTION_NAME}
+ * @author ckreutzfeldt
+ * @since 13.03.2012
+ */
+public class JMSConnectionManager implements IStatisticsSection {
+
+	private static final Logger logger = Logger.getLogger(JMSConnectionManager.class);
+	
+	public static final String SECTION_NAME = "jmsConnections";
+	
+	private static final String RESPONSE_POOL_ELEMENT = "pool";
+	private static final String RESPONSE_POOL_BROKER_URL_ATTRIBUTE = "brokerUrl";
+	private static final String RESPONSE_POOL_USERNAME_ATTRIBUTE = "username";
+	private static final String RESPONSE_POOL_CONNECTIONS_ATTRIBUTE = "connections";
+	private static final String RESPONSE_POOL_LEASES_ATTRIBUTE = "leases";
+	private static final String RESPONSE_POOL_OPENED_ATTRIBUTE = "opened";
+	private static final String RESPONSE_POOL_CLOSED_ATTRIBUTE = "closed";
+	private static final String RESPONSE_POOL_FAILED_ATTRIBUTE = "failed";
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	
+	private static final JMSConnectionManager instance = new JMSConnectionManager();
+	static {
+		StatisticsSectionRegistry.register(instance);
+	}
+	
+	private final ConcurrentMap<String, ConnectionPool> pools = new ConcurrentHashMap<String, ConnectionPool>();
+	
+	/**
+	 * Returns the manager shared by all consumers
+	 * @return
+	 */
+	public static JMSConnectionManager getInstance() {
+		return instance;
+	}
+	
+	/**
+	 * Leases a connection to the referenced broker
+	 * @param connectionFactory used for opening new connections
+	 * @param brokerUrl
+	 * @param username
+	 * @param password
+	 * @param maxConnections maximum number of connections kept for the broker url and credentials
+	 * @return
+	 * @throws JMSException thrown in case a new connection cannot be opened
+	 */
+	public ConnectionLease lease(ConnectionFactory connectionFactory, String brokerUrl, String username, String password, int maxConnections) throws JMSException {
+		
+		if(maxConnections < 1)
+			throw new IllegalArgumentException("At least one connection is required");
+		
+		String key = getPoolKey(brokerUrl, username, password);
+		while(true) {
+			ConnectionPool pool = pools.get(key);
+			if(pool == null) {
+				pool = new ConnectionPool(key, brokerUrl, username);
+				ConnectionPool existing = pools.putIfAbsent(key, pool);
+				if(existing != null)
+					pool = existing;
+			}
+			ConnectionLease lease = null;
+			try {
+				lease = pool.lease(connectionFactory, maxConnections);
+			} catch(JMSException e) {
+				// do not keep a pool which never managed to open a connection
+				if(pool.retireIfIdle())
+					pools.remove(key, pool);
+				throw e;
+			}
+			if(lease != null)
+				return lease;
+			// the pool has been dropped along with its last connection meanwhile
+			pools.remove(key, pool);
+		}
+	}
+	
+	/**
+	 * Gives back the given lease, the connection is closed if it is not leased anymore and the pool is dropped along 
+	 * with its last connection
+	 * @param lease
+	 */
+	public void release(ConnectionLease lease) {
+		if(lease.pool.release(lease))
+			pools.remove(lease.pool.key, lease.pool);
+	}
+	
+	/**
+	 * Returns the key of the pool holding the connections for the given broker url and credentials. The password is 
+	 * represented by its SHA-256 digest
+	 * @param brokerUrl
+	 * @param username
+	 * @param password
+	 * @return
+	 */
+	protected static String getPoolKey(String brokerUrl, String username, String password) {
+		StringBuilder key = new StringBuilder(brokerUrl).append('\n').append(username != null ? username : "").append('\n');
+		if(password == null)
+			return key.toString();
+		try {
+			for(byte b : MessageDigest.getInstance("SHA-256").digest(password.getBytes(UTF8)))
+				key.append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+		} catch(NoSuchAlgorithmException e) {
+			// all runtimes are required to support SHA-256
+			throw new IllegalStateException("SHA-256 not supported", e);
+		}
+		return key.toString();
+	}
+	
+	/**
+	 * Returns the number of pools, ie. broker url and credentials having open connections
+	 * @return
+	 */
+	public int getPoolCount() {
+		return pools.size();
+	}
+	
+	/**
+	 * Returns the number of open connections across all pools
+	 * @return
+	 */
+	public int getConnectionCount() {
+		int count = 0;
+		for(ConnectionPool pool : pools.values())
+			count += pool.getConnectionCount();
+		return count;
+	}
+	
+	/**
+	 * Returns the number of leases held across all pools
+	 * @return
+	 */
+	public int getLeaseCount() {
+		int count = 0;
+		for(ConnectionPool pool : pools.values())
+			count += pool.getLeaseCount();
+		return count;
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.consumer.handler.IStatisticsSection#getSectionName()
+	 */
+	public String getSectionName() {
+		return SECTION_NAME;
+	}
+
+	/**
+	 * @see com.mnxfst.testing.consumer.handler.IStatisticsSection#writeStatistics(com.mnxfst.testing.consumer.handler.XmlResponseWriter)
+	 */
+	public void writeStatistics(XmlResponseWriter responseWriter) {
+		for(ConnectionPool pool : pools.values()) {
+			responseWriter.startElement(RESPONSE_POOL_ELEMENT);
+			responseWriter.attribute(RESPONSE_POOL_BROKER_URL_ATTRIBUTE, pool.brokerUrl);
+			if(pool.username != null)
+				responseWriter.attribute(RESPONSE_POOL_USERNAME_ATTRIBUTE, pool.username);
+			responseWriter.attribute(RESPONSE_POOL_CONNECTIONS_ATTRIBUTE, pool.getConnectionCount());
+			responseWriter.attribute(RESPONSE_POOL_LEASES_ATTRIBUTE, pool.getLeaseCount());
+			responseWriter.attribute(RESPONSE_POOL_OPENED_ATTRIBUTE, pool.openedCount.get());
+			responseWriter.attribute(RESPONSE_POOL_CLOSED_ATTRIBUTE, pool.closedCount.get());
+			responseWriter.attribute(RESPONSE_POOL_FAILED_ATTRIBUTE, pool.failedCount.get());
+			responseWriter.endElement();
+		}
+	}
+	
+	/**
+	 * Lease on a shared connection
+	 * @author ckreutzfeldt
+	 * @since 13.03.2012
+	 */
+	public static class ConnectionLease {
+		
+		private final ConnectionPool pool;
+		private final SharedConnection sharedConnection;
+		private final AtomicBoolean released = new AtomicBoolean(false);
+		
+		private ConnectionLease(ConnectionPool pool, SharedConnection sharedConnection) {
+			this.pool = pool;
+			this.sharedConnection = sharedConnection;
+		}
+		
+		public Connection getConnection() {
+			return sharedConnection.connection;
+		}
+	}
+	
+	/**
+	 * Reference counted connection
+	 * @author ckreutzfeldt
+	 * @since 13.03.2012
+	 */
+	private static class SharedConnection {
+		
+		private final Connection connection;
+		private int leases = 0;
+		private volatile boolean failed = false;
+		
+		private SharedConnection(Connection connection) {
+			this.connection = connection;
+		}
+	}
+	
+	/**
+	 * Connections kept for a single broker url and credentials
+	 * @author ckreutzfeldt
+	 * @since 13.03.2012
+	 */
+	private static class ConnectionPool {
+		
+		private final String key;
+		private final String brokerUrl;
+		private final String username;
+		private final List<SharedConnection> connections = new ArrayList<SharedConnection>();
+		private final AtomicLong openedCount = new AtomicLong(0);
+		private final AtomicLong closedCount = new AtomicLong(0);
+		private final AtomicLong failedCount = new AtomicLong(0);
+		// set once the last connection has been closed, retired pools are not leased from anymore
+		private boolean retired = false;
+		
+		private ConnectionPool(String key, String brokerUrl, String username) {
+			this.key = key;
+			this.brokerUrl = brokerUrl;
+			this.username = username;
+		}
+		
+		/**
+		 * Leases the least leased healthy connection or opens a new one
+		 * @param connectionFactory
+		 * @param maxConnections
+		 * @return lease or null if the pool has been retired
+		 * @throws JMSException
+		 */
+		private synchronized ConnectionLease lease(ConnectionFactory connectionFactory, int maxConnections) throws JMSException {
+			
+			if(retired)
+				return null;
+			
+			// pick the least leased healthy connection
+			SharedConnection leastLeased = null;
+			int healthyCount = 0;
+			for(SharedConnection sharedConnection : connections) {
+				if(sharedConnection.failed)
+					continue;
+				healthyCount++;
+				if(leastLeased == null || sharedConnection.leases < leastLeased.leases)
+					leastLeased = sharedConnection;
+			}
+			
+			// open another one if all are in use and the pool is not full
+			if(leastLeased == null || (leastLeased.leases > 0 && healthyCount < maxConnections)) {
+				Connection connection = connectionFactory.createConnection();
+				try {
+					connection.start();
+				} catch(JMSException e) {
+					closeQuietly(connection);
+					throw e;
+				}
+				final SharedConnection sharedConnection = new SharedConnection(connection);
+				connection.setExceptionListener(new ExceptionListener() {
+					public void onException(JMSException exception) {
+						sharedConnection.failed = true;
+						failedCount.incrementAndGet();
+						logger.error("Shared connection to '"+brokerUrl+"' failed: " + exception.getMessage());
+					}
+				});
+				connections.add(sharedConnection);
+				openedCount.incrementAndGet();
+				leastLeased = sharedConnection;
+			}
+			
+			leastLeased.leases++;
+			return new ConnectionLease(this, leastLeased);
+		}
+		
+		/**
+		 * Gives back the given lease and closes its connection if it is not leased anymore
+		 * @param lease
+		 * @return true if the pool has been retired as its last connection has been closed
+		 */
+		private boolean release(ConnectionLease lease) {
+			if(!lease.released.compareAndSet(false, true))
+				return false;
+			SharedConnection sharedConnection = lease.sharedConnection;
+			boolean idle = false;
+			synchronized(this) {
+				if(--sharedConnection.leases > 0)
+					return false;
+				connections.remove(sharedConnection);
+				idle = retireIfIdle();
+			}
+			closeQuietly(sharedConnection.connection);
+			closedCount.incrementAndGet();
+			return idle;
+		}
+		
+		/**
+		 * Retires the pool if it holds no connections
+		 * @return true if the pool has been retired
+		 */
+		private synchronized boolean retireIfIdle() {
+			if(connections.isEmpty())
+				retired = true;
+			return retired;
+		}
+		
+		private synchronized int getConnectionCount() {
+			return connections.size();
+		}
+		
+		private synchronized int getLeaseCount() {
+			int leases = 0;
+			for(SharedConnection sharedConnection : connections)
+				leases += sharedConnection.leases;
+			return leases;
+		}
+		
+		private void closeQuietly(Connection connection) {
+			try {
+				connection.close();
+			} catch(JMSException e) {
+				logger.error("Failed to close shared connection to '"+brokerUrl+"': " + e.getMessage());
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,700 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.jms;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.log4j.Logger;
+
+import com.mnxfst.testing.consumer.analyzer.IMessageAnalyzerHost;
+import com.mnxfst.testing.consumer.analyzer.MessageAnalyzerPipeline;
+import com.mnxfst.testing.consumer.analyzer.MessageEnvelope;
+import com.mnxfst.testing.consumer.async.AsyncInputConsumerStatistics;
+import com.mnxfst.testing.consumer.async.ConsumerSettings;
+import com.mnxfst.testing.consumer.async.IAsyncInputConsumer;
+import com.mnxfst.testing.consumer.exception.AsyncInputConsumerException;
+import com.mnxfst.testing.consumer.handler.IStatisticsSection;
+import com.mnxfst.testing.consumer.handler.XmlResponseWriter;
+import com.mnxfst.testing.consumer.replay.RecordingWriter;
+
+/**
+ * Consumes messages from a JMS queue or topic and feeds the {@link AsyncInputConsumerStatistics consumer statistics}. 
+ * Connections, sessions and consumers are set up on {@link #initialize(Map) initialization}, message delivery starts 
+ * as soon as the consumer is run. Settings:
+ * <ul>
+ *   <li><i>jms.brokerUrl</i> - broker to connect with, required</li>
+ *   <li><i>jms.username</i>, <i>jms.password</i> - optional credentials</li>
+ *   <li><i>jms.destination</i> - name of the queue or topic to consume from, required</li>
+ *   <li><i>jms.destinationType</i> - <i>queue</i> or <i>topic</i>, default: queue</li>
+ *   <li><i>jms.selector</i> - optional message selector</li>
+ *   <li><i>jms.connections</i> - number of connections, default: 1</li>
+ *   <li><i>jms.sessions</i> - number of sessions per connection, default: 1</li>
+ *   <li><i>jms.sharedConnections</i> - if positive, connections are leased from the {@link JMSConnectionManager} which
+ *       keeps up to the given number of connections for the broker url and credentials, default: 0 (dedicated connections)</li>
+ *   <li><i>jms.prefetch</i> - number of messages pushed to each consumer ahead of being received, default: 1000</li>
+ *   <li><i>jms.ackMode</i> - <i>auto</i>, <i>dups_ok</i> or <i>client</i>, default: auto</li>
+ *   <li><i>jms.ackBatchSize</i> - number of messages acknowledged at once in client mode, default: 100</li>
+ *   <li><i>jms.receiveTimeoutMillis</i> - time a receiver waits for a message before checking for shutdown and 
+ *       acknowledging pending messages, default: 100</li>
+ * </ul>
+ * Connections and sessions are set up on initialization, message consumers are created when the consumer is run. Thus
+ * consumers on standby never receive messages, even if sharing a connection which has been started already.<br/><br/>
+ * A JMS session must not be used by more than one thread at a time, thus each session receives on a thread of its own:
+ * the thread running the consumer serves the first session, a dedicated thread is started for each further one. The 
+ * consumer returns from {@link #run()} once all of them have finished.<br/><br/>
+ * If {@link MessageAnalyzerPipeline analyzers} are configured for the consumer type, each session forwards the received 
+ * messages to a pipeline of its own. The pipeline statistics are contributed to the consumer statistics, the sampling
+ * policies of the analyzers may be adjusted while the consumer is running.<br/><br/>
+ * If a {@link RecordingWriter capture} is configured for the consumer type, each session appends the payloads it receives
+ * to recording files of its own which may be replayed later on.
+ * @author ckreutzfeldt
+ * @since 12.03.2012
+ */
+public class JMSConsumerHandler implements IAsyncInputConsumer, IStatisticsSection, IMessageAnalyzerHost {
+
+	private static final Logger logger = Logger.getLogger(JMSConsumerHandler.class);
+	
+	public static final String CFG_OPT_BROKER_URL = "jms.brokerUrl";
+	public static final String CFG_OPT_USERNAME = "jms.username";
+	public static final String CFG_OPT_PASSWORD = "jms.password";
+	public static final String CFG_OPT_DESTINATION = "jms.destination";
+	public static final String CFG_OPT_DESTINATION_TYPE = "jms.destinationType";
+	public static final String CFG_OPT_SELECTOR = "jms.selector";
+	public static final String CFG_OPT_CONNECTIONS = "jms.connections";
+	public static final String CFG_OPT_SESSIONS = "jms.sessions";
+	public static final String CFG_OPT_SHARED_CONNECTIONS = "jms.sharedConnections";
+	public static final String CFG_OPT_PREFETCH = "jms.prefetch";
+	public static final String CFG_OPT_ACK_MODE = "jms.ackMode";
+	public static final String CFG_OPT_ACK_BATCH_SIZE = "jms.ackBatchSize";
+	public static final String CFG_OPT_RECEIVE_TIMEOUT_MILLIS = "jms.receiveTimeoutMillis";
+	
+	public static final int DEFAULT_CONNECTIONS = 1;
+	public static final int DEFAULT_SESSIONS = 1;
+	public static final int DEFAULT_PREFETCH = 1000;
+	public static final int DEFAULT_ACK_BATCH_SIZE = 100;
+	public static final long DEFAULT_RECEIVE_TIMEOUT_MILLIS = 100;
+	
+	public static final String STATISTICS_SECTION_NAME = "analysis";
+	// time granted to the analyzers for processing pending messages once all receivers have finished
+	private static final long ANALYZER_SHUTDOWN_TIMEOUT_MILLIS = 1000;
+	// time granted for trimming the captured segments once all receivers have finished
+	private static final long CAPTURE_SHUTDOWN_TIMEOUT_MILLIS = 1000;
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/**
+	 * Supported acknowledgement modes
+	 * @author ckreutzfeldt
+	 * @since 12.03.2012
+	 */
+	public enum AckMode {
+		AUTO(Session.AUTO_ACKNOWLEDGE), DUPS_OK(Session.DUPS_OK_ACKNOWLEDGE), CLIENT(Session.CLIENT_ACKNOWLEDGE);
+		
+		private final int sessionMode;
+		
+		private AckMode(int sessionMode) {
+			this.sessionMode = sessionMode;
+		}
+		
+		public int getSessionMode() {
+			return sessionMode;
+		}
+	}
+	
+	/**
+	 * Supported destination types
+	 * @author ckreutzfeldt
+	 * @since 12.03.2012
+	 */
+	public enum DestinationType {
+		QUEUE, TOPIC
+	}
+	
+	private String id = null;
+	private String type = null;
+	private AsyncInputConsumerStatistics statistics = null;
+	
+	private AckMode ackMode = AckMode.AUTO;
+	private int ackBatchSize = DEFAULT_ACK_BATCH_SIZE;
+	private long receiveTimeoutMillis = DEFAULT_RECEIVE_TIMEOUT_MILLIS;
+	
+	private final List<Connection> connections = new ArrayList<Connection>();
+	private final List<JMSConnectionManager.ConnectionLease> connectionLeases = new ArrayList<JMSConnectionManager.ConnectionLease>();
+	private final List<Session> sessions = new ArrayList<Session>();
+	private final List<Receiver> receivers = new ArrayList<Receiver>();
+	
+	private volatile boolean running = true;
+	private final AtomicBoolean started = new AtomicBoolean(false);
+	private final AtomicBoolean closed = new AtomicBoolean(false);
+	
+	/**
+	 * Default constructor
+	 */
+	public JMSConsumerHandler() {		
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.consumer.async.IAsyncInputConsumer#initialize(java.util.Map)
+	 */
+	public void initialize(Map<String, List<String>> properties) throws AsyncInputConsumerException {
+		
+		String brokerUrl = ConsumerSettings.getString(properties, CFG_OPT_BROKER_URL, null);
+		if(brokerUrl == null)
+			throw new AsyncInputConsumerException("Missing required setting '"+CFG_OPT_BROKER_URL+"'");
+		String destinationName = ConsumerSettings.getString(properties, CFG_OPT_DESTINATION, null);
+		if(destinationName == null)
+			throw new AsyncInputConsumerException("Missing required setting '"+CFG_OPT_DESTINATION+"'");
+		
+		DestinationType destinationType = ConsumerSettings.getEnum(DestinationType.class, properties, CFG_OPT_DESTINATION_TYPE, DestinationType.QUEUE);
+		String selector = ConsumerSettings.getString(properties, CFG_OPT_SELECTOR, null);
+		int connectionCount = ConsumerSettings.getPositiveInt(properties, CFG_OPT_CONNECTIONS, DEFAULT_CONNECTIONS);
+		int sessionCount = ConsumerSettings.getPositiveInt(properties, CFG_OPT_SESSIONS, DEFAULT_SESSIONS);
+		int sharedConnections = ConsumerSettings.getInt(properties, CFG_OPT_SHARED_CONNECTIONS, 0);
+		int prefetch = ConsumerSettings.getInt(properties, CFG_OPT_PREFETCH, DEFAULT_PREFETCH);
+		if(prefetch < 0)
+			throw new AsyncInputConsumerException("Invalid value for '"+CFG_OPT_PREFETCH+"': " + prefetch);
+		this.ackMode = ConsumerSettings.getEnum(AckMode.class, properties, CFG_OPT_ACK_MODE, AckMode.AUTO);
+		this.ackBatchSize = ConsumerSettings.getPositiveInt(properties, CFG_OPT_ACK_BATCH_SIZE, DEFAULT_ACK_BATCH_SIZE);
+		this.receiveTimeoutMillis = ConsumerSettings.getPositiveInt(properties, CFG_OPT_RECEIVE_TIMEOUT_MILLIS, (int)DEFAULT_RECEIVE_TIMEOUT_MILLIS);
+		
+		this.statistics = new AsyncInputConsumerStatistics(id, type, properties);
+		
+		// the prefetch is set per consumer as shared connections may serve consumers using different settings
+		String destinationOptions = (destinationName.indexOf('?') == -1 ? "?" : "&") + "consumer.prefetchSize=" + prefetch;
+		String username = ConsumerSettings.getString(properties, CFG_OPT_USERNAME, null);
+		String password = ConsumerSettings.getString(properties, CFG_OPT_PASSWORD, null);
+		ConnectionFactory connectionFactory = createConnectionFactory(brokerUrl, username, password);
+		try {
+			for(int c = 0; c < connectionCount; c++) {
+				Connection connection = null;
+				if(sharedConnections > 0) {
+					JMSConnectionManager.ConnectionLease lease = JMSConnectionManager.getInstance().lease(connectionFactory, brokerUrl, username, password, sharedConnections);
+					connectionLeases.add(lease);
+					connection = lease.getConnection();
+				} else {
+					connection = connectionFactory.createConnection();
+					connections.add(connection);
+				}
+				for(int s = 0; s < sessionCount; s++) {
+					Session session = connection.createSession(false, ackMode.getSessionMode());
+					sessions.add(session);
+					Destination destination = (destinationType == DestinationType.TOPIC ? session.createTopic(destinationName + destinationOptions) : session.createQueue(destinationName + destinationOptions));
+					MessageAnalyzerPipeline pipeline = MessageAnalyzerPipeline.create("analyzer-" + id + "-" + receivers.size(), type, properties);
+					RecordingWriter capture = RecordingWriter.create("capture-" + id + "-" + receivers.size(), type, properties);
+					receivers.add(new Receiver(session, destination, selector, pipeline, capture));
+				}
+			}
+		} catch(JMSException e) {
+			close();
+			throw new AsyncInputConsumerException("Failed to connect with '"+brokerUrl+"': " + e.getMessage(), e);
+		} catch(AsyncInputConsumerException e) {
+			close();
+			throw e;
+		}
+		
+		if(logger.isDebugEnabled())
+			logger.debug("jmsConsumer[id="+id+", brokerUrl="+brokerUrl+", destination="+destinationName+", destinationType="+destinationType+", connections="+connectionCount+
+					", sessions="+sessionCount+", sharedConnections="+sharedConnections+", prefetch="+prefetch+", ackMode="+ackMode+", selector="+selector+"] initialized");
+	}
+	
+	/**
+	 * Creates the factory for connecting with the broker
+	 * @param brokerUrl
+	 * @param username
+	 * @param password
+	 * @return
+	 */
+	protected ConnectionFactory createConnectionFactory(String brokerUrl, String username, String password) {
+		ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(brokerUrl);
+		if(username != null) {
+			connectionFactory.setUserName(username);
+			connectionFactory.setPassword(password);
+		}
+		return connectionFactory;
+	}
+	
+	/**
+	 * Starts message delivery and receives messages until the consumer is shut down
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run() {
+		
+		if(!started.compareAndSet(false, true) || closed.get())
+			return;
+		
+		for(Receiver receiver : receivers) {
+			if(receiver.pipeline != null)
+				receiver.pipeline.start();
+		}
+		
+		try {
+			for(Receiver receiver : receivers)
+				receiver.open();
+			for(Connection connection : connections)
+				connection.start();
+		} catch(JMSException e) {
+			logger.error("Failed to start message delivery for consumer '"+id+"': " + e.getMessage(), e);
+			statistics.recordError();
+			close();
+			return;
+		}
+		
+		// from now on each receiver owns its capture and pipeline and closes them once it has finished receiving
+		for(Receiver receiver : receivers)
+			receiver.receiving = true;
+		
+		// the current thread serves the first session, all others receive a thread of their own
+		final CountDownLatch finished = new CountDownLatch(receivers.size() - 1);
+		for(int i = 1; i < receivers.size(); i++) {
+			final Receiver receiver = receivers.get(i);
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					try {
+						receiver.receive();
+					} finally {
+						finished.countDown();
+					}
+				}
+			}, "jms-" + id + "-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		
+		try {
+			receivers.get(0).receive();
+			finished.await();
+		} catch(InterruptedException e) {
+			// let the receivers finish their current message before their sessions are closed
+			running = false;
+			awaitUninterruptibly(finished, receiveTimeoutMillis + ANALYZER_SHUTDOWN_TIMEOUT_MILLIS + CAPTURE_SHUTDOWN_TIMEOUT_MILLIS);
+			Thread.currentThread().interrupt();
+		} finally {
+			close();
+		}
+	}
+	
+	/**
+	 * Waits for the given latch to reach zero, interrupts are ignored
+	 * @param latch
+	 * @param timeoutMillis
+	 * @return true if the latch reached zero before the timeout elapsed
+	 */
+	protected static boolean awaitUninterruptibly(CountDownLatch latch, long timeoutMillis) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		while(true) {
+			try {
+				return latch.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			} catch(InterruptedException e) {
+				// keep waiting, the caller restores the interrupt
+			}
+		}
+	}
+
+	/**
+	 * Signals all receivers to stop. Pending messages are acknowledged and the connections are closed as soon as 
+	 * the receivers have finished. Consumers which have never been run are closed right away
+	 * @see com.mnxfst.testing.consumer.async.IAsyncInputConsumer#shutdown()
+	 */
+	public void shutdown() throws AsyncInputConsumerException {
+		running = false;
+		if(started.compareAndSet(false, true))
+			close();
+	}
+	
+	/**
+	 * Closes all dedicated connections including their sessions and consumers. Sessions on shared connections are 
+	 * closed before the connection leases are given back. Receivers still receiving - eg. if the thread running the 
+	 * consumer got interrupted - leave their loop as their session is closed and release their analyzers and capture 
+	 * on their own thread, those of receivers which never received are released right away
+	 */
+	protected void close() {
+		if(!closed.compareAndSet(false, true))
+			return;
+		for(Receiver receiver : receivers) {
+			if(!receiver.receiving)
+				receiver.release();
+		}
+		if(!connectionLeases.isEmpty()) {
+			for(Session session : sessions) {
+				try {
+					session.close();
+				} catch(JMSException e) {
+					logger.error("Failed to close session of consumer '"+id+"': " + e.getMessage());
+				}
+			}
+			for(JMSConnectionManager.ConnectionLease lease : connectionLeases)
+				JMSConnectionManager.getInstance().release(lease);
+		}
+		for(Connection connection : connections) {
+			try {
+				connection.close();
+			} catch(JMSException e) {
+				logger.error("Failed to close connection of consumer '"+id+"': " + e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Records the given message with the statistics
+	 * @param message
+	 * @param receiveTimestamp
+	 * @throws JMSException
+	 */
+	protected void recordMessage(Message message, long receiveTimestamp) throws JMSException {
+		
+		long size = 0;
+		if(message instanceof BytesMessage) {
+			size = ((BytesMessage)message).getBodyLength();
+		} else if(message instanceof TextMessage) {
+			// measure the marshalled text if available, decoding it is left to the analyzers asking for it
+			size = getTextContentLength(message);
+			if(size < 0) {
+				String text = ((TextMessage)message).getText();
+				size = (text != null ? text.length() : 0);
+			}
+		} else if(message instanceof ActiveMQMessage) {
+			size = ((ActiveMQMessage)message).getSize();
+		}
+		statistics.recordMessage(size);
+		
+		long sentTimestamp = message.getJMSTimestamp();
+		if(sentTimestamp > 0)
+			statistics.recordLatency(Math.max(0, receiveTimestamp - sentTimestamp) * 1000);
+		if(message.getJMSRedelivered())
+			statistics.recordRedelivery();
+	}
+	
+	/**
+	 * Returns the length of the encoded text contained in the marshalled content of an ActiveMQ text message. The content
+	 * holds the length of the encoded text followed by the text itself - using modified UTF-8 which equals UTF-8 apart 
+	 * from NUL and supplementary characters
+	 * @param message
+	 * @return length or -1 if the message does not provide uncompressed content
+	 */
+	protected static int getTextContentLength(Message message) {
+		if(!(message instanceof ActiveMQTextMessage))
+			return -1;
+		ActiveMQTextMessage textMessage = (ActiveMQTextMessage)message;
+		ByteSequence content = textMessage.getContent();
+		if(content == null || textMessage.isCompressed() || content.length < 4)
+			return -1;
+		byte[] data = content.data;
+		int offset = content.offset;
+		int length = ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+		if(length < 0) // null text
+			return 0;
+		return (length <= content.length - 4 ? length : -1);
+	}
+	
+	/**
+	 * Receives messages from a single session
+	 * @author ckreutzfeldt
+	 * @since 12.03.2012
+	 */
+	protected class Receiver {
+		
+		private final Session session;
+		private final Destination destination;
+		private final String selector;
+		private final MessageAnalyzerPipeline pipeline;
+		private final RecordingWriter capture;
+		private MessageConsumer messageConsumer = null;
+		// receives bodies of messages not exposing their content, capture only
+		private byte[] captureBuffer = null;
+		// last received message not acknowledged yet and the number of messages it covers, client mode only
+		private Message unacknowledged = null;
+		private int unacknowledgedCount = 0;
+		// set once the receiver has been handed over to its thread, the analyzers and the capture are owned by that thread then
+		private volatile boolean receiving = false;
+		
+		protected Receiver(Session session, Destination destination, String selector, MessageAnalyzerPipeline pipeline, RecordingWriter capture) {
+			this.session = session;
+			this.destination = destination;
+			this.selector = selector;
+			this.pipeline = pipeline;
+			this.capture = capture;
+		}
+		
+		/**
+		 * Creates the message consumer, messages may be delivered right away
+		 * @throws JMSException
+		 */
+		protected void open() throws JMSException {
+			messageConsumer = session.createConsumer(destination, selector);
+		}
+		
+		protected void receive() {
+			try {
+				receiveMessages();
+			} finally {
+				// an interrupt must not cut short completing the capture, it is restored afterwards
+				boolean interrupted = Thread.interrupted();
+				release();
+				if(interrupted)
+					Thread.currentThread().interrupt();
+			}
+		}
+		
+		/**
+		 * Grants the analyzers some time for processing the messages received so far and completes the captured
+		 * recording files. Must be called by the receiving thread or if the receiver has never received
+		 */
+		protected void release() {
+			if(pipeline != null)
+				pipeline.shutdown(ANALYZER_SHUTDOWN_TIMEOUT_MILLIS);
+			if(capture != null)
+				capture.close(CAPTURE_SHUTDOWN_TIMEOUT_MILLIS);
+		}
+		
+		private void receiveMessages() {
+			
+			// an interrupted receiver stops as well, the consumer then stops all others
+			while(running && !Thread.currentThread().isInterrupted()) {
+				try {
+					Message message = messageConsumer.receive(receiveTimeoutMillis);
+					if(message == null) {
+						// idle: do not keep messages unacknowledged any longer
+						acknowledge();
+						continue;
+					}
+					
+					long receiveTimestamp = System.currentTimeMillis();
+					recordMessage(message, receiveTimestamp);
+					if(capture != null)
+						capture(message, receiveTimestamp);
+					if(pipeline != null)
+						forward(message, receiveTimestamp);
+					if(ackMode == AckMode.CLIENT) {
+						unacknowledged = message;
+						if(++unacknowledgedCount >= ackBatchSize)
+							acknowledge();
+					}
+				} catch(JMSException e) {
+					if(!running || closed.get())
+						break;
+					statistics.recordError();
+					logger.error("Failed to receive message for consumer '"+id+"': " + e.getMessage());
+				} catch(RuntimeException e) {
+					statistics.recordError();
+					logger.error("Failed to process message for consumer '"+id+"': " + e.getMessage(), e);
+				}
+			}
+			
+			try {
+				acknowledge();
+			} catch(JMSException e) {
+				logger.error("Failed to acknowledge pending messages for consumer '"+id+"': " + e.getMessage());
+			}
+		}
+		
+		/**
+		 * Hands the given message over to the analyzers. The message is skipped if the analyzers are falling behind. The
+		 * marshalled content of ActiveMQ messages is referenced by the envelope as it is, neither copied nor decoded
+		 * @param message
+		 * @param receiveTimestamp
+		 * @throws JMSException
+		 */
+		protected void forward(Message message, long receiveTimestamp) throws JMSException {
+			
+			MessageEnvelope envelope = pipeline.claim(receiveTimestamp, message.getJMSTimestamp());
+			if(envelope == null)
+				return;
+			
+			try {
+				if(message instanceof TextMessage) {
+					int length = getTextContentLength(message);
+					if(length >= 0) {
+						ByteSequence content = ((ActiveMQTextMessage)message).getContent();
+						envelope.setPayload(content.data, content.offset + 4, length);
+						envelope.setSize(length);
+					} else {
+						String text = ((TextMessage)message).getText();
+						envelope.setText(text);
+						envelope.setSize(text != null ? text.length() : 0);
+					}
+				} else if(message instanceof BytesMessage) {
+					ByteSequence content = (message instanceof ActiveMQBytesMessage ? ((ActiveMQBytesMessage)message).getContent() : null);
+					if(content != null && !((ActiveMQBytesMessage)message).isCompressed()) {
+						envelope.setPayload(content.data, content.offset, content.length);
+						envelope.setSize(content.length);
+					} else {
+						BytesMessage bytesMessage = (BytesMessage)message;
+						int length = (int)bytesMessage.getBodyLength();
+						byte[] buffer = envelope.getPayloadBuffer(length);
+						bytesMessage.reset();
+						bytesMessage.readBytes(buffer, length);
+						envelope.setPayload(buffer, 0, length);
+						envelope.setSize(length);
+					}
+				}
+			} finally {
+				// the claimed envelope must be published in any case
+				pipeline.publish();
+			}
+		}
+		
+		/**
+		 * Appends the payload of the given message to the capture. Just like when forwarding, the marshalled content of 
+		 * ActiveMQ messages is taken as it is
+		 * @param message
+		 * @param receiveTimestamp
+		 * @throws JMSException
+		 */
+		protected void capture(Message message, long receiveTimestamp) throws JMSException {
+			
+			if(message instanceof TextMessage) {
+				int length = getTextContentLength(message);
+				if(length >= 0) {
+					ByteSequence content = ((ActiveMQTextMessage)message).getContent();
+					capture.append(content.data, content.offset + 4, length, receiveTimestamp);
+				} else {
+					String text = ((TextMessage)message).getText();
+					byte[] payload = (text != null ? text.getBytes(UTF8) : new byte[0]);
+					capture.append(payload, 0, payload.length, receiveTimestamp);
+				}
+			} else if(message instanceof BytesMessage) {
+				ByteSequence content = (message instanceof ActiveMQBytesMessage ? ((ActiveMQBytesMessage)message).getContent() : null);
+				if(content != null && !((ActiveMQBytesMessage)message).isCompressed()) {
+					capture.append(content.data, content.offset, content.length, receiveTimestamp);
+				} else {
+					BytesMessage bytesMessage = (BytesMessage)message;
+					int length = (int)bytesMessage.getBodyLength();
+					if(captureBuffer == null || captureBuffer.length < length)
+						captureBuffer = new byte[length];
+					bytesMessage.reset();
+					bytesMessage.readBytes(captureBuffer, length);
+					capture.append(captureBuffer, 0, length, receiveTimestamp);
+				}
+			}
+		}
+		
+		/**
+		 * Acknowledges all messages received via the session so far, client mode only
+		 * @throws JMSException
+		 */
+		protected void acknowledge() throws JMSException {
+			if(unacknowledged != null) {
+				// acknowledging a single message acknowledges all messages consumed by the session
+				unacknowledged.acknowledge();
+				unacknowledged = null;
+				unacknowledgedCount = 0;
+			}
+		}
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.consumer.handler.IStatisticsSection#getSectionName()
+	 */
+	public String getSectionName() {
+		return STATISTICS_SECTION_NAME;
+	}
+	
+	/**
+	 * Writes the statistics of all analyzer pipelines and captures
+	 * @see com.mnxfst.testing.consumer.handler.IStatisticsSection#writeStatistics(com.mnxfst.testing.consumer.handler.XmlResponseWriter)
+	 */
+	public void writeStatistics(XmlResponseWriter responseWriter) {
+		for(Receiver receiver : receivers) {
+			if(receiver.pipeline != null)
+				receiver.pipeline.writeStatistics(responseWriter);
+			if(receiver.capture != null)
+				receiver.capture.writeStatistics(responseWriter);
+		}
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.consumer.async.IAsyncInputConsumer#getConsumerStatistics()
+	 */
+	public AsyncInputConsumerStatistics getConsumerStatistics() {
+		return statistics;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+	
+	public AckMode getAckMode() {
+		return ackMode;
+	}
+	
+	public int getReceiverCount() {
+		return receivers.size();
+	}
+	
+	/**
+	 * Returns the analyzer pipelines, one per session
+	 * @return
+	 */
+	public List<MessageAnalyzerPipeline> getAnalyzerPipelines() {
+		List<MessageAnalyzerPipeline> pipelines = new ArrayList<MessageAnalyzerPipeline>();
+		for(Receiver receiver : receivers) {
+			if(receiver.pipeline != null)
+				pipelines.add(receiver.pipeline);
+		}
+		return pipelines;
+	}
+	
+	/**
+	 * Returns the captures, one per session
+	 * @return
+	 */
+	public List<RecordingWriter> getCaptures() {
+		List<RecordingWriter> captures = new ArrayList<RecordingWriter>();
+		for(Receiver receiver : receivers) {
+			if(receiver.capture != null)
+				captures.add(receiver.capture);
+		}
+		return captures;
+	}
+	
+}
@@ -0,0 +1,296 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.jms.analyzer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.mnxfst.testing.consumer.analyzer.IMessageAnalyzer;
+import com.mnxfst.testing.consumer.analyzer.MessageEnvelope;
+import com.mnxfst.testing.consumer.async.AsyncInputConsumerStatistics;
+import com.mnxfst.testing.consumer.async.ConsumerSettings;
+import com.mnxfst.testing.consumer.async.LatencyHistogram;
+import com.mnxfst.testing.consumer.async.LatencyHistogramSnapshot;
+import com.mnxfst.testing.consumer.exception.AsyncInputConsumerException;
+import com.mnxfst.testing.consumer.handler.XmlResponseWriter;
+
+/**
+ * Computes the end-to-end latency of ESP messages per node and measuring point. The producer timestamp as well as 
+ * the node and measuring point identifiers are extracted by an {@link ESPMessageScanner}, the latency (receive time 
+ * minus producer timestamp) is recorded in microseconds into a {@link LatencyHistogram} kept for each pair of node
+ * and measuring point. Settings - all of them optional:
+ * <ul>
+ *   <li><i>nodeId</i>, <i>measuringPointId</i> - identifiers assumed for messages not carrying them</li>
+ *   <li><i>consumer.async.&lt;type&gt;.message-analyzer.&lt;name&gt;.nodeId</i>, <i>...measuringPointId</i> - same as above, 
+ *       overriding the global settings</li>
+ *   <li><i>...timestampTag</i>, <i>...nodeIdTag</i>, <i>...measuringPointIdTag</i> - names of the elements holding the values,
+ *       default: timestamp, nodeId, measuringPointId</li>
+ *   <li><i>...maxPairs</i> - maximum number of histograms, messages of further pairs are counted as unassigned, default: 64</li>
+ *   <li><i>...latency.highestTrackableValue</i>, <i>...latency.significantDigits</i> - histogram layout, defaults 
+ *       as for the {@link AsyncInputConsumerStatistics consumer statistics}</li>
+ * </ul>
+ * Messages without a valid timestamp element are measured against the time the source reports them to be sent, if
+ * available. Binary payloads are scanned in place, pairs already known are resolved from the scanned payload directly,
+ * thus only the first message of each pair allocates.
+ * @author ckreutzfeldt
+ * @since 15.03.2012
+ */
+public class ESPMessageAnalyzer implements IMessageAnalyzer {
+
+	public static final String DEFAULT_TIMESTAMP_TAG = "timestamp";
+	public static final String DEFAULT_NODE_ID_TAG = "nodeId";
+	public static final String DEFAULT_MEASURING_POINT_ID_TAG = "measuringPointId";
+	public static final int DEFAULT_MAX_PAIRS = 64;
+	
+	private static final String CFG_OPT_NODE_ID = "nodeId";
+	private static final String CFG_OPT_MEASURING_POINT_ID = "measuringPointId";
+	private static final String CFG_OPT_TIMESTAMP_TAG = "timestampTag";
+	private static final String CFG_OPT_NODE_ID_TAG = "nodeIdTag";
+	private static final String CFG_OPT_MEASURING_POINT_ID_TAG = "measuringPointIdTag";
+	private static final String CFG_OPT_MAX_PAIRS = "maxPairs";
+	private static final String CFG_OPT_LATENCY_HIGHEST_TRACKABLE_VALUE = "latency.highestTrackableValue";
+	private static final String CFG_OPT_LATENCY_SIGNIFICANT_DIGITS = "latency.significantDigits";
+	
+	private static final String RESPONSE_ROOT_ELEMENT = "espLatencies";
+	private static final String RESPONSE_MESSAGES_ATTRIBUTE = "messages";
+	private static final String RESPONSE_MEASURED_ATTRIBUTE = "measured";
+	private static final String RESPONSE_MISSING_TIMESTAMP_ATTRIBUTE = "missingTimestamp";
+	private static final String RESPONSE_INVALID_TIMESTAMP_ATTRIBUTE = "invalidTimestamp";
+	private static final String RESPONSE_UNASSIGNED_ATTRIBUTE = "unassigned";
+	private static final String RESPONSE_LATENCY_ELEMENT = "latency";
+	private static final String RESPONSE_NODE_ID_ATTRIBUTE = "nodeId";
+	private static final String RESPONSE_MEASURING_POINT_ID_ATTRIBUTE = "measuringPointId";
+	private static final String RESPONSE_UNIT_ATTRIBUTE = "unit";
+	private static final String RESPONSE_UNIT_VALUE = "us";
+	private static final String RESPONSE_LATENCY_COUNT_ATTRIBUTE = "count";
+	private static final String RESPONSE_LATENCY_MIN_ATTRIBUTE = "min";
+	private static final String RESPONSE_LATENCY_MEAN_ATTRIBUTE = "mean";
+	private static final String RESPONSE_LATENCY_P50_ATTRIBUTE = "p50";
+	private static final String RESPONSE_LATENCY_P90_ATTRIBUTE = "p90";
+	private static final String RESPONSE_LATENCY_P99_ATTRIBUTE = "p99";
+	private static final String RESPONSE_LATENCY_P999_ATTRIBUTE = "p999";
+	private static final String RESPONSE_LATENCY_MAX_ATTRIBUTE = "max";
+	private static final String RESPONSE_LATENCY_OVERFLOWS_ATTRIBUTE = "overflows";
+	
+	private String name = null;
+	private String defaultNodeId = "";
+	private String defaultMeasuringPointId = "";
+	private int maxPairs = DEFAULT_MAX_PAIRS;
+	private long latencyHighestTrackableValue = AsyncInputConsumerStatistics.DEFAULT_LATENCY_HIGHEST_TRACKABLE_VALUE;
+	private int latencySignificantDigits = AsyncInputConsumerStatistics.DEFAULT_LATENCY_SIGNIFICANT_DIGITS;
+	private ESPMessageScanner scanner = null;
+	
+	// open addressing table used for resolving pairs, accessed by the analyzing thread only
+	private Pair[] pairTable = null;
+	// all pairs in order of appearance, read by the thread writing the statistics 
+	private final List<Pair> pairs = new CopyOnWriteArrayList<Pair>();
+	
+	private final AtomicLong messages = new AtomicLong(0);
+	private final AtomicLong measured = new AtomicLong(0);
+	private final AtomicLong missingTimestamps = new AtomicLong(0);
+	private final AtomicLong invalidTimestamps = new AtomicLong(0);
+	private final AtomicLong unassigned = new AtomicLong(0);
+	
+	/**
+	 * @see com.mnxfst.testing.consumer.analyzer.IMessageAnalyzer#initialize(java.lang.String, java.lang.String, java.util.Map)
+	 */
+	public void initialize(String name, String consumerType, Map<String, List<String>> properties) throws AsyncInputConsumerException {
+		
+		this.name = name;
+		String prefix = "consumer.async." + consumerType + ".message-analyzer." + name + ".";
+		
+		this.defaultNodeId = ConsumerSettings.getString(properties, prefix + CFG_OPT_NODE_ID, ConsumerSettings.getString(properties, CFG_OPT_NODE_ID, ""));
+		this.defaultMeasuringPointId = ConsumerSettings.getString(properties, prefix + CFG_OPT_MEASURING_POINT_ID, ConsumerSettings.getString(properties, CFG_OPT_MEASURING_POINT_ID, ""));
+		this.scanner = new ESPMessageScanner(ConsumerSettings.getString(properties, prefix + CFG_OPT_TIMESTAMP_TAG, DEFAULT_TIMESTAMP_TAG), 
+				ConsumerSettings.getString(properties, prefix + CFG_OPT_NODE_ID_TAG, DEFAULT_NODE_ID_TAG), 
+				ConsumerSettings.getString(properties, prefix + CFG_OPT_MEASURING_POINT_ID_TAG, DEFAULT_MEASURING_POINT_ID_TAG));
+		
+		this.maxPairs = (int)ConsumerSettings.getLong(properties, prefix + CFG_OPT_MAX_PAIRS, DEFAULT_MAX_PAIRS);
+		this.latencyHighestTrackableValue = ConsumerSettings.getLong(properties, prefix + CFG_OPT_LATENCY_HIGHEST_TRACKABLE_VALUE, AsyncInputConsumerStatistics.DEFAULT_LATENCY_HIGHEST_TRACKABLE_VALUE);
+		this.latencySignificantDigits = (int)ConsumerSettings.getLong(properties, prefix + CFG_OPT_LATENCY_SIGNIFICANT_DIGITS, AsyncInputConsumerStatistics.DEFAULT_LATENCY_SIGNIFICANT_DIGITS);
+		if(maxPairs < 1 || maxPairs > (1 << 16))
+			throw new AsyncInputConsumerException("Invalid value for '"+prefix + CFG_OPT_MAX_PAIRS+"': " + maxPairs);
+		try {
+			new LatencyHistogram(latencyHighestTrackableValue, latencySignificantDigits);
+		} catch(IllegalArgumentException e) {
+			throw new AsyncInputConsumerException("Invalid latency histogram settings for analyzer '"+name+"': " + e.getMessage());
+		}
+		
+		// keep the load factor below 0.5
+		this.pairTable = new Pair[Integer.highestOneBit(maxPairs) << 2];
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.consumer.analyzer.IMessageAnalyzer#analyze(com.mnxfst.testing.consumer.analyzer.MessageEnvelope)
+	 */
+	public void analyze(MessageEnvelope message) {
+		
+		messages.incrementAndGet();
+		
+		// tags and values are expected to be ASCII, thus binary payloads are scanned without decoding
+		scanner.scan(message.getPayloadChars());
+		
+		long timestamp = scanner.getTimestamp();
+		if(timestamp == ESPMessageScanner.NO_TIMESTAMP) {
+			if(scanner.isTimestampFound())
+				invalidTimestamps.incrementAndGet();
+			timestamp = (message.getSentTimestamp() > 0 ? message.getSentTimestamp() : ESPMessageScanner.NO_TIMESTAMP);
+			if(timestamp == ESPMessageScanner.NO_TIMESTAMP) {
+				missingTimestamps.incrementAndGet();
+				return;
+			}
+		}
+		
+		Pair pair = resolvePair();
+		if(pair == null) {
+			unassigned.incrementAndGet();
+			return;
+		}
+		pair.latencies.recordValue((message.getReceiveTimestamp() - timestamp) * 1000);
+		measured.incrementAndGet();
+	}
+	
+	/**
+	 * Looks up the pair referenced by the message scanned last, unknown pairs are added as long as the limit is not exceeded
+	 * @return pair or null if the limit has been reached
+	 */
+	protected Pair resolvePair() {
+		
+		int nodeIdHash = (scanner.hasNodeId() ? scanner.getNodeIdHash() : defaultNodeId.hashCode());
+		int measuringPointIdHash = (scanner.hasMeasuringPointId() ? scanner.getMeasuringPointIdHash() : defaultMeasuringPointId.hashCode());
+		int hash = 31 * nodeIdHash + measuringPointIdHash;
+		
+		int mask = pairTable.length - 1;
+		int idx = (hash ^ (hash >>> 16)) & mask;
+		for(; pairTable[idx] != null; idx = (idx + 1) & mask) {
+			Pair pair = pairTable[idx];
+			if(pair.hash == hash && 
+					(scanner.hasNodeId() ? scanner.nodeIdEquals(pair.nodeId) : defaultNodeId.equals(pair.nodeId)) &&
+					(scanner.hasMeasuringPointId() ? scanner.measuringPointIdEquals(pair.measuringPointId) : defaultMeasuringPointId.equals(pair.measuringPointId)))
+				return pair;
+		}
+		
+		if(pairs.size() >= maxPairs)
+			return null;
+		Pair pair = new Pair((scanner.hasNodeId() ? scanner.getNodeId() : defaultNodeId), (scanner.hasMeasuringPointId() ? scanner.getMeasuringPointId() : defaultMeasuringPointId), 
+				hash, new LatencyHistogram(latencyHighestTrackableValue, latencySignificantDigits));
+		pairTable[idx] = pair;
+		pairs.add(pair);
+		return pair;
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.consumer.analyzer.IMessageAnalyzer#writeStatistics(com.mnxfst.testing.consumer.handler.XmlResponseWriter)
+	 */
+	public void writeStatistics(XmlResponseWriter responseWriter) {
+		responseWriter.startElement(RESPONSE_ROOT_ELEMENT);
+		responseWriter.attribute(RESPONSE_MESSAGES_ATTRIBUTE, messages.get());
+		responseWriter.attribute(RESPONSE_MEASURED_ATTRIBUTE, measured.get());
+		responseWriter.attribute(RESPONSE_MISSING_TIMESTAMP_ATTRIBUTE, missingTimestamps.get());
+		responseWriter.attribute(RESPONSE_INVALID_TIMESTAMP_ATTRIBUTE, invalidTimestamps.get());
+		responseWriter.attribute(RESPONSE_UNASSIGNED_ATTRIBUTE, unassigned.get());
+		for(Pair pair : pairs) {
+			LatencyHistogramSnapshot latencies = pair.latencies.snapshot();
+			responseWriter.startElement(RESPONSE_LATENCY_ELEMENT);
+			responseWriter.attribute(RESPONSE_NODE_ID_ATTRIBUTE, pair.nodeId);
+			responseWriter.attribute(RESPONSE_MEASURING_POINT_ID_ATTRIBUTE, pair.measuringPointId);
+			responseWriter.attribute(RESPONSE_UNIT_ATTRIBUTE, RESPONSE_UNIT_VALUE);
+			responseWriter.attribute(RESPONSE_LATENCY_COUNT_ATTRIBUTE, latencies.getTotalCount());
+			responseWriter.attribute(RESPONSE_LATENCY_MIN_ATTRIBUTE, latencies.getMinValue());
+			responseWriter.attribute(RESPONSE_LATENCY_MEAN_ATTRIBUTE, Math.round(latencies.getMean()));
+			responseWriter.attribute(RESPONSE_LATENCY_P50_ATTRIBUTE, latencies.getValueAtPercentile(50));
+			responseWriter.attribute(RESPONSE_LATENCY_P90_ATTRIBUTE, latencies.getValueAtPercentile(90));
+			responseWriter.attribute(RESPONSE_LATENCY_P99_ATTRIBUTE, latencies.getValueAtPercentile(99));
+			responseWriter.attribute(RESPONSE_LATENCY_P999_ATTRIBUTE, latencies.getValueAtPercentile(99.9));
+			responseWriter.attribute(RESPONSE_LATENCY_MAX_ATTRIBUTE, latencies.getMaxValue());
+			responseWriter.attribute(RESPONSE_LATENCY_OVERFLOWS_ATTRIBUTE, latencies.getOverflowCount());
+			responseWriter.endElement();
+		}
+		responseWriter.endElement();
+	}
+	
+	/**
+	 * Returns a snapshot of the latencies recorded for the given pair
+	 * @param nodeId
+	 * @param measuringPointId
+	 * @return snapshot or null if no message has been measured for the pair
+	 */
+	public LatencyHistogramSnapshot getLatencies(String nodeId, String measuringPointId) {
+		for(Pair pair : pairs) {
+			if(pair.nodeId.equals(nodeId) && pair.measuringPointId.equals(measuringPointId))
+				return pair.latencies.snapshot();
+		}
+		return null;
+	}
+	
+	public int getPairCount() {
+		return pairs.size();
+	}
+	
+	public long getMessageCount() {
+		return messages.get();
+	}
+	
+	public long getMeasuredCount() {
+		return measured.get();
+	}
+	
+	public long getMissingTimestampCount() {
+		return missingTimestamps.get();
+	}
+	
+	public long getInvalidTimestampCount() {
+		return invalidTimestamps.get();
+	}
+	
+	public long getUnassignedCount() {
+		return unassigned.get();
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.consumer.analyzer.IMessageAnalyzer#getName()
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Latencies of a single pair of node and measuring point
+	 * @author ckreutzfeldt
+	 * @since 15.03.2012
+	 */
+	protected static final class Pair {
+		
+		private final String nodeId;
+		private final String measuringPointId;
+		private final int hash;
+		private final LatencyHistogram latencies;
+		
+		private Pair(String nodeId, String measuringPointId, int hash, LatencyHistogram latencies) {
+			this.nodeId = nodeId;
+			this.measuringPointId = measuringPointId;
+			this.hash = hash;
+			this.latencies = latencies;
+		}
+	}
+	
+}
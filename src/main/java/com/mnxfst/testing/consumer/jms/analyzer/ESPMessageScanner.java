@@ -0,0 +1,272 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.jms.analyzer;
+
+/**
+ * Extracts the producer timestamp as well as the node and measuring point identifiers from an ESP message without 
+ * parsing it into a document. The payload is scanned once for the start tags of the configured elements, the text
+ * following a matching tag up to the next '&lt;' is taken as value. Element names are compared without their namespace 
+ * prefix, attributes and comments are skipped. Scanning stops as soon as all values have been found.<br/><br/>
+ * The scanner does not allocate anything: values are reported as regions of the scanned payload. Instances are not 
+ * thread-safe and are meant to be reused for each message analyzed by the same thread.
+ * @author ckreutzfeldt
+ * @since 15.03.2012
+ */
+public class ESPMessageScanner {
+
+	public static final long NO_TIMESTAMP = -1;
+	
+	private final String timestampTag;
+	private final String nodeIdTag;
+	private final String measuringPointIdTag;
+	
+	private CharSequence payload = null;
+	private long timestamp = NO_TIMESTAMP;
+	private boolean timestampFound = false;
+	private int nodeIdStart = -1;
+	private int nodeIdEnd = -1;
+	private int measuringPointIdStart = -1;
+	private int measuringPointIdEnd = -1;
+	
+	/**
+	 * Initializes the scanner
+	 * @param timestampTag name of the element holding the producer timestamp (ms)
+	 * @param nodeIdTag name of the element holding the node identifier
+	 * @param measuringPointIdTag name of the element holding the measuring point identifier
+	 */
+	public ESPMessageScanner(String timestampTag, String nodeIdTag, String measuringPointIdTag) {
+		if(timestampTag == null || timestampTag.isEmpty() || nodeIdTag == null || nodeIdTag.isEmpty() || measuringPointIdTag == null || measuringPointIdTag.isEmpty())
+			throw new IllegalArgumentException("Missing required element name");
+		this.timestampTag = timestampTag;
+		this.nodeIdTag = nodeIdTag;
+		this.measuringPointIdTag = measuringPointIdTag;
+	}
+	
+	/**
+	 * Scans the given payload. The results remain valid until the next payload is scanned
+	 * @param payload
+	 */
+	public void scan(CharSequence payload) {
+		
+		this.payload = payload;
+		this.timestamp = NO_TIMESTAMP;
+		this.timestampFound = false;
+		this.nodeIdStart = this.nodeIdEnd = -1;
+		this.measuringPointIdStart = this.measuringPointIdEnd = -1;
+		if(payload == null)
+			return;
+		
+		int length = payload.length();
+		int idx = 0;
+		while(idx < length && (!timestampFound || nodeIdStart == -1 || measuringPointIdStart == -1)) {
+			
+			// move to the next start tag, end tags, comments and processing instructions are skipped
+			if(payload.charAt(idx++) != '<' || idx >= length)
+				continue;
+			char c = payload.charAt(idx);
+			if(c == '!' && regionEquals(payload, idx, Math.min(idx + 3, length), "!--")) {
+				idx = skipComment(payload, idx + 3, length);
+				continue;
+			}
+			if(c == '/' || c == '!' || c == '?')
+				continue;
+			
+			int nameStart = idx;
+			int localNameStart = idx;
+			while(idx < length && !isNameEnd(c = payload.charAt(idx))) {
+				if(c == ':')
+					localNameStart = idx + 1;
+				idx++;
+			}
+			int nameEnd = idx;
+			if(nameEnd == nameStart)
+				continue;
+			
+			// skip attributes, empty elements do not carry a value
+			while(idx < length && payload.charAt(idx) != '>')
+				idx++;
+			if(idx >= length || payload.charAt(idx - 1) == '/')
+				continue;
+			int valueStart = ++idx;
+			while(idx < length && payload.charAt(idx) != '<')
+				idx++;
+			int valueEnd = idx;
+			
+			// trim the value
+			while(valueStart < valueEnd && Character.isWhitespace(payload.charAt(valueStart)))
+				valueStart++;
+			while(valueEnd > valueStart && Character.isWhitespace(payload.charAt(valueEnd - 1)))
+				valueEnd--;
+			
+			if(!timestampFound && regionEquals(payload, localNameStart, nameEnd, timestampTag)) {
+				timestampFound = true;
+				timestamp = parseTimestamp(payload, valueStart, valueEnd);
+			} else if(nodeIdStart == -1 && regionEquals(payload, localNameStart, nameEnd, nodeIdTag)) {
+				if(valueStart < valueEnd) {
+					nodeIdStart = valueStart;
+					nodeIdEnd = valueEnd;
+				}
+			} else if(measuringPointIdStart == -1 && regionEquals(payload, localNameStart, nameEnd, measuringPointIdTag)) {
+				if(valueStart < valueEnd) {
+					measuringPointIdStart = valueStart;
+					measuringPointIdEnd = valueEnd;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the index following the end of the comment whose content starts at the given index
+	 * @param sequence
+	 * @param idx
+	 * @param length
+	 * @return
+	 */
+	private static int skipComment(CharSequence sequence, int idx, int length) {
+		for(; idx + 2 < length; idx++) {
+			if(sequence.charAt(idx) == '-' && sequence.charAt(idx + 1) == '-' && sequence.charAt(idx + 2) == '>')
+				return idx + 3;
+		}
+		return length;
+	}
+	
+	private static boolean isNameEnd(char c) {
+		return c == '>' || c == '/' || Character.isWhitespace(c);
+	}
+	
+	/**
+	 * Returns true if the given region holds exactly the provided value
+	 * @param sequence
+	 * @param start
+	 * @param end
+	 * @param value
+	 * @return
+	 */
+	protected static boolean regionEquals(CharSequence sequence, int start, int end, String value) {
+		if(end - start != value.length())
+			return false;
+		for(int i = 0; i < value.length(); i++) {
+			if(sequence.charAt(start + i) != value.charAt(i))
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Computes the hash of the given region - same function as String#hashCode
+	 * @param sequence
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	protected static int regionHash(CharSequence sequence, int start, int end) {
+		int hash = 0;
+		for(int i = start; i < end; i++)
+			hash = 31 * hash + sequence.charAt(i);
+		return hash;
+	}
+	
+	/**
+	 * Parses the decimal timestamp contained in the given region
+	 * @param sequence
+	 * @param start
+	 * @param end
+	 * @return timestamp or {@link #NO_TIMESTAMP} if the region does not hold a valid value
+	 */
+	protected static long parseTimestamp(CharSequence sequence, int start, int end) {
+		if(start >= end || end - start > 18)
+			return NO_TIMESTAMP;
+		long value = 0;
+		for(int i = start; i < end; i++) {
+			char c = sequence.charAt(i);
+			if(c < '0' || c > '9')
+				return NO_TIMESTAMP;
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+	
+	/**
+	 * Returns true if the timestamp element has been found, its value may still be invalid
+	 * @return
+	 */
+	public boolean isTimestampFound() {
+		return timestampFound;
+	}
+	
+	/**
+	 * Returns the producer timestamp or {@link #NO_TIMESTAMP} if none was found
+	 * @return
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+	
+	public boolean hasNodeId() {
+		return nodeIdStart != -1;
+	}
+	
+	public boolean hasMeasuringPointId() {
+		return measuringPointIdStart != -1;
+	}
+	
+	/**
+	 * Returns true if the node identifier found equals the given value
+	 * @param value
+	 * @return
+	 */
+	public boolean nodeIdEquals(String value) {
+		return hasNodeId() && regionEquals(payload, nodeIdStart, nodeIdEnd, value);
+	}
+	
+	/**
+	 * Returns true if the measuring point identifier found equals the given value
+	 * @param value
+	 * @return
+	 */
+	public boolean measuringPointIdEquals(String value) {
+		return hasMeasuringPointId() && regionEquals(payload, measuringPointIdStart, measuringPointIdEnd, value);
+	}
+	
+	public int getNodeIdHash() {
+		return regionHash(payload, nodeIdStart, nodeIdEnd);
+	}
+	
+	public int getMeasuringPointIdHash() {
+		return regionHash(payload, measuringPointIdStart, measuringPointIdEnd);
+	}
+	
+	/**
+	 * Returns the node identifier as string, allocates a new string with each call
+	 * @return
+	 */
+	public String getNodeId() {
+		return (hasNodeId() ? payload.subSequence(nodeIdStart, nodeIdEnd).toString() : null);
+	}
+	
+	/**
+	 * Returns the measuring point identifier as string, allocates a new string with each call
+	 * @return
+	 */
+	public String getMeasuringPointId() {
+		return (hasMeasuringPointId() ? payload.subSequence(measuringPointIdStart, measuringPointIdEnd).toString() : null);
+	}
+	
+}
@@ -0,0 +1,162 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.replay;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Layout of recording files holding captured traffic. A file starts with a header followed by any number of records, 
+ * all numbers are big-endian:
+ * <pre>
+ *   file header:  magic (4 bytes, "PTRC") | version (4 bytes) | creation time (8 bytes, ms)
+ *   record:       payload length (4 bytes) | receive time (8 bytes, ms) | payload
+ * </pre>
+ * Records carry no marker, they are found by following the length prefixes from the first one. A length of 
+ * {@link #END_OF_RECORDS} ends the recording ahead of the end of the file, eg. in preallocated files.<br/><br/>
+ * Completed files may be followed by a sparse index behind the end marker, it lists the offsets of some records in 
+ * ascending order and allows readers to enter the file close to a given offset:
+ * <pre>
+ *   index:        record offsets (8 bytes each) | end marker offset (8 bytes) | number of offsets (4 bytes) | magic (4 bytes, "PTRI")
+ * </pre>
+ * @author ckreutzfeldt
+ * @since 21.03.2012
+ */
+public final class RecordingFormat {
+
+	public static final int MAGIC = ('P' << 24) | ('T' << 16) | ('R' << 8) | 'C';
+	public static final int VERSION = 1;
+	public static final int FILE_HEADER_SIZE = 16;
+	public static final int RECORD_HEADER_SIZE = 12;
+	public static final int END_OF_RECORDS = -1;
+	public static final int INDEX_MAGIC = ('P' << 24) | ('T' << 16) | ('R' << 8) | 'I';
+	public static final int INDEX_TRAILER_SIZE = 16;
+	
+	private RecordingFormat() {
+	}
+	
+	/**
+	 * Writes the file header at the current position of the given buffer
+	 * @param buffer
+	 * @param creationTimestamp
+	 */
+	public static void writeFileHeader(ByteBuffer buffer, long creationTimestamp) {
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putLong(creationTimestamp);
+	}
+	
+	/**
+	 * Validates the file header found at the given absolute index of the buffer
+	 * @param buffer
+	 * @param index
+	 * @throws IOException thrown in case the header does not denote a supported recording
+	 */
+	public static void checkFileHeader(ByteBuffer buffer, int index) throws IOException {
+		if(buffer.limit() - index < FILE_HEADER_SIZE || buffer.getInt(index) != MAGIC)
+			throw new IOException("Not a recording file");
+		int version = buffer.getInt(index + 4);
+		if(version != VERSION)
+			throw new IOException("Unsupported recording version: " + version);
+	}
+	
+	/**
+	 * Writes a record header at the current position of the given buffer, the payload is expected to follow
+	 * @param buffer
+	 * @param payloadLength
+	 * @param receiveTimestamp
+	 */
+	public static void writeRecordHeader(ByteBuffer buffer, int payloadLength, long receiveTimestamp) {
+		buffer.putInt(payloadLength);
+		buffer.putLong(receiveTimestamp);
+	}
+	
+	/**
+	 * Writes the end marker at the given offset of the channel, followed by an index holding the given record offsets. The
+	 * channel is not required to extend beyond the marker
+	 * @param channel
+	 * @param endOffset offset of the end marker, ie. the end of the last record
+	 * @param offsets
+	 * @param count number of offsets to write
+	 * @throws IOException
+	 */
+	public static void writeIndex(FileChannel channel, long endOffset, long[] offsets, int count) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(4 + 8 * count + INDEX_TRAILER_SIZE);
+		buffer.putInt(END_OF_RECORDS);
+		for(int i = 0; i < count; i++)
+			buffer.putLong(offsets[i]);
+		buffer.putLong(endOffset);
+		buffer.putInt(count);
+		buffer.putInt(INDEX_MAGIC);
+		buffer.flip();
+		for(long position = endOffset; buffer.hasRemaining(); )
+			position += channel.write(buffer, position);
+	}
+	
+	/**
+	 * Reads the index found at the end of the given channel
+	 * @param channel
+	 * @param fileSize
+	 * @return record offsets in ascending order or null if the file holds no valid index
+	 * @throws IOException
+	 */
+	public static long[] readIndex(FileChannel channel, long fileSize) throws IOException {
+		if(fileSize < FILE_HEADER_SIZE + 4 + INDEX_TRAILER_SIZE)
+			return null;
+		ByteBuffer trailer = read(channel, fileSize - INDEX_TRAILER_SIZE, INDEX_TRAILER_SIZE);
+		if(trailer == null || trailer.getInt(12) != INDEX_MAGIC)
+			return null;
+		long endOffset = trailer.getLong(0);
+		int count = trailer.getInt(8);
+		// the index must fill the space between the end marker and the trailer exactly
+		if(count < 0 || endOffset < FILE_HEADER_SIZE || endOffset + 4 + 8L * count + INDEX_TRAILER_SIZE != fileSize)
+			return null;
+		ByteBuffer index = read(channel, endOffset, 4 + 8 * count);
+		if(index == null || index.getInt(0) != END_OF_RECORDS)
+			return null;
+		long[] offsets = new long[count];
+		for(int i = 0; i < count; i++) {
+			offsets[i] = index.getLong(4 + 8 * i);
+			if(offsets[i] < (i > 0 ? offsets[i - 1] : FILE_HEADER_SIZE) || offsets[i] > endOffset)
+				return null;
+		}
+		return offsets;
+	}
+	
+	/**
+	 * Reads the given number of bytes starting at the provided position of the channel
+	 * @param channel
+	 * @param position
+	 * @param size
+	 * @return buffer holding the bytes at index 0 or null if the channel ends before
+	 * @throws IOException
+	 */
+	private static ByteBuffer read(FileChannel channel, long position, int size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		while(buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if(read < 0)
+				return null;
+		}
+		return buffer;
+	}
+	
+}
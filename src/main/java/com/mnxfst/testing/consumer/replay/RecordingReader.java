@@ -0,0 +1,257 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reads the records of a {@link RecordingFormat recording file} through read-only memory-mapped segments. Payloads are
+ * exposed as views on the mapped segment, nothing is copied. A record whose bytes exceed the current segment causes the
+ * next segment to be mapped starting at that record, records larger than the segment size receive a segment of their own.
+ * Mapped segments remain valid as long as they are referenced, even after the reader has been closed.<br/><br/>
+ * A reader may be restricted to a range of the file: it returns all records starting within the range. Ranges are
+ * entered by following the length prefixes from the closest record listed by the index of the file, or from the first
+ * record if the file holds no index. Adjacent ranges thus split a file without gaps or overlaps. Instances are not thread-safe.
+ * @author ckreutzfeldt
+ * @since 21.03.2012
+ */
+public class RecordingReader {
+
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+	
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long fileSize;
+	private final long endOffset;
+	private final int segmentSize;
+	// receive time of the first record of the file, NO_TIMESTAMP if the file holds no records
+	private final long baseTimestamp;
+	
+	private MappedByteBuffer segment = null;
+	private long segmentStart = 0;
+	// file offset of the next record
+	private long offset = RecordingFormat.FILE_HEADER_SIZE;
+	// current record
+	private int payloadIndex = 0;
+	private int payloadLength = 0;
+	private long timestamp = 0;
+	private boolean truncated = false;
+	
+	public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+	
+	/**
+	 * Opens the whole file
+	 * @param path
+	 * @param segmentSize
+	 * @throws IOException
+	 */
+	public RecordingReader(File path, int segmentSize) throws IOException {
+		this(path, 0, Long.MAX_VALUE, segmentSize);
+	}
+	
+	/**
+	 * Opens the file and moves to the first record starting at or behind the given start offset
+	 * @param path
+	 * @param startOffset
+	 * @param endOffset records starting at or behind this offset are not returned
+	 * @param segmentSize maximum number of bytes mapped at once unless a single record requires more
+	 * @throws IOException thrown in case the file cannot be read or is not a recording
+	 */
+	public RecordingReader(File path, long startOffset, long endOffset, int segmentSize) throws IOException {
+		
+		if(segmentSize < RecordingFormat.FILE_HEADER_SIZE)
+			throw new IllegalArgumentException("Invalid segment size: " + segmentSize);
+		if(startOffset < 0 || endOffset < startOffset)
+			throw new IllegalArgumentException("Invalid range: " + startOffset + " - " + endOffset);
+		
+		this.file = new RandomAccessFile(path, "r");
+		this.channel = file.getChannel();
+		this.fileSize = channel.size();
+		this.endOffset = Math.min(endOffset, fileSize);
+		this.segmentSize = segmentSize;
+		
+		try {
+			if(!map(0, RecordingFormat.FILE_HEADER_SIZE))
+				throw new IOException("Not a recording file: " + path);
+			RecordingFormat.checkFileHeader(segment, 0);
+			boolean hasRecords = map(offset, RecordingFormat.RECORD_HEADER_SIZE) && segment.getInt((int)(offset - segmentStart)) != RecordingFormat.END_OF_RECORDS;
+			this.baseTimestamp = (hasRecords ? segment.getLong((int)(offset - segmentStart) + 4) : NO_TIMESTAMP);
+			
+			// follow the length prefixes up to the first record of the range, starting at the closest indexed record
+			if(offset < startOffset) {
+				long[] index = RecordingFormat.readIndex(channel, fileSize);
+				int entry = (index != null ? Arrays.binarySearch(index, startOffset) : -1);
+				if(entry < -1)
+					entry = -entry - 2;
+				if(entry >= 0)
+					offset = index[entry];
+			}
+			while(offset < startOffset && map(offset, RecordingFormat.RECORD_HEADER_SIZE)) {
+				int length = segment.getInt((int)(offset - segmentStart));
+				if(length == RecordingFormat.END_OF_RECORDS)
+					break;
+				if(length < 0)
+					throw new IOException("Corrupt record at offset " + offset);
+				offset += RecordingFormat.RECORD_HEADER_SIZE + (long)length;
+			}
+		} catch(IOException e) {
+			close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Returns the offset range of the given partition when splitting the file into the given number of partitions
+	 * @param fileSize
+	 * @param partitions
+	 * @param partition
+	 * @return start and end offset
+	 */
+	public static long[] getPartitionRange(long fileSize, int partitions, int partition) {
+		if(partitions < 1 || partition < 0 || partition >= partitions)
+			throw new IllegalArgumentException("Invalid partition " + partition + " of " + partitions);
+		long records = Math.max(0, fileSize - RecordingFormat.FILE_HEADER_SIZE);
+		long start = RecordingFormat.FILE_HEADER_SIZE + records * partition / partitions;
+		long end = (partition == partitions - 1 ? fileSize : RecordingFormat.FILE_HEADER_SIZE + records * (partition + 1) / partitions);
+		return new long[]{start, end};
+	}
+	
+	/**
+	 * Moves to the next record of the range
+	 * @return false if the range holds no further record
+	 * @throws IOException thrown in case the file is corrupt
+	 */
+	public boolean next() throws IOException {
+		
+		if(offset >= endOffset || !map(offset, RecordingFormat.RECORD_HEADER_SIZE))
+			return false;
+		
+		int index = (int)(offset - segmentStart);
+		int length = segment.getInt(index);
+		if(length == RecordingFormat.END_OF_RECORDS)
+			return false;
+		if(length < 0 || length > Integer.MAX_VALUE - RecordingFormat.RECORD_HEADER_SIZE)
+			throw new IOException("Corrupt record at offset " + offset);
+		long recordTimestamp = segment.getLong(index + 4);
+		if(!map(offset, RecordingFormat.RECORD_HEADER_SIZE + length)) {
+			// the last record has not been written completely
+			truncated = true;
+			return false;
+		}
+		
+		payloadIndex = (int)(offset - segmentStart) + RecordingFormat.RECORD_HEADER_SIZE;
+		payloadLength = length;
+		timestamp = recordTimestamp;
+		offset += RecordingFormat.RECORD_HEADER_SIZE + (long)length;
+		return true;
+	}
+	
+	/**
+	 * Returns the mapped segment holding the payload of the current record at {@link #getPayloadIndex()}. Position and
+	 * limit of the segment are never changed, thus it may be read by other threads using absolute indexes
+	 * @return
+	 */
+	public ByteBuffer getSegment() {
+		return segment;
+	}
+	
+	/**
+	 * Returns the index of the current payload within the {@link #getSegment() segment}
+	 * @return
+	 */
+	public int getPayloadIndex() {
+		return payloadIndex;
+	}
+	
+	/**
+	 * Ensures that the given file region is mapped
+	 * @param position
+	 * @param size
+	 * @return false if the region exceeds the file
+	 * @throws IOException
+	 */
+	private boolean map(long position, int size) throws IOException {
+		if(position + size > fileSize)
+			return false;
+		if(segment != null && position >= segmentStart && position + size <= segmentStart + segment.capacity())
+			return true;
+		segmentStart = position;
+		segment = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(Math.max(segmentSize, size), fileSize - position));
+		return true;
+	}
+	
+	/**
+	 * Closes the file, mapped segments remain valid
+	 */
+	public void close() {
+		try {
+			file.close();
+		} catch(IOException e) {
+			// nothing to do
+		}
+	}
+	
+	/**
+	 * Returns the receive time of the current record (ms)
+	 * @return
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+	
+	public int getPayloadLength() {
+		return payloadLength;
+	}
+	
+	/**
+	 * Returns the receive time of the first record of the file - regardless of the range 
+	 * @return timestamp or {@link #NO_TIMESTAMP} if the file holds no records
+	 */
+	public long getBaseTimestamp() {
+		return baseTimestamp;
+	}
+	
+	/**
+	 * Returns the file offset of the next record
+	 * @return
+	 */
+	public long getOffset() {
+		return offset;
+	}
+	
+	public long getFileSize() {
+		return fileSize;
+	}
+	
+	/**
+	 * Returns true if the file ends with an incompletely written record
+	 * @return
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+	
+}
@@ -0,0 +1,511 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+
+import com.mnxfst.testing.consumer.async.ConsumerSettings;
+import com.mnxfst.testing.consumer.exception.AsyncInputConsumerException;
+import com.mnxfst.testing.consumer.handler.XmlResponseWriter;
+
+/**
+ * Captures payloads into a rolling sequence of {@link RecordingFormat recording files} which may be replayed by the
+ * {@link ReplayConsumerHandler}. Each file is a memory-mapped segment of fixed size, preallocated and touched ahead of
+ * use by a background thread. Appending a record thus comes down to copying the payload into mapped memory, the 
+ * receiving thread never waits for the file system.<br/><br/>
+ * The writer is meant for a single writing thread and does not use any locks: full segments are handed over to the
+ * background thread through a lock-free queue, the next segment is taken over from it through an atomic reference. If
+ * no prepared segment is available when one is required, records are dropped until it is - just like messages are
+ * skipped when the analyzers fall behind. The background thread trims completed segments to their content and applies 
+ * the retention policy which removes the oldest completed segments once they exceed the configured total size or age.
+ * Completed segments receive a sparse index listing the first record behind every 64th part of the segment, at most one
+ * per page. Replaying consumers thus enter their partition of a file without following all length prefixes from its beginning.
+ * <br/><br/>
+ * Settings, the capture is enabled by configuring the directory:
+ * <ul>
+ *   <li><i>consumer.async.&lt;type&gt;.capture.directory</i> - directory receiving the recording files</li>
+ *   <li><i>consumer.async.&lt;type&gt;.capture.segmentSize</i> - size of a single file, bounds the record size, default: 64MB</li>
+ *   <li><i>consumer.async.&lt;type&gt;.capture.retention.maxBytes</i> - total size of the completed files kept, default: unlimited</li>
+ *   <li><i>consumer.async.&lt;type&gt;.capture.retention.maxAgeMillis</i> - time completed files are kept, default: unlimited</li>
+ * </ul>
+ * @author ckreutzfeldt
+ * @since 22.03.2012
+ */
+public class RecordingWriter {
+
+	private static final Logger logger = Logger.getLogger(RecordingWriter.class);
+	
+	private static final String CFG_OPT_CONSUMER_TYPE_PREFIX = "consumer.async.";
+	private static final String CFG_OPT_DIRECTORY = ".capture.directory";
+	private static final String CFG_OPT_SEGMENT_SIZE = ".capture.segmentSize";
+	private static final String CFG_OPT_RETENTION_MAX_BYTES = ".capture.retention.maxBytes";
+	private static final String CFG_OPT_RETENTION_MAX_AGE_MILLIS = ".capture.retention.maxAgeMillis";
+	
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+	public static final int MIN_SEGMENT_SIZE = 4096;
+	public static final String FILE_SUFFIX = ".rec";
+	
+	private static final int PAGE_SIZE = 4096;
+	// the index lists a record per interval of segmentSize / INDEX_ENTRIES bytes but not more than one per page
+	private static final int INDEX_ENTRIES = 64;
+	// interval of the background thread checking the retention policy unless woken up for a full segment
+	private static final long RETENTION_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	
+	private static final String RESPONSE_CAPTURE_ELEMENT = "capture";
+	private static final String RESPONSE_CAPTURE_NAME_ATTRIBUTE = "name";
+	private static final String RESPONSE_CAPTURE_DIRECTORY_ATTRIBUTE = "directory";
+	private static final String RESPONSE_CAPTURE_RECORDS_ATTRIBUTE = "records";
+	private static final String RESPONSE_CAPTURE_BYTES_ATTRIBUTE = "bytes";
+	private static final String RESPONSE_CAPTURE_DROPPED_ATTRIBUTE = "dropped";
+	private static final String RESPONSE_CAPTURE_SEGMENTS_ATTRIBUTE = "segments";
+	private static final String RESPONSE_CAPTURE_STALLS_ATTRIBUTE = "stalls";
+	private static final String RESPONSE_CAPTURE_DELETED_ATTRIBUTE = "deleted";
+	
+	private final String name;
+	private final File directory;
+	private final int segmentSize;
+	private final int indexInterval;
+	// 0 disables the respective retention limit
+	private final long retentionMaxBytes;
+	private final long retentionMaxAgeMillis;
+	
+	// writer state, accessed by the writing thread only
+	private Segment current = null;
+	
+	// hand-over between the writing and the background thread
+	private final AtomicReference<Segment> spare = new AtomicReference<Segment>();
+	private final Queue<Segment> completed = new ConcurrentLinkedQueue<Segment>();
+	
+	// background thread state
+	private Thread preparer = null;
+	private int nextSequence = 0;
+	private final ArrayDeque<Segment> retained = new ArrayDeque<Segment>();
+	private long retainedBytes = 0;
+	
+	// written by the writing thread only, read by anyone
+	private final AtomicLong records = new AtomicLong(0);
+	private final AtomicLong bytes = new AtomicLong(0);
+	private final AtomicLong dropped = new AtomicLong(0);
+	private final AtomicLong stalls = new AtomicLong(0);
+	private final AtomicLong segments = new AtomicLong(0);
+	// written by the background thread only
+	private final AtomicLong deleted = new AtomicLong(0);
+	
+	private volatile boolean running = true;
+	private final AtomicBoolean closed = new AtomicBoolean(false);
+	
+	/**
+	 * Initializes the writer, no files are created before {@link #open()} is called
+	 * @param name prefix of the file names
+	 * @param directory
+	 * @param segmentSize
+	 * @param retentionMaxBytes total size of the completed files kept, 0 for unlimited
+	 * @param retentionMaxAgeMillis time completed files are kept, 0 for unlimited
+	 */
+	public RecordingWriter(String name, File directory, int segmentSize, long retentionMaxBytes, long retentionMaxAgeMillis) {
+		if(segmentSize < MIN_SEGMENT_SIZE)
+			throw new IllegalArgumentException("Invalid segment size: " + segmentSize);
+		if(retentionMaxBytes < 0 || retentionMaxAgeMillis < 0)
+			throw new IllegalArgumentException("Invalid retention policy");
+		this.name = name;
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.indexInterval = Math.max(PAGE_SIZE, segmentSize / INDEX_ENTRIES);
+		this.retentionMaxBytes = retentionMaxBytes;
+		this.retentionMaxAgeMillis = retentionMaxAgeMillis;
+	}
+	
+	/**
+	 * Creates the writer configured for the given consumer type and opens it
+	 * @param name
+	 * @param consumerType
+	 * @param properties
+	 * @return writer or null if no capture is configured
+	 * @throws AsyncInputConsumerException thrown in case the settings are invalid or the first segment cannot be created
+	 */
+	public static RecordingWriter create(String name, String consumerType, Map<String, List<String>> properties) throws AsyncInputConsumerException {
+		
+		String prefix = CFG_OPT_CONSUMER_TYPE_PREFIX + consumerType;
+		String directoryName = ConsumerSettings.getString(properties, prefix + CFG_OPT_DIRECTORY, null);
+		if(directoryName == null)
+			return null;
+		
+		long segmentSize = ConsumerSettings.getLong(properties, prefix + CFG_OPT_SEGMENT_SIZE, DEFAULT_SEGMENT_SIZE);
+		if(segmentSize < MIN_SEGMENT_SIZE || segmentSize > Integer.MAX_VALUE)
+			throw new AsyncInputConsumerException("Invalid value for '"+prefix+CFG_OPT_SEGMENT_SIZE+"': " + segmentSize);
+		long retentionMaxBytes = ConsumerSettings.getLong(properties, prefix + CFG_OPT_RETENTION_MAX_BYTES, 0);
+		if(retentionMaxBytes < 0)
+			throw new AsyncInputConsumerException("Invalid value for '"+prefix+CFG_OPT_RETENTION_MAX_BYTES+"': " + retentionMaxBytes);
+		long retentionMaxAgeMillis = ConsumerSettings.getLong(properties, prefix + CFG_OPT_RETENTION_MAX_AGE_MILLIS, 0);
+		if(retentionMaxAgeMillis < 0)
+			throw new AsyncInputConsumerException("Invalid value for '"+prefix+CFG_OPT_RETENTION_MAX_AGE_MILLIS+"': " + retentionMaxAgeMillis);
+		
+		File directory = new File(directoryName);
+		if(!directory.isDirectory() && !directory.mkdirs())
+			throw new AsyncInputConsumerException("Failed to create capture directory '"+directoryName+"'");
+		
+		RecordingWriter writer = new RecordingWriter(name, directory, (int)segmentSize, retentionMaxBytes, retentionMaxAgeMillis);
+		try {
+			writer.open();
+		} catch(IOException e) {
+			throw new AsyncInputConsumerException("Failed to open capture '"+name+"' in '"+directoryName+"': " + e.getMessage(), e);
+		}
+		return writer;
+	}
+	
+	/**
+	 * Creates the first segment and starts the background thread preparing the next ones
+	 * @throws IOException
+	 */
+	public void open() throws IOException {
+		if(current != null || closed.get())
+			throw new IllegalStateException("Capture '"+name+"' has been opened already");
+		current = prepareSegment();
+		preparer = new Thread(new Runnable() {
+			public void run() {
+				prepare();
+			}
+		}, name + "-preparer");
+		preparer.setDaemon(true);
+		preparer.start();
+	}
+	
+	/**
+	 * Appends a record. Must be called by the writing thread only
+	 * @param array
+	 * @param offset
+	 * @param length
+	 * @param timestamp receive time (ms)
+	 * @return false if the record has been dropped as it exceeds the segment size, no prepared segment was available or 
+	 * 		the writer has been closed
+	 */
+	public boolean append(byte[] array, int offset, int length, long timestamp) {
+		
+		Segment segment = current;
+		// room for the record followed by the end marker
+		int required = RecordingFormat.RECORD_HEADER_SIZE + length + 4;
+		if(segment == null || required > segmentSize - RecordingFormat.FILE_HEADER_SIZE) {
+			dropped.lazySet(dropped.get() + 1);
+			return false;
+		}
+		
+		MappedByteBuffer buffer = segment.buffer;
+		if(buffer.remaining() < required) {
+			segment = roll();
+			if(segment == null) {
+				dropped.lazySet(dropped.get() + 1);
+				return false;
+			}
+			buffer = segment.buffer;
+		}
+		
+		if(buffer.position() >= segment.nextIndexOffset)
+			segment.index(buffer.position(), indexInterval);
+		RecordingFormat.writeRecordHeader(buffer, length, timestamp);
+		buffer.put(array, offset, length);
+		// a crash leaves a file ending right here
+		buffer.putInt(buffer.position(), RecordingFormat.END_OF_RECORDS);
+		
+		records.lazySet(records.get() + 1);
+		bytes.lazySet(bytes.get() + length);
+		return true;
+	}
+	
+	/**
+	 * Hands the current segment over to the background thread and takes over the prepared one
+	 * @return new current segment or null if none has been prepared yet
+	 */
+	private Segment roll() {
+		Segment next = spare.getAndSet(null);
+		if(next == null) {
+			// keep the full segment until a new one is available, the background thread has been woken up already
+			stalls.lazySet(stalls.get() + 1);
+			return null;
+		}
+		complete(current);
+		current = next;
+		return next;
+	}
+	
+	/**
+	 * Hands the given segment over to the background thread
+	 * @param segment
+	 */
+	private void complete(Segment segment) {
+		segment.length = segment.buffer.position();
+		completed.offer(segment);
+		segments.lazySet(segments.get() + 1);
+		LockSupport.unpark(preparer);
+	}
+	
+	/**
+	 * Completes the current segment and stops the background thread which finishes all completed segments. Must be
+	 * called by the writing thread or once writing has stopped
+	 * @param timeoutMillis time granted for finishing the segments
+	 */
+	public void close(long timeoutMillis) {
+		if(!closed.compareAndSet(false, true))
+			return;
+		if(current != null) {
+			complete(current);
+			current = null;
+		}
+		running = false;
+		if(preparer != null) {
+			LockSupport.unpark(preparer);
+			try {
+				preparer.join(timeoutMillis);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	/**
+	 * Runs the background thread: prepares the next segment, finishes completed ones and applies the retention policy
+	 */
+	protected void prepare() {
+		
+		boolean failed = false;
+		while(running) {
+			finishCompleted();
+			if(spare.get() == null) {
+				try {
+					spare.set(prepareSegment());
+					failed = false;
+				} catch(IOException e) {
+					// report once per failure period, records are dropped meanwhile
+					if(!failed)
+						logger.error("Failed to prepare segment for capture '"+name+"': " + e.getMessage());
+					failed = true;
+				}
+			}
+			applyRetention(System.currentTimeMillis());
+			if(running)
+				LockSupport.parkNanos(RETENTION_CHECK_NANOS);
+		}
+		
+		finishCompleted();
+		Segment unused = spare.getAndSet(null);
+		if(unused != null) {
+			unused.close(0);
+			if(!unused.file.delete())
+				logger.error("Failed to delete unused segment '"+unused.file+"'");
+		}
+		applyRetention(System.currentTimeMillis());
+	}
+	
+	/**
+	 * Creates, maps and touches the next segment, the file header and the end marker are written right away
+	 * @return
+	 * @throws IOException
+	 */
+	protected Segment prepareSegment() throws IOException {
+		
+		File file = new File(directory, name + "-" + String.format("%06d", nextSequence++) + FILE_SUFFIX);
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			randomAccessFile.setLength(0);
+			MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+			// allocate all pages now rather than while appending
+			for(int i = 0; i < segmentSize; i += PAGE_SIZE)
+				buffer.put(i, (byte)0);
+			RecordingFormat.writeFileHeader(buffer, System.currentTimeMillis());
+			buffer.putInt(buffer.position(), RecordingFormat.END_OF_RECORDS);
+			return new Segment(file, randomAccessFile, buffer, segmentSize / indexInterval, indexInterval);
+		} catch(IOException e) {
+			randomAccessFile.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Trims all completed segments to their content and adds them to the retained ones
+	 */
+	private void finishCompleted() {
+		for(Segment segment = completed.poll(); segment != null; segment = completed.poll()) {
+			segment.close(segment.length);
+			segment.completedTimestamp = System.currentTimeMillis();
+			retained.add(segment);
+			retainedBytes += segment.length;
+		}
+	}
+	
+	/**
+	 * Deletes the oldest completed segments exceeding the retention limits
+	 * @param now
+	 */
+	private void applyRetention(long now) {
+		while(!retained.isEmpty()) {
+			Segment oldest = retained.peek();
+			boolean exceedsSize = (retentionMaxBytes > 0 && retainedBytes > retentionMaxBytes);
+			boolean exceedsAge = (retentionMaxAgeMillis > 0 && now - oldest.completedTimestamp > retentionMaxAgeMillis);
+			if(!exceedsSize && !exceedsAge)
+				return;
+			retained.poll();
+			retainedBytes -= oldest.length;
+			if(oldest.file.delete())
+				deleted.lazySet(deleted.get() + 1);
+			else
+				logger.error("Failed to delete segment '"+oldest.file+"' of capture '"+name+"'");
+		}
+	}
+	
+	/**
+	 * Writes the capture counters
+	 * @param responseWriter
+	 */
+	public void writeStatistics(XmlResponseWriter responseWriter) {
+		responseWriter.startElement(RESPONSE_CAPTURE_ELEMENT);
+		responseWriter.attribute(RESPONSE_CAPTURE_NAME_ATTRIBUTE, name);
+		responseWriter.attribute(RESPONSE_CAPTURE_DIRECTORY_ATTRIBUTE, directory.getPath());
+		responseWriter.attribute(RESPONSE_CAPTURE_RECORDS_ATTRIBUTE, records.get());
+		responseWriter.attribute(RESPONSE_CAPTURE_BYTES_ATTRIBUTE, bytes.get());
+		responseWriter.attribute(RESPONSE_CAPTURE_DROPPED_ATTRIBUTE, dropped.get());
+		responseWriter.attribute(RESPONSE_CAPTURE_SEGMENTS_ATTRIBUTE, segments.get());
+		responseWriter.attribute(RESPONSE_CAPTURE_STALLS_ATTRIBUTE, stalls.get());
+		responseWriter.attribute(RESPONSE_CAPTURE_DELETED_ATTRIBUTE, deleted.get());
+		responseWriter.endElement();
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public File getDirectory() {
+		return directory;
+	}
+	
+	public long getRecordCount() {
+		return records.get();
+	}
+	
+	public long getByteCount() {
+		return bytes.get();
+	}
+	
+	/**
+	 * Returns the number of records dropped as they exceeded the segment size or no prepared segment was available
+	 * @return
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+	
+	/**
+	 * Returns the number of completed segments
+	 * @return
+	 */
+	public long getSegmentCount() {
+		return segments.get();
+	}
+	
+	/**
+	 * Returns the number of times a full segment could not be replaced as the next one had not been prepared yet
+	 * @return
+	 */
+	public long getStallCount() {
+		return stalls.get();
+	}
+	
+	/**
+	 * Returns the number of segments deleted by the retention policy
+	 * @return
+	 */
+	public long getDeletedCount() {
+		return deleted.get();
+	}
+	
+	/**
+	 * Single memory-mapped recording file
+	 * @author ckreutzfeldt
+	 * @since 22.03.2012
+	 */
+	private static final class Segment {
+		
+		private final File file;
+		private final RandomAccessFile randomAccessFile;
+		private final MappedByteBuffer buffer;
+		// number of bytes written, set on completion
+		private int length = 0;
+		private long completedTimestamp = 0;
+		// offsets of the first record behind each index interval, written by the writing thread only
+		private final long[] index;
+		private int indexEntries = 0;
+		private int nextIndexOffset = 0;
+		
+		private Segment(File file, RandomAccessFile randomAccessFile, MappedByteBuffer buffer, int maxIndexEntries, int indexInterval) {
+			this.file = file;
+			this.randomAccessFile = randomAccessFile;
+			this.buffer = buffer;
+			this.index = new long[maxIndexEntries];
+			// the first record is found right behind the file header anyway
+			this.nextIndexOffset = indexInterval;
+		}
+		
+		/**
+		 * Adds the record starting at the given offset to the index
+		 * @param offset
+		 * @param indexInterval
+		 */
+		private void index(int offset, int indexInterval) {
+			if(indexEntries < index.length)
+				index[indexEntries++] = offset;
+			nextIndexOffset = (offset / indexInterval + 1) * indexInterval;
+		}
+		
+		/**
+		 * Trims the file to the given length, appends the index and closes it. The mapping is released once the buffer is collected
+		 * @param length
+		 */
+		private void close(int length) {
+			try {
+				randomAccessFile.getChannel().truncate(length);
+				if(indexEntries > 0)
+					RecordingFormat.writeIndex(randomAccessFile.getChannel(), length, index, indexEntries);
+			} catch(IOException e) {
+				// the end marker keeps untrimmed files readable, files without index are read from the beginning
+				logger.error("Failed to trim segment '"+file+"': " + e.getMessage());
+			}
+			try {
+				randomAccessFile.close();
+			} catch(IOException e) {
+				logger.error("Failed to close segment '"+file+"': " + e.getMessage());
+			}
+		}
+	}
+	
+}
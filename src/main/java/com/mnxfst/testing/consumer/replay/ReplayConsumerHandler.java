@@ -0,0 +1,410 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+
+import com.mnxfst.testing.consumer.analyzer.IMessageAnalyzerHost;
+import com.mnxfst.testing.consumer.analyzer.MessageAnalyzerPipeline;
+import com.mnxfst.testing.consumer.analyzer.MessageEnvelope;
+import com.mnxfst.testing.consumer.async.AsyncInputConsumerStatistics;
+import com.mnxfst.testing.consumer.async.ConsumerSettings;
+import com.mnxfst.testing.consumer.async.IAsyncInputConsumer;
+import com.mnxfst.testing.consumer.exception.AsyncInputConsumerException;
+import com.mnxfst.testing.consumer.handler.IStatisticsSection;
+import com.mnxfst.testing.consumer.handler.XmlResponseWriter;
+
+/**
+ * Replays the records of a {@link RecordingFormat recording file} and feeds the {@link AsyncInputConsumerStatistics consumer statistics}.
+ * The file is read through memory-mapped segments, payloads are handed over to the {@link MessageAnalyzerPipeline analyzers}
+ * as views on the mapped bytes without being copied. Settings:
+ * <ul>
+ *   <li><i>replay.file</i> - recording file, required</li>
+ *   <li><i>replay.speed</i> - factor applied to the original inter-arrival times, eg. 2 replays twice as fast. <i>max</i> or 0 
+ *       replays without any pause, default: 1</li>
+ *   <li><i>replay.partitions</i> - number of consumers splitting the file, default: 1</li>
+ *   <li><i>replay.partition</i> - partition replayed by this consumer, default: partitions are assigned in the order the consumers are
+ *       started by a single request or ramp. Required for consumers created ahead of any request if the file is partitioned</li>
+ *   <li><i>replay.startOffset</i>, <i>replay.endOffset</i> - explicit file range, overrides the partition settings</li>
+ *   <li><i>replay.segmentSize</i> - number of bytes mapped at once, default: 64MB</li>
+ * </ul>
+ * Partitions replay all records starting within their share of the file. The timing is relative to the first record of the file,
+ * consumers started together thus replay their partitions side by side, following the original time line. The consumer finishes
+ * once its range has been replayed.
+ * @author ckreutzfeldt
+ * @since 21.03.2012
+ */
+public class ReplayConsumerHandler implements IAsyncInputConsumer, IStatisticsSection, IMessageAnalyzerHost {
+
+	private static final Logger logger = Logger.getLogger(ReplayConsumerHandler.class);
+	
+	public static final String CFG_OPT_FILE = "replay.file";
+	public static final String CFG_OPT_SPEED = "replay.speed";
+	public static final String CFG_OPT_PARTITIONS = "replay.partitions";
+	public static final String CFG_OPT_PARTITION = "replay.partition";
+	public static final String CFG_OPT_START_OFFSET = "replay.startOffset";
+	public static final String CFG_OPT_END_OFFSET = "replay.endOffset";
+	public static final String CFG_OPT_SEGMENT_SIZE = "replay.segmentSize";
+	
+	public static final String SPEED_MAX = "max";
+	
+	public static final String STATISTICS_SECTION_NAME = "replay";
+	// time granted to the analyzers for processing pending messages once the consumer has stopped
+	private static final long ANALYZER_SHUTDOWN_TIMEOUT_MILLIS = 1000;
+	// longest single pause, keeps the consumer responsive to shutdown requests
+	private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+	// upper bound of records recorded with the statistics at once
+	private static final int MAX_RECORDS_PER_BATCH = 1024;
+	
+	private static final String RESPONSE_RECORDING_ELEMENT = "recording";
+	private static final String RESPONSE_RECORDING_FILE_ATTRIBUTE = "file";
+	private static final String RESPONSE_RECORDING_PARTITION_ATTRIBUTE = "partition";
+	private static final String RESPONSE_RECORDING_START_ATTRIBUTE = "start";
+	private static final String RESPONSE_RECORDING_END_ATTRIBUTE = "end";
+	private static final String RESPONSE_RECORDING_POSITION_ATTRIBUTE = "position";
+	private static final String RESPONSE_RECORDING_RECORDS_ATTRIBUTE = "records";
+	private static final String RESPONSE_RECORDING_SPEED_ATTRIBUTE = "speed";
+	private static final String RESPONSE_RECORDING_TRUNCATED_ATTRIBUTE = "truncated";
+	
+	private String id = null;
+	private String type = null;
+	private AsyncInputConsumerStatistics statistics = null;
+	
+	private String fileName = null;
+	// 0 replays without pauses
+	private double speed = 1;
+	private int partitions = 1;
+	private int partition = 0;
+	private long startOffset = 0;
+	private long endOffset = 0;
+	
+	private RecordingReader reader = null;
+	private MessageAnalyzerPipeline pipeline = null;
+	
+	private final AtomicLong replayedRecords = new AtomicLong(0);
+	private volatile long position = 0;
+	private volatile boolean truncated = false;
+	
+	private volatile boolean running = true;
+	private final AtomicBoolean started = new AtomicBoolean(false);
+	private final AtomicBoolean closed = new AtomicBoolean(false);
+	
+	/**
+	 * Default constructor
+	 */
+	public ReplayConsumerHandler() {		
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.consumer.async.IAsyncInputConsumer#initialize(java.util.Map)
+	 */
+	public void initialize(Map<String, List<String>> properties) throws AsyncInputConsumerException {
+		
+		this.fileName = ConsumerSettings.getString(properties, CFG_OPT_FILE, null);
+		if(fileName == null)
+			throw new AsyncInputConsumerException("Missing required setting '"+CFG_OPT_FILE+"'");
+		this.speed = getSpeed(properties, CFG_OPT_SPEED);
+		this.partitions = ConsumerSettings.getPositiveInt(properties, CFG_OPT_PARTITIONS, 1);
+		int segmentSize = ConsumerSettings.getPositiveInt(properties, CFG_OPT_SEGMENT_SIZE, RecordingReader.DEFAULT_SEGMENT_SIZE);
+		
+		File file = new File(fileName);
+		if(!file.isFile())
+			throw new AsyncInputConsumerException("Recording file not found: " + fileName);
+		
+		long fileSize = file.length();
+		long explicitStart = ConsumerSettings.getLong(properties, CFG_OPT_START_OFFSET, -1);
+		long explicitEnd = ConsumerSettings.getLong(properties, CFG_OPT_END_OFFSET, -1);
+		if(explicitStart >= 0 || explicitEnd >= 0) {
+			this.partitions = 1;
+			this.partition = 0;
+			this.startOffset = Math.max(explicitStart, 0);
+			this.endOffset = (explicitEnd >= 0 ? explicitEnd : fileSize);
+			if(endOffset < startOffset)
+				throw new AsyncInputConsumerException("Invalid range: " + startOffset + " - " + endOffset);
+		} else {
+			this.partition = ConsumerSettings.getInt(properties, CFG_OPT_PARTITION, -1);
+			if(partition < 0) {
+				// consumers started together take their partitions in order of the request
+				int sequence = ConsumerSettings.getInt(properties, CFG_OPT_SEQUENCE, -1);
+				if(sequence < 0 && partitions > 1)
+					throw new AsyncInputConsumerException("Missing required setting '"+CFG_OPT_PARTITION+"' for consumers not started by a request");
+				partition = Math.max(sequence, 0) % partitions;
+			}
+			if(partition >= partitions)
+				throw new AsyncInputConsumerException("Invalid value for '"+CFG_OPT_PARTITION+"': " + partition);
+			long[] range = RecordingReader.getPartitionRange(fileSize, partitions, partition);
+			this.startOffset = range[0];
+			this.endOffset = range[1];
+		}
+		
+		try {
+			this.reader = new RecordingReader(file, startOffset, endOffset, segmentSize);
+		} catch(IOException e) {
+			throw new AsyncInputConsumerException("Failed to open recording file '"+fileName+"': " + e.getMessage(), e);
+		}
+		this.position = reader.getOffset();
+		
+		this.statistics = new AsyncInputConsumerStatistics(id, type, properties);
+		try {
+			this.pipeline = MessageAnalyzerPipeline.create("analyzer-" + id, type, properties);
+		} catch(AsyncInputConsumerException e) {
+			reader.close();
+			throw e;
+		}
+		
+		if(logger.isDebugEnabled())
+			logger.debug("replayConsumer[id="+id+", file="+fileName+", partition="+partition+"/"+partitions+", range="+startOffset+"-"+endOffset+
+					", speed="+speed+", segmentSize="+segmentSize+"] initialized");
+	}
+	
+	/**
+	 * Replays the records of the range until all have been replayed or the consumer is shut down
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run() {
+		
+		if(!started.compareAndSet(false, true) || closed.get())
+			return;
+		
+		if(pipeline != null)
+			pipeline.start();
+		
+		long startNanos = System.nanoTime();
+		long baseTimestamp = reader.getBaseTimestamp();
+		long records = 0;
+		long bytes = 0;
+		try {
+			while(running && reader.next()) {
+				
+				if(speed > 0) {
+					long dueNanos = startNanos + (long)(TimeUnit.MILLISECONDS.toNanos(reader.getTimestamp() - baseTimestamp) / speed);
+					if(dueNanos - System.nanoTime() > 0) {
+						// records must not be held back while waiting
+						if(records > 0)
+							statistics.recordMessages(records, bytes);
+						records = 0;
+						bytes = 0;
+						if(!awaitNanos(dueNanos))
+							break;
+					}
+				}
+				
+				int length = reader.getPayloadLength();
+				forward(length);
+				records++;
+				bytes += length;
+				if(records == MAX_RECORDS_PER_BATCH) {
+					statistics.recordMessages(records, bytes);
+					records = 0;
+					bytes = 0;
+				}
+				replayedRecords.incrementAndGet();
+				position = reader.getOffset();
+			}
+			
+			truncated = reader.isTruncated();
+			if(truncated)
+				logger.info("Recording file '"+fileName+"' ends with an incomplete record");
+		} catch(IOException e) {
+			logger.error("Failed to replay recording file '"+fileName+"' by consumer '"+id+"': " + e.getMessage(), e);
+			statistics.recordError();
+		} finally {
+			if(records > 0)
+				statistics.recordMessages(records, bytes);
+			close();
+		}
+	}
+	
+	/**
+	 * Hands the current record over to the analyzers. The envelope references the mapped segment, the payload is not copied
+	 * @param length
+	 */
+	protected void forward(int length) {
+		if(pipeline == null)
+			return;
+		// records carry no sent timestamp
+		MessageEnvelope envelope = pipeline.claim(System.currentTimeMillis(), 0);
+		if(envelope == null)
+			return;
+		try {
+			envelope.setPayload(reader.getSegment(), reader.getPayloadIndex(), length);
+			envelope.setSize(length);
+		} finally {
+			// the claimed envelope must be published in any case
+			pipeline.publish();
+		}
+	}
+	
+	/**
+	 * Waits until the given point in time has been reached
+	 * @param dueNanos
+	 * @return false if the consumer has been shut down while waiting
+	 */
+	protected boolean awaitNanos(long dueNanos) {
+		long remaining;
+		while(running && (remaining = dueNanos - System.nanoTime()) > 0)
+			LockSupport.parkNanos(Math.min(remaining, MAX_PARK_NANOS));
+		return running;
+	}
+	
+	/**
+	 * Signals the consumer to stop. The file is closed as soon as the consumer has left {@link #run()}. Consumers 
+	 * which have never been run are closed right away
+	 * @see com.mnxfst.testing.consumer.async.IAsyncInputConsumer#shutdown()
+	 */
+	public void shutdown() throws AsyncInputConsumerException {
+		running = false;
+		if(started.compareAndSet(false, true))
+			close();
+	}
+	
+	/**
+	 * Closes the recording file. Analyzers are granted some time for processing the records replayed so far, the mapped 
+	 * segments they reference remain valid
+	 */
+	protected void close() {
+		if(!closed.compareAndSet(false, true))
+			return;
+		if(pipeline != null)
+			pipeline.shutdown(ANALYZER_SHUTDOWN_TIMEOUT_MILLIS);
+		if(reader != null)
+			reader.close();
+	}
+	
+	/**
+	 * Returns the replay speed factor
+	 * @param properties
+	 * @param key
+	 * @return factor, 0 for replaying without pauses
+	 * @throws AsyncInputConsumerException
+	 */
+	protected static double getSpeed(Map<String, List<String>> properties, String key) throws AsyncInputConsumerException {
+		String value = ConsumerSettings.getString(properties, key, null);
+		if(value == null)
+			return 1;
+		if(SPEED_MAX.equalsIgnoreCase(value))
+			return 0;
+		try {
+			double speed = Double.parseDouble(value);
+			if(speed >= 0 && !Double.isInfinite(speed))
+				return speed;
+		} catch(NumberFormatException e) {
+			// handled below
+		}
+		throw new AsyncInputConsumerException("Invalid value for '"+key+"': " + value);
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.consumer.handler.IStatisticsSection#getSectionName()
+	 */
+	public String getSectionName() {
+		return STATISTICS_SECTION_NAME;
+	}
+	
+	/**
+	 * Writes the replay progress followed by the statistics of the analyzer pipeline
+	 * @see com.mnxfst.testing.consumer.handler.IStatisticsSection#writeStatistics(com.mnxfst.testing.consumer.handler.XmlResponseWriter)
+	 */
+	public void writeStatistics(XmlResponseWriter responseWriter) {
+		responseWriter.startElement(RESPONSE_RECORDING_ELEMENT);
+		responseWriter.attribute(RESPONSE_RECORDING_FILE_ATTRIBUTE, fileName);
+		responseWriter.attribute(RESPONSE_RECORDING_PARTITION_ATTRIBUTE, partition + "/" + partitions);
+		responseWriter.attribute(RESPONSE_RECORDING_START_ATTRIBUTE, startOffset);
+		responseWriter.attribute(RESPONSE_RECORDING_END_ATTRIBUTE, endOffset);
+		responseWriter.attribute(RESPONSE_RECORDING_POSITION_ATTRIBUTE, position);
+		responseWriter.attribute(RESPONSE_RECORDING_RECORDS_ATTRIBUTE, replayedRecords.get());
+		responseWriter.attribute(RESPONSE_RECORDING_SPEED_ATTRIBUTE, (speed > 0 ? String.valueOf(speed) : SPEED_MAX));
+		responseWriter.attribute(RESPONSE_RECORDING_TRUNCATED_ATTRIBUTE, String.valueOf(truncated));
+		responseWriter.endElement();
+		if(pipeline != null)
+			pipeline.writeStatistics(responseWriter);
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.consumer.async.IAsyncInputConsumer#getConsumerStatistics()
+	 */
+	public AsyncInputConsumerStatistics getConsumerStatistics() {
+		return statistics;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+	
+	public int getPartition() {
+		return partition;
+	}
+	
+	public long getStartOffset() {
+		return startOffset;
+	}
+	
+	public long getEndOffset() {
+		return endOffset;
+	}
+	
+	public long getReplayedRecordCount() {
+		return replayedRecords.get();
+	}
+	
+	/**
+	 * Returns true if the replayed range ended with an incompletely written record
+	 * @return
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+	
+	/**
+	 * Returns the analyzer pipeline fed by this consumer
+	 * @return
+	 */
+	public List<MessageAnalyzerPipeline> getAnalyzerPipelines() {
+		if(pipeline == null)
+			return Collections.emptyList();
+		List<MessageAnalyzerPipeline> pipelines = new ArrayList<MessageAnalyzerPipeline>(1);
+		pipelines.add(pipeline);
+		return pipelines;
+	}
+	
+}
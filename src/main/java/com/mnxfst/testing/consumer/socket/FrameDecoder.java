@@ -0,0 +1,348 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.socket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import com.mnxfst.testing.consumer.exception.AsyncInputConsumerException;
+
+/**
+ * Splits the bytes received from a socket into frames. Decoders work on the bytes between position and limit of a 
+ * buffer - typically a direct one - without copying them: each complete frame is reported to a {@link FrameHandler}
+ * and the position is moved past it. Incomplete frames are left in place, the caller compacts the buffer and appends
+ * further bytes. Available framings:
+ * <ul>
+ *   <li><i>length</i> - each frame is preceded by its length, a big-endian unsigned integer of 1, 2 or 4 bytes</li>
+ *   <li><i>delimiter</i> - frames are terminated by a sequence of bytes, eg. a line feed</li>
+ *   <li><i>fixed</i> - all frames have the same size</li>
+ *   <li><i>datagram</i> - all bytes provided at once form a single frame, meant for datagrams</li>
+ * </ul>
+ * Decoders may keep state between invocations, thus each connection requires an instance of its own.
+ * @author ckreutzfeldt
+ * @since 19.03.2012
+ */
+public abstract class FrameDecoder {
+
+	public static final String FRAMING_LENGTH = "length";
+	public static final String FRAMING_DELIMITER = "delimiter";
+	public static final String FRAMING_FIXED = "fixed";
+	public static final String FRAMING_DATAGRAM = "datagram";
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/**
+	 * Receives the decoded frames
+	 * @author ckreutzfeldt
+	 * @since 19.03.2012
+	 */
+	public interface FrameHandler {
+		
+		/**
+		 * Handles the frame found at the given absolute offset. The frame bytes are valid during this call only. The 
+		 * handler may move the buffer position but must restore it before returning
+		 * @param buffer
+		 * @param offset
+		 * @param length
+		 */
+		public void frame(ByteBuffer buffer, int offset, int length);
+	}
+	
+	/**
+	 * Reports all complete frames found between position and limit of the given buffer and moves the position to
+	 * the beginning of the first incomplete one
+	 * @param buffer
+	 * @param handler
+	 * @return number of frames reported
+	 * @throws AsyncInputConsumerException thrown in case the bytes violate the framing, eg. exceed the maximum frame 
+	 * 		size, the stream cannot be decoded any further
+	 */
+	public abstract int decode(ByteBuffer buffer, FrameHandler handler) throws AsyncInputConsumerException;
+	
+	/**
+	 * Returns the number of bytes required for completing the frame left over by the last call to {@link #decode(ByteBuffer, FrameHandler)},
+	 * ie. the bytes between position and limit of <i>pending</i>, when continued by the bytes between position and limit 
+	 * of <i>following</i>. The result exceeds the bytes available if the frame does not end within them, a length field 
+	 * not yet complete asks for its own remaining bytes only. Neither buffer is modified
+	 * @param pending
+	 * @param following
+	 * @return
+	 * @throws AsyncInputConsumerException thrown in case the frame exceeds the maximum frame size
+	 */
+	public abstract int getMissingBytes(ByteBuffer pending, ByteBuffer following) throws AsyncInputConsumerException;
+	
+	/**
+	 * Drops any state kept about the bytes seen so far, eg. before decoding the next datagram
+	 */
+	public void reset() {
+	}
+	
+	/**
+	 * Returns the number of bytes a buffer must be able to hold for decoding the largest accepted frame
+	 * @return
+	 */
+	public abstract int getMaxBufferedBytes();
+	
+	/**
+	 * Returns the framing name
+	 * @return
+	 */
+	public abstract String getName();
+	
+	/**
+	 * Returns a decoder for frames preceded by their length
+	 * @param lengthFieldSize 1, 2 or 4 bytes
+	 * @param maxFrameSize
+	 * @return
+	 */
+	public static FrameDecoder lengthPrefixed(final int lengthFieldSize, final int maxFrameSize) {
+		if(lengthFieldSize != 1 && lengthFieldSize != 2 && lengthFieldSize != 4)
+			throw new IllegalArgumentException("The length field must hold 1, 2 or 4 bytes");
+		if(maxFrameSize < 1)
+			throw new IllegalArgumentException("The maximum frame size must be positive");
+		return new FrameDecoder() {
+			public int decode(ByteBuffer buffer, FrameHandler handler) throws AsyncInputConsumerException {
+				int frames = 0;
+				int position = buffer.position();
+				int limit = buffer.limit();
+				while(limit - position >= lengthFieldSize) {
+					long length = 0;
+					for(int i = 0; i < lengthFieldSize; i++)
+						length = (length << 8) | (buffer.get(position + i) & 0xFF);
+					if(length > maxFrameSize) {
+						buffer.position(position);
+						throw new AsyncInputConsumerException("Frame of " + length + " bytes exceeds the maximum frame size of " + maxFrameSize);
+					}
+					if(limit - position - lengthFieldSize < length)
+						break;
+					handler.frame(buffer, position + lengthFieldSize, (int)length);
+					position += lengthFieldSize + (int)length;
+					frames++;
+				}
+				buffer.position(position);
+				return frames;
+			}
+			public int getMissingBytes(ByteBuffer pending, ByteBuffer following) throws AsyncInputConsumerException {
+				int available = pending.remaining();
+				if(available + following.remaining() < lengthFieldSize)
+					return lengthFieldSize - available;
+				long length = 0;
+				for(int i = 0; i < lengthFieldSize; i++)
+					length = (length << 8) | (byteAt(pending, following, i) & 0xFF);
+				if(length > maxFrameSize)
+					throw new AsyncInputConsumerException("Frame of " + length + " bytes exceeds the maximum frame size of " + maxFrameSize);
+				return lengthFieldSize + (int)length - available;
+			}
+			public int getMaxBufferedBytes() {
+				return maxFrameSize + lengthFieldSize;
+			}
+			public String getName() {
+				return FRAMING_LENGTH;
+			}
+		};
+	}
+	
+	/**
+	 * Returns a decoder for frames terminated by the given delimiter which is not part of the frames
+	 * @param delimiter
+	 * @param maxFrameSize
+	 * @return
+	 */
+	public static FrameDecoder delimited(byte[] delimiter, final int maxFrameSize) {
+		if(delimiter == null || delimiter.length == 0)
+			throw new IllegalArgumentException("The delimiter must not be empty");
+		if(maxFrameSize < 1)
+			throw new IllegalArgumentException("The maximum frame size must be positive");
+		final byte[] pattern = delimiter.clone();
+		return new FrameDecoder() {
+			// number of bytes following the position which are known not to start a delimiter
+			private int scanned = 0;
+			public int decode(ByteBuffer buffer, FrameHandler handler) throws AsyncInputConsumerException {
+				int frames = 0;
+				int position = buffer.position();
+				int limit = buffer.limit();
+				int idx = position + scanned;
+				while(idx + pattern.length <= limit) {
+					if(!matches(buffer, idx)) {
+						idx++;
+						continue;
+					}
+					int length = idx - position;
+					if(length > maxFrameSize) {
+						buffer.position(position);
+						throw new AsyncInputConsumerException("Frame of " + length + " bytes exceeds the maximum frame size of " + maxFrameSize);
+					}
+					handler.frame(buffer, position, length);
+					position = idx + pattern.length;
+					idx = position;
+					frames++;
+				}
+				scanned = idx - position;
+				buffer.position(position);
+				if(scanned > maxFrameSize)
+					throw new AsyncInputConsumerException("No delimiter found within the maximum frame size of " + maxFrameSize);
+				return frames;
+			}
+			public void reset() {
+				scanned = 0;
+			}
+			public int getMissingBytes(ByteBuffer pending, ByteBuffer following) {
+				// the pending bytes already scanned cannot start a delimiter, one may begin within the rest of them though
+				int available = pending.remaining();
+				int total = available + following.remaining();
+				for(int idx = scanned; idx + pattern.length <= total; idx++) {
+					int i = 0;
+					while(i < pattern.length && byteAt(pending, following, idx + i) == pattern[i])
+						i++;
+					if(i == pattern.length)
+						return idx + pattern.length - available;
+				}
+				return following.remaining() + 1;
+			}
+			private boolean matches(ByteBuffer buffer, int idx) {
+				for(int i = 0; i < pattern.length; i++) {
+					if(buffer.get(idx + i) != pattern[i])
+						return false;
+				}
+				return true;
+			}
+			public int getMaxBufferedBytes() {
+				return maxFrameSize + pattern.length;
+			}
+			public String getName() {
+				return FRAMING_DELIMITER;
+			}
+		};
+	}
+	
+	/**
+	 * Returns a decoder for frames of the given size
+	 * @param frameSize
+	 * @return
+	 */
+	public static FrameDecoder fixed(final int frameSize) {
+		if(frameSize < 1)
+			throw new IllegalArgumentException("The frame size must be positive");
+		return new FrameDecoder() {
+			public int decode(ByteBuffer buffer, FrameHandler handler) {
+				int frames = 0;
+				int position = buffer.position();
+				int limit = buffer.limit();
+				for(; limit - position >= frameSize; position += frameSize, frames++)
+					handler.frame(buffer, position, frameSize);
+				buffer.position(position);
+				return frames;
+			}
+			public int getMissingBytes(ByteBuffer pending, ByteBuffer following) {
+				return frameSize - pending.remaining();
+			}
+			public int getMaxBufferedBytes() {
+				return frameSize;
+			}
+			public String getName() {
+				return FRAMING_FIXED;
+			}
+		};
+	}
+	
+	/**
+	 * Returns a decoder taking all provided bytes as a single frame
+	 * @param maxFrameSize
+	 * @return
+	 */
+	public static FrameDecoder datagram(final int maxFrameSize) {
+		if(maxFrameSize < 1)
+			throw new IllegalArgumentException("The maximum frame size must be positive");
+		return new FrameDecoder() {
+			public int decode(ByteBuffer buffer, FrameHandler handler) {
+				handler.frame(buffer, buffer.position(), buffer.remaining());
+				buffer.position(buffer.limit());
+				return 1;
+			}
+			public int getMissingBytes(ByteBuffer pending, ByteBuffer following) {
+				return 0;
+			}
+			public int getMaxBufferedBytes() {
+				return maxFrameSize;
+			}
+			public String getName() {
+				return FRAMING_DATAGRAM;
+			}
+		};
+	}
+	
+	/**
+	 * Returns the byte at the given index of the sequence formed by the remaining bytes of both buffers
+	 * @param pending
+	 * @param following
+	 * @param idx
+	 * @return
+	 */
+	private static byte byteAt(ByteBuffer pending, ByteBuffer following, int idx) {
+		int available = pending.remaining();
+		return idx < available ? pending.get(pending.position() + idx) : following.get(following.position() + idx - available);
+	}
+	
+	/**
+	 * Parses a delimiter specification. The escape sequences \n, \r, \t, \0 and \\ are replaced by the bytes they stand 
+	 * for, all other characters are taken as UTF-8
+	 * @param spec
+	 * @return
+	 * @throws IllegalArgumentException thrown in case the delimiter is empty or contains an unknown escape sequence
+	 */
+	public static byte[] parseDelimiter(String spec) {
+		if(spec == null || spec.isEmpty())
+			throw new IllegalArgumentException("The delimiter must not be empty");
+		StringBuilder delimiter = new StringBuilder(spec.length());
+		for(int i = 0; i < spec.length(); i++) {
+			char c = spec.charAt(i);
+			if(c != '\\') {
+				delimiter.append(c);
+				continue;
+			}
+			if(++i == spec.length())
+				throw new IllegalArgumentException("Incomplete escape sequence in delimiter: " + spec);
+			switch(spec.charAt(i)) {
+				case 'n':
+					delimiter.append('\n');
+					break;
+				case 'r':
+					delimiter.append('\r');
+					break;
+				case 't':
+					delimiter.append('\t');
+					break;
+				case '0':
+					delimiter.append('\0');
+					break;
+				case '\\':
+					delimiter.append('\\');
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown escape sequence in delimiter: " + spec);
+			}
+		}
+		return delimiter.toString().getBytes(UTF8);
+	}
+	
+	public String toString() {
+		return getName();
+	}
+}
@@ -0,0 +1,689 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.socket;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.mnxfst.testing.consumer.analyzer.IMessageAnalyzerHost;
+import com.mnxfst.testing.consumer.analyzer.MessageAnalyzerPipeline;
+import com.mnxfst.testing.consumer.analyzer.MessageEnvelope;
+import com.mnxfst.testing.consumer.async.AsyncInputConsumerStatistics;
+import com.mnxfst.testing.consumer.async.ConsumerSettings;
+import com.mnxfst.testing.consumer.async.IAsyncInputConsumer;
+import com.mnxfst.testing.consumer.exception.AsyncInputConsumerException;
+import com.mnxfst.testing.consumer.handler.IStatisticsSection;
+import com.mnxfst.testing.consumer.handler.XmlResponseWriter;
+
+/**
+ * Consumes frames from a plain TCP stream or from UDP datagrams - unicast or multicast - and feeds the 
+ * {@link AsyncInputConsumerStatistics consumer statistics}. Sockets are opened on {@link #initialize(Map) initialization}
+ * and served by the thread running the consumer through a single selector. Settings:
+ * <ul>
+ *   <li><i>socket.protocol</i> - <i>tcp</i> or <i>udp</i>, default: tcp</li>
+ *   <li><i>socket.mode</i> - tcp only: <i>listen</i> accepts any number of connections, <i>connect</i> connects with
+ *       the given host and stops once the connection has been closed, default: listen</li>
+ *   <li><i>socket.host</i> - remote host in connect mode, otherwise the local address to bind to, default: all interfaces</li>
+ *   <li><i>socket.port</i> - remote or local port, required. 0 binds to any free port</li>
+ *   <li><i>socket.group</i> - udp only: multicast group to join</li>
+ *   <li><i>socket.interface</i> - name of the network interface joining the multicast group, default: first multicast capable one</li>
+ *   <li><i>socket.framing</i> - {@link FrameDecoder framing}: <i>length</i>, <i>delimiter</i>, <i>fixed</i> or <i>datagram</i>, 
+ *       default: length for tcp, datagram for udp</li>
+ *   <li><i>socket.lengthFieldSize</i> - size of the length prefix: 1, 2 or 4 bytes, default: 4</li>
+ *   <li><i>socket.delimiter</i> - frame delimiter, supports \n, \r, \t, \0 and \\, default: \n</li>
+ *   <li><i>socket.frameSize</i> - size of fixed frames, required by fixed framing</li>
+ *   <li><i>socket.maxFrameSize</i> - largest accepted frame, default: 65536</li>
+ *   <li><i>socket.bufferSize</i> - size of the direct buffer each socket reads into, at least the largest frame, default: 65536</li>
+ *   <li><i>socket.receiveBufferSize</i> - optional size of the socket receive buffer (SO_RCVBUF)</li>
+ *   <li><i>socket.selectTimeoutMillis</i> - time the selector waits for data before checking for shutdown, default: 100</li>
+ * </ul>
+ * Reads are batched: each readable socket is drained with several reads before the frames found are recorded with the 
+ * statistics at once. Frames are decoded in place, only frames forwarded to the {@link MessageAnalyzerPipeline analyzers}
+ * are copied. A tcp connection violating the framing is closed, a datagram violating it is skipped. Each listening 
+ * consumer requires a port of its own unless multicast groups are joined.
+ * @author ckreutzfeldt
+ * @since 19.03.2012
+ */
+public class SocketConsumerHandler implements IAsyncInputConsumer, IStatisticsSection, IMessageAnalyzerHost {
+
+	private static final Logger logger = Logger.getLogger(SocketConsumerHandler.class);
+	
+	public static final String CFG_OPT_PROTOCOL = "socket.protocol";
+	public static final String CFG_OPT_MODE = "socket.mode";
+	public static final String CFG_OPT_HOST = "socket.host";
+	public static final String CFG_OPT_PORT = "socket.port";
+	public static final String CFG_OPT_GROUP = "socket.group";
+	public static final String CFG_OPT_INTERFACE = "socket.interface";
+	public static final String CFG_OPT_FRAMING = "socket.framing";
+	public static final String CFG_OPT_LENGTH_FIELD_SIZE = "socket.lengthFieldSize";
+	public static final String CFG_OPT_DELIMITER = "socket.delimiter";
+	public static final String CFG_OPT_FRAME_SIZE = "socket.frameSize";
+	public static final String CFG_OPT_MAX_FRAME_SIZE = "socket.maxFrameSize";
+	public static final String CFG_OPT_BUFFER_SIZE = "socket.bufferSize";
+	public static final String CFG_OPT_RECEIVE_BUFFER_SIZE = "socket.receiveBufferSize";
+	public static final String CFG_OPT_SELECT_TIMEOUT_MILLIS = "socket.selectTimeoutMillis";
+	
+	public static final int DEFAULT_LENGTH_FIELD_SIZE = 4;
+	public static final String DEFAULT_DELIMITER = "\\n";
+	public static final int DEFAULT_MAX_FRAME_SIZE = 65536;
+	public static final int DEFAULT_BUFFER_SIZE = 65536;
+	public static final int DEFAULT_SELECT_TIMEOUT_MILLIS = 100;
+	
+	// upper bound of reads per socket and wakeup, keeps a single busy socket from starving the others
+	private static final int MAX_READS_PER_WAKEUP = 16;
+	private static final int MAX_DATAGRAMS_PER_WAKEUP = 64;
+	
+	public static final String STATISTICS_SECTION_NAME = "socket";
+	// time granted to the analyzers for processing pending messages once the consumer has stopped
+	private static final long ANALYZER_SHUTDOWN_TIMEOUT_MILLIS = 1000;
+	
+	private static final String RESPONSE_ENDPOINT_ELEMENT = "endpoint";
+	private static final String RESPONSE_ENDPOINT_PROTOCOL_ATTRIBUTE = "protocol";
+	private static final String RESPONSE_ENDPOINT_MODE_ATTRIBUTE = "mode";
+	private static final String RESPONSE_ENDPOINT_PORT_ATTRIBUTE = "port";
+	private static final String RESPONSE_ENDPOINT_FRAMING_ATTRIBUTE = "framing";
+	private static final String RESPONSE_ENDPOINT_CONNECTIONS_ATTRIBUTE = "connections";
+	private static final String RESPONSE_ENDPOINT_ACCEPTED_ATTRIBUTE = "accepted";
+	private static final String RESPONSE_ENDPOINT_FRAMING_ERRORS_ATTRIBUTE = "framingErrors";
+	
+	/**
+	 * Supported protocols
+	 * @author ckreutzfeldt
+	 * @since 19.03.2012
+	 */
+	public enum Protocol {
+		TCP, UDP
+	}
+	
+	/**
+	 * Supported tcp modes
+	 * @author ckreutzfeldt
+	 * @since 19.03.2012
+	 */
+	public enum Mode {
+		LISTEN, CONNECT
+	}
+	
+	private String id = null;
+	private String type = null;
+	private AsyncInputConsumerStatistics statistics = null;
+	
+	private Protocol protocol = Protocol.TCP;
+	private Mode mode = Mode.LISTEN;
+	private String framing = null;
+	private int lengthFieldSize = DEFAULT_LENGTH_FIELD_SIZE;
+	private byte[] delimiter = null;
+	private int frameSize = 0;
+	private int maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+	private int receiveBufferSize = 0;
+	private long selectTimeoutMillis = DEFAULT_SELECT_TIMEOUT_MILLIS;
+	
+	private Selector selector = null;
+	private int localPort = -1;
+	private MessageAnalyzerPipeline pipeline = null;
+	// collects the frames of a single wakeup, used by the thread running the consumer only
+	private final FrameForwarder frameForwarder = new FrameForwarder();
+	
+	private final AtomicInteger openConnections = new AtomicInteger(0);
+	private final AtomicLong acceptedConnections = new AtomicLong(0);
+	private final AtomicLong framingErrors = new AtomicLong(0);
+	
+	private volatile boolean running = true;
+	private final AtomicBoolean started = new AtomicBoolean(false);
+	private final AtomicBoolean closed = new AtomicBoolean(false);
+	
+	/**
+	 * Default constructor
+	 */
+	public SocketConsumerHandler() {		
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.consumer.async.IAsyncInputConsumer#initialize(java.util.Map)
+	 */
+	public void initialize(Map<String, List<String>> properties) throws AsyncInputConsumerException {
+		
+		this.protocol = ConsumerSettings.getEnum(Protocol.class, properties, CFG_OPT_PROTOCOL, Protocol.TCP);
+		this.mode = ConsumerSettings.getEnum(Mode.class, properties, CFG_OPT_MODE, Mode.LISTEN);
+		String host = ConsumerSettings.getString(properties, CFG_OPT_HOST, null);
+		int port = ConsumerSettings.getInt(properties, CFG_OPT_PORT, -1);
+		if(port < 0 || port > 65535)
+			throw new AsyncInputConsumerException("Missing or invalid setting '"+CFG_OPT_PORT+"'");
+		if(protocol == Protocol.TCP && mode == Mode.CONNECT && (host == null || port == 0))
+			throw new AsyncInputConsumerException("Connecting requires the remote host and port");
+		String group = ConsumerSettings.getString(properties, CFG_OPT_GROUP, null);
+		if(group != null && protocol != Protocol.UDP)
+			throw new AsyncInputConsumerException("Multicast groups require protocol udp");
+		
+		this.framing = ConsumerSettings.getString(properties, CFG_OPT_FRAMING, (protocol == Protocol.UDP ? FrameDecoder.FRAMING_DATAGRAM : FrameDecoder.FRAMING_LENGTH)).toLowerCase();
+		this.lengthFieldSize = ConsumerSettings.getInt(properties, CFG_OPT_LENGTH_FIELD_SIZE, DEFAULT_LENGTH_FIELD_SIZE);
+		this.frameSize = ConsumerSettings.getInt(properties, CFG_OPT_FRAME_SIZE, 0);
+		this.maxFrameSize = ConsumerSettings.getPositiveInt(properties, CFG_OPT_MAX_FRAME_SIZE, DEFAULT_MAX_FRAME_SIZE);
+		FrameDecoder decoder = null;
+		try {
+			this.delimiter = FrameDecoder.parseDelimiter(ConsumerSettings.getString(properties, CFG_OPT_DELIMITER, DEFAULT_DELIMITER));
+			decoder = createDecoder();
+		} catch(IllegalArgumentException e) {
+			throw new AsyncInputConsumerException("Invalid framing settings: " + e.getMessage());
+		}
+		// the buffer must hold the largest frame
+		this.bufferSize = Math.max(ConsumerSettings.getPositiveInt(properties, CFG_OPT_BUFFER_SIZE, DEFAULT_BUFFER_SIZE), decoder.getMaxBufferedBytes());
+		this.receiveBufferSize = ConsumerSettings.getInt(properties, CFG_OPT_RECEIVE_BUFFER_SIZE, 0);
+		this.selectTimeoutMillis = ConsumerSettings.getPositiveInt(properties, CFG_OPT_SELECT_TIMEOUT_MILLIS, DEFAULT_SELECT_TIMEOUT_MILLIS);
+		
+		this.statistics = new AsyncInputConsumerStatistics(id, type, properties);
+		this.pipeline = MessageAnalyzerPipeline.create("analyzer-" + id, type, properties);
+		
+		try {
+			selector = Selector.open();
+			if(protocol == Protocol.UDP)
+				openDatagramChannel(host, port, group, ConsumerSettings.getString(properties, CFG_OPT_INTERFACE, null));
+			else if(mode == Mode.LISTEN)
+				openServerChannel(host, port);
+			else
+				openClientChannel(host, port);
+		} catch(IOException e) {
+			close();
+			throw new AsyncInputConsumerException("Failed to open "+protocol.name().toLowerCase()+" socket for port "+port+": " + e.getMessage(), e);
+		}
+		
+		if(logger.isDebugEnabled())
+			logger.debug("socketConsumer[id="+id+", protocol="+protocol+", mode="+mode+", host="+host+", port="+localPort+", group="+group+", framing="+framing+
+					", maxFrameSize="+maxFrameSize+", bufferSize="+bufferSize+"] initialized");
+	}
+	
+	/**
+	 * Creates a decoder according to the framing settings
+	 * @return
+	 * @throws IllegalArgumentException thrown in case the settings are invalid
+	 */
+	protected FrameDecoder createDecoder() {
+		if(FrameDecoder.FRAMING_LENGTH.equals(framing))
+			return FrameDecoder.lengthPrefixed(lengthFieldSize, maxFrameSize);
+		if(FrameDecoder.FRAMING_DELIMITER.equals(framing))
+			return FrameDecoder.delimited(delimiter, maxFrameSize);
+		if(FrameDecoder.FRAMING_FIXED.equals(framing))
+			return FrameDecoder.fixed(frameSize);
+		if(FrameDecoder.FRAMING_DATAGRAM.equals(framing)) {
+			if(protocol != Protocol.UDP)
+				throw new IllegalArgumentException("Datagram framing requires protocol udp");
+			return FrameDecoder.datagram(maxFrameSize);
+		}
+		throw new IllegalArgumentException("Unknown framing: " + framing);
+	}
+	
+	/**
+	 * Binds a server socket accepting incoming connections
+	 * @param host
+	 * @param port
+	 * @throws IOException
+	 */
+	protected void openServerChannel(String host, int port) throws IOException {
+		ServerSocketChannel channel = ServerSocketChannel.open();
+		channel.configureBlocking(false);
+		channel.register(selector, SelectionKey.OP_ACCEPT);
+		channel.setOption(StandardSocketOptions.SO_REUSEADDR, Boolean.TRUE);
+		// accepted sockets inherit the receive buffer size
+		if(receiveBufferSize > 0)
+			channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+		channel.bind(host != null ? new InetSocketAddress(host, port) : new InetSocketAddress(port));
+		localPort = channel.socket().getLocalPort();
+	}
+	
+	/**
+	 * Connects with the given remote host
+	 * @param host
+	 * @param port
+	 * @throws IOException
+	 */
+	protected void openClientChannel(String host, int port) throws IOException {
+		SocketChannel channel = SocketChannel.open();
+		if(receiveBufferSize > 0)
+			channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+		try {
+			channel.connect(new InetSocketAddress(host, port));
+			channel.configureBlocking(false);
+			channel.register(selector, SelectionKey.OP_READ, new Endpoint(createDecoder(), bufferSize));
+		} catch(IOException e) {
+			channel.close();
+			throw e;
+		}
+		localPort = channel.socket().getLocalPort();
+		openConnections.incrementAndGet();
+	}
+	
+	/**
+	 * Binds a datagram socket and joins the multicast group if one is given
+	 * @param host
+	 * @param port
+	 * @param group
+	 * @param interfaceName
+	 * @throws IOException
+	 */
+	protected void openDatagramChannel(String host, int port, String group, String interfaceName) throws IOException {
+		
+		InetAddress groupAddress = (group != null ? InetAddress.getByName(group) : null);
+		if(groupAddress != null && !groupAddress.isMulticastAddress())
+			throw new IOException("Not a multicast group: " + group);
+		
+		DatagramChannel channel = (groupAddress != null ? DatagramChannel.open(groupAddress instanceof Inet6Address ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET) : DatagramChannel.open());
+		channel.configureBlocking(false);
+		channel.register(selector, SelectionKey.OP_READ, new Endpoint(createDecoder(), bufferSize));
+		if(receiveBufferSize > 0)
+			channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+		
+		if(groupAddress != null) {
+			// several consumers may join the same group on the same port
+			channel.setOption(StandardSocketOptions.SO_REUSEADDR, Boolean.TRUE);
+			channel.bind(new InetSocketAddress(port));
+			NetworkInterface networkInterface = (interfaceName != null ? NetworkInterface.getByName(interfaceName) : findMulticastInterface());
+			if(networkInterface == null)
+				throw new IOException("No network interface available for joining group " + group + (interfaceName != null ? ": " + interfaceName : ""));
+			channel.join(groupAddress, networkInterface);
+		} else {
+			channel.bind(host != null ? new InetSocketAddress(host, port) : new InetSocketAddress(port));
+		}
+		localPort = channel.socket().getLocalPort();
+	}
+	
+	/**
+	 * Returns the first multicast capable interface which is up, loopback interfaces are taken if no other one is available
+	 * @return
+	 * @throws IOException
+	 */
+	protected static NetworkInterface findMulticastInterface() throws IOException {
+		NetworkInterface loopback = null;
+		Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+		while(interfaces != null && interfaces.hasMoreElements()) {
+			NetworkInterface networkInterface = interfaces.nextElement();
+			if(!networkInterface.isUp() || !networkInterface.supportsMulticast())
+				continue;
+			if(!networkInterface.isLoopback())
+				return networkInterface;
+			if(loopback == null)
+				loopback = networkInterface;
+		}
+		return loopback;
+	}
+	
+	/**
+	 * Serves all sockets until the consumer is shut down - or the connection is closed in connect mode
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run() {
+		
+		if(!started.compareAndSet(false, true) || closed.get())
+			return;
+		
+		if(pipeline != null)
+			pipeline.start();
+		
+		try {
+			while(running) {
+				
+				if(selector.select(selectTimeoutMillis) > 0) {
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while(keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
+						if(!key.isValid())
+							continue;
+						if(key.isAcceptable())
+							accept(key);
+						else if(key.isReadable() && key.channel() instanceof DatagramChannel)
+							receiveDatagrams(key);
+						else if(key.isReadable())
+							readStream(key);
+					}
+				}
+				
+				if(protocol == Protocol.TCP && mode == Mode.CONNECT && openConnections.get() == 0) {
+					logger.info("Connection of consumer '"+id+"' has been closed");
+					break;
+				}
+			}
+		} catch(IOException e) {
+			logger.error("Failed to serve sockets of consumer '"+id+"': " + e.getMessage(), e);
+			statistics.recordError();
+		} finally {
+			close();
+		}
+	}
+	
+	/**
+	 * Accepts a pending connection
+	 * @param key
+	 */
+	protected void accept(SelectionKey key) {
+		SocketChannel channel = null;
+		try {
+			channel = ((ServerSocketChannel)key.channel()).accept();
+			if(channel == null)
+				return;
+			channel.configureBlocking(false);
+			channel.register(selector, SelectionKey.OP_READ, new Endpoint(createDecoder(), bufferSize));
+			acceptedConnections.incrementAndGet();
+			openConnections.incrementAndGet();
+		} catch(IOException e) {
+			statistics.recordError();
+			logger.error("Failed to accept connection for consumer '"+id+"': " + e.getMessage());
+			closeQuietly(channel);
+		}
+	}
+	
+	/**
+	 * Reads from a tcp connection until no more bytes are available, the frames found are recorded at once
+	 * @param key
+	 */
+	protected void readStream(SelectionKey key) {
+		
+		SocketChannel channel = (SocketChannel)key.channel();
+		Endpoint endpoint = (Endpoint)key.attachment();
+		ByteBuffer buffer = endpoint.buffer;
+		frameForwarder.begin(System.currentTimeMillis());
+		
+		boolean closeConnection = false;
+		try {
+			for(int reads = 0; reads < MAX_READS_PER_WAKEUP; reads++) {
+				int count = channel.read(buffer);
+				if(count < 0) {
+					closeConnection = true;
+					break;
+				}
+				if(count == 0)
+					break;
+				buffer.flip();
+				endpoint.decoder.decode(buffer, frameForwarder);
+				buffer.compact();
+			}
+		} catch(AsyncInputConsumerException e) {
+			framingErrors.incrementAndGet();
+			statistics.recordError();
+			logger.error("Closing connection of consumer '"+id+"' due to a framing error: " + e.getMessage());
+			closeConnection = true;
+		} catch(IOException e) {
+			statistics.recordError();
+			logger.error("Failed to read from connection of consumer '"+id+"': " + e.getMessage());
+			closeConnection = true;
+		} finally {
+			frameForwarder.end();
+		}
+		
+		if(closeConnection) {
+			key.cancel();
+			closeQuietly(channel);
+			openConnections.decrementAndGet();
+		}
+	}
+	
+	/**
+	 * Receives datagrams until no more are available, the frames found are recorded at once
+	 * @param key
+	 * @throws IOException
+	 */
+	protected void receiveDatagrams(SelectionKey key) throws IOException {
+		
+		DatagramChannel channel = (DatagramChannel)key.channel();
+		Endpoint endpoint = (Endpoint)key.attachment();
+		ByteBuffer buffer = endpoint.buffer;
+		frameForwarder.begin(System.currentTimeMillis());
+		
+		try {
+			for(int datagrams = 0; datagrams < MAX_DATAGRAMS_PER_WAKEUP; datagrams++) {
+				buffer.clear();
+				if(channel.receive(buffer) == null)
+					break;
+				buffer.flip();
+				endpoint.decoder.reset();
+				try {
+					endpoint.decoder.decode(buffer, frameForwarder);
+					// frames must not span datagrams
+					if(buffer.hasRemaining())
+						throw new AsyncInputConsumerException("Datagram ends with an incomplete frame of " + buffer.remaining() + " bytes");
+				} catch(AsyncInputConsumerException e) {
+					if(framingErrors.incrementAndGet() == 1)
+						logger.error("Skipping datagram received by consumer '"+id+"' due to a framing error: " + e.getMessage());
+					statistics.recordError();
+				}
+			}
+		} finally {
+			frameForwarder.end();
+		}
+	}
+	
+	/**
+	 * Signals the consumer to stop. The sockets are closed as soon as the consumer has left {@link #run()}. Consumers 
+	 * which have never been run are closed right away
+	 * @see com.mnxfst.testing.consumer.async.IAsyncInputConsumer#shutdown()
+	 */
+	public void shutdown() throws AsyncInputConsumerException {
+		running = false;
+		if(started.compareAndSet(false, true))
+			close();
+		else if(selector != null)
+			selector.wakeup();
+	}
+	
+	/**
+	 * Closes all sockets. Analyzers are granted some time for processing the frames received so far
+	 */
+	protected void close() {
+		if(!closed.compareAndSet(false, true))
+			return;
+		if(pipeline != null)
+			pipeline.shutdown(ANALYZER_SHUTDOWN_TIMEOUT_MILLIS);
+		if(selector != null) {
+			for(SelectionKey key : selector.keys())
+				closeQuietly(key.channel());
+			try {
+				selector.close();
+			} catch(IOException e) {
+				logger.error("Failed to close selector of consumer '"+id+"': " + e.getMessage());
+			}
+		}
+		openConnections.set(0);
+	}
+	
+	private void closeQuietly(Channel channel) {
+		if(channel == null)
+			return;
+		try {
+			channel.close();
+		} catch(IOException e) {
+			logger.error("Failed to close socket of consumer '"+id+"': " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Read buffer and framing state of a single socket
+	 * @author ckreutzfeldt
+	 * @since 19.03.2012
+	 */
+	private static final class Endpoint {
+		
+		private final FrameDecoder decoder;
+		private final ByteBuffer buffer;
+		
+		private Endpoint(FrameDecoder decoder, int bufferSize) {
+			this.decoder = decoder;
+			this.buffer = ByteBuffer.allocateDirect(bufferSize);
+		}
+	}
+	
+	/**
+	 * Counts the decoded frames and hands them over to the analyzers. Frames are copied into the envelope as the read 
+	 * buffer is reused right away
+	 * @author ckreutzfeldt
+	 * @since 19.03.2012
+	 */
+	private final class FrameForwarder implements FrameDecoder.FrameHandler {
+		
+		private long receiveTimestamp = 0;
+		private long frames = 0;
+		private long bytes = 0;
+		
+		private void begin(long receiveTimestamp) {
+			this.receiveTimestamp = receiveTimestamp;
+			this.frames = 0;
+			this.bytes = 0;
+		}
+		
+		public void frame(ByteBuffer buffer, int offset, int length) {
+			
+			frames++;
+			bytes += length;
+			if(pipeline == null)
+				return;
+			
+			// frames carry no sent timestamp
+			MessageEnvelope envelope = pipeline.claim(receiveTimestamp, 0);
+			if(envelope == null)
+				return;
+			try {
+				byte[] payload = envelope.getPayloadBuffer(length);
+				int position = buffer.position();
+				buffer.position(offset);
+				buffer.get(payload, 0, length);
+				buffer.position(position);
+				envelope.setPayload(payload, 0, length);
+				envelope.setSize(length);
+			} finally {
+				// the claimed envelope must be published in any case
+				pipeline.publish();
+			}
+		}
+		
+		/**
+		 * Records all frames of the current batch with the statistics
+		 */
+		private void end() {
+			if(frames > 0)
+				statistics.recordMessages(frames, bytes);
+			frames = 0;
+			bytes = 0;
+		}
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.consumer.handler.IStatisticsSection#getSectionName()
+	 */
+	public String getSectionName() {
+		return STATISTICS_SECTION_NAME;
+	}
+	
+	/**
+	 * Writes the socket state followed by the statistics of the analyzer pipeline
+	 * @see com.mnxfst.testing.consumer.handler.IStatisticsSection#writeStatistics(com.mnxfst.testing.consumer.handler.XmlResponseWriter)
+	 */
+	public void writeStatistics(XmlResponseWriter responseWriter) {
+		responseWriter.startElement(RESPONSE_ENDPOINT_ELEMENT);
+		responseWriter.attribute(RESPONSE_ENDPOINT_PROTOCOL_ATTRIBUTE, protocol.name().toLowerCase());
+		if(protocol == Protocol.TCP)
+			responseWriter.attribute(RESPONSE_ENDPOINT_MODE_ATTRIBUTE, mode.name().toLowerCase());
+		responseWriter.attribute(RESPONSE_ENDPOINT_PORT_ATTRIBUTE, localPort);
+		responseWriter.attribute(RESPONSE_ENDPOINT_FRAMING_ATTRIBUTE, framing);
+		responseWriter.attribute(RESPONSE_ENDPOINT_CONNECTIONS_ATTRIBUTE, openConnections.get());
+		responseWriter.attribute(RESPONSE_ENDPOINT_ACCEPTED_ATTRIBUTE, acceptedConnections.get());
+		responseWriter.attribute(RESPONSE_ENDPOINT_FRAMING_ERRORS_ATTRIBUTE, framingErrors.get());
+		responseWriter.endElement();
+		if(pipeline != null)
+			pipeline.writeStatistics(responseWriter);
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.consumer.async.IAsyncInputConsumer#getConsumerStatistics()
+	 */
+	public AsyncInputConsumerStatistics getConsumerStatistics() {
+		return statistics;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+	
+	public Protocol getProtocol() {
+		return protocol;
+	}
+	
+	/**
+	 * Returns the local port of the socket, useful if bound to any free port
+	 * @return
+	 */
+	public int getLocalPort() {
+		return localPort;
+	}
+	
+	public int getOpenConnectionCount() {
+		return openConnections.get();
+	}
+	
+	public long getFramingErrorCount() {
+		return framingErrors.get();
+	}
+	
+	/**
+	 * Returns the analyzer pipeline, all sockets share a single one as they are served by the same thread
+	 * @return
+	 */
+	public List<MessageAnalyzerPipeline> getAnalyzerPipelines() {
+		if(pipeline == null)
+			return Collections.emptyList();
+		List<MessageAnalyzerPipeline> pipelines = new ArrayList<MessageAnalyzerPipeline>(1);
+		pipelines.add(pipeline);
+		return pipelines;
+	}
+	
+}
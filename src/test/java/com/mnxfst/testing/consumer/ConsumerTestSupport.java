@@ -0,0 +1,335 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import com.mnxfst.testing.consumer.analyzer.IMessageAnalyzer;
+import com.mnxfst.testing.consumer.analyzer.MessageEnvelope;
+import com.mnxfst.testing.consumer.async.AsyncInputConsumerStatistics;
+import com.mnxfst.testing.consumer.async.IAsyncInputConsumer;
+import com.mnxfst.testing.consumer.exception.AsyncInputConsumerException;
+import com.mnxfst.testing.consumer.handler.XmlResponseWriter;
+
+/**
+ * Fixtures shared by the consumer test cases: configuration options, consumer setup, a controllable consumer and an
+ * analyzer keeping the payloads it receives
+ * @author ckreutzfeldt
+ * @since 26.03.2012
+ */
+public class ConsumerTestSupport {
+
+	/**
+	 * Returns modifiable configuration options holding the given key/value pairs
+	 * @param keysAndValues
+	 * @return
+	 */
+	public static Map<String, List<String>> options(String... keysAndValues) {
+		if(keysAndValues.length % 2 != 0)
+			throw new IllegalArgumentException("Keys and values must be provided in pairs");
+		Map<String, List<String>> options = new HashMap<String, List<String>>();
+		for(int i = 0; i < keysAndValues.length; i += 2)
+			put(options, keysAndValues[i], keysAndValues[i+1]);
+		return options;
+	}
+	
+	/**
+	 * Replaces the values of the referenced option by the given one
+	 * @param options
+	 * @param key
+	 * @param value
+	 */
+	public static void put(Map<String, List<String>> options, String key, String value) {
+		List<String> values = new ArrayList<String>();
+		values.add(value);
+		options.put(key, values);
+	}
+	
+	/**
+	 * Assigns identifier and type to the given consumer and initializes it using the provided options
+	 * @param consumer
+	 * @param type
+	 * @param id
+	 * @param options
+	 * @return
+	 * @throws AsyncInputConsumerException
+	 */
+	public static <T extends IAsyncInputConsumer> T initialize(T consumer, String type, String id, Map<String, List<String>> options) throws AsyncInputConsumerException {
+		consumer.setId(id);
+		consumer.setType(type);
+		consumer.initialize(options);
+		return consumer;
+	}
+	
+	/**
+	 * Runs the given consumer on a thread of its own
+	 * @param consumer
+	 * @return
+	 */
+	public static Thread start(IAsyncInputConsumer consumer) {
+		Thread thread = new Thread(consumer, consumer.getType() + "-test-consumer");
+		thread.start();
+		return thread;
+	}
+	
+	/**
+	 * Waits up to ten seconds for the given consumer having received the expected number of messages
+	 * @param consumer
+	 * @param messages
+	 * @throws InterruptedException
+	 */
+	public static void awaitMessages(IAsyncInputConsumer consumer, long messages) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while(consumer.getConsumerStatistics().getMessageCount() < messages && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		Assert.assertEquals(messages, consumer.getConsumerStatistics().getMessageCount());
+	}
+	
+	/**
+	 * Consumer blocking inside its run method until shut down. Its behavior is controlled via configuration options:
+	 * <ul>
+	 *   <li><i>test.failOnInitialization</i> - initialization fails for the n-th instance initialized since the last {@link #reset()}, starting with 1</li>
+	 *   <li><i>test.initializationMillis</i> - time spent initializing</li>
+	 *   <li><i>test.shutdownMillis</i> - time spent processing the shutdown signal</li>
+	 *   <li><i>test.ignoreShutdown</i> - keeps running until interrupted</li>
+	 *   <li><i>test.ignoreInterrupt</i> - ignores shutdown signal and interrupts, keeps running until {@link #release() released}</li>
+	 * </ul>
+	 * All initialized instances are kept for inspection
+	 * @author ckreutzfeldt
+	 * @since 26.03.2012
+	 */
+	public static class TestConsumer implements IAsyncInputConsumer {
+		
+		public static final String CFG_OPT_FAIL_ON_INITIALIZATION = "test.failOnInitialization";
+		public static final String CFG_OPT_INITIALIZATION_MILLIS = "test.initializationMillis";
+		public static final String CFG_OPT_SHUTDOWN_MILLIS = "test.shutdownMillis";
+		public static final String CFG_OPT_IGNORE_SHUTDOWN = "test.ignoreShutdown";
+		public static final String CFG_OPT_IGNORE_INTERRUPT = "test.ignoreInterrupt";
+		
+		private static final AtomicInteger initializations = new AtomicInteger(0);
+		private static final AtomicInteger concurrentInitializations = new AtomicInteger(0);
+		private static final AtomicInteger maxConcurrentInitializations = new AtomicInteger(0);
+		private static final Queue<TestConsumer> initialized = new ConcurrentLinkedQueue<TestConsumer>();
+		
+		private String id;
+		private String type;
+		private long shutdownMillis = 0;
+		private boolean ignoreShutdown = false;
+		private boolean ignoreInterrupt = false;
+		private long requestSequence = -1;
+		private AsyncInputConsumerStatistics statistics = null;
+		private final CountDownLatch shutdownSignal = new CountDownLatch(1);
+		private final CountDownLatch running = new CountDownLatch(1);
+		private final CountDownLatch released = new CountDownLatch(1);
+		private volatile boolean terminated = false;
+		
+		public TestConsumer() {
+		}
+		
+		public TestConsumer(String type, String id) {
+			this.type = type;
+			this.id = id;
+		}
+		
+		/**
+		 * Forgets about all instances initialized so far
+		 */
+		public static void reset() {
+			initializations.set(0);
+			maxConcurrentInitializations.set(0);
+			initialized.clear();
+		}
+		
+		/**
+		 * Returns the highest number of instances being initialized at the same time since the last {@link #reset()}
+		 * @return
+		 */
+		public static int getMaxConcurrentInitializations() {
+			return maxConcurrentInitializations.get();
+		}
+		
+		/**
+		 * Returns all successfully initialized instances
+		 * @return
+		 */
+		public static List<TestConsumer> getInitialized() {
+			return new ArrayList<TestConsumer>(initialized);
+		}
+		
+		public void initialize(Map<String, List<String>> properties) throws AsyncInputConsumerException {
+			int sequence = initializations.incrementAndGet();
+			int concurrent = concurrentInitializations.incrementAndGet();
+			for(int max = maxConcurrentInitializations.get(); concurrent > max && !maxConcurrentInitializations.compareAndSet(max, concurrent); max = maxConcurrentInitializations.get());
+			try {
+				sleep(value(properties, CFG_OPT_INITIALIZATION_MILLIS, 0));
+			} finally {
+				concurrentInitializations.decrementAndGet();
+			}
+			if(sequence == value(properties, CFG_OPT_FAIL_ON_INITIALIZATION, -1))
+				throw new AsyncInputConsumerException("Forced failure initializing consumer #" + sequence);
+			this.shutdownMillis = value(properties, CFG_OPT_SHUTDOWN_MILLIS, 0);
+			this.ignoreShutdown = value(properties, CFG_OPT_IGNORE_SHUTDOWN, 0) == 1;
+			this.ignoreInterrupt = value(properties, CFG_OPT_IGNORE_INTERRUPT, 0) == 1;
+			this.requestSequence = value(properties, CFG_OPT_SEQUENCE, -1);
+			this.statistics = new AsyncInputConsumerStatistics(id, type, properties);
+			initialized.add(this);
+		}
+		
+		public void run() {
+			running.countDown();
+			boolean interrupted = false;
+			try {
+				while(true) {
+					try {
+						if(ignoreShutdown || ignoreInterrupt)
+							released.await();
+						else
+							shutdownSignal.await();
+						break;
+					} catch(InterruptedException e) {
+						interrupted = true;
+						if(!ignoreInterrupt)
+							break;
+					}
+				}
+			} finally {
+				terminated = true;
+				if(interrupted)
+					Thread.currentThread().interrupt();
+			}
+		}
+		
+		/**
+		 * Lets the consumer leave its run method regardless of its settings
+		 */
+		public void release() {
+			released.countDown();
+		}
+		
+		public void shutdown() throws AsyncInputConsumerException {
+			sleep(shutdownMillis);
+			shutdownSignal.countDown();
+		}
+		
+		public boolean isShutdown() {
+			return shutdownSignal.getCount() == 0;
+		}
+		
+		public boolean isRunning() {
+			return running.getCount() == 0 && !terminated;
+		}
+		
+		public boolean isTerminated() {
+			return terminated;
+		}
+		
+		/**
+		 * Returns the sequence assigned by the request which started the consumer, -1 if none has been assigned
+		 * @return
+		 */
+		public long getRequestSequence() {
+			return requestSequence;
+		}
+		
+		public AsyncInputConsumerStatistics getConsumerStatistics() {
+			return statistics;
+		}
+		public String getId() {
+			return id;
+		}
+		public void setId(String id) {
+			this.id = id;
+		}
+		public String getType() {
+			return type;
+		}
+		public void setType(String type) {
+			this.type = type;
+		}
+		
+		private static long value(Map<String, List<String>> properties, String key, long defaultValue) {
+			List<String> values = properties.get(key);
+			if(values == null || values.isEmpty())
+				return defaultValue;
+			return ("true".equalsIgnoreCase(values.get(0)) ? 1 : Long.parseLong(values.get(0)));
+		}
+		
+		private static void sleep(long millis) {
+			if(millis <= 0)
+				return;
+			try {
+				Thread.sleep(millis);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	/**
+	 * Keeps the decoded payloads of all analyzed messages. The payloads are shared by all instances, thus test cases
+	 * must {@link #reset()} them before starting their consumers
+	 * @author ckreutzfeldt
+	 * @since 27.03.2012
+	 */
+	public static class PayloadAnalyzer implements IMessageAnalyzer {
+		
+		private static final Queue<String> payloads = new ConcurrentLinkedQueue<String>();
+		private String name = null;
+		
+		/**
+		 * Forgets about all payloads analyzed so far
+		 */
+		public static void reset() {
+			payloads.clear();
+		}
+		
+		/**
+		 * Returns the payloads analyzed since the last {@link #reset()} in order of arrival
+		 * @return
+		 */
+		public static List<String> getPayloads() {
+			return new ArrayList<String>(payloads);
+		}
+		
+		public void initialize(String name, String consumerType, Map<String, List<String>> properties) throws AsyncInputConsumerException {
+			this.name = name;
+		}
+		
+		public void analyze(MessageEnvelope message) {
+			payloads.add(message.getText());
+		}
+		
+		public void writeStatistics(XmlResponseWriter responseWriter) {
+		}
+		
+		public String getName() {
+			return name;
+		}
+	}
+}
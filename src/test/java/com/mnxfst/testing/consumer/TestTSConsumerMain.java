@@ -1,62 +1,86 @@
-/*
- *  ptest-server and client provides you with a performance test utility
- *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
- *
- *  This program is free software: you can redistribute it and/or modify
- *  it under the terms of the GNU General Public License as published by
- *  the Free Software Foundation, either version 3 of the License, or
- *  (at your option) any later version.
- *
- *  This program is distributed in the hope that it will be useful,
- *  but WITHOUT ANY WARRANTY; without even the implied warranty of
- *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
- *  GNU General Public License for more details.
- *  
- *  You should have received a copy of the GNU General Public License
- *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
- *
- */
-package com.mnxfst.testing.consumer;
-
-import java.util.HashMap;
-import java.util.Map;
-
-import junit.framework.Assert;
-
-import org.junit.Test;
-
-/**
- * Test case for {@link TSConsumerMain}
- * @author ckreutzfeldt
- * @since 23.02.2012
- */
-public class TestTSConsumerMain {
-
-	@Test
-	public void testExtractRequestHandlers() {
-		
-		TSConsumerMain m = new TSConsumerMain();
-		Map<String, String> configuration = new HashMap<String, String>();
-		
-		Assert.assertNull(m.extractRequestHandlers(null));
-		Assert.assertNull(m.extractRequestHandlers(configuration));
-		
-		configuration.put("context.request.", "test");
-		Assert.assertNull(m.extractRequestHandlers(configuration));
-
-		configuration.put("context.request.handlers", "test");
-		Assert.assertTrue(m.extractRequestHandlers(configuration).isEmpty());
-
-		configuration.put("context.request.handler.test", "test");
-		Assert.assertTrue(m.extractRequestHandlers(configuration).isEmpty());
-
-		configuration.put("context.request.handler.test", "test");
-		configuration.put("context.request.handler.test.path", "/testPath");
-		Assert.assertFalse(m.extractRequestHandlers(configuration).isEmpty());
-		Assert.assertEquals("The value must be 'test'", "test", m.extractRequestHandlers(configuration).get("/testPath"));
-
-
-		
-	}
-	
-}
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.consumer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Test case for {@link TSConsumerMain}
+ * @author ckreutzfeldt
+ * @since 23.02.2012
+ */
+public class TestTSConsumerMain {
+
+	@Test
+	public void testExtractRequestHandlers() {
+		
+		TSConsumerMain m = new TSConsumerMain();
+		Map<String, String> configuration = new HashMap<String, String>();
+		
+		Assert.assertNull(m.extractRequestHandlers(null));
+		Assert.assertNull(m.extractRequestHandlers(configuration));
+		
+		configuration.put("context.request.", "test");
+		Assert.assertNull(m.extractRequestHandlers(configuration));
+
+		configuration.put("context.request.handlers", "test");
+		Assert.assertTrue(m.extractRequestHandlers(configuration).isEmpty());
+
+		configuration.put("context.request.handler.test", "test");
+		Assert.assertTrue(m.extractRequestHandlers(configuration).isEmpty());
+
+		configuration.put("context.request.handler.test", "test");
+		configuration.put("context.request.handler.test.path", "/testPath");
+		Assert.assertFalse(m.extractRequestHandlers(configuration).isEmpty());
+		Assert.assertEquals("The value must be 'test'", "test", m.extractRequestHandlers(configuration).get("/testPath"));
+
+
+		
+	}
+	
+	@Test
+	public void testExtractRequestBodySizes() {
+		
+		TSConsumerMain m = new TSConsumerMain();
+		Map<String, String> configuration = new HashMap<String, String>();
+		Assert.assertTrue(m.extractRequestBodySizes(null).isEmpty());
+		
+		configuration.put("context.request.handlers", "test,other");
+		configuration.put("context.request.handler.test.path", "/testPath");
+		configuration.put("context.request.handler.other.path", "/otherPath");
+		configuration.put("context.request.handler.test.maxBodySize", "1024");
+		Map<String, Long> sizes = m.extractRequestBodySizes(configuration);
+		Assert.assertEquals(1, sizes.size());
+		Assert.assertEquals(Long.valueOf(1024), sizes.get("/testPath"));
+		
+		configuration.put("context.request.handler.other.maxBodySize", "0");
+		try {
+			m.extractRequestBodySizes(configuration);
+			Assert.fail("Invalid max. body size");
+		} catch(IllegalArgumentException e) {
+			// expected
+		}
+	}
+	
+}
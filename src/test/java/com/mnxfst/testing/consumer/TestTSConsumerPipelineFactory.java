@@ -0,0 +1,169 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.junit.Test;
+
+import com.mnxfst.testing.consumer.handler.async.ContextRequestExecutionMode;
+import com.mnxfst.testing.consumer.handler.async.IContextRequestHandler;
+
+/**
+ * Test case for {@link TSConsumerPipelineFactory}
+ * @author ckreutzfeldt
+ * @since 27.03.2012
+ */
+public class TestTSConsumerPipelineFactory {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	// the slow handler signals its arrival and waits until being released
+	private static final CountDownLatch slowRequestReceived = new CountDownLatch(1);
+	private static final CountDownLatch slowRequestReleased = new CountDownLatch(1);
+	
+	@Test
+	public void testBlockingRequestsDoNotBlockIoWorker() throws Exception {
+		
+		Map<String, String> handlers = new HashMap<String, String>();
+		handlers.put("/slow", SlowContextRequestHandler.class.getName());
+		handlers.put("/fast", FastContextRequestHandler.class.getName());
+		TSConsumerPipelineFactory pipelineFactory = new TSConsumerPipelineFactory("localhost", 0, 1, new HashMap<String, String>(), handlers, null, 2, 0, 0);
+		
+		// a single i/o worker serves all connections
+		ServerBootstrap server = new ServerBootstrap(new NioServerSocketChannelFactory(Executors.newCachedThreadPool(), Executors.newCachedThreadPool(), 1));
+		server.setPipelineFactory(pipelineFactory);
+		Channel serverChannel = server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		final InetSocketAddress address = (InetSocketAddress)serverChannel.getLocalAddress();
+		
+		ExecutorService client = Executors.newSingleThreadExecutor();
+		try {
+			Future<String> slowResponse = client.submit(new Callable<String>() {
+				public String call() throws Exception {
+					return get(address, "/slow");
+				}
+			});
+			Assert.assertTrue("The slow request must reach its handler", slowRequestReceived.await(5, TimeUnit.SECONDS));
+			
+			// the slow handler occupies an execution thread, the i/o worker still answers fast requests
+			Assert.assertEquals("fast", get(address, "/fast"));
+			Assert.assertFalse(slowResponse.isDone());
+			
+			slowRequestReleased.countDown();
+			Assert.assertEquals("slow", slowResponse.get(5, TimeUnit.SECONDS));
+		} finally {
+			slowRequestReleased.countDown();
+			client.shutdownNow();
+			serverChannel.close().awaitUninterruptibly();
+			pipelineFactory.releaseExternalResources();
+			server.releaseExternalResources();
+		}
+	}
+	
+	private static String get(InetSocketAddress address, String path) throws Exception {
+		HttpURLConnection connection = (HttpURLConnection)new URL("http", address.getAddress().getHostAddress(), address.getPort(), path).openConnection();
+		connection.setConnectTimeout(5000);
+		connection.setReadTimeout(5000);
+		Assert.assertEquals(200, connection.getResponseCode());
+		InputStream in = connection.getInputStream();
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		for(int read = in.read(buffer); read != -1; read = in.read(buffer))
+			response.write(buffer, 0, read);
+		in.close();
+		return new String(response.toByteArray(), UTF8);
+	}
+	
+	private static void respond(String message, MessageEvent event) {
+		HttpResponse httpResponse = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+		httpResponse.setContent(ChannelBuffers.copiedBuffer(message, UTF8));
+		httpResponse.setHeader(HttpHeaders.Names.CONTENT_LENGTH, httpResponse.getContent().readableBytes());
+		event.getChannel().write(httpResponse);
+	}
+	
+	/**
+	 * Blocks until the test releases it
+	 */
+	public static class SlowContextRequestHandler implements IContextRequestHandler {
+		
+		public void initialize(Map<String, String> configOptions) {
+		}
+		
+		public ContextRequestExecutionMode getExecutionMode(HttpRequest httpRequest, Map<String, List<String>> requestParameters) {
+			return ContextRequestExecutionMode.BLOCKING;
+		}
+		
+		public void processRequest(HttpRequest httpRequest, Map<String, List<String>> requestParameters, boolean keepAlive, MessageEvent event) {
+			slowRequestReceived.countDown();
+			try {
+				slowRequestReleased.await(5, TimeUnit.SECONDS);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			respond("slow", event);
+		}
+	}
+	
+	/**
+	 * Answers right away
+	 */
+	public static class FastContextRequestHandler implements IContextRequestHandler {
+		
+		public void initialize(Map<String, String> configOptions) {
+		}
+		
+		public ContextRequestExecutionMode getExecutionMode(HttpRequest httpRequest, Map<String, List<String>> requestParameters) {
+			return ContextRequestExecutionMode.FAST;
+		}
+		
+		public void processRequest(HttpRequest httpRequest, Map<String, List<String>> requestParameters, boolean keepAlive, MessageEvent event) {
+			respond("fast", event);
+		}
+	}
+	
+}
@@ -0,0 +1,304 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.analyzer;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mnxfst.testing.consumer.exception.AsyncInputConsumerException;
+import com.mnxfst.testing.consumer.handler.XmlResponseWriter;
+
+/**
+ * Test case for {@link MessageAnalyzerPipeline}
+ * @author ckreutzfeldt
+ * @since 14.03.2012
+ */
+public class TestMessageAnalyzerPipeline {
+
+	@Test
+	public void testChainProcessesInOrder() throws Exception {
+		
+		RecordingAnalyzer first = new RecordingAnalyzer("first", null);
+		RecordingAnalyzer second = new RecordingAnalyzer("second", first);
+		MessageAnalyzerPipeline pipeline = new MessageAnalyzerPipeline("test", 6, Arrays.<IMessageAnalyzer>asList(first, second));
+		Assert.assertEquals("The capacity must be a power of two", 8, pipeline.getCapacity());
+		pipeline.start();
+		
+		int published = 0;
+		for(int i = 0; i < 10000; i++) {
+			MessageEnvelope envelope = pipeline.claim(i, i - 1);
+			if(envelope == null)
+				continue;
+			envelope.setText("message-" + i);
+			pipeline.publish();
+			published++;
+		}
+		Assert.assertTrue("All published messages must be analyzed", pipeline.shutdown(5000));
+		
+		Assert.assertEquals(10000, published + pipeline.getDroppedCount());
+		Assert.assertEquals(published, pipeline.getPublishedCount());
+		Assert.assertEquals(published, pipeline.getProcessedCount(0));
+		Assert.assertEquals(published, pipeline.getProcessedCount(1));
+		Assert.assertEquals(0, pipeline.getQueueDepth(0));
+		Assert.assertEquals(0, pipeline.getQueueDepth(1));
+		Assert.assertEquals(published, first.sequences.size());
+		Assert.assertEquals("The second stage must see each message after the first one", first.sequences, second.sequences);
+		Assert.assertEquals(0, second.violations);
+		for(int i = 1; i < first.sequences.size(); i++)
+			Assert.assertEquals(first.sequences.get(i - 1) + 1, first.sequences.get(i).longValue());
+	}
+	
+	@Test
+	public void testDropWhenFull() throws Exception {
+		
+		final CountDownLatch release = new CountDownLatch(1);
+		RecordingAnalyzer blocking = new RecordingAnalyzer("blocking", null) {
+			public void analyze(MessageEnvelope message) {
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				super.analyze(message);
+			}
+		};
+		MessageAnalyzerPipeline pipeline = new MessageAnalyzerPipeline("test", 4, Arrays.<IMessageAnalyzer>asList(blocking));
+		pipeline.start();
+		
+		long start = System.nanoTime();
+		int published = 0;
+		for(int i = 0; i < 10; i++) {
+			if(pipeline.claim(i, 0) != null) {
+				pipeline.publish();
+				published++;
+			}
+		}
+		Assert.assertTrue("The producer must never wait for the analyzers", System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+		Assert.assertEquals(4, published);
+		Assert.assertEquals(6, pipeline.getDroppedCount());
+		Assert.assertTrue(pipeline.getQueueDepth(0) >= 3);
+		
+		release.countDown();
+		Assert.assertTrue(pipeline.shutdown(5000));
+		Assert.assertEquals(4, pipeline.getProcessedCount(0));
+		
+		XmlResponseWriter writer = new XmlResponseWriter();
+		writer.startElement("analysis");
+		pipeline.writeStatistics(writer);
+		String xml = writer.finish().toString(Charset.forName("UTF-8"));
+		Assert.assertTrue(xml, xml.contains("<pipeline name=\"test\" capacity=\"4\" published=\"4\" dropped=\"6\">"));
+		Assert.assertTrue(xml, xml.contains("<stage name=\"blocking\" depth=\"0\" processed=\"4\" errors=\"0\""));
+	}
+	
+	@Test
+	public void testIdleStagesPark() throws Exception {
+		
+		RecordingAnalyzer first = new RecordingAnalyzer("first", null);
+		RecordingAnalyzer second = new RecordingAnalyzer("second", first);
+		MessageAnalyzerPipeline pipeline = new MessageAnalyzerPipeline("idle", 8, Arrays.<IMessageAnalyzer>asList(first, second));
+		pipeline.start();
+		
+		// idle stages neither spin nor yield once backed off
+		for(String name : new String[]{"idle-first", "idle-second"})
+			Assert.assertTrue("Stage '" + name + "' must park", awaitState(name, Thread.State.TIMED_WAITING));
+		
+		// a published message wakes the stages up
+		for(int i = 0; i < 3; i++) {
+			Assert.assertNotNull(pipeline.claim(i, 0));
+			pipeline.publish();
+			long deadline = System.currentTimeMillis() + 1000;
+			while(pipeline.getProcessedCount(1) < i + 1 && System.currentTimeMillis() < deadline)
+				Thread.sleep(1);
+			Assert.assertEquals(i + 1, pipeline.getProcessedCount(1));
+			Thread.sleep(50);
+		}
+		Assert.assertTrue(pipeline.shutdown(1000));
+	}
+	
+	@Test
+	public void testCreateFromSettings() throws Exception {
+		
+		Map<String, List<String>> properties = new HashMap<String, List<String>>();
+		Assert.assertNull("No pipeline is required without analyzers", MessageAnalyzerPipeline.create("test", "jms", properties));
+		
+		properties.put("consumer.async.jms.message-analyzer.b", Arrays.asList(RecordingAnalyzer.class.getName()));
+		properties.put("consumer.async.jms.message-analyzer.a", Arrays.asList(RecordingAnalyzer.class.getName()));
+		properties.put("consumer.async.jms.message-analyzer.a.setting", Arrays.asList("value"));
+		properties.put("consumer.async.other.message-analyzer.c", Arrays.asList(RecordingAnalyzer.class.getName()));
+		properties.put("consumer.async.jms.analysis.bufferSize", Arrays.asList("100"));
+		
+		MessageAnalyzerPipeline pipeline = MessageAnalyzerPipeline.create("test", "jms", properties);
+		Assert.assertEquals(128, pipeline.getCapacity());
+		Assert.assertEquals(2, pipeline.getStageCount());
+		Assert.assertEquals("a", pipeline.getAnalyzer(0).getName());
+		Assert.assertEquals("b", pipeline.getAnalyzer(1).getName());
+		Assert.assertEquals("all", pipeline.getSamplingPolicy(0));
+		
+		properties.put("consumer.async.jms.message-analyzer.b.sampling", Arrays.asList("rate:0.1"));
+		pipeline = MessageAnalyzerPipeline.create("test", "jms", properties);
+		Assert.assertEquals("all", pipeline.getSamplingPolicy(0));
+		Assert.assertEquals("rate:0.1", pipeline.getSamplingPolicy(1));
+		
+		properties.put("consumer.async.jms.message-analyzer.b.sampling", Arrays.asList("rate:2"));
+		try {
+			MessageAnalyzerPipeline.create("test", "jms", properties);
+			Assert.fail("Invalid sampling policies must be rejected");
+		} catch(AsyncInputConsumerException e) {
+			//
+		}
+		properties.remove("consumer.async.jms.message-analyzer.b.sampling");
+		
+		properties.put("consumer.async.jms.analysis.chain", Arrays.asList("b, a"));
+		pipeline = MessageAnalyzerPipeline.create("test", "jms", properties);
+		Assert.assertEquals("b", pipeline.getAnalyzer(0).getName());
+		Assert.assertEquals("a", pipeline.getAnalyzer(1).getName());
+		
+		properties.put("consumer.async.jms.analysis.chain", Arrays.asList("a,c"));
+		try {
+			MessageAnalyzerPipeline.create("test", "jms", properties);
+			Assert.fail("Analyzers of other types must not be referenced");
+		} catch(AsyncInputConsumerException e) {
+			//
+		}
+	}
+	
+	@Test(expected=AsyncInputConsumerException.class)
+	public void testCreateWithInvalidAnalyzerClass() throws Exception {
+		Map<String, List<String>> properties = new HashMap<String, List<String>>();
+		properties.put("consumer.async.jms.message-analyzer.a", Arrays.asList(String.class.getName()));
+		MessageAnalyzerPipeline.create("test", "jms", properties);
+	}
+	
+	@Test
+	public void testCreateWithFailingAnalyzerConstructor() throws Exception {
+		Map<String, List<String>> properties = new HashMap<String, List<String>>();
+		properties.put("consumer.async.jms.message-analyzer.a", Arrays.asList(FailingAnalyzer.class.getName()));
+		try {
+			MessageAnalyzerPipeline.create("test", "jms", properties);
+			Assert.fail("Failing constructors must be reported");
+		} catch(AsyncInputConsumerException e) {
+			Assert.assertTrue("The failure of the constructor must be kept as cause", e.getCause() instanceof IllegalStateException);
+		}
+		
+		// analyzers require a constructor without arguments
+		properties.put("consumer.async.jms.message-analyzer.a", Arrays.asList(NoDefaultConstructorAnalyzer.class.getName()));
+		try {
+			MessageAnalyzerPipeline.create("test", "jms", properties);
+			Assert.fail("Analyzers without default constructor must be rejected");
+		} catch(AsyncInputConsumerException e) {
+			Assert.assertTrue(e.getCause() instanceof NoSuchMethodException);
+		}
+	}
+	
+	/**
+	 * Waits up to five seconds for the referenced thread being found in the given state
+	 * @param threadName
+	 * @param state
+	 * @return
+	 * @throws InterruptedException
+	 */
+	private static boolean awaitState(String threadName, Thread.State state) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while(System.currentTimeMillis() < deadline) {
+			for(Thread thread : Thread.getAllStackTraces().keySet()) {
+				if(threadName.equals(thread.getName()) && thread.getState() == state)
+					return true;
+			}
+			Thread.sleep(5);
+		}
+		return false;
+	}
+	
+	/**
+	 * Fails while being constructed
+	 * @author ckreutzfeldt
+	 * @since 27.03.2012
+	 */
+	public static class FailingAnalyzer extends RecordingAnalyzer {
+		
+		public FailingAnalyzer() {
+			throw new IllegalStateException("Constructor failed");
+		}
+	}
+	
+	/**
+	 * Provides no constructor without arguments
+	 * @author ckreutzfeldt
+	 * @since 27.03.2012
+	 */
+	public static class NoDefaultConstructorAnalyzer extends RecordingAnalyzer {
+		
+		public NoDefaultConstructorAnalyzer(String name) {
+			super(name, null);
+		}
+	}
+	
+	/**
+	 * Records the sequences of all analyzed messages
+	 * @author ckreutzfeldt
+	 * @since 14.03.2012
+	 */
+	public static class RecordingAnalyzer implements IMessageAnalyzer {
+		
+		private String name = null;
+		private final RecordingAnalyzer upstream;
+		private final List<Long> sequences = new ArrayList<Long>();
+		private volatile long lastSequence = -1;
+		private int violations = 0;
+		
+		public RecordingAnalyzer() {
+			this(null, null);
+		}
+		
+		public RecordingAnalyzer(String name, RecordingAnalyzer upstream) {
+			this.name = name;
+			this.upstream = upstream;
+		}
+		
+		public void initialize(String name, String consumerType, Map<String, List<String>> properties) throws AsyncInputConsumerException {
+			this.name = name;
+		}
+		
+		public void analyze(MessageEnvelope message) {
+			if(upstream != null && upstream.lastSequence < message.getSequence())
+				violations++;
+			sequences.add(message.getSequence());
+			lastSequence = message.getSequence();
+		}
+		
+		public void writeStatistics(XmlResponseWriter responseWriter) {
+		}
+		
+		public String getName() {
+			return name;
+		}
+	}
+	
+}
@@ -0,0 +1,142 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.analyzer;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Test case for {@link MessageEnvelope}
+ * @author ckreutzfeldt
+ * @since 16.03.2012
+ */
+public class TestMessageEnvelope {
+
+	@Test
+	public void testBinaryPayload() throws Exception {
+		
+		byte[] source = "--<a>gr\u00fc\u00df</a>--".getBytes("UTF-8");
+		MessageEnvelope envelope = new MessageEnvelope();
+		envelope.reset(1, 2, 3);
+		Assert.assertFalse(envelope.hasPayload());
+		Assert.assertNull(envelope.getText());
+		Assert.assertNull(envelope.getPayloadChars());
+		
+		envelope.setPayload(source, 2, source.length - 4);
+		Assert.assertTrue(envelope.hasBinaryPayload());
+		Assert.assertSame("The payload must not be copied", source, envelope.getPayloadArray());
+		Assert.assertEquals(2, envelope.getPayloadOffset());
+		
+		CharSequence chars = envelope.getPayloadChars();
+		Assert.assertEquals(source.length - 4, chars.length());
+		Assert.assertEquals('<', chars.charAt(0));
+		Assert.assertEquals("<a>", chars.subSequence(0, 3).toString());
+		Assert.assertSame("The character view must be reused", chars, envelope.getPayloadChars());
+		
+		ByteBuffer payload = envelope.getPayload();
+		Assert.assertTrue(payload.isReadOnly());
+		Assert.assertEquals(source.length - 4, payload.remaining());
+		Assert.assertEquals('<', payload.get(0));
+		payload.position(3);
+		Assert.assertEquals("Each caller must receive an independent view", 0, envelope.getPayload().position());
+		try {
+			payload.put(0, (byte)'x');
+			Assert.fail("The payload must not be writable");
+		} catch(ReadOnlyBufferException e) {
+			//
+		}
+		
+		String text = envelope.getText();
+		Assert.assertEquals("<a>gr\u00fc\u00df</a>", text);
+		Assert.assertSame("The text must be decoded once", text, envelope.getText());
+		
+		envelope.reset(2, 0, 0);
+		Assert.assertFalse(envelope.hasPayload());
+		Assert.assertEquals(0, envelope.getPayloadLength());
+	}
+	
+	@Test
+	public void testTextPayload() throws Exception {
+		
+		MessageEnvelope envelope = new MessageEnvelope();
+		envelope.reset(1, 0, 0);
+		envelope.setText("gr\u00fc\u00df \ud83d\ude00");
+		Assert.assertFalse(envelope.hasBinaryPayload());
+		Assert.assertSame(envelope.getText(), envelope.getPayloadChars());
+		
+		byte[] expected = "gr\u00fc\u00df \ud83d\ude00".getBytes("UTF-8");
+		Assert.assertEquals(expected.length, envelope.getPayloadLength());
+		for(int i = 0; i < expected.length; i++)
+			Assert.assertEquals(expected[i], envelope.getPayloadArray()[envelope.getPayloadOffset() + i]);
+		Assert.assertEquals(expected.length, envelope.getPayload().remaining());
+		
+		// the buffer owned by the envelope is reused for the next message
+		byte[] buffer = envelope.getPayloadArray();
+		envelope.reset(2, 0, 0);
+		envelope.setText("abc");
+		Assert.assertSame(buffer, envelope.getPayloadArray());
+		Assert.assertEquals(3, envelope.getPayloadLength());
+	}
+	
+	@Test
+	public void testDirectPayload() throws Exception {
+		
+		byte[] bytes = "--<a>gr\u00fc\u00df</a>--".getBytes("UTF-8");
+		ByteBuffer source = ByteBuffer.allocateDirect(bytes.length);
+		source.put(bytes);
+		source.position(1);
+		
+		MessageEnvelope envelope = new MessageEnvelope();
+		envelope.reset(1, 0, 0);
+		envelope.setPayload(source, 2, bytes.length - 4);
+		Assert.assertTrue(envelope.hasBinaryPayload());
+		Assert.assertEquals("The position of the source must be left untouched", 1, source.position());
+		Assert.assertEquals(bytes.length - 4, envelope.getPayloadLength());
+		Assert.assertEquals('<', envelope.getPayloadChars().charAt(0));
+		Assert.assertEquals("<a>", envelope.getPayloadChars().subSequence(0, 3).toString());
+		Assert.assertEquals(bytes.length - 4, envelope.getPayload().remaining());
+		Assert.assertEquals("<a>gr\u00fc\u00df</a>", envelope.getText());
+		
+		// copies must not reference the source
+		MessageEnvelope copy = new MessageEnvelope();
+		copy.copyFrom(envelope);
+		source.clear();
+		source.put(2, (byte)'x');
+		Assert.assertEquals("<a>gr\u00fc\u00df</a>", new String(copy.getPayloadArray(), copy.getPayloadOffset(), copy.getPayloadLength(), "UTF-8"));
+		
+		// array access copies the payload once
+		byte[] array = envelope.getPayloadArray();
+		Assert.assertEquals('x', array[envelope.getPayloadOffset()]);
+		Assert.assertSame(array, envelope.getPayloadArray());
+		
+		envelope.reset(2, 0, 0);
+		Assert.assertFalse(envelope.hasPayload());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidSlice() {
+		new MessageEnvelope().setPayload(new byte[4], 2, 3);
+	}
+	
+}
@@ -0,0 +1,185 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.analyzer;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mnxfst.testing.consumer.exception.AsyncInputConsumerException;
+import com.mnxfst.testing.consumer.handler.XmlResponseWriter;
+
+/**
+ * Test case for {@link SamplingPolicy}
+ * @author ckreutzfeldt
+ * @since 16.03.2012
+ */
+public class TestSamplingPolicy {
+
+	@Test
+	public void testParse() {
+		Assert.assertEquals("all", SamplingPolicy.parse(null).getSpec());
+		Assert.assertEquals("all", SamplingPolicy.parse(" ALL ").getSpec());
+		Assert.assertEquals("all", SamplingPolicy.parse("every:1").getSpec());
+		Assert.assertEquals("every:10", SamplingPolicy.parse("every: 10").getSpec());
+		Assert.assertEquals("rate:0.25", SamplingPolicy.parse("rate:0.25").getSpec());
+		Assert.assertEquals("reservoir:50/1000", SamplingPolicy.parse("reservoir:50 / 1000").getSpec());
+		
+		String[] invalid = new String[]{"every", "every:0", "every:x", "rate:1.5", "rate:-0.1", "rate:NaN", "reservoir:50", "reservoir:0/1000", "reservoir:5/0", "first:10"};
+		for(String spec : invalid) {
+			try {
+				SamplingPolicy.parse(spec);
+				Assert.fail("Invalid policy accepted: " + spec);
+			} catch(IllegalArgumentException e) {
+				//
+			}
+		}
+	}
+	
+	@Test
+	public void testEveryAndRate() {
+		
+		CountingAnalyzer analyzer = new CountingAnalyzer();
+		SamplingPolicy every = SamplingPolicy.every(3);
+		int sampled = 0;
+		for(int i = 0; i < 10; i++)
+			sampled += every.offer(envelope(i, i), analyzer);
+		Assert.assertEquals(4, sampled);
+		Assert.assertEquals("The first and each third message thereafter must be analyzed", "[0, 3, 6, 9]", analyzer.sequences.toString());
+		
+		analyzer = new CountingAnalyzer();
+		SamplingPolicy none = SamplingPolicy.rate(0);
+		SamplingPolicy half = SamplingPolicy.rate(0.5);
+		sampled = 0;
+		for(int i = 0; i < 10000; i++) {
+			Assert.assertEquals(0, none.offer(envelope(i, i), analyzer));
+			sampled += half.offer(envelope(i, i), analyzer);
+		}
+		Assert.assertEquals(sampled, analyzer.sequences.size());
+		Assert.assertTrue("Unexpected sample size: " + sampled, sampled > 4500 && sampled < 5500);
+	}
+	
+	@Test
+	public void testReservoir() {
+		
+		CountingAnalyzer analyzer = new CountingAnalyzer();
+		SamplingPolicy reservoir = SamplingPolicy.reservoir(5, 1000);
+		
+		// messages are deferred until their window has ended
+		for(int i = 0; i < 100; i++)
+			Assert.assertEquals(0, reservoir.offer(envelope(i, 10000 + i), analyzer));
+		Assert.assertEquals(0, reservoir.flush(analyzer, 10500));
+		Assert.assertEquals(0, analyzer.sequences.size());
+		
+		// the first message of the next window releases the sample of the previous one
+		Assert.assertEquals(5, reservoir.offer(envelope(100, 11000), analyzer));
+		Assert.assertEquals(5, analyzer.sequences.size());
+		for(int i = 0; i < 5; i++) {
+			Assert.assertTrue(analyzer.sequences.get(i) < 100);
+			Assert.assertEquals("Sampled messages must be copies", "payload-" + analyzer.sequences.get(i), analyzer.texts.get(i));
+		}
+		
+		// fewer messages than the reservoir size are all analyzed, idle windows are released by flushing
+		Assert.assertEquals(0, reservoir.offer(envelope(101, 11500), analyzer));
+		Assert.assertEquals(0, reservoir.flush(analyzer, 11999));
+		Assert.assertEquals(2, reservoir.flush(analyzer, 12000));
+		Assert.assertEquals(0, reservoir.flush(analyzer, Long.MAX_VALUE));
+		Assert.assertEquals(7, analyzer.sequences.size());
+		Assert.assertEquals(101, analyzer.sequences.get(6).longValue());
+	}
+	
+	@Test
+	public void testPipelineSampling() throws Exception {
+		
+		CountingAnalyzer analyzer = new CountingAnalyzer();
+		MessageAnalyzerPipeline pipeline = new MessageAnalyzerPipeline("test", 1024, Arrays.<IMessageAnalyzer>asList(analyzer));
+		Assert.assertEquals(1, pipeline.setSamplingPolicy("counting", "every:4"));
+		Assert.assertEquals(0, pipeline.setSamplingPolicy("unknown", "every:2"));
+		Assert.assertEquals("every:4", pipeline.getSamplingPolicy(0));
+		pipeline.start();
+		
+		for(int i = 0; i < 400; i++) {
+			Assert.assertNotNull(pipeline.claim(i, i));
+			pipeline.publish();
+		}
+		long deadline = System.currentTimeMillis() + 5000;
+		while(pipeline.getProcessedCount(0) < 400 && System.currentTimeMillis() < deadline)
+			Thread.sleep(1);
+		Assert.assertEquals(100, pipeline.getSampledCount(0));
+		
+		// messages published after the change are sampled by the new policy
+		pipeline.setSamplingPolicy(null, "all");
+		for(int i = 400; i < 500; i++) {
+			Assert.assertNotNull(pipeline.claim(i, i));
+			pipeline.publish();
+		}
+		Assert.assertTrue(pipeline.shutdown(5000));
+		Assert.assertEquals(500, pipeline.getProcessedCount(0));
+		Assert.assertEquals(200, pipeline.getSampledCount(0));
+		Assert.assertEquals(200, analyzer.sequences.size());
+		
+		XmlResponseWriter writer = new XmlResponseWriter();
+		writer.startElement("analysis");
+		pipeline.writeStatistics(writer);
+		String xml = writer.finish().toString(Charset.forName("UTF-8"));
+		Assert.assertTrue(xml, xml.contains("processed=\"500\""));
+		Assert.assertTrue(xml, xml.contains("sampling=\"all\" sampled=\"200\""));
+	}
+	
+	private static MessageEnvelope envelope(long sequence, long receiveTimestamp) {
+		MessageEnvelope envelope = new MessageEnvelope();
+		envelope.reset(sequence, receiveTimestamp, 0);
+		byte[] payload = ("payload-" + sequence).getBytes();
+		envelope.setPayload(payload, 0, payload.length);
+		return envelope;
+	}
+	
+	/**
+	 * Records the sequences and payloads of all analyzed messages
+	 * @author ckreutzfeldt
+	 * @since 16.03.2012
+	 */
+	private static class CountingAnalyzer implements IMessageAnalyzer {
+		
+		private final List<Long> sequences = new ArrayList<Long>();
+		private final List<String> texts = new ArrayList<String>();
+		
+		public void initialize(String name, String consumerType, Map<String, List<String>> properties) throws AsyncInputConsumerException {
+		}
+		
+		public void analyze(MessageEnvelope message) {
+			sequences.add(message.getSequence());
+			texts.add(message.getText());
+		}
+		
+		public void writeStatistics(XmlResponseWriter responseWriter) {
+		}
+		
+		public String getName() {
+			return "counting";
+		}
+	}
+}
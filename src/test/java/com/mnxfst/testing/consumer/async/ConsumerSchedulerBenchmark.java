@@ -0,0 +1,142 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.consumer.async;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares platform and virtual thread execution for large numbers of consumers spending most of their time blocked
+ * on a receive (simulated by parking 1ms per message). Each invocation starts all consumers, lets them receive a fixed
+ * number of messages and waits until all of them have finished. Besides the time required, the footprint is reported
+ * via auxiliary counters: live threads and heap in use while all consumers are running. JMH sums these counters over
+ * all measurement iterations, thus divide them by the iteration count. On runtimes without virtual threads the virtual 
+ * mode falls back to platform threads. Run via {@link #main(String[])} from the test classpath.
+ * @author ckreutzfeldt
+ * @since 08.03.2012
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xss256k"})
+public class ConsumerSchedulerBenchmark {
+
+	private static final int MESSAGES_PER_CONSUMER = 20;
+	
+	@Param({"1000", "10000"})
+	private int consumers;
+	
+	@Param({"platform", "virtual"})
+	private String executionMode;
+	
+	private ConsumerScheduler scheduler = null;
+	
+	/**
+	 * Footprint observed while all consumers are running
+	 * @author ckreutzfeldt
+	 * @since 08.03.2012
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Footprint {
+		public long liveThreads;
+		public long heapUsedKb;
+		public long messages;
+	}
+	
+	@Setup(Level.Iteration)
+	public void setup() {
+		Map<String, List<String>> options = new HashMap<String, List<String>>();
+		options.put("consumer.async.bench.threads", value(String.valueOf(consumers)));
+		options.put("consumer.async.bench.executionMode", value(executionMode));
+		scheduler = new ConsumerScheduler();
+		scheduler.configure("bench", options);
+	}
+	
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		scheduler.shutdown();
+	}
+	
+	@Benchmark
+	public void receive(Footprint footprint) throws Exception {
+		
+		final CountDownLatch running = new CountDownLatch(consumers);
+		final CountDownLatch finished = new CountDownLatch(consumers);
+		final LongAdder received = new LongAdder();
+		
+		if(!scheduler.reserve("bench", consumers))
+			throw new IllegalStateException("Consumers not admitted");
+		for(int i = 0; i < consumers; i++) {
+			scheduler.execute("bench", new Runnable() {
+				public void run() {
+					running.countDown();
+					for(int m = 0; m < MESSAGES_PER_CONSUMER; m++) {
+						LockSupport.parkNanos(1000000);
+						received.increment();
+					}
+					finished.countDown();
+				}
+			});
+		}
+		
+		running.await();
+		footprint.liveThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+		footprint.heapUsedKb = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / 1024;
+		finished.await();
+		footprint.messages = received.sum();
+	}
+	
+	private static List<String> value(String value) {
+		List<String> values = new ArrayList<String>();
+		values.add(value);
+		return values;
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(ConsumerSchedulerBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.consumer.async;
+
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Test case for {@link AsyncInputConsumerStatistics}
+ * @author ckreutzfeldt
+ * @since 01.03.2012
+ */
+public class TestAsyncInputConsumerStatistics {
+
+	@Test
+	public void testConcurrentRecording() throws Exception {
+		
+		final AsyncInputConsumerStatistics stats = new AsyncInputConsumerStatistics();
+		stats.setConsumerId("id");
+		stats.setConsumerType("jms");
+		
+		final int threads = 8;
+		final int iterations = 100000;
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		Thread[] writers = new Thread[threads];
+		for(int i = 0; i < threads; i++) {
+			writers[i] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						startLatch.await();
+					} catch(InterruptedException e) {
+						return;
+					}
+					for(int j = 0; j < iterations; j++) {
+						stats.recordMessage(10);
+						if(j % 10 == 0)
+							stats.recordError();
+						if(j % 100 == 0)
+							stats.recordRedelivery();
+					}
+				}
+			});
+			writers[i].start();
+		}
+
+		startLatch.countDown();
+		// snapshots taken while writing must never go backwards
+		long previous = 0;
+		for(int i = 0; i < 100; i++) {
+			long current = stats.snapshot().getMessageCount();
+			Assert.assertTrue("The message count must not decrease", current >= previous);
+			previous = current;
+		}
+		for(int i = 0; i < threads; i++)
+			writers[i].join();
+		
+		stats.recordMessages(5, 100);
+		
+		AsyncInputConsumerStatisticsSnapshot snapshot = stats.snapshot();
+		Assert.assertEquals("id", snapshot.getConsumerId());
+		Assert.assertEquals("jms", snapshot.getConsumerType());
+		Assert.assertEquals(threads * iterations + 5, snapshot.getMessageCount());
+		Assert.assertEquals(threads * iterations * 10L + 100, snapshot.getByteCount());
+		Assert.assertEquals(threads * iterations / 10, snapshot.getErrorCount());
+		Assert.assertEquals(threads * iterations / 100, snapshot.getRedeliveryCount());
+		Assert.assertTrue(snapshot.getUptime() >= 0);
+	}
+	
+}
@@ -0,0 +1,97 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.consumer.async;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mnxfst.testing.consumer.async.AsyncInputConsumerStatisticsAggregate.ConsumerLatency;
+
+/**
+ * Test case for {@link AsyncInputConsumerStatisticsAggregate} and {@link AsyncInputConsumerStatisticsAggregationTask}
+ * @author ckreutzfeldt
+ * @since 06.03.2012
+ */
+public class TestAsyncInputConsumerStatisticsAggregate {
+
+	@Test
+	public void testAggregate() {
+		
+		// more consumers than merged sequentially, some of them using a different histogram layout
+		AsyncInputConsumerStatistics[] statistics = new AsyncInputConsumerStatistics[200];
+		for(int i = 0; i < statistics.length; i++) {
+			statistics[i] = (i % 4 == 0 ? new AsyncInputConsumerStatistics(1000000, 3, 61, 1000) : new AsyncInputConsumerStatistics());
+			statistics[i].setConsumerId("consumer-" + i);
+			statistics[i].setConsumerType("jms");
+			statistics[i].recordMessages(10, 100);
+			statistics[i].recordError();
+			statistics[i].recordRedelivery();
+			for(int v = 1; v <= 100; v++)
+				statistics[i].recordLatency(v * (i + 1));
+		}
+		
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			AsyncInputConsumerStatisticsAggregate aggregate = AsyncInputConsumerStatisticsAggregationTask.aggregate(pool, statistics, 3);
+			Assert.assertEquals(200, aggregate.getConsumerCount());
+			Assert.assertEquals(0, aggregate.getExcludedRateCount());
+			
+			AsyncInputConsumerStatisticsSnapshot snapshot = aggregate.toSnapshot();
+			Assert.assertEquals(2000, snapshot.getMessageCount());
+			Assert.assertEquals(20000, snapshot.getByteCount());
+			Assert.assertEquals(200, snapshot.getErrorCount());
+			Assert.assertEquals(200, snapshot.getRedeliveryCount());
+			Assert.assertEquals(20000, snapshot.getLatencies().getTotalCount());
+			Assert.assertEquals(1, snapshot.getLatencies().getMinValue());
+			Assert.assertEquals(20000, snapshot.getLatencies().getMaxValue());
+			Assert.assertTrue(snapshot.getRates().getBucketCount() < 61);
+			
+			List<ConsumerLatency> slowest = aggregate.getSlowestConsumers();
+			Assert.assertEquals(3, slowest.size());
+			Assert.assertEquals("consumer-199", slowest.get(0).getConsumerId());
+			Assert.assertEquals("consumer-198", slowest.get(1).getConsumerId());
+			Assert.assertEquals("consumer-197", slowest.get(2).getConsumerId());
+			Assert.assertEquals(100, slowest.get(0).getCount());
+			Assert.assertEquals(20000, slowest.get(0).getMax());
+			
+			// no top list requested: same totals
+			AsyncInputConsumerStatisticsAggregate plain = AsyncInputConsumerStatisticsAggregationTask.aggregate(pool, statistics, 0);
+			Assert.assertEquals(20000, plain.toSnapshot().getLatencies().getTotalCount());
+			Assert.assertEquals(snapshot.getLatencies().getValueAtPercentile(99), plain.toSnapshot().getLatencies().getValueAtPercentile(99));
+			Assert.assertTrue(plain.getSlowestConsumers().isEmpty());
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void testAggregateNothing() {
+		AsyncInputConsumerStatisticsAggregate aggregate = AsyncInputConsumerStatisticsAggregationTask.aggregate(ForkJoinPool.commonPool(), new AsyncInputConsumerStatistics[0], 5);
+		Assert.assertEquals(0, aggregate.getConsumerCount());
+		Assert.assertEquals(0, aggregate.toSnapshot().getMessageCount());
+		Assert.assertEquals(0, aggregate.toSnapshot().getUptime());
+		Assert.assertEquals(0, aggregate.toSnapshot().getRates().getBucketCount());
+		Assert.assertTrue(aggregate.getSlowestConsumers().isEmpty());
+	}
+	
+}
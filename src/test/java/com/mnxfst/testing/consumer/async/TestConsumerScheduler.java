@@ -0,0 +1,234 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.consumer.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mnxfst.testing.consumer.ConsumerTestSupport;
+
+/**
+ * Test case for {@link ConsumerScheduler}
+ * @author ckreutzfeldt
+ * @since 07.03.2012
+ */
+public class TestConsumerScheduler {
+
+	@Test
+	public void testAdmissionControl() throws Exception {
+		
+		ConsumerScheduler scheduler = new ConsumerScheduler();
+		scheduler.configure("jms", poolOptions("jms", "2", "1", "abort"));
+		final CountDownLatch running = new CountDownLatch(2);
+		final CountDownLatch finish = new CountDownLatch(1);
+		Runnable consumer = new Runnable() {
+			public void run() {
+				running.countDown();
+				try {
+					finish.await();
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		
+		try {
+			// capacity: 2 threads + 1 queued consumer
+			Assert.assertFalse(scheduler.reserve("jms", 4));
+			Assert.assertTrue(scheduler.reserve("jms", 3));
+			Assert.assertFalse(scheduler.reserve("jms", 1));
+			Assert.assertEquals(3, scheduler.getPoolStatistics("jms").getReservedCount());
+			
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for(int i = 0; i < 3; i++)
+				futures.add(scheduler.execute("jms", consumer));
+			Assert.assertTrue(running.await(5, TimeUnit.SECONDS));
+			
+			ConsumerPoolStatistics stats = scheduler.getPoolStatistics("jms");
+			Assert.assertEquals(2, stats.getActiveCount());
+			Assert.assertEquals(1, stats.getQueuedCount());
+			Assert.assertEquals(0, stats.getReservedCount());
+			Assert.assertEquals(0, stats.getAvailable());
+			Assert.assertEquals(5, stats.getRejectedCount());
+			
+			finish.countDown();
+			for(Future<?> future : futures)
+				future.get(5, TimeUnit.SECONDS);
+			
+			stats = scheduler.getPoolStatistics("jms");
+			Assert.assertEquals(0, stats.getActiveCount());
+			Assert.assertEquals(3, stats.getCompletedCount());
+			Assert.assertEquals(3, stats.getAvailable());
+			
+			// unused reservations are given back
+			Assert.assertTrue(scheduler.reserve("jms", 3));
+			scheduler.release("jms", 3);
+			Assert.assertEquals(3, scheduler.getPoolStatistics("jms").getAvailable());
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+	
+	@Test
+	public void testWaitForCapacity() throws Exception {
+		
+		ConsumerScheduler scheduler = new ConsumerScheduler();
+		Map<String, List<String>> options = poolOptions("jms", "1", "0", "wait");
+		ConsumerTestSupport.put(options, "consumer.async.jms.rejectionTimeoutMillis", "50");
+		scheduler.configure("jms", options);
+		
+		final CountDownLatch finish = new CountDownLatch(1);
+		try {
+			Assert.assertTrue(scheduler.reserve("jms", 1));
+			scheduler.execute("jms", new Runnable() {
+				public void run() {
+					try {
+						finish.await();
+					} catch(InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			
+			long start = System.currentTimeMillis();
+			Assert.assertFalse(scheduler.reserve("jms", 1));
+			Assert.assertTrue(System.currentTimeMillis() - start >= 40);
+			
+			finish.countDown();
+			Assert.assertTrue(scheduler.reserve("jms", 1));
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+	
+	@Test
+	public void testVirtualExecutionMode() throws Exception {
+		
+		ConsumerScheduler scheduler = new ConsumerScheduler();
+		Map<String, List<String>> options = poolOptions("jms", "1000", "10", "abort");
+		ConsumerTestSupport.put(options, "consumer.async.jms.executionMode", "virtual");
+		scheduler.configure("jms", options);
+		
+		boolean virtualThreadsAvailable = true;
+		try {
+			Thread.class.getMethod("ofVirtual");
+		} catch(NoSuchMethodException e) {
+			virtualThreadsAvailable = false;
+		}
+		
+		try {
+			// falls back to the platform pool if the runtime lacks virtual threads
+			ConsumerPoolStatistics stats = scheduler.getPoolStatistics("jms");
+			if(virtualThreadsAvailable) {
+				Assert.assertEquals(ConsumerScheduler.ExecutionMode.VIRTUAL, stats.getExecutionMode());
+				Assert.assertEquals(1000, stats.getCapacity());
+			} else {
+				Assert.assertEquals(ConsumerScheduler.ExecutionMode.PLATFORM, stats.getExecutionMode());
+				Assert.assertEquals(1010, stats.getCapacity());
+			}
+			
+			final CountDownLatch done = new CountDownLatch(1);
+			Assert.assertTrue(scheduler.reserve("jms", 1));
+			scheduler.execute("jms", new Runnable() {
+				public void run() {
+					done.countDown();
+				}
+			}).get(5, TimeUnit.SECONDS);
+			Assert.assertEquals(0, done.getCount());
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+	
+	@Test
+	public void testCancelQueuedConsumer() throws Exception {
+		
+		ConsumerScheduler scheduler = new ConsumerScheduler();
+		scheduler.configure("jms", poolOptions("jms", "1", "1", "abort"));
+		final CountDownLatch running = new CountDownLatch(1);
+		final CountDownLatch finish = new CountDownLatch(1);
+		final AtomicBoolean queuedConsumerRan = new AtomicBoolean(false);
+		
+		try {
+			Assert.assertTrue(scheduler.reserve("jms", 2));
+			Future<?> active = scheduler.execute("jms", new Runnable() {
+				public void run() {
+					running.countDown();
+					try {
+						finish.await();
+					} catch(InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			Assert.assertTrue(running.await(5, TimeUnit.SECONDS));
+			Future<?> queued = scheduler.execute("jms", new Runnable() {
+				public void run() {
+					queuedConsumerRan.set(true);
+				}
+			});
+			Assert.assertEquals(1, scheduler.getPoolStatistics("jms").getQueuedCount());
+			Assert.assertEquals(0, scheduler.getPoolStatistics("jms").getAvailable());
+			
+			// cancelling the queued consumer gives back its slot right away
+			Assert.assertTrue(queued.cancel(true));
+			ConsumerPoolStatistics stats = scheduler.getPoolStatistics("jms");
+			Assert.assertEquals(0, stats.getQueuedCount());
+			Assert.assertEquals(1, stats.getActiveCount());
+			Assert.assertEquals(1, stats.getAvailable());
+			
+			// cancelling the running consumer releases once it actually terminates
+			Assert.assertTrue(active.cancel(true));
+			long deadline = System.currentTimeMillis() + 5000;
+			while(scheduler.getPoolStatistics("jms").getAvailable() < 2 && System.currentTimeMillis() < deadline)
+				Thread.sleep(5);
+			
+			stats = scheduler.getPoolStatistics("jms");
+			Assert.assertEquals(0, stats.getActiveCount());
+			Assert.assertEquals(0, stats.getQueuedCount());
+			Assert.assertEquals(2, stats.getAvailable());
+			Assert.assertEquals(1, stats.getCompletedCount());
+			Assert.assertFalse(queuedConsumerRan.get());
+			Assert.assertTrue(scheduler.reserve("jms", 2));
+		} finally {
+			finish.countDown();
+			scheduler.shutdown();
+		}
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidRejectionPolicy() {
+		new ConsumerScheduler().configure("jms", poolOptions("jms", "2", "1", "discard"));
+	}
+	
+	private static Map<String, List<String>> poolOptions(String type, String threads, String queue, String rejectionPolicy) {
+		return ConsumerTestSupport.options("consumer.async." + type + ".threads", threads, "consumer.async." + type + ".queue", queue, 
+				"consumer.async." + type + ".rejectionPolicy", rejectionPolicy);
+	}
+	
+}
@@ -0,0 +1,75 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package com.mnxfst.testing.consumer.async;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mnxfst.testing.consumer.ConsumerTestSupport;
+import com.mnxfst.testing.consumer.exception.AsyncInputConsumerException;
+
+/**
+ * Test case for {@link ConsumerSettings}
+ * @author ckreutzfeldt
+ * @since 27.03.2012
+ */
+public class TestConsumerSettings {
+
+	@Test
+	public void testTypedValues() throws Exception {
+		
+		Map<String, List<String>> properties = ConsumerTestSupport.options("string", " value ", "blank", "  ", "int", "42", "long", "5000000000", "enum", "seconds");
+		Assert.assertEquals("value", ConsumerSettings.getString(properties, "string", null));
+		Assert.assertEquals("Blank values count as missing", "default", ConsumerSettings.getString(properties, "blank", "default"));
+		Assert.assertNull(ConsumerSettings.getString(properties, "missing", null));
+		Assert.assertEquals(42, ConsumerSettings.getInt(properties, "int", 0));
+		Assert.assertEquals(7, ConsumerSettings.getPositiveInt(properties, "missing", 7));
+		Assert.assertEquals(5000000000L, ConsumerSettings.getLong(properties, "long", 0));
+		Assert.assertEquals(TimeUnit.SECONDS, ConsumerSettings.getEnum(TimeUnit.class, properties, "enum", TimeUnit.DAYS));
+		Assert.assertEquals(TimeUnit.DAYS, ConsumerSettings.getEnum(TimeUnit.class, properties, "missing", TimeUnit.DAYS));
+	}
+	
+	@Test
+	public void testInvalidValues() {
+		
+		Map<String, List<String>> properties = ConsumerTestSupport.options("text", "abc", "zero", "0", "long", "5000000000");
+		// neither a number, nor positive, nor an int
+		for(String key : new String[]{"text", "zero", "long"}) {
+			try {
+				ConsumerSettings.getPositiveInt(properties, key, 1);
+				Assert.fail("Invalid value accepted for '" + key + "'");
+			} catch(AsyncInputConsumerException e) {
+				Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid value for '" + key + "'"));
+			}
+		}
+		try {
+			ConsumerSettings.getEnum(TimeUnit.class, properties, "text", TimeUnit.DAYS);
+			Assert.fail("Values not naming a constant must be rejected");
+		} catch(AsyncInputConsumerException e) {
+			//
+		}
+	}
+}
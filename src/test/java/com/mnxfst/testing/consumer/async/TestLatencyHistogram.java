@@ -0,0 +1,186 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.consumer.async;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Test case for {@link LatencyHistogram} and {@link LatencyHistogramSnapshot}
+ * @author ckreutzfeldt
+ * @since 02.03.2012
+ */
+public class TestLatencyHistogram {
+
+	@Test
+	public void testPercentiles() {
+		
+		LatencyHistogram histogram = new LatencyHistogram(3600000000L, 3);
+		for(long v = 1; v <= 100000; v++)
+			histogram.recordValue(v);
+		
+		LatencyHistogramSnapshot snapshot = histogram.snapshot();
+		Assert.assertEquals(100000, snapshot.getTotalCount());
+		Assert.assertEquals(1, snapshot.getMinValue());
+		Assert.assertEquals(100000, snapshot.getMaxValue());
+		assertWithinPrecision(50000, snapshot.getValueAtPercentile(50), 0.001);
+		assertWithinPrecision(90000, snapshot.getValueAtPercentile(90), 0.001);
+		assertWithinPrecision(99000, snapshot.getValueAtPercentile(99), 0.001);
+		assertWithinPrecision(99900, snapshot.getValueAtPercentile(99.9), 0.001);
+		Assert.assertEquals(100000, snapshot.getValueAtPercentile(100));
+		assertWithinPrecision(50000, Math.round(snapshot.getMean()), 0.001);
+	}
+	
+	@Test
+	public void testSmallValuesAreExact() {
+		LatencyHistogram histogram = new LatencyHistogram(1000, 2);
+		for(long v = 0; v < 100; v++)
+			histogram.recordValue(v);
+		LatencyHistogramSnapshot snapshot = histogram.snapshot();
+		Assert.assertEquals(0, snapshot.getMinValue());
+		Assert.assertEquals(49, snapshot.getValueAtPercentile(50));
+		Assert.assertEquals(99, snapshot.getValueAtPercentile(100));
+	}
+	
+	@Test
+	public void testOverflowAndNegativeValues() {
+		LatencyHistogram histogram = new LatencyHistogram(1000, 2);
+		histogram.recordValue(-5);
+		histogram.recordValue(5000);
+		LatencyHistogramSnapshot snapshot = histogram.snapshot();
+		Assert.assertEquals(2, snapshot.getTotalCount());
+		Assert.assertEquals(1, snapshot.getOverflowCount());
+		Assert.assertEquals(0, snapshot.getMinValue());
+		Assert.assertEquals(1000, snapshot.getMaxValue());
+	}
+	
+	@Test
+	public void testSnapshotsWhileRecording() throws Exception {
+		
+		final LatencyHistogram histogram = new LatencyHistogram(1000, 2);
+		Thread[] recorders = new Thread[4];
+		for(int i = 0; i < recorders.length; i++) {
+			recorders[i] = new Thread(new Runnable() {
+				public void run() {
+					for(long v = 500; v > 0; v--)
+						histogram.recordValue(v);
+				}
+			});
+		}
+		for(Thread recorder : recorders)
+			recorder.start();
+		
+		// every counted value has already been considered for the extreme values
+		for(int i = 0; i < 1000; i++) {
+			LatencyHistogramSnapshot snapshot = histogram.snapshot();
+			if(snapshot.getTotalCount() > 0) {
+				Assert.assertTrue(snapshot.getMinValue() >= 1 && snapshot.getMinValue() <= 500);
+				Assert.assertEquals(500, snapshot.getMaxValue());
+			}
+		}
+		for(Thread recorder : recorders)
+			recorder.join();
+		
+		LatencyHistogramSnapshot snapshot = histogram.snapshot();
+		Assert.assertEquals(2000, snapshot.getTotalCount());
+		Assert.assertEquals(1, snapshot.getMinValue());
+		Assert.assertEquals(500, snapshot.getMaxValue());
+	}
+
+	@Test
+	public void testMergeSnapshots() {
+		
+		LatencyHistogram first = new LatencyHistogram(3600000000L, 2);
+		LatencyHistogram second = new LatencyHistogram(3600000000L, 2);
+		for(long v = 1; v <= 1000; v++) {
+			first.recordValue(v);
+			second.recordValue(v + 1000);
+		}
+		
+		LatencyHistogramSnapshot merged = new LatencyHistogramSnapshot(first.getLayout());
+		Assert.assertEquals(0, merged.getValueAtPercentile(50));
+		merged.add(first.snapshot());
+		merged.add(second.snapshot());
+		merged.add(new LatencyHistogram(3600000000L, 2).snapshot());
+		
+		Assert.assertEquals(2000, merged.getTotalCount());
+		Assert.assertEquals(1, merged.getMinValue());
+		Assert.assertEquals(2000, merged.getMaxValue());
+		assertWithinPrecision(1000, merged.getValueAtPercentile(50), 0.01);
+		
+		// the source histograms are untouched
+		Assert.assertEquals(1000, first.snapshot().getTotalCount());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testMergeDifferentLayouts() {
+		LatencyHistogram first = new LatencyHistogram(1000, 2);
+		first.recordValue(1);
+		new LatencyHistogramSnapshot(new LatencyHistogramLayout(1000, 3)).add(first.snapshot());
+	}
+	
+	@Test
+	public void testMergeRescaled() {
+		
+		LatencyHistogram coarse = new LatencyHistogram(100000, 2);
+		LatencyHistogram fine = new LatencyHistogram(3600000000L, 3);
+		for(long v = 1; v <= 1000; v++) {
+			coarse.recordValue(v * 100);
+			fine.recordValue(v * 100);
+		}
+		
+		LatencyHistogramSnapshot merged = new LatencyHistogramSnapshot(coarse.getLayout());
+		coarse.addTo(merged);
+		fine.addTo(merged);
+		merged.addRescaled(fine.snapshot());
+		
+		Assert.assertEquals(3000, merged.getTotalCount());
+		Assert.assertEquals(100, merged.getMinValue());
+		Assert.assertEquals(100000, merged.getMaxValue());
+		assertWithinPrecision(50000, merged.getValueAtPercentile(50), 0.01);
+		
+		// values beyond the range of the target are counted as overflows
+		LatencyHistogramSnapshot narrow = new LatencyHistogramSnapshot(new LatencyHistogramLayout(1000, 2));
+		fine.addTo(narrow);
+		Assert.assertEquals(990, narrow.getOverflowCount());
+		
+		narrow.reset();
+		Assert.assertEquals(0, narrow.getTotalCount());
+		Assert.assertEquals(0, narrow.getValueAtPercentile(99));
+	}
+	
+	@Test
+	public void testLayout() {
+		LatencyHistogramLayout layout = new LatencyHistogramLayout(3600000000L, 2);
+		for(long v = 0; v < 3600000000L; v = v * 3 + 1) {
+			int idx = layout.countsIndex(v);
+			Assert.assertTrue(idx >= 0 && idx < layout.getCountsLength());
+			Assert.assertTrue(layout.valueFromIndex(idx) <= v);
+			Assert.assertTrue(layout.highestEquivalentValue(v) >= v);
+			// two significant digits: the equivalent range must not exceed 1% of the value
+			Assert.assertTrue(layout.sizeOfEquivalentValueRange(v) <= Math.max(1, v / 100));
+		}
+		Assert.assertTrue(layout.countsIndex(3600000000L) < layout.getCountsLength());
+	}
+	
+	private static void assertWithinPrecision(long expected, long actual, double precision) {
+		Assert.assertTrue("Expected " + expected + " but found " + actual, Math.abs(expected - actual) <= Math.max(1, expected * precision));
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.async;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mnxfst.testing.consumer.ConsumerTestSupport;
+import com.mnxfst.testing.consumer.exception.AsyncInputConsumerException;
+
+/**
+ * Test case for {@link StandbyConsumerPool}
+ * @author ckreutzfeldt
+ * @since 09.03.2012
+ */
+public class TestStandbyConsumerPool {
+
+	@Test
+	public void testTakeAndRefill() throws Exception {
+		
+		final AtomicInteger created = new AtomicInteger(0);
+		StandbyConsumerPool pool = new StandbyConsumerPool(new IAsyncInputConsumerFactory() {
+			public IAsyncInputConsumer createConsumer(String consumerType) throws AsyncInputConsumerException {
+				return new ConsumerTestSupport.TestConsumer(consumerType, "consumer-" + created.incrementAndGet());
+			}
+		}, 2, 10);
+		
+		try {
+			Assert.assertNull("Types without size must not be pooled", pool.getPoolStatistics("jms"));
+			Assert.assertTrue("Types without size must not serve consumers", pool.take("jms", 1).isEmpty());
+			
+			pool.configure("jms", standbyOptions("jms", "3"));
+			awaitAvailable(pool, "jms", 3);
+			Assert.assertEquals(3, created.get());
+			
+			List<IAsyncInputConsumer> consumers = pool.take("jms", 5);
+			Assert.assertEquals("All standby consumers must be served", 3, consumers.size());
+			Assert.assertEquals("jms", consumers.get(0).getType());
+			
+			awaitAvailable(pool, "jms", 3);
+			Assert.assertEquals("The pool must refill to its size only", 6, created.get());
+			Assert.assertNotNull(pool.poll("jms"));
+			
+			StandbyPoolStatistics stats = pool.getPoolStatistics("jms");
+			Assert.assertEquals(3, stats.getSize());
+			Assert.assertEquals(4, stats.getHits());
+			Assert.assertEquals(2, stats.getMisses());
+			Assert.assertEquals(0, stats.getFailures());
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void testRetryAfterFailure() throws Exception {
+		
+		final AtomicInteger attempts = new AtomicInteger(0);
+		StandbyConsumerPool pool = new StandbyConsumerPool(new IAsyncInputConsumerFactory() {
+			public IAsyncInputConsumer createConsumer(String consumerType) throws AsyncInputConsumerException {
+				if(attempts.incrementAndGet() <= 2)
+					throw new AsyncInputConsumerException("Source not available");
+				return new ConsumerTestSupport.TestConsumer(consumerType, "consumer-" + attempts.get());
+			}
+		}, 1, 10);
+		
+		try {
+			pool.configure("jms", standbyOptions("jms", "2"));
+			awaitAvailable(pool, "jms", 2);
+			Assert.assertEquals(2, pool.getPoolStatistics("jms").getFailures());
+			Assert.assertEquals(0, pool.getPoolStatistics("jms").getPending());
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void testShutdown() throws Exception {
+		
+		final ConsumerTestSupport.TestConsumer consumer = new ConsumerTestSupport.TestConsumer("jms", "consumer-1");
+		StandbyConsumerPool pool = new StandbyConsumerPool(new IAsyncInputConsumerFactory() {
+			public IAsyncInputConsumer createConsumer(String consumerType) throws AsyncInputConsumerException {
+				return consumer;
+			}
+		}, 1, 10);
+		
+		pool.configure("jms", standbyOptions("jms", "1"));
+		awaitAvailable(pool, "jms", 1);
+		pool.shutdown();
+		Assert.assertTrue("Standby consumers must be shut down", consumer.isShutdown());
+		Assert.assertEquals(0, pool.getPoolStatistics("jms").getAvailable());
+		Assert.assertTrue(pool.take("jms", 1).isEmpty());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testNegativeSize() {
+		new StandbyConsumerPool(new IAsyncInputConsumerFactory() {
+			public IAsyncInputConsumer createConsumer(String consumerType) throws AsyncInputConsumerException {
+				return null;
+			}
+		}, 1, 10).configure("jms", standbyOptions("jms", "-1"));
+	}
+	
+	private static void awaitAvailable(StandbyConsumerPool pool, String consumerType, int available) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while(pool.getPoolStatistics(consumerType).getAvailable() < available && System.currentTimeMillis() < deadline)
+			Thread.sleep(5);
+		Assert.assertEquals(available, pool.getPoolStatistics(consumerType).getAvailable());
+	}
+	
+	private static Map<String, List<String>> standbyOptions(String consumerType, String size) {
+		return ConsumerTestSupport.options("consumer.async." + consumerType + ".standby.size", size);
+	}
+	
+}
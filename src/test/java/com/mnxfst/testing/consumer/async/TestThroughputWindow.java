@@ -0,0 +1,119 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.consumer.async;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Test case for {@link ThroughputWindow} and {@link ThroughputWindowSnapshot}
+ * @author ckreutzfeldt
+ * @since 05.03.2012
+ */
+public class TestThroughputWindow {
+
+	@Test
+	public void testRates() {
+		
+		long start = (System.currentTimeMillis() / 1000) * 1000;
+		ThroughputWindow window = new ThroughputWindow(5, 1000, start);
+		
+		// nothing completed yet
+		Assert.assertEquals(0, window.snapshot(start).getBucketCount());
+		Assert.assertEquals(0.0, window.snapshot(start).getAverageMessageRate());
+		
+		window.record(10, 100, 0, start);
+		window.record(30, 300, 1, start + 1000);
+		window.record(20, 200, 0, start + 2500);
+		
+		ThroughputWindowSnapshot snapshot = window.snapshot(start + 3000);
+		Assert.assertEquals(3, snapshot.getBucketCount());
+		Assert.assertEquals(20.0, snapshot.getCurrentMessageRate());
+		Assert.assertEquals(30.0, snapshot.getPeakMessageRate());
+		Assert.assertEquals(20.0, snapshot.getAverageMessageRate());
+		Assert.assertEquals(300.0, snapshot.getPeakByteRate());
+		Assert.assertEquals(1.0, snapshot.getPeakErrorRate());
+		Assert.assertEquals(0.0, snapshot.getCurrentErrorRate());
+		
+		// the window covers at most 4 completed buckets, the first one drops out and a gap is reported as zero
+		snapshot = window.snapshot(start + 5000);
+		Assert.assertEquals(4, snapshot.getBucketCount());
+		Assert.assertEquals(30, snapshot.getMessages()[0]);
+		Assert.assertEquals(0, snapshot.getMessages()[3]);
+		Assert.assertEquals(0.0, snapshot.getCurrentMessageRate());
+		
+		// wrapping around the ring resets the reused bucket
+		window.record(7, 0, 0, start + 5000);
+		snapshot = window.snapshot(start + 6000);
+		Assert.assertEquals(7, snapshot.getMessages()[3]);
+		Assert.assertEquals(0, snapshot.getMessages()[2]);
+		
+		// late writers must not pollute a bucket claimed for a later interval
+		window.record(99, 0, 0, start);
+		Assert.assertEquals(7, window.snapshot(start + 6000).getMessages()[3]);
+	}
+	
+	@Test
+	public void testSubSecondBuckets() {
+		long start = (System.currentTimeMillis() / 100) * 100;
+		ThroughputWindow window = new ThroughputWindow(11, 100, start);
+		window.record(5, 0, 0, start);
+		Assert.assertEquals(50.0, window.snapshot(start + 100).getCurrentMessageRate());
+	}
+	
+	@Test
+	public void testMergeWindows() {
+		
+		long start = (System.currentTimeMillis() / 1000) * 1000;
+		ThroughputWindow first = new ThroughputWindow(5, 1000, start);
+		ThroughputWindow second = new ThroughputWindow(11, 1000, start + 2000);
+		for(int i = 0; i < 6; i++) {
+			first.record(1, 10, 0, start + i * 1000);
+			second.record(2, 20, 1, start + i * 1000);
+		}
+		
+		// buckets are aligned by interval, each window contributes only what its own snapshot would report
+		ThroughputWindowSnapshot merged = new ThroughputWindowSnapshot(1000, (start + 6000) / 1000, 6);
+		first.addTo(merged);
+		second.addTo(merged);
+		Assert.assertEquals(6, merged.getBucketCount());
+		Assert.assertEquals(0, merged.getMessages()[0]);
+		Assert.assertEquals(0, merged.getMessages()[1]);
+		Assert.assertEquals(3, merged.getMessages()[2]);
+		Assert.assertEquals(3, merged.getMessages()[5]);
+		Assert.assertEquals(30, merged.getBytes()[5]);
+		Assert.assertEquals(1, merged.getErrors()[5]);
+		
+		// adding a snapshot yields the same as adding the window directly 
+		ThroughputWindowSnapshot added = new ThroughputWindowSnapshot(1000, (start + 6000) / 1000, 6);
+		added.add(first.snapshot(start + 6000));
+		added.add(second.snapshot(start + 6000));
+		for(int i = 0; i < 6; i++)
+			Assert.assertEquals(merged.getMessages()[i], added.getMessages()[i]);
+		
+		Assert.assertEquals(2, merged.tail(2).getBucketCount());
+		Assert.assertEquals(3, merged.tail(2).getMessages()[1]);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidBucketCount() {
+		new ThroughputWindow(1, 1000);
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.handler;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the {@link ContextRequestRouter} against the former linear context scan for a growing number
+ * of registered contexts. The router cost must stay flat while the scan grows with the number of contexts.
+ * Run via {@link #main(String[])} from the test classpath.
+ * @author ckreutzfeldt
+ * @since 27.02.2012
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContextRequestRouterBenchmark {
+
+	@Param({"1", "10", "100", "1000"})
+	private int contexts;
+
+	private ContextRequestRouter<String> router = null;
+	private ConcurrentMap<String, String> contextMap = null;
+	private String uri = null;
+
+	@Setup
+	public void setup() {
+		router = new ContextRequestRouter<String>();
+		contextMap = new ConcurrentHashMap<String, String>();
+		for(int i = 0; i < contexts; i++) {
+			router.register("/context" + i, "handler" + i);
+			contextMap.put("/context" + i, "handler" + i);
+		}
+		// address the last registered context to keep the scan honest
+		uri = "/context" + (contexts - 1) + "?start=jms&start=jms&collectStats=*";
+	}
+
+	@Benchmark
+	public String trieRoute() {
+		return router.route(uri);
+	}
+
+	@Benchmark
+	public String linearScan() {
+		for(String ctxStr : contextMap.keySet()) {
+			if(uri.indexOf(ctxStr) != -1)
+				return contextMap.get(ctxStr);
+		}
+		return null;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(ContextRequestRouterBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.handler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.handler.codec.http.QueryStringDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.mnxfst.testing.consumer.handler.async.LayeredConfigurationOptions;
+
+/**
+ * Compares parsing a start request into {@link QueryParameters} and layering it over the configuration options against
+ * the former {@link QueryStringDecoder} followed by copying the configuration options and adding the parameters. The
+ * resulting options are read the way a consumer reads its settings. Run via {@link #main(String[])} from the test classpath.
+ * @author ckreutzfeldt
+ * @since 24.03.2012
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryParametersBenchmark {
+
+	@Param({"50", "500"})
+	private int options;
+	
+	private Map<String, List<String>> configurationOptions = null;
+	private String uri = "/consumer?start=jms&count=20&concurrency=4&standby=false&jms.destination=queue-b";
+	
+	@Setup
+	public void setup() {
+		QueryParameters.registerKnownKeys("start", "count", "concurrency", "standby");
+		configurationOptions = new HashMap<String, List<String>>();
+		for(int i = 0; i < options; i++) {
+			List<String> values = new ArrayList<String>(1);
+			values.add("value" + i);
+			configurationOptions.put("consumer.option" + i, values);
+		}
+	}
+	
+	@Benchmark
+	public Object parseAndLayer() {
+		Map<String, List<String>> configOptions = new LayeredConfigurationOptions(configurationOptions, QueryParameters.parse(uri));
+		return read(configOptions);
+	}
+	
+	@Benchmark
+	public Object decodeAndCopy() {
+		Map<String, List<String>> configOptions = new HashMap<String, List<String>>(configurationOptions);
+		configOptions.putAll(new QueryStringDecoder(uri).getParameters());
+		return read(configOptions);
+	}
+	
+	private static Object read(Map<String, List<String>> configOptions) {
+		Object result = configOptions.get("start");
+		result = configOptions.get("jms.destination");
+		return configOptions.get("consumer.option0") != null ? result : null;
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(QueryParametersBenchmark.class.getSimpleName()).build()).run();
+	}
+}
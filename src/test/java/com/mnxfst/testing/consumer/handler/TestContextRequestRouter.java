@@ -0,0 +1,110 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.handler;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Test case for {@link ContextRequestRouter}
+ * @author ckreutzfeldt
+ * @since 27.02.2012
+ */
+public class TestContextRequestRouter {
+
+	@Test
+	public void testRouteLongestPrefix() {
+
+		ContextRequestRouter<String> router = new ContextRequestRouter<String>();
+		Assert.assertNull(router.route("/consumer"));
+
+		router.register("/consumer", "consumer");
+		router.register("/consumer/stats", "stats");
+		router.register("/ingest/", "ingest");
+		Assert.assertEquals("The router must hold 3 contexts", 3, router.size());
+
+		Assert.assertEquals("consumer", router.route("/consumer"));
+		Assert.assertEquals("consumer", router.route("/consumer/"));
+		Assert.assertEquals("consumer", router.route("/consumer?start=jms&stop=1"));
+		Assert.assertEquals("consumer", router.route("/consumer/start"));
+		Assert.assertEquals("consumer", router.route("//consumer"));
+		Assert.assertEquals("consumer", router.route("http://localhost:8080/consumer?collectStats=*"));
+		Assert.assertEquals("stats", router.route("/consumer/stats"));
+		Assert.assertEquals("stats", router.route("/consumer/stats/a/b"));
+		Assert.assertEquals("ingest", router.route("/ingest"));
+
+		Assert.assertNull(router.route("/consumerX"));
+		Assert.assertNull(router.route("/foo/consumer"));
+		Assert.assertNull(router.route("/foo/consumerX"));
+		Assert.assertNull(router.route("/"));
+		Assert.assertNull(router.route("?/consumer"));
+		Assert.assertNull(router.route(null));
+	}
+
+	@Test
+	public void testRouteExact() {
+
+		ContextRequestRouter<String> router = new ContextRequestRouter<String>();
+		router.register("/consumer", "consumer");
+		router.register("/consumer/stats", "stats");
+
+		Assert.assertEquals("consumer", router.routeExact("/consumer?start=jms"));
+		Assert.assertEquals("stats", router.routeExact("/consumer/stats/"));
+		Assert.assertNull(router.routeExact("/consumer/start"));
+		Assert.assertNull(router.routeExact("/consumer/stats/a"));
+		Assert.assertNull(router.routeExact("/"));
+	}
+
+	@Test
+	public void testRouteRootContext() {
+
+		ContextRequestRouter<String> router = new ContextRequestRouter<String>();
+		router.register("/", "root");
+		router.register("/consumer", "consumer");
+
+		Assert.assertEquals("root", router.route("/"));
+		Assert.assertEquals("root", router.route("/foo/consumer"));
+		Assert.assertEquals("consumer", router.route("/consumer/foo"));
+		Assert.assertEquals("root", router.routeExact("/"));
+	}
+
+	@Test
+	public void testRouteManyContexts() {
+
+		ContextRequestRouter<String> router = new ContextRequestRouter<String>();
+		for(int i = 0; i < 500; i++)
+			router.register("/ctx" + i + "/sub", "handler" + i);
+		router.register("/ctx0/sub", "replaced");
+		Assert.assertEquals("The router must hold 500 contexts", 500, router.size());
+
+		Assert.assertEquals("replaced", router.route("/ctx0/sub"));
+		for(int i = 1; i < 500; i++) {
+			Assert.assertEquals("handler" + i, router.route("/ctx" + i + "/sub/x?a=b"));
+			Assert.assertNull(router.route("/ctx" + i));
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testRegisterWithMissingHandler() {
+		new ContextRequestRouter<String>().register("/consumer", null);
+	}
+
+}
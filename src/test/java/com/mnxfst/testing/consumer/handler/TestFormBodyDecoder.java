@@ -0,0 +1,97 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.handler;
+
+import java.nio.charset.Charset;
+
+import junit.framework.Assert;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+/**
+ * Test case for {@link FormBodyDecoder}
+ * @author ckreutzfeldt
+ * @since 24.03.2012
+ */
+public class TestFormBodyDecoder {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	@Test
+	public void testDecodeSplitAtEveryPosition() {
+		
+		byte[] body = "start=jms&start=socket&collectStats=%2A&text=a+b%20c%C3%A4&flag&=ignored&&empty=".getBytes(UTF8);
+		for(int split = 0; split <= body.length; split++) {
+			QueryParameters params = new QueryParameters();
+			FormBodyDecoder decoder = new FormBodyDecoder(params);
+			decoder.decode(ChannelBuffers.wrappedBuffer(body, 0, split));
+			decoder.decode(ChannelBuffers.wrappedBuffer(body, split, body.length - split));
+			decoder.finish();
+			
+			Assert.assertEquals("Split at " + split, 5, params.size());
+			Assert.assertEquals(2, params.get("start").size());
+			Assert.assertEquals("jms", params.get("start").get(0));
+			Assert.assertEquals("socket", params.get("start").get(1));
+			Assert.assertEquals("*", params.get("collectStats").get(0));
+			Assert.assertEquals("a b c\u00e4", params.get("text").get(0));
+			Assert.assertEquals("", params.get("flag").get(0));
+			Assert.assertEquals("", params.get("empty").get(0));
+		}
+	}
+	
+	@Test
+	public void testDecodeIntoExistingParameters() {
+		
+		QueryParameters.registerKnownKeys("start");
+		QueryParameters params = new QueryParameters(3);
+		params.add("start", "jms");
+		FormBodyDecoder decoder = new FormBodyDecoder(params);
+		decoder.decode(ChannelBuffers.copiedBuffer("start=replay;a=1;b=2", UTF8));
+		decoder.finish();
+		Assert.assertEquals(2, params.get("start").size());
+		Assert.assertEquals("replay", params.get("start").get(1));
+		Assert.assertEquals("1", params.get("a").get(0));
+		Assert.assertNull("The max. number of parameters is exceeded", params.get("b"));
+		Assert.assertEquals(2, params.size());
+	}
+	
+	@Test
+	public void testInvalidEscapeSequences() {
+		
+		FormBodyDecoder decoder = new FormBodyDecoder(new QueryParameters());
+		try {
+			decoder.decode(ChannelBuffers.copiedBuffer("a=%G1", UTF8));
+			Assert.fail("Invalid escape sequence");
+		} catch(IllegalArgumentException e) {
+			// expected
+		}
+		
+		decoder = new FormBodyDecoder(new QueryParameters());
+		decoder.decode(ChannelBuffers.copiedBuffer("a=%4", UTF8));
+		try {
+			decoder.finish();
+			Assert.fail("Incomplete escape sequence");
+		} catch(IllegalArgumentException e) {
+			// expected
+		}
+	}
+	
+}
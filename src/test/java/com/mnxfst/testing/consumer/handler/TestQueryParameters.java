@@ -0,0 +1,98 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.handler;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Test case for {@link QueryParameters}
+ * @author ckreutzfeldt
+ * @since 24.03.2012
+ */
+public class TestQueryParameters {
+
+	@Test
+	public void testParse() {
+		
+		QueryParameters.registerKnownKeys("start", "count");
+		QueryParameters params = QueryParameters.parse("/consumer?start=jms&start=socket;count=2&text=a+b%2Fc&na%6De=x&flag&=ignored&&empty=#fragment=1");
+		Assert.assertEquals(7, params.getPairCount());
+		Assert.assertEquals(6, params.size());
+		Assert.assertEquals(Arrays.asList("jms", "socket"), params.get("start"));
+		Assert.assertEquals("jms", params.getFirst("start"));
+		Assert.assertEquals(Arrays.asList("2"), params.get("count"));
+		Assert.assertEquals("a b/c", params.getFirst("text"));
+		Assert.assertEquals("x", params.getFirst("name"));
+		Assert.assertEquals("", params.getFirst("flag"));
+		Assert.assertEquals("", params.getFirst("empty"));
+		Assert.assertFalse(params.containsKey("fragment"));
+		Assert.assertNull(params.get("stop"));
+		
+		// known keys are resolved to the registered instances, the map view keeps the order of appearance
+		Iterator<String> keys = params.keySet().iterator();
+		Assert.assertSame("start", keys.next());
+		Assert.assertSame("count", keys.next());
+		Assert.assertEquals("text", keys.next());
+		
+		// the map view follows later additions
+		params.add("stop", "jms-1");
+		Assert.assertEquals(7, params.size());
+		Assert.assertTrue(params.keySet().contains("stop"));
+	}
+	
+	@Test
+	public void testParseWithoutQuery() {
+		Assert.assertTrue(QueryParameters.parse("/consumer").isEmpty());
+		Assert.assertTrue(QueryParameters.parse("/consumer?").isEmpty());
+		Assert.assertTrue(QueryParameters.parse(null).isEmpty());
+		
+		// parameters may be added to instances parsed from uris without query
+		QueryParameters params = QueryParameters.parse("/consumer");
+		params.add("start", "jms");
+		Assert.assertEquals("jms", params.getFirst("start"));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testParseInvalidEscapeSequence() {
+		QueryParameters.parse("/consumer?start=%G1");
+	}
+	
+	@Test
+	public void testKnownKeys() {
+		
+		String[] keys = new String[100];
+		for(int i = 0; i < keys.length; i++)
+			keys[i] = "key" + i;
+		QueryParameters.registerKnownKeys(keys);
+		for(int i = 0; i < keys.length; i++) {
+			Assert.assertSame(keys[i], QueryParameters.knownKey("?key" + i + "=1", 1, 1 + keys[i].length()));
+			Assert.assertSame(keys[i], QueryParameters.knownKey(("key" + i).getBytes(), 0, keys[i].length()));
+		}
+		Assert.assertNull(QueryParameters.knownKey("unknownKey", 0, 10));
+		Assert.assertNull(QueryParameters.knownKey("key1", 0, 3));
+		Assert.assertNull(QueryParameters.knownKey("unknownKey".getBytes(), 0, 10));
+	}
+	
+}
@@ -0,0 +1,243 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.handler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+
+import junit.framework.Assert;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpRequestDecoder;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mnxfst.testing.consumer.handler.async.ContextRequestExecutionMode;
+import com.mnxfst.testing.consumer.handler.async.IContextRequestHandler;
+
+/**
+ * Test case for {@link StreamingRequestDispatcher} decoding form bodies over loopback
+ * @author ckreutzfeldt
+ * @since 24.03.2012
+ */
+public class TestStreamingRequestDispatcher {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private ServerBootstrap server = null;
+	private ChannelGroup channels = null;
+	private InetSocketAddress address = null;
+	
+	@Before
+	public void setUp() {
+		final ContextRequestRouter<IContextRequestHandler> router = new ContextRequestRouter<IContextRequestHandler>();
+		router.register("/echo", new EchoContextRequestHandler());
+		router.register("/small", new EchoContextRequestHandler());
+		final ContextRequestRouter<Long> maxBodySizes = new ContextRequestRouter<Long>();
+		maxBodySizes.register("/small", Long.valueOf(32));
+		
+		channels = new DefaultChannelGroup();
+		server = new ServerBootstrap(new NioServerSocketChannelFactory(Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+		server.setPipelineFactory(new ChannelPipelineFactory() {
+			public ChannelPipeline getPipeline() throws Exception {
+				ChannelPipeline pipeline = Channels.pipeline();
+				pipeline.addLast("group", new SimpleChannelUpstreamHandler() {
+					public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent event) throws Exception {
+						channels.add(event.getChannel());
+						super.channelOpen(ctx, event);
+					}
+				});
+				// small chunks split the form body into many pieces
+				pipeline.addLast("decoder", new HttpRequestDecoder(4096, 8192, 16));
+				pipeline.addLast("encoder", new HttpResponseEncoder());
+				pipeline.addLast("streaming", new StreamingRequestDispatcher(router, maxBodySizes, 4096));
+				pipeline.addLast("handler", new SimpleChannelUpstreamHandler() {
+					public void messageReceived(ChannelHandlerContext ctx, MessageEvent event) throws Exception {
+						if(event.getMessage() instanceof RoutedContextRequest) {
+							RoutedContextRequest request = (RoutedContextRequest)event.getMessage();
+							request.getContextHandler().processRequest(request.getHttpRequest(), request.getQueryParams(), request.isKeepAlive(), request.getEvent());
+						} else {
+							respond("unrouted", event);
+						}
+					}
+				});
+				return pipeline;
+			}
+		});
+		Channel channel = server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		channels.add(channel);
+		address = (InetSocketAddress)channel.getLocalAddress();
+	}
+	
+	@After
+	public void tearDown() {
+		channels.close().awaitUninterruptibly();
+		server.releaseExternalResources();
+	}
+	
+	@Test
+	public void testFormBodies() throws Exception {
+		
+		// chunked form body without query string, the decoded query parameters are immutable in this case
+		HttpURLConnection connection = open("/echo");
+		connection.setChunkedStreamingMode(5);
+		Assert.assertEquals("{start=[jms, socket], text=[a b]}", post(connection, "start=jms&start=socket&text=a+b"));
+		
+		// form parameters are added to the query parameters
+		connection = open("/echo?start=replay");
+		connection.setFixedLengthStreamingMode(9);
+		Assert.assertEquals("{start=[replay, jms]}", post(connection, "start=jms"));
+		
+		// requests without body are passed on as they are
+		connection = open("/echo?collectStats=*");
+		connection.setRequestMethod("GET");
+		connection.setDoOutput(false);
+		Assert.assertEquals(200, connection.getResponseCode());
+		Assert.assertEquals("{collectStats=[*]}", read(connection));
+		
+		connection = open("/echo");
+		connection.setFixedLengthStreamingMode(4);
+		Assert.assertEquals("<tsConsumerResponse><errors><error>Invalid escape sequence in request body: '%x'</error></errors></tsConsumerResponse>", post(connection, "a=%x"));
+		
+		connection = open("/unknown");
+		connection.setChunkedStreamingMode(5);
+		Assert.assertEquals("unrouted", post(connection, "start=jms&start=socket"));
+	}
+	
+	@Test
+	public void testMaxBodySize() throws Exception {
+		
+		HttpURLConnection connection = open("/small");
+		connection.setFixedLengthStreamingMode(32);
+		Assert.assertEquals("{a=[aaaaaaaaaaaaaaaaaaaaaaaaaaaaaa]}", post(connection, "a=aaaaaaaaaaaaaaaaaaaaaaaaaaaaaa"));
+		
+		// rejected by the announced content length
+		connection = open("/small");
+		connection.setFixedLengthStreamingMode(33);
+		OutputStream out = connection.getOutputStream();
+		try {
+			out.write("a=aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa".getBytes(UTF8));
+			out.close();
+		} catch(IOException e) {
+			// the server may close the connection before the body has been sent
+		}
+		Assert.assertEquals(413, connection.getResponseCode());
+		
+		// rejected while streaming a chunked body
+		connection = open("/small");
+		connection.setChunkedStreamingMode(8);
+		out = connection.getOutputStream();
+		try {
+			out.write("a=aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa".getBytes(UTF8));
+			out.close();
+		} catch(IOException e) {
+			// the server may close the connection before the body has been sent
+		}
+		Assert.assertEquals(413, connection.getResponseCode());
+		
+		// other contexts accept the default size
+		connection = open("/echo");
+		connection.setChunkedStreamingMode(8);
+		Assert.assertTrue(post(connection, "a=aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa").startsWith("{a=[aaaa"));
+	}
+	
+	private HttpURLConnection open(String path) throws Exception {
+		HttpURLConnection connection = (HttpURLConnection)new URL("http", address.getAddress().getHostAddress(), address.getPort(), path).openConnection();
+		connection.setDoOutput(true);
+		connection.setRequestMethod("POST");
+		connection.setConnectTimeout(5000);
+		connection.setReadTimeout(5000);
+		return connection;
+	}
+	
+	private static String post(HttpURLConnection connection, String body) throws Exception {
+		OutputStream out = connection.getOutputStream();
+		out.write(body.getBytes(UTF8));
+		out.close();
+		Assert.assertEquals(200, connection.getResponseCode());
+		return read(connection);
+	}
+	
+	private static String read(HttpURLConnection connection) throws Exception {
+		InputStream in = connection.getInputStream();
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		for(int read = in.read(buffer); read != -1; read = in.read(buffer))
+			response.write(buffer, 0, read);
+		in.close();
+		return new String(response.toByteArray(), UTF8);
+	}
+	
+	private static void respond(String message, MessageEvent event) {
+		HttpResponse httpResponse = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+		httpResponse.setContent(ChannelBuffers.copiedBuffer(message, UTF8));
+		httpResponse.setHeader(HttpHeaders.Names.CONTENT_LENGTH, httpResponse.getContent().readableBytes());
+		event.getChannel().write(httpResponse);
+	}
+	
+	/**
+	 * Answers with the received parameters
+	 */
+	private static class EchoContextRequestHandler implements IContextRequestHandler {
+		
+		public void initialize(Map<String, String> configOptions) {
+		}
+		
+		public ContextRequestExecutionMode getExecutionMode(HttpRequest httpRequest, Map<String, List<String>> requestParameters) {
+			return ContextRequestExecutionMode.FAST;
+		}
+		
+		public void processRequest(HttpRequest httpRequest, Map<String, List<String>> requestParameters, boolean keepAlive, MessageEvent event) {
+			respond(new TreeMap<String, List<String>>(requestParameters).toString(), event);
+		}
+	}
+	
+}
@@ -0,0 +1,72 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.handler;
+
+import junit.framework.Assert;
+
+import org.jboss.netty.util.CharsetUtil;
+import org.junit.Test;
+
+/**
+ * Test case for {@link XmlResponseWriter}
+ * @author ckreutzfeldt
+ * @since 28.02.2012
+ */
+public class TestXmlResponseWriter {
+
+	@Test
+	public void testWriteResponse() {
+
+		XmlResponseWriter writer = new XmlResponseWriter(4);
+		writer.startDocument().startElement("tsConsumerResponse");
+		writer.startElement("statistics").startElement("consumerStats").attribute("id", "a\"b").attribute("count", 42).endElement().endElement();
+		writer.startElement("errors").startElement("error").element("id", -17).element("msg", "a < b & c > d").element("empty", null).endElement();
+
+		String expected = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>" +
+				"<tsConsumerResponse><statistics><consumerStats id=\"a&quot;b\" count=\"42\"/></statistics>" +
+				"<errors><error><id>-17</id><msg>a &lt; b &amp; c &gt; d</msg><empty/></error></errors></tsConsumerResponse>";
+		Assert.assertEquals(expected, writer.finish().toString(CharsetUtil.UTF_8));
+	}
+
+	@Test
+	public void testWriteNumbers() {
+		XmlResponseWriter writer = new XmlResponseWriter();
+		writer.startElement("n").text(0).text(" ").text(Long.MAX_VALUE).text(" ").text(Long.MIN_VALUE);
+		Assert.assertEquals("<n>0 9223372036854775807 -9223372036854775808</n>", writer.finish().toString(CharsetUtil.UTF_8));
+	}
+
+	@Test
+	public void testWriteUnicode() {
+		String text = "\u00e4\u20ac\ud83d\ude00";
+		XmlResponseWriter writer = new XmlResponseWriter();
+		writer.element("u", text);
+		Assert.assertEquals("<u>" + text + "</u>", writer.finish().toString(CharsetUtil.UTF_8));
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testAttributeAfterContent() {
+		new XmlResponseWriter().startElement("a").text("b").attribute("c", "d");
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testEndElementWithoutOpenElement() {
+		new XmlResponseWriter().endElement();
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.handler;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Compares the {@link XmlResponseWriter} against the former DOM based response path (build document, transform
+ * it into a byte array, copy it into a channel buffer) for a statistics response covering a growing number of
+ * consumers. Run via {@link #main(String[])} from the test classpath, add <code>-prof gc</code> to the
+ * JMH arguments to compare the allocation rates as well.
+ * @author ckreutzfeldt
+ * @since 28.02.2012
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XmlResponseWriterBenchmark {
+
+	@Param({"10", "100", "500"})
+	private int consumers;
+
+	private String[] consumerIds = null;
+	private DocumentBuilder documentBuilder = null;
+	private Transformer documentTransformer = null;
+	private int responseSizeHint = XmlResponseWriter.DEFAULT_INITIAL_CAPACITY;
+
+	@Setup
+	public void setup() throws Exception {
+		consumerIds = new String[consumers];
+		for(int i = 0; i < consumers; i++)
+			consumerIds[i] = "c0a80101-" + (1000000 + i) + "-11e1-8000-0026b9fa3c31";
+		documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		documentTransformer = TransformerFactory.newInstance().newTransformer();
+	}
+
+	@Benchmark
+	public ChannelBuffer domDocument() throws Exception {
+
+		Document responseDocument = documentBuilder.newDocument();
+		Element responseRootElement = responseDocument.createElement(TSConsumerChannelUpstreamHandler.CONSUMER_RESPONSE_ROOT_ELEMENT);
+		Element statsRootElement = responseDocument.createElement("statistics");
+		for(int i = 0; i < consumerIds.length; i++) {
+			Element consumerStatElement = responseDocument.createElement("consumerStats");
+			consumerStatElement.setAttribute("consumerId", consumerIds[i]);
+			consumerStatElement.setAttribute("id", consumerIds[i]);
+			consumerStatElement.setAttribute("type", "jms");
+			Element messages = responseDocument.createElement("messages");
+			messages.appendChild(responseDocument.createTextNode(String.valueOf(1000000L + i)));
+			consumerStatElement.appendChild(messages);
+			Element bytes = responseDocument.createElement("bytes");
+			bytes.appendChild(responseDocument.createTextNode(String.valueOf(512000000L + i)));
+			consumerStatElement.appendChild(bytes);
+			statsRootElement.appendChild(consumerStatElement);
+		}
+		responseRootElement.appendChild(statsRootElement);
+		responseDocument.appendChild(responseRootElement);
+
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		documentTransformer.transform(new DOMSource(responseDocument), new StreamResult(result));
+		return ChannelBuffers.copiedBuffer(result.toByteArray());
+	}
+
+	@Benchmark
+	public ChannelBuffer streamingWriter() {
+
+		XmlResponseWriter responseWriter = new XmlResponseWriter(responseSizeHint);
+		responseWriter.startDocument().startElement(TSConsumerChannelUpstreamHandler.CONSUMER_RESPONSE_ROOT_ELEMENT);
+		responseWriter.startElement("statistics");
+		for(int i = 0; i < consumerIds.length; i++) {
+			responseWriter.startElement("consumerStats");
+			responseWriter.attribute("consumerId", consumerIds[i]);
+			responseWriter.attribute("id", consumerIds[i]);
+			responseWriter.attribute("type", "jms");
+			responseWriter.element("messages", 1000000L + i);
+			responseWriter.element("bytes", 512000000L + i);
+			responseWriter.endElement();
+		}
+		ChannelBuffer response = responseWriter.finish();
+		responseSizeHint = response.readableBytes();
+		return response;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(XmlResponseWriterBenchmark.class.getSimpleName()).build()).run();
+	}
+}
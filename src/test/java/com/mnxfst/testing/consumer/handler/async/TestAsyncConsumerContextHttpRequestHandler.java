@@ -0,0 +1,376 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.handler.async;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mnxfst.testing.consumer.ConsumerTestSupport;
+import com.mnxfst.testing.consumer.async.IAsyncInputConsumer;
+import com.mnxfst.testing.consumer.exception.AsyncInputConsumerException;
+import com.mnxfst.testing.consumer.exception.HttpRequestProcessingException;
+import com.mnxfst.testing.consumer.handler.XmlResponseWriter;
+
+/**
+ * Test case for {@link AsyncConsumerContextHttpRequestHandler}
+ * @author ckreutzfeldt
+ * @since 26.03.2012
+ */
+public class TestAsyncConsumerContextHttpRequestHandler {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final Pattern CONSUMER_ID = Pattern.compile("<consumer><id>([^<]+)</id>");
+	private static final Pattern SHUTDOWN_STATE = Pattern.compile("<consumer><id>([^<]+)</id><state>(\\d+)</state>");
+	private static final Pattern POOL_AVAILABLE = Pattern.compile("available=\"(\\d+)\"");
+	
+	@Before
+	public void setUp() {
+		ConsumerTestSupport.TestConsumer.reset();
+	}
+	
+	@Test
+	public void testStartCounts() throws Exception {
+		
+		AsyncConsumerContextHttpRequestHandler handler = handler("start-a");
+		handler("start-b");
+		Map<String, List<String>> queryParams = ConsumerTestSupport.options("count", "2", "count.start-b", "3");
+		String response = respond(handler, new String[]{"start-a", "start-b"}, queryParams);
+		
+		List<String> ids = ids(response);
+		Assert.assertEquals(5, ids.size());
+		Assert.assertEquals(2, count(response, "<type>start-a</type>"));
+		Assert.assertEquals(3, count(response, "<type>start-b</type>"));
+		Assert.assertTrue(response.contains("<admission admitted=\"true\" requested=\"2\" type=\"start-a\""));
+		Assert.assertTrue(response.contains("<admission admitted=\"true\" requested=\"3\" type=\"start-b\""));
+		// one latency per consumer plus the latency of the whole request
+		Assert.assertEquals(6, count(response, "<startLatency unit=\"us\">"));
+		Assert.assertEquals(62, available(handler, "start-a"));
+		Assert.assertEquals(61, available(handler, "start-b"));
+		stop(handler, ids, 5000);
+		
+		// consumers are numbered per type, each request starts over
+		ids = start(handler, "start-b", 2);
+		List<String> sequences = new ArrayList<String>();
+		for(ConsumerTestSupport.TestConsumer consumer : ConsumerTestSupport.TestConsumer.getInitialized())
+			sequences.add(consumer.getType() + ":" + consumer.getRequestSequence());
+		Collections.sort(sequences);
+		Assert.assertEquals("[start-a:0, start-a:1, start-b:0, start-b:0, start-b:1, start-b:1, start-b:2]", sequences.toString());
+		stop(handler, ids, 5000);
+	}
+	
+	@Test
+	public void testStartConcurrency() throws Exception {
+		
+		AsyncConsumerContextHttpRequestHandler handler = handler("start-concurrency", ConsumerTestSupport.TestConsumer.CFG_OPT_INITIALIZATION_MILLIS, "50");
+		
+		long start = System.currentTimeMillis();
+		List<String> ids = start(handler, "start-concurrency", 8, "concurrency", "2");
+		long duration = System.currentTimeMillis() - start;
+		Assert.assertEquals(8, ids.size());
+		Assert.assertEquals("The requested concurrency must not be exceeded", 2, ConsumerTestSupport.TestConsumer.getMaxConcurrentInitializations());
+		Assert.assertTrue("Consumers must be initialized in batches of two: " + duration + "ms", duration >= 180);
+		stop(handler, ids, 5000);
+		
+		ConsumerTestSupport.TestConsumer.reset();
+		start = System.currentTimeMillis();
+		ids = start(handler, "start-concurrency", 8);
+		duration = System.currentTimeMillis() - start;
+		Assert.assertTrue("Consumers must be initialized in parallel", ConsumerTestSupport.TestConsumer.getMaxConcurrentInitializations() > 2);
+		Assert.assertTrue("Consumers must be initialized in parallel: " + duration + "ms", duration < 350);
+		stop(handler, ids, 5000);
+	}
+	
+	@Test
+	public void testRollbackOnFailure() throws Exception {
+		
+		AsyncConsumerContextHttpRequestHandler handler = handler("start-rollback", ConsumerTestSupport.TestConsumer.CFG_OPT_FAIL_ON_INITIALIZATION, "4");
+		
+		// sequential: consumers 1-3 are created, the 4th one fails, the remaining ones are never created
+		try {
+			start(handler, "start-rollback", 6, "concurrency", "1");
+			Assert.fail("The start must fail");
+		} catch(HttpRequestProcessingException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains("Forced failure initializing consumer #4"));
+		}
+		List<ConsumerTestSupport.TestConsumer> consumers = ConsumerTestSupport.TestConsumer.getInitialized();
+		Assert.assertEquals(3, consumers.size());
+		assertRolledBack(handler, "start-rollback", consumers);
+		
+		// parallel: all consumers created besides the failing one are shut down
+		ConsumerTestSupport.TestConsumer.reset();
+		try {
+			start(handler, "start-rollback", 16, "concurrency", "4");
+			Assert.fail("The start must fail");
+		} catch(HttpRequestProcessingException e) {
+			//
+		}
+		consumers = ConsumerTestSupport.TestConsumer.getInitialized();
+		Assert.assertTrue(consumers.size() >= 3 && consumers.size() < 16);
+		assertRolledBack(handler, "start-rollback", consumers);
+	}
+	
+	@Test
+	public void testAdmissionRejected() throws Exception {
+		
+		AsyncConsumerContextHttpRequestHandler handler = handler("start-admitted");
+		handler("start-rejected", "consumer.async.start-rejected.threads", "2");
+		try {
+			respond(handler, new String[]{"start-admitted", "start-rejected"}, ConsumerTestSupport.options("count", "3"));
+			Assert.fail("The start must be rejected");
+		} catch(HttpRequestProcessingException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains("start-rejected"));
+		}
+		Assert.assertTrue("No consumer must be created", ConsumerTestSupport.TestConsumer.getInitialized().isEmpty());
+		Assert.assertEquals(64, available(handler, "start-admitted"));
+		Assert.assertEquals(2, available(handler, "start-rejected"));
+	}
+	
+	@Test
+	public void testParallelStop() throws Exception {
+		
+		AsyncConsumerContextHttpRequestHandler handler = handler("stop-parallel", ConsumerTestSupport.TestConsumer.CFG_OPT_SHUTDOWN_MILLIS, "200");
+		List<String> ids = start(handler, "stop-parallel", 4);
+		Assert.assertEquals(4, ids.size());
+		
+		long start = System.currentTimeMillis();
+		Map<String, String> states = stop(handler, ids, 5000);
+		long duration = System.currentTimeMillis() - start;
+		Assert.assertTrue("Consumers must be stopped in parallel: " + duration + "ms", duration < 600);
+		for(String id : ids)
+			Assert.assertEquals("1", states.get(id));
+		for(ConsumerTestSupport.TestConsumer consumer : ConsumerTestSupport.TestConsumer.getInitialized())
+			Assert.assertTrue(consumer.isTerminated());
+		
+		// evicted from the registry, the final statistics remain available
+		Assert.assertTrue(collectStats(handler, ids.get(0)).contains("state=\"stopped\""));
+		Assert.assertEquals("2", stop(handler, ids.subList(0, 1), 5000).get(ids.get(0)));
+		Assert.assertEquals(64, available(handler, "stop-parallel"));
+	}
+	
+	@Test
+	public void testDrainDeadline() throws Exception {
+		
+		AsyncConsumerContextHttpRequestHandler handler = handler("stop-drain", ConsumerTestSupport.TestConsumer.CFG_OPT_IGNORE_SHUTDOWN, "true");
+		List<String> ids = start(handler, "stop-drain", 1);
+		ConsumerTestSupport.TestConsumer consumer = ConsumerTestSupport.TestConsumer.getInitialized().get(0);
+		awaitRunning(consumer);
+		
+		long start = System.currentTimeMillis();
+		Assert.assertEquals("4", stop(handler, ids, 100).get(ids.get(0)));
+		Assert.assertTrue(System.currentTimeMillis() - start < 2000);
+		
+		// the consumer is interrupted and releases its capacity on termination, yet it remains registered
+		long deadline = System.currentTimeMillis() + 5000;
+		while((!consumer.isTerminated() || available(handler, "stop-drain") < 64) && System.currentTimeMillis() < deadline)
+			Thread.sleep(5);
+		Assert.assertTrue(consumer.isTerminated());
+		Assert.assertEquals(64, available(handler, "stop-drain"));
+		Assert.assertFalse(collectStats(handler, ids.get(0)).contains("state=\"stopped\""));
+		
+		// stopping again evicts it
+		Assert.assertEquals("1", stop(handler, ids, 100).get(ids.get(0)));
+		Assert.assertTrue(collectStats(handler, ids.get(0)).contains("state=\"stopped\""));
+	}
+	
+	@Test
+	public void testStopUncooperativeConsumer() throws Exception {
+		
+		AsyncConsumerContextHttpRequestHandler handler = handler("stop-uncooperative", ConsumerTestSupport.TestConsumer.CFG_OPT_IGNORE_INTERRUPT, "true");
+		List<String> ids = start(handler, "stop-uncooperative", 1);
+		ConsumerTestSupport.TestConsumer consumer = ConsumerTestSupport.TestConsumer.getInitialized().get(0);
+		awaitRunning(consumer);
+		
+		// the consumer is interrupted by the first stop but keeps running, thus the second stop times out as well
+		Assert.assertEquals("4", stop(handler, ids, 100).get(ids.get(0)));
+		Assert.assertEquals("4", stop(handler, ids, 100).get(ids.get(0)));
+		Assert.assertFalse(consumer.isTerminated());
+		Assert.assertEquals(63, available(handler, "stop-uncooperative"));
+		Assert.assertFalse(collectStats(handler, ids.get(0)).contains("state=\"stopped\""));
+		
+		consumer.release();
+		Assert.assertEquals("1", stop(handler, ids, 5000).get(ids.get(0)));
+		Assert.assertTrue(consumer.isTerminated());
+		Assert.assertEquals(64, available(handler, "stop-uncooperative"));
+		Assert.assertTrue(collectStats(handler, ids.get(0)).contains("state=\"stopped\""));
+	}
+	
+	@Test
+	public void testStopQueuedConsumer() throws Exception {
+		
+		AsyncConsumerContextHttpRequestHandler handler = handler("stop-queued", "consumer.async.stop-queued.threads", "1", "consumer.async.stop-queued.queue", "1");
+		List<String> ids = start(handler, "stop-queued", 2);
+		Assert.assertEquals(0, available(handler, "stop-queued"));
+		
+		// one consumer runs, the other one waits for the thread
+		List<ConsumerTestSupport.TestConsumer> consumers = ConsumerTestSupport.TestConsumer.getInitialized();
+		long deadline = System.currentTimeMillis() + 5000;
+		while(!consumers.get(0).isRunning() && !consumers.get(1).isRunning() && System.currentTimeMillis() < deadline)
+			Thread.sleep(5);
+		ConsumerTestSupport.TestConsumer queued = (consumers.get(0).isRunning() ? consumers.get(1) : consumers.get(0));
+		ConsumerTestSupport.TestConsumer running = (consumers.get(0).isRunning() ? consumers.get(0) : consumers.get(1));
+		
+		// the queued consumer is withdrawn without waiting for the drain timeout
+		long start = System.currentTimeMillis();
+		Assert.assertEquals("1", stop(handler, ids.subList(ids.indexOf(queued.getId()), ids.indexOf(queued.getId()) + 1), 5000).get(queued.getId()));
+		Assert.assertTrue(System.currentTimeMillis() - start < 2000);
+		Assert.assertEquals(1, available(handler, "stop-queued"));
+		Assert.assertFalse(queued.isRunning() || queued.isTerminated());
+		
+		Assert.assertEquals("1", stop(handler, ids.subList(ids.indexOf(running.getId()), ids.indexOf(running.getId()) + 1), 5000).get(running.getId()));
+		Assert.assertEquals(2, available(handler, "stop-queued"));
+	}
+	
+	@Test
+	public void testStoppedStatisticsEviction() throws Exception {
+		
+		AsyncConsumerContextHttpRequestHandler handler = handler("stop-evict", "consumer.stop.retainedStatistics", "2");
+		List<String> ids = start(handler, "stop-evict", 3);
+		
+		stop(handler, ids.subList(0, 1), 5000);
+		stop(handler, ids.subList(1, 2), 5000);
+		// accessing the first one makes the second one the least recently accessed
+		Assert.assertTrue(collectStats(handler, ids.get(0)).contains("state=\"stopped\""));
+		stop(handler, ids.subList(2, 3), 5000);
+		
+		Assert.assertTrue(collectStats(handler, ids.get(0)).contains("state=\"stopped\""));
+		Assert.assertTrue(collectStats(handler, ids.get(2)).contains("state=\"stopped\""));
+		try {
+			collectStats(handler, ids.get(1));
+			Assert.fail("Statistics must have been evicted");
+		} catch(HttpRequestProcessingException e) {
+			//
+		}
+	}
+	
+	/**
+	 * Creates a handler providing the given consumer type backed by {@link ConsumerTestSupport.TestConsumer}
+	 * @param consumerType
+	 * @param settings
+	 * @return
+	 */
+	private static AsyncConsumerContextHttpRequestHandler handler(String consumerType, String... settings) {
+		Map<String, String> configOptions = new HashMap<String, String>();
+		configOptions.put("consumer.async." + consumerType, ConsumerTestSupport.TestConsumer.class.getName());
+		for(int i = 0; i < settings.length; i += 2)
+			configOptions.put(settings[i], settings[i+1]);
+		AsyncConsumerContextHttpRequestHandler handler = new TestContextRequestHandler();
+		handler.initialize(configOptions);
+		return handler;
+	}
+	
+	private static List<String> start(AsyncConsumerContextHttpRequestHandler handler, String consumerType, int count, String... params) throws HttpRequestProcessingException {
+		Map<String, List<String>> queryParams = ConsumerTestSupport.options(params);
+		ConsumerTestSupport.put(queryParams, "count", String.valueOf(count));
+		return ids(respond(handler, new String[]{consumerType}, queryParams));
+	}
+	
+	private static List<String> ids(String response) {
+		List<String> ids = new ArrayList<String>();
+		Matcher matcher = CONSUMER_ID.matcher(response);
+		while(matcher.find())
+			ids.add(matcher.group(1));
+		return ids;
+	}
+	
+	private static int count(String response, String fragment) {
+		int count = 0;
+		for(int idx = response.indexOf(fragment); idx != -1; idx = response.indexOf(fragment, idx + 1))
+			count++;
+		return count;
+	}
+	
+	private static void assertRolledBack(AsyncConsumerContextHttpRequestHandler handler, String consumerType, List<ConsumerTestSupport.TestConsumer> consumers) {
+		for(ConsumerTestSupport.TestConsumer consumer : consumers) {
+			Assert.assertTrue("Created consumers must be shut down", consumer.isShutdown());
+			Assert.assertFalse("Created consumers must never run", consumer.isRunning() || consumer.isTerminated());
+			try {
+				collectStats(handler, consumer.getId());
+				Assert.fail("Consumer must not be registered: " + consumer.getId());
+			} catch(HttpRequestProcessingException e) {
+				//
+			}
+		}
+		Assert.assertEquals("The reservation must be released", 64, available(handler, consumerType));
+	}
+	
+	private static String respond(AsyncConsumerContextHttpRequestHandler handler, String[] consumerTypes, Map<String, List<String>> queryParams) throws HttpRequestProcessingException {
+		XmlResponseWriter responseWriter = new XmlResponseWriter().startDocument();
+		handler.startConsumer(consumerTypes, responseWriter, queryParams);
+		return responseWriter.finish().toString(UTF8);
+	}
+	
+	private static Map<String, String> stop(AsyncConsumerContextHttpRequestHandler handler, List<String> ids, int drainTimeoutMillis) throws HttpRequestProcessingException {
+		XmlResponseWriter responseWriter = new XmlResponseWriter().startDocument();
+		handler.shutdownConsumer(ids.toArray(new String[ids.size()]), responseWriter, ConsumerTestSupport.options("drainTimeout", String.valueOf(drainTimeoutMillis)));
+		Map<String, String> states = new HashMap<String, String>();
+		Matcher matcher = SHUTDOWN_STATE.matcher(responseWriter.finish().toString(UTF8));
+		while(matcher.find())
+			states.put(matcher.group(1), matcher.group(2));
+		return states;
+	}
+	
+	private static String collectStats(AsyncConsumerContextHttpRequestHandler handler, String id) throws HttpRequestProcessingException {
+		XmlResponseWriter responseWriter = new XmlResponseWriter().startDocument();
+		handler.collectHandlerStatistics(new String[]{id}, false, 0, responseWriter);
+		return responseWriter.finish().toString(UTF8);
+	}
+	
+	private static int available(AsyncConsumerContextHttpRequestHandler handler, String consumerType) {
+		XmlResponseWriter responseWriter = new XmlResponseWriter().startDocument();
+		handler.collectSchedulerStatistics(new String[]{consumerType}, responseWriter);
+		Matcher matcher = POOL_AVAILABLE.matcher(responseWriter.finish().toString(UTF8));
+		Assert.assertTrue(matcher.find());
+		return Integer.parseInt(matcher.group(1));
+	}
+	
+	private static void awaitRunning(ConsumerTestSupport.TestConsumer consumer) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while(!consumer.isRunning() && System.currentTimeMillis() < deadline)
+			Thread.sleep(5);
+		Assert.assertTrue(consumer.isRunning());
+	}
+	
+	/**
+	 * Assigns sequential identifiers to the consumers: the uuid generator used by default requires corba classes 
+	 * which recent runtimes do not provide anymore
+	 * @author ckreutzfeldt
+	 * @since 26.03.2012
+	 */
+	private static class TestContextRequestHandler extends AsyncConsumerContextHttpRequestHandler {
+		
+		private static final AtomicInteger sequence = new AtomicInteger(0);
+		
+		protected IAsyncInputConsumer instantiateAsyncInputConsumer(String consumerType, Map<String, List<String>> configOptions) throws AsyncInputConsumerException {
+			return ConsumerTestSupport.initialize(new ConsumerTestSupport.TestConsumer(), consumerType, consumerType + "-" + sequence.incrementAndGet(), configOptions);
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.handler.async;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Test case for {@link ConsumerRamp} and {@link RampProfile}
+ * @author ckreutzfeldt
+ * @since 06.03.2012
+ */
+public class TestConsumerRamp {
+
+	@Test
+	public void testLinearRamp() {
+		
+		ConsumerRamp ramp = new ConsumerRamp("ramp-1", "jms", ConsumerRamp.Direction.UP, RampProfile.linear(), 100, 1000, 5000);
+		Assert.assertEquals("No consumers due before the start", 0, ramp.claimDue(4000));
+		Assert.assertEquals("No consumers due at the start", 0, ramp.claimDue(5000));
+		Assert.assertEquals("A quarter must be due", 25, ramp.claimDue(5250));
+		Assert.assertEquals("Nothing new must be due", 0, ramp.claimDue(5250));
+		Assert.assertEquals("Another quarter must be due", 25, ramp.claimDue(5500));
+		Assert.assertEquals("The dispatched count must be 50", 50, ramp.getDispatched());
+		Assert.assertEquals("The ramp must still run", ConsumerRamp.State.RUNNING, ramp.getState());
+		Assert.assertFalse("The ramp must not be fully dispatched", ramp.isFullyDispatched());
+		Assert.assertEquals("The rest must be due", 50, ramp.claimDue(7000));
+		Assert.assertTrue("The ramp must be fully dispatched", ramp.isFullyDispatched());
+		
+		for(int i = 0; i < 99; i++)
+			ramp.recordSuccess();
+		Assert.assertEquals("The ramp must still run", ConsumerRamp.State.RUNNING, ramp.getState());
+		ramp.recordFailure();
+		Assert.assertEquals("The ramp must be completed", ConsumerRamp.State.COMPLETED, ramp.getState());
+	}
+	
+	@Test
+	public void testStepRamp() {
+		
+		ConsumerRamp ramp = new ConsumerRamp("ramp-1", "jms", ConsumerRamp.Direction.UP, RampProfile.step(4), 10, 1000, 0);
+		Assert.assertEquals("The first step must be due right away", 2, ramp.claimDue(0));
+		Assert.assertEquals("Nothing new must be due within the first step", 0, ramp.claimDue(249));
+		Assert.assertEquals("The second step must be due", 3, ramp.claimDue(250));
+		Assert.assertEquals("The last step must be due", 5, ramp.claimDue(999));
+		Assert.assertEquals("Nothing new must be due", 0, ramp.claimDue(2000));
+	}
+	
+	@Test
+	public void testCurveRamp() {
+		
+		RampProfile profile = RampProfile.parse("curve", 0, "0, 1, 4");
+		Assert.assertEquals("curve", profile.getName());
+		Assert.assertEquals(0.0, profile.fraction(0), 1e-9);
+		Assert.assertEquals(0.125, profile.fraction(0.25), 1e-9);
+		Assert.assertEquals(0.25, profile.fraction(0.5), 1e-9);
+		Assert.assertEquals(0.625, profile.fraction(0.75), 1e-9);
+		Assert.assertEquals(1.0, profile.fraction(1), 1e-9);
+		
+		ConsumerRamp ramp = new ConsumerRamp("ramp-1", "jms", ConsumerRamp.Direction.DOWN, profile, 8, 1000, 0);
+		Assert.assertEquals(2, ramp.getTarget(500));
+		Assert.assertEquals(8, ramp.getTarget(1000));
+		
+		Assert.assertEquals("linear", RampProfile.parse(null, 0, null).getName());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testCurveWithDecreasingPoints() {
+		RampProfile.parse("curve", 0, "2,1");
+	}
+	
+	@Test
+	public void testCurveWithNonFinitePoints() {
+		for(String curve : new String[]{"0,NaN,4", "0,1,NaN", "0,1,Infinity", "-Infinity,1", "NaN,NaN"}) {
+			try {
+				RampProfile.parse("curve", 0, curve);
+				Assert.fail("Curve '" + curve + "' must be rejected");
+			} catch(IllegalArgumentException e) {
+				//
+			}
+		}
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testUnknownProfile() {
+		RampProfile.parse("sine", 0, null);
+	}
+	
+	@Test
+	public void testCancelRamp() {
+		
+		ConsumerRamp ramp = new ConsumerRamp("ramp-1", "jms", ConsumerRamp.Direction.UP, RampProfile.linear(), 10, 1000, 0);
+		Assert.assertEquals(3, ramp.claimDue(300));
+		Assert.assertEquals("The undispatched consumers must be returned", 7, ramp.cancel());
+		Assert.assertEquals("Cancelling twice must not return anything", 0, ramp.cancel());
+		Assert.assertEquals("A cancelled ramp must not dispatch", 0, ramp.claimDue(1000));
+		Assert.assertTrue(ramp.isFullyDispatched());
+		Assert.assertEquals(ConsumerRamp.State.CANCELLED, ramp.getState());
+	}
+	
+	@Test
+	public void testZeroDurationRamp() {
+		ConsumerRamp ramp = new ConsumerRamp("ramp-1", "jms", ConsumerRamp.Direction.UP, RampProfile.linear(), 5, 0, 100);
+		Assert.assertEquals("All consumers must be due right away", 5, ramp.claimDue(100));
+	}
+	
+}
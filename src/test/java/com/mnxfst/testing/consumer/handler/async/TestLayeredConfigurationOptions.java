@@ -0,0 +1,109 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.handler.async;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mnxfst.testing.consumer.handler.QueryParameters;
+
+/**
+ * Test case for {@link LayeredConfigurationOptions}
+ * @author ckreutzfeldt
+ * @since 24.03.2012
+ */
+public class TestLayeredConfigurationOptions {
+
+	@Test
+	public void testOverrides() {
+		
+		Map<String, List<String>> base = new HashMap<String, List<String>>();
+		base.put("jms.destination", Arrays.asList("queue-a"));
+		base.put("jms.threads", Arrays.asList("4"));
+		QueryParameters overrides = QueryParameters.parse("/consumer?start=jms&jms.destination=queue-b");
+		
+		Map<String, List<String>> options = new LayeredConfigurationOptions(base, overrides);
+		Assert.assertEquals(Arrays.asList("queue-b"), options.get("jms.destination"));
+		Assert.assertEquals(Arrays.asList("4"), options.get("jms.threads"));
+		Assert.assertEquals(Arrays.asList("jms"), options.get("start"));
+		Assert.assertTrue(options.containsKey("jms.threads"));
+		Assert.assertFalse(options.containsKey("jms.user"));
+		Assert.assertNull(options.get("jms.user"));
+		
+		// hidden base entries are skipped while iterating
+		Assert.assertEquals(3, options.size());
+		Assert.assertEquals(new HashSet<String>(Arrays.asList("start", "jms.destination", "jms.threads")), options.keySet());
+		for(Map.Entry<String, List<String>> entry : options.entrySet()) {
+			if(entry.getKey().equals("jms.destination"))
+				Assert.assertEquals(Arrays.asList("queue-b"), entry.getValue());
+		}
+		
+		// the base is referenced, not copied
+		Assert.assertEquals(2, base.size());
+		Assert.assertEquals(base, new LayeredConfigurationOptions(base, null));
+	}
+	
+	@Test
+	public void testSharedAcrossThreads() throws Exception {
+		
+		final Map<String, List<String>> base = new HashMap<String, List<String>>();
+		for(int i = 0; i < 100; i++)
+			base.put("option." + i, Arrays.asList(String.valueOf(i)));
+		QueryParameters overrides = QueryParameters.parse("/consumer?start=jms&option.1=x&option.2=y");
+		final Map<String, List<String>> options = new LayeredConfigurationOptions(base, overrides);
+		
+		// the overrides are copied on creation, later changes do not show up
+		overrides.add("option.3", "z");
+		Assert.assertEquals(101, options.size());
+		Assert.assertEquals(Arrays.asList("3"), options.get("option.3"));
+		
+		// all threads see the same entries
+		final AtomicInteger mismatches = new AtomicInteger(0);
+		Thread[] threads = new Thread[8];
+		for(int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					for(int j = 0; j < 100; j++) {
+						if(new HashMap<String, List<String>>(options).size() != 101 || !Arrays.asList("x").equals(options.get("option.1")))
+							mismatches.incrementAndGet();
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for(Thread thread : threads)
+			thread.join();
+		Assert.assertEquals(0, mismatches.get());
+	}
+	
+	@Test(expected=UnsupportedOperationException.class)
+	public void testReadOnly() {
+		new LayeredConfigurationOptions(new HashMap<String, List<String>>(), null).put("a", Arrays.asList("b"));
+	}
+	
+}
@@ -0,0 +1,292 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.ingest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+import junit.framework.Assert;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.codec.http.HttpRequestDecoder;
+import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
+import org.junit.Test;
+
+import com.mnxfst.testing.consumer.ConsumerTestSupport;
+import com.mnxfst.testing.consumer.handler.ContextRequestRouter;
+import com.mnxfst.testing.consumer.handler.StreamingRequestDispatcher;
+import com.mnxfst.testing.consumer.handler.XmlResponseWriter;
+import com.mnxfst.testing.consumer.handler.async.IRequestBodyHandler;
+import com.mnxfst.testing.consumer.handler.async.IContextRequestHandler;
+
+/**
+ * Test case for {@link IngestContextRequestHandler} receiving bodies over loopback through the {@link StreamingRequestDispatcher}
+ * @author ckreutzfeldt
+ * @since 23.03.2012
+ */
+public class TestIngestContextRequestHandler {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	@Test
+	public void testDelimitedChunkedUpload() throws Exception {
+		
+		ConsumerTestSupport.PayloadAnalyzer.reset();
+		Map<String, String> options = new HashMap<String, String>();
+		options.put("consumer.async.ingest.message-analyzer.payload", ConsumerTestSupport.PayloadAnalyzer.class.getName());
+		IngestContextRequestHandler handler = new IngestContextRequestHandler();
+		handler.initialize(options);
+		ServerBootstrap server = new ServerBootstrap(new NioServerSocketChannelFactory(Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+		ChannelGroup channels = new DefaultChannelGroup();
+		try {
+			Channel channel = bind(server, channels, handler);
+			
+			// blank lines are skipped, the last message comes without delimiter
+			StringBuffer body = new StringBuffer();
+			long bytes = 0;
+			for(int i = 0; i < 1000; i++) {
+				body.append("message-").append(i).append(i % 100 == 0 ? "\n\n" : "\n");
+				bytes += ("message-" + i).length();
+			}
+			body.append("last");
+			bytes += 4;
+			
+			// small chunks make messages span chunk boundaries
+			HttpURLConnection connection = open(channel, "/ingest");
+			connection.setChunkedStreamingMode(7);
+			OutputStream out = connection.getOutputStream();
+			out.write(body.toString().getBytes(UTF8));
+			out.close();
+			String response = read(connection);
+			Assert.assertTrue(response, response.contains("<ingest messages=\"1001\" bytes=\""+bytes+"\"/>"));
+			Assert.assertFalse(response, response.contains("<errors>"));
+			
+			long deadline = System.currentTimeMillis() + 5000;
+			while(ConsumerTestSupport.PayloadAnalyzer.getPayloads().size() < 1001 && System.currentTimeMillis() < deadline)
+				Thread.sleep(10);
+			Assert.assertEquals(1001, ConsumerTestSupport.PayloadAnalyzer.getPayloads().size());
+			Assert.assertEquals("message-0", ConsumerTestSupport.PayloadAnalyzer.getPayloads().get(0));
+			Assert.assertTrue(ConsumerTestSupport.PayloadAnalyzer.getPayloads().contains("message-999"));
+			Assert.assertTrue(ConsumerTestSupport.PayloadAnalyzer.getPayloads().contains("last"));
+			Assert.assertFalse(ConsumerTestSupport.PayloadAnalyzer.getPayloads().contains(""));
+			
+			Assert.assertEquals(1001, handler.getStatistics().getMessageCount());
+			Assert.assertEquals(bytes, handler.getStatistics().getByteCount());
+			XmlResponseWriter writer = new XmlResponseWriter();
+			writer.startElement("section");
+			handler.writeStatistics(writer);
+			String xml = writer.finish().toString(UTF8);
+			Assert.assertTrue(xml, xml.contains("<ingest framing=\"delimiter\" requests=\"1\" active=\"0\" messages=\"1001\""));
+			Assert.assertTrue(xml, xml.contains("<pipeline name=\"analyzer-ingest\""));
+		} finally {
+			// keep-alive connections must be closed before the workers may terminate
+			channels.close().awaitUninterruptibly();
+			server.releaseExternalResources();
+			handler.shutdown(1000);
+		}
+	}
+	
+	@Test
+	public void testLengthPrefixedWithFramingError() throws Exception {
+		
+		Map<String, String> options = new HashMap<String, String>();
+		options.put(IngestContextRequestHandler.CFG_OPT_LENGTH_FIELD_SIZE, "2");
+		options.put(IngestContextRequestHandler.CFG_OPT_MAX_FRAME_SIZE, "100");
+		IngestContextRequestHandler handler = new IngestContextRequestHandler();
+		handler.initialize(options);
+		Assert.assertNull("No analyzers configured", handler.getPipeline());
+		ServerBootstrap server = new ServerBootstrap(new NioServerSocketChannelFactory(Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+		ChannelGroup channels = new DefaultChannelGroup();
+		try {
+			Channel channel = bind(server, channels, handler);
+			
+			// fixed length bodies exceeding the max. chunk size of the decoder are streamed as well
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			DataOutputStream data = new DataOutputStream(body);
+			for(int i = 0; i < 500; i++) {
+				byte[] message = ("message-" + i).getBytes(UTF8);
+				data.writeShort(message.length);
+				data.write(message);
+			}
+			HttpURLConnection connection = open(channel, "/ingest?framing=length");
+			connection.setFixedLengthStreamingMode(body.size());
+			OutputStream out = connection.getOutputStream();
+			out.write(body.toByteArray());
+			out.close();
+			String response = read(connection);
+			Assert.assertTrue(response, response.contains("<ingest messages=\"500\""));
+			Assert.assertFalse(response, response.contains("<errors>"));
+			
+			// the second message exceeds the max. frame size, the rest of the body is ignored
+			body.reset();
+			data.writeShort(2);
+			data.writeShort(0x4142);
+			data.writeShort(101);
+			data.write(new byte[101]);
+			data.writeShort(2);
+			data.writeShort(0x4142);
+			connection = open(channel, "/ingest?framing=length");
+			connection.setChunkedStreamingMode(16);
+			out = connection.getOutputStream();
+			out.write(body.toByteArray());
+			out.close();
+			response = read(connection);
+			Assert.assertTrue(response, response.contains("<ingest messages=\"1\" bytes=\"2\"/><errors><error>Frame of 101 bytes exceeds the maximum frame size of 100</error></errors>"));
+			
+			// incomplete trailing messages are reported as well
+			connection = open(channel, "/ingest?framing=length");
+			connection.setFixedLengthStreamingMode(3);
+			out = connection.getOutputStream();
+			out.write(new byte[] {0, 2, 'A'});
+			out.close();
+			response = read(connection);
+			Assert.assertTrue(response, response.contains("<error>Incomplete message of 3 bytes at the end of the body</error>"));
+			
+			Assert.assertEquals(501, handler.getStatistics().getMessageCount());
+			Assert.assertEquals(2, handler.getFramingErrorCount());
+			Assert.assertEquals(0, handler.getAbortedRequestCount());
+		} finally {
+			// keep-alive connections must be closed before the workers may terminate
+			channels.close().awaitUninterruptibly();
+			server.releaseExternalResources();
+			handler.shutdown(1000);
+		}
+	}
+	
+	@Test
+	public void testSplitFrameFollowedByWholeFrames() throws Exception {
+		
+		IngestContextRequestHandler handler = new IngestContextRequestHandler();
+		handler.initialize(new HashMap<String, String>());
+		try {
+			// the message spanning both chunks is completed by copying the 6 bytes it lacks, the rest is decoded in place
+			IRequestBodyHandler body = handler.startRequest(null, new HashMap<String, List<String>>(), false, null);
+			StringBuffer chunk = new StringBuffer("age-1\n");
+			for(int i = 2; i < 1000; i++)
+				chunk.append("message-").append(i).append('\n');
+			body.content(ChannelBuffers.wrappedBuffer("message-0\nmess".getBytes(UTF8)));
+			body.content(ChannelBuffers.wrappedBuffer(chunk.toString().getBytes(UTF8)));
+			Assert.assertEquals(1000, handler.getStatistics().getMessageCount());
+			Assert.assertEquals(4 + 6, handler.getCarriedByteCount());
+			body.abort();
+			
+			// the length field spans both chunks: one byte completes it, the frame itself lacks another 9 bytes
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream data = new DataOutputStream(bytes);
+			for(int i = 0; i < 1000; i++) {
+				byte[] message = ("message-" + i).getBytes(UTF8);
+				data.writeInt(message.length);
+				data.write(message);
+			}
+			byte[] stream = bytes.toByteArray();
+			body = handler.startRequest(null, framing("length"), false, null);
+			body.content(ChannelBuffers.wrappedBuffer(stream, 0, 4 + 9 + 3));
+			body.content(ChannelBuffers.wrappedBuffer(stream, 16, stream.length - 16));
+			Assert.assertEquals(2000, handler.getStatistics().getMessageCount());
+			Assert.assertEquals(10 + 3 + 1 + 9, handler.getCarriedByteCount());
+			body.abort();
+			Assert.assertEquals(0, handler.getFramingErrorCount());
+		} finally {
+			handler.shutdown(1000);
+		}
+	}
+	
+	private static Map<String, List<String>> framing(String framing) {
+		Map<String, List<String>> parameters = new HashMap<String, List<String>>();
+		parameters.put(IngestContextRequestHandler.REQUEST_PARAM_FRAMING, Arrays.asList(framing));
+		return parameters;
+	}
+	
+	/**
+	 * Binds a server routing requests towards /ingest to the given handler. The decoder splits bodies into chunks of 
+	 * 64 bytes at most. All channels are added to the provided group
+	 * @param server
+	 * @param channels
+	 * @param handler
+	 * @return
+	 */
+	private static Channel bind(ServerBootstrap server, final ChannelGroup channels, IngestContextRequestHandler handler) {
+		final ContextRequestRouter<IContextRequestHandler> router = new ContextRequestRouter<IContextRequestHandler>();
+		router.register("/ingest", handler);
+		server.setPipelineFactory(new ChannelPipelineFactory() {
+			public ChannelPipeline getPipeline() throws Exception {
+				ChannelPipeline pipeline = Channels.pipeline();
+				pipeline.addLast("group", new SimpleChannelUpstreamHandler() {
+					public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent event) throws Exception {
+						channels.add(event.getChannel());
+						super.channelOpen(ctx, event);
+					}
+				});
+				pipeline.addLast("decoder", new HttpRequestDecoder(4096, 8192, 64));
+				pipeline.addLast("encoder", new HttpResponseEncoder());
+				pipeline.addLast("streaming", new StreamingRequestDispatcher(router, null, StreamingRequestDispatcher.DEFAULT_MAX_BODY_SIZE));
+				return pipeline;
+			}
+		});
+		Channel channel = server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		channels.add(channel);
+		return channel;
+	}
+	
+	private static HttpURLConnection open(Channel channel, String path) throws Exception {
+		InetSocketAddress address = (InetSocketAddress)channel.getLocalAddress();
+		HttpURLConnection connection = (HttpURLConnection)new URL("http", address.getAddress().getHostAddress(), address.getPort(), path).openConnection();
+		connection.setDoOutput(true);
+		connection.setRequestMethod("POST");
+		connection.setConnectTimeout(5000);
+		connection.setReadTimeout(5000);
+		return connection;
+	}
+	
+	private static String read(HttpURLConnection connection) throws Exception {
+		Assert.assertEquals(200, connection.getResponseCode());
+		InputStream in = connection.getInputStream();
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		for(int read = in.read(buffer); read != -1; read = in.read(buffer))
+			response.write(buffer, 0, read);
+		in.close();
+		return new String(response.toByteArray(), UTF8);
+	}
+	
+}
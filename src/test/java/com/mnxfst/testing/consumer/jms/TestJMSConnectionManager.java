@@ -0,0 +1,144 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.jms;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mnxfst.testing.consumer.handler.StatisticsSectionRegistry;
+import com.mnxfst.testing.consumer.handler.XmlResponseWriter;
+
+/**
+ * Test case for {@link JMSConnectionManager} running against an embedded in-vm broker
+ * @author ckreutzfeldt
+ * @since 13.03.2012
+ */
+public class TestJMSConnectionManager {
+
+	private static final String BROKER_URL = "vm://ptest-consumer?create=false";
+	
+	private BrokerService broker = null;
+	
+	@Before
+	public void startBroker() throws Exception {
+		broker = new BrokerService();
+		broker.setBrokerName("ptest-consumer");
+		broker.setPersistent(false);
+		broker.setUseJmx(false);
+		broker.setAdvisorySupport(false);
+		broker.start();
+		broker.waitUntilStarted();
+	}
+	
+	@After
+	public void stopBroker() throws Exception {
+		broker.stop();
+		broker.waitUntilStopped();
+	}
+	
+	@Test
+	public void testLeaseAndRelease() throws Exception {
+		
+		JMSConnectionManager manager = JMSConnectionManager.getInstance();
+		ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(BROKER_URL);
+		
+		List<JMSConnectionManager.ConnectionLease> leases = new ArrayList<JMSConnectionManager.ConnectionLease>();
+		for(int i = 0; i < 5; i++)
+			leases.add(manager.lease(connectionFactory, BROKER_URL, "user", null, 2));
+		Assert.assertEquals("The connections must be limited", 2, manager.getConnectionCount());
+		Assert.assertEquals(5, manager.getLeaseCount());
+		Assert.assertNotSame("Leases must be spread across the connections", leases.get(0).getConnection(), leases.get(1).getConnection());
+		Assert.assertSame(leases.get(0).getConnection(), leases.get(2).getConnection());
+		
+		// different credentials must not share connections
+		JMSConnectionManager.ConnectionLease other = manager.lease(connectionFactory, BROKER_URL, "other", null, 2);
+		Assert.assertEquals(3, manager.getConnectionCount());
+		manager.release(other);
+		Assert.assertEquals(2, manager.getConnectionCount());
+		
+		for(JMSConnectionManager.ConnectionLease lease : leases)
+			manager.release(lease);
+		// releasing twice must not affect other leases
+		manager.release(leases.get(0));
+		Assert.assertEquals("Connections must be closed with their last lease", 0, manager.getConnectionCount());
+		Assert.assertEquals(0, manager.getLeaseCount());
+		Assert.assertEquals("Idle pools must be dropped", 0, manager.getPoolCount());
+		
+		// the pool is re-opened on demand
+		JMSConnectionManager.ConnectionLease lease = manager.lease(connectionFactory, BROKER_URL, "user", null, 2);
+		Assert.assertEquals(1, manager.getConnectionCount());
+		manager.release(lease);
+		Assert.assertEquals(0, manager.getConnectionCount());
+		Assert.assertEquals(0, manager.getPoolCount());
+	}
+	
+	@Test
+	public void testPasswordsAreNotKept() throws Exception {
+		
+		String key = JMSConnectionManager.getPoolKey(BROKER_URL, "user", "secret");
+		Assert.assertFalse(key, key.contains("secret"));
+		Assert.assertEquals(key, JMSConnectionManager.getPoolKey(BROKER_URL, "user", "secret"));
+		Assert.assertFalse(key.equals(JMSConnectionManager.getPoolKey(BROKER_URL, "user", "other")));
+		Assert.assertFalse(key.equals(JMSConnectionManager.getPoolKey(BROKER_URL, "user", null)));
+		
+		// different passwords must not share connections
+		JMSConnectionManager manager = JMSConnectionManager.getInstance();
+		ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(BROKER_URL);
+		JMSConnectionManager.ConnectionLease first = manager.lease(connectionFactory, BROKER_URL, "user", "secret", 1);
+		JMSConnectionManager.ConnectionLease second = manager.lease(connectionFactory, BROKER_URL, "user", "secret", 1);
+		JMSConnectionManager.ConnectionLease other = manager.lease(connectionFactory, BROKER_URL, "user", "other", 1);
+		Assert.assertSame(first.getConnection(), second.getConnection());
+		Assert.assertNotSame(first.getConnection(), other.getConnection());
+		Assert.assertEquals(2, manager.getPoolCount());
+		manager.release(other);
+		Assert.assertEquals(1, manager.getPoolCount());
+		manager.release(first);
+		manager.release(second);
+		Assert.assertEquals(0, manager.getPoolCount());
+	}
+	
+	@Test
+	public void testStatisticsSection() throws Exception {
+		
+		JMSConnectionManager manager = JMSConnectionManager.getInstance();
+		Assert.assertSame("The manager must be registered as statistics section", manager, StatisticsSectionRegistry.getSection(JMSConnectionManager.SECTION_NAME));
+		
+		JMSConnectionManager.ConnectionLease lease = manager.lease(new ActiveMQConnectionFactory(BROKER_URL), BROKER_URL, "stats", null, 1);
+		try {
+			XmlResponseWriter writer = new XmlResponseWriter();
+			writer.startElement("section");
+			manager.writeStatistics(writer);
+			String xml = writer.finish().toString(Charset.forName("UTF-8"));
+			Assert.assertTrue(xml, xml.contains("username=\"stats\" connections=\"1\" leases=\"1\""));
+		} finally {
+			manager.release(lease);
+		}
+	}
+	
+}
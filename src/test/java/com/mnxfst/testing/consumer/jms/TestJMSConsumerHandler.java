@@ -0,0 +1,352 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.jms;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.jms.Connection;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import junit.framework.Assert;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mnxfst.testing.consumer.ConsumerTestSupport;
+import com.mnxfst.testing.consumer.analyzer.MessageAnalyzerPipeline;
+import com.mnxfst.testing.consumer.analyzer.TestMessageAnalyzerPipeline;
+import com.mnxfst.testing.consumer.exception.AsyncInputConsumerException;
+import com.mnxfst.testing.consumer.replay.RecordingReader;
+import com.mnxfst.testing.consumer.replay.RecordingWriter;
+
+/**
+ * Test case for {@link JMSConsumerHandler} running against an embedded in-vm broker
+ * @author ckreutzfeldt
+ * @since 12.03.2012
+ */
+public class TestJMSConsumerHandler {
+
+	private static final String BROKER_URL = "vm://ptest-consumer?create=false";
+	
+	private BrokerService broker = null;
+	
+	@Before
+	public void startBroker() throws Exception {
+		broker = new BrokerService();
+		broker.setBrokerName("ptest-consumer");
+		broker.setPersistent(false);
+		broker.setUseJmx(false);
+		broker.setAdvisorySupport(false);
+		broker.start();
+		broker.waitUntilStarted();
+	}
+	
+	@After
+	public void stopBroker() throws Exception {
+		broker.stop();
+		broker.waitUntilStopped();
+	}
+	
+	@Test
+	public void testConsumeWithConcurrentSessions() throws Exception {
+		
+		send("test.queue", 500, null);
+		
+		Map<String, List<String>> options = queueOptions("test.queue");
+		options.put(JMSConsumerHandler.CFG_OPT_CONNECTIONS, Arrays.asList("2"));
+		options.put(JMSConsumerHandler.CFG_OPT_SESSIONS, Arrays.asList("2"));
+		options.put(JMSConsumerHandler.CFG_OPT_PREFETCH, Arrays.asList("10"));
+		JMSConsumerHandler consumer = ConsumerTestSupport.initialize(new JMSConsumerHandler(), "jms", "consumer-1", options);
+		Assert.assertEquals("Each session must receive on its own", 4, consumer.getReceiverCount());
+		
+		Thread thread = ConsumerTestSupport.start(consumer);
+		ConsumerTestSupport.awaitMessages(consumer, 500);
+		consumer.shutdown();
+		thread.join(5000);
+		Assert.assertFalse("The consumer must have returned", thread.isAlive());
+		
+		Assert.assertEquals(500, consumer.getConsumerStatistics().getMessageCount());
+		Assert.assertEquals(500 * "message-x".length(), consumer.getConsumerStatistics().getByteCount());
+		Assert.assertEquals(0, consumer.getConsumerStatistics().getErrorCount());
+		Assert.assertEquals(500, consumer.getConsumerStatistics().getLatencies().snapshot().getTotalCount());
+		Assert.assertEquals("All messages must have been consumed", 0, drain("test.queue"));
+	}
+	
+	@Test
+	public void testSharedConnections() throws Exception {
+		
+		send("test.shared", 200, null);
+		
+		Map<String, List<String>> options = queueOptions("test.shared");
+		options.put(JMSConsumerHandler.CFG_OPT_SHARED_CONNECTIONS, Arrays.asList("1"));
+		JMSConsumerHandler first = ConsumerTestSupport.initialize(new JMSConsumerHandler(), "jms", "consumer-1", options);
+		JMSConsumerHandler second = ConsumerTestSupport.initialize(new JMSConsumerHandler(), "jms", "consumer-1", options);
+		
+		Thread firstThread = ConsumerTestSupport.start(first);
+		Thread secondThread = ConsumerTestSupport.start(second);
+		long deadline = System.currentTimeMillis() + 10000;
+		while(first.getConsumerStatistics().getMessageCount() + second.getConsumerStatistics().getMessageCount() < 200 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		Assert.assertEquals("Both consumers must share a single connection", 1, JMSConnectionManager.getInstance().getConnectionCount());
+		Assert.assertEquals(2, JMSConnectionManager.getInstance().getLeaseCount());
+		
+		first.shutdown();
+		firstThread.join(5000);
+		Assert.assertEquals("The connection must be kept while still leased", 1, JMSConnectionManager.getInstance().getConnectionCount());
+		second.shutdown();
+		secondThread.join(5000);
+		Assert.assertEquals("The connection must be closed with its last consumer", 0, JMSConnectionManager.getInstance().getConnectionCount());
+		
+		Assert.assertEquals(200, first.getConsumerStatistics().getMessageCount() + second.getConsumerStatistics().getMessageCount());
+		Assert.assertEquals("All messages must have been consumed", 0, drain("test.shared"));
+	}
+	
+	@Test
+	public void testForwardToAnalyzers() throws Exception {
+		
+		send("test.analyzer", 100, null);
+		
+		Map<String, List<String>> options = queueOptions("test.analyzer");
+		options.put("consumer.async.jms.message-analyzer.recording", Arrays.asList(TestMessageAnalyzerPipeline.RecordingAnalyzer.class.getName()));
+		options.put(JMSConsumerHandler.CFG_OPT_SESSIONS, Arrays.asList("2"));
+		JMSConsumerHandler consumer = ConsumerTestSupport.initialize(new JMSConsumerHandler(), "jms", "consumer-1", options);
+		Assert.assertEquals("Each session must forward to a pipeline of its own", 2, consumer.getAnalyzerPipelines().size());
+		
+		Thread thread = ConsumerTestSupport.start(consumer);
+		ConsumerTestSupport.awaitMessages(consumer, 100);
+		consumer.shutdown();
+		thread.join(5000);
+		
+		long analyzed = 0;
+		for(MessageAnalyzerPipeline pipeline : consumer.getAnalyzerPipelines()) {
+			Assert.assertEquals(0, pipeline.getDroppedCount());
+			analyzed += pipeline.getProcessedCount(0);
+		}
+		Assert.assertEquals("All received messages must have been analyzed", 100, analyzed);
+	}
+	
+	@Test
+	public void testCapture() throws Exception {
+		
+		send("test.capture", 50, null);
+		
+		File directory = File.createTempFile("ptest-capture", "");
+		directory.delete();
+		try {
+			Map<String, List<String>> options = queueOptions("test.capture");
+			options.put("consumer.async.jms.capture.directory", Arrays.asList(directory.getPath()));
+			options.put("consumer.async.jms.capture.segmentSize", Arrays.asList("65536"));
+			JMSConsumerHandler consumer = ConsumerTestSupport.initialize(new JMSConsumerHandler(), "jms", "consumer-1", options);
+			Assert.assertEquals(1, consumer.getCaptures().size());
+			
+			Thread thread = ConsumerTestSupport.start(consumer);
+			ConsumerTestSupport.awaitMessages(consumer, 50);
+			consumer.shutdown();
+			thread.join(5000);
+			
+			RecordingWriter capture = consumer.getCaptures().get(0);
+			Assert.assertEquals(50, capture.getRecordCount());
+			Assert.assertEquals(0, capture.getDroppedCount());
+			RecordingReader reader = new RecordingReader(new File(directory, "capture-consumer-1-0-000000" + RecordingWriter.FILE_SUFFIX), 65536);
+			int records = 0;
+			while(reader.next()) {
+				Assert.assertEquals("message-x".length(), reader.getPayloadLength());
+				Assert.assertEquals('m', reader.getSegment().get(reader.getPayloadIndex()));
+				records++;
+			}
+			reader.close();
+			Assert.assertEquals("The completed file must hold all captured messages", 50, records);
+		} finally {
+			File[] files = directory.listFiles();
+			if(files != null) {
+				for(File file : files)
+					file.delete();
+			}
+			directory.delete();
+		}
+	}
+	
+	@Test
+	public void testInterruptWithCapture() throws Exception {
+		
+		send("test.interrupt", 200, null);
+		
+		File directory = File.createTempFile("ptest-capture", "");
+		directory.delete();
+		try {
+			Map<String, List<String>> options = queueOptions("test.interrupt");
+			options.put(JMSConsumerHandler.CFG_OPT_SESSIONS, Arrays.asList("2"));
+			options.put("consumer.async.jms.capture.directory", Arrays.asList(directory.getPath()));
+			options.put("consumer.async.jms.capture.segmentSize", Arrays.asList("65536"));
+			JMSConsumerHandler consumer = ConsumerTestSupport.initialize(new JMSConsumerHandler(), "jms", "consumer-1", options);
+			
+			// interrupting the thread running the consumer stops it just like cancelling its future does
+			Thread thread = ConsumerTestSupport.start(consumer);
+			ConsumerTestSupport.awaitMessages(consumer, 200);
+			thread.interrupt();
+			thread.join(5000);
+			Assert.assertFalse("The consumer must have returned", thread.isAlive());
+			
+			// each receiver completed its own capture before the sessions were closed
+			long records = 0;
+			for(int i = 0; i < 2; i++) {
+				RecordingWriter capture = consumer.getCaptures().get(i);
+				Assert.assertEquals(0, capture.getDroppedCount());
+				RecordingReader reader = new RecordingReader(new File(directory, "capture-consumer-1-" + i + "-000000" + RecordingWriter.FILE_SUFFIX), 65536);
+				long captured = 0;
+				while(reader.next())
+					captured++;
+				reader.close();
+				Assert.assertEquals(capture.getRecordCount(), captured);
+				records += captured;
+			}
+			Assert.assertEquals(200, records);
+		} finally {
+			File[] files = directory.listFiles();
+			if(files != null) {
+				for(File file : files)
+					file.delete();
+			}
+			directory.delete();
+		}
+	}
+	
+	@Test
+	public void testClientAcknowledgeInBatches() throws Exception {
+		
+		send("test.ack", 10, null);
+		
+		Map<String, List<String>> options = queueOptions("test.ack");
+		options.put(JMSConsumerHandler.CFG_OPT_ACK_MODE, Arrays.asList("client"));
+		options.put(JMSConsumerHandler.CFG_OPT_ACK_BATCH_SIZE, Arrays.asList("4"));
+		JMSConsumerHandler consumer = ConsumerTestSupport.initialize(new JMSConsumerHandler(), "jms", "consumer-1", options);
+		Assert.assertEquals(JMSConsumerHandler.AckMode.CLIENT, consumer.getAckMode());
+		
+		Thread thread = ConsumerTestSupport.start(consumer);
+		ConsumerTestSupport.awaitMessages(consumer, 10);
+		consumer.shutdown();
+		thread.join(5000);
+		
+		// the trailing partial batch must have been acknowledged on shutdown
+		Assert.assertEquals(10, consumer.getConsumerStatistics().getMessageCount());
+		Assert.assertEquals("All messages must have been acknowledged", 0, drain("test.ack"));
+	}
+	
+	@Test
+	public void testSelector() throws Exception {
+		
+		send("test.selector", 10, "even");
+		send("test.selector", 5, "odd");
+		
+		Map<String, List<String>> options = queueOptions("test.selector");
+		options.put(JMSConsumerHandler.CFG_OPT_SELECTOR, Arrays.asList("kind = 'odd'"));
+		JMSConsumerHandler consumer = ConsumerTestSupport.initialize(new JMSConsumerHandler(), "jms", "consumer-1", options);
+		
+		Thread thread = ConsumerTestSupport.start(consumer);
+		ConsumerTestSupport.awaitMessages(consumer, 5);
+		Thread.sleep(200);
+		consumer.shutdown();
+		thread.join(5000);
+		
+		Assert.assertEquals("Only selected messages must be received", 5, consumer.getConsumerStatistics().getMessageCount());
+		Assert.assertEquals("Unselected messages must remain", 10, drain("test.selector"));
+	}
+	
+	@Test
+	public void testTextContentLength() throws Exception {
+		
+		ActiveMQTextMessage message = new ActiveMQTextMessage();
+		message.setText("gr\u00fc\u00df");
+		Assert.assertEquals("Messages not marshalled yet must be measured by their text", -1, JMSConsumerHandler.getTextContentLength(message));
+		message.storeContent();
+		Assert.assertEquals(6, JMSConsumerHandler.getTextContentLength(message));
+	}
+	
+	@Test
+	public void testShutdownWithoutRun() throws Exception {
+		JMSConsumerHandler consumer = ConsumerTestSupport.initialize(new JMSConsumerHandler(), "jms", "consumer-1", queueOptions("test.idle"));
+		consumer.shutdown();
+		// running a consumer which has been shut down must return immediately
+		consumer.run();
+		Assert.assertEquals(0, consumer.getConsumerStatistics().getMessageCount());
+	}
+	
+	@Test(expected=AsyncInputConsumerException.class)
+	public void testMissingDestination() throws Exception {
+		Map<String, List<String>> options = queueOptions("test.queue");
+		options.remove(JMSConsumerHandler.CFG_OPT_DESTINATION);
+		ConsumerTestSupport.initialize(new JMSConsumerHandler(), "jms", "consumer-1", options);
+	}
+	
+	@Test(expected=AsyncInputConsumerException.class)
+	public void testInvalidAckMode() throws Exception {
+		Map<String, List<String>> options = queueOptions("test.queue");
+		options.put(JMSConsumerHandler.CFG_OPT_ACK_MODE, Arrays.asList("transacted"));
+		ConsumerTestSupport.initialize(new JMSConsumerHandler(), "jms", "consumer-1", options);
+	}
+	
+	private static Map<String, List<String>> queueOptions(String queue) {
+		return ConsumerTestSupport.options(JMSConsumerHandler.CFG_OPT_BROKER_URL, BROKER_URL, JMSConsumerHandler.CFG_OPT_DESTINATION, queue, 
+				JMSConsumerHandler.CFG_OPT_RECEIVE_TIMEOUT_MILLIS, "20");
+	}
+	
+	private static void send(String queue, int count, String kind) throws Exception {
+		Connection connection = new ActiveMQConnectionFactory(BROKER_URL).createConnection();
+		try {
+			Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+			MessageProducer producer = session.createProducer(session.createQueue(queue));
+			for(int i = 0; i < count; i++) {
+				TextMessage message = session.createTextMessage("message-" + (i % 10));
+				if(kind != null)
+					message.setStringProperty("kind", kind);
+				producer.send(message);
+			}
+		} finally {
+			connection.close();
+		}
+	}
+	
+	private static int drain(String queue) throws Exception {
+		Connection connection = new ActiveMQConnectionFactory(BROKER_URL).createConnection();
+		try {
+			connection.start();
+			Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+			MessageConsumer consumer = session.createConsumer(session.createQueue(queue));
+			int count = 0;
+			for(Message message = consumer.receive(200); message != null; message = consumer.receive(200))
+				count++;
+			return count;
+		} finally {
+			connection.close();
+		}
+	}
+	
+}
@@ -0,0 +1,92 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.jms.analyzer;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.mnxfst.testing.consumer.analyzer.MessageEnvelope;
+
+/**
+ * Compares scanning ESP messages on their binary payload as referenced by the {@link MessageEnvelope} against 
+ * decoding each payload into text first - as done when reading the text of a JMS text message. Run with 
+ * -prof gc for comparing the allocation rates. Run via {@link #main(String[])} from the test classpath.
+ * @author ckreutzfeldt
+ * @since 16.03.2012
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ESPMessageScannerBenchmark {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	@Param({"0", "4096"})
+	private int paddingBytes;
+	
+	private byte[] payload = null;
+	private final MessageEnvelope envelope = new MessageEnvelope();
+	private final ESPMessageScanner scanner = new ESPMessageScanner("timestamp", "nodeId", "measuringPointId");
+	
+	@Setup
+	public void setup() {
+		StringBuilder message = new StringBuilder("<event><nodeId>node1</nodeId><measuringPointId>TCI</measuringPointId><timestamp>1331800000123</timestamp><data>");
+		for(int i = 0; i < paddingBytes; i++)
+			message.append((char)('a' + (i % 26)));
+		message.append("</data></event>");
+		payload = message.toString().getBytes(UTF8);
+	}
+	
+	@Benchmark
+	public long scanPayload() {
+		envelope.reset(0, 0, 0);
+		envelope.setPayload(payload, 0, payload.length);
+		scanner.scan(envelope.getPayloadChars());
+		return scanner.getTimestamp();
+	}
+	
+	@Benchmark
+	public long decodeAndScan() {
+		scanner.scan(new String(payload, UTF8));
+		return scanner.getTimestamp();
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(ESPMessageScannerBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.jms.analyzer;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mnxfst.testing.consumer.analyzer.IMessageAnalyzer;
+import com.mnxfst.testing.consumer.analyzer.MessageAnalyzerPipeline;
+import com.mnxfst.testing.consumer.analyzer.MessageEnvelope;
+import com.mnxfst.testing.consumer.async.LatencyHistogramSnapshot;
+import com.mnxfst.testing.consumer.exception.AsyncInputConsumerException;
+import com.mnxfst.testing.consumer.handler.XmlResponseWriter;
+
+/**
+ * Test case for {@link ESPMessageAnalyzer} and {@link ESPMessageScanner}
+ * @author ckreutzfeldt
+ * @since 15.03.2012
+ */
+public class TestESPMessageAnalyzer {
+
+	@Test
+	public void testScan() {
+		
+		ESPMessageScanner scanner = new ESPMessageScanner("timestamp", "nodeId", "measuringPointId");
+		scanner.scan("<?xml version=\"1.0\"?><!-- <timestamp>1</timestamp> --><esp:event xmlns:esp=\"urn:esp\">" +
+				"<esp:measuringPointId type=\"x\"> TCI </esp:measuringPointId><nodeIdentifier>n</nodeIdentifier><nodeId/>" +
+				"<payload><nodeId>node7</nodeId></payload><timestamp>\n1331800000123\n</timestamp></esp:event>");
+		Assert.assertTrue(scanner.isTimestampFound());
+		Assert.assertEquals(1331800000123L, scanner.getTimestamp());
+		Assert.assertEquals("node7", scanner.getNodeId());
+		Assert.assertEquals("TCI", scanner.getMeasuringPointId());
+		Assert.assertTrue(scanner.nodeIdEquals("node7"));
+		Assert.assertFalse(scanner.nodeIdEquals("node"));
+		Assert.assertEquals("node7".hashCode(), scanner.getNodeIdHash());
+		
+		scanner.scan("<event><timestamp>12a</timestamp></event>");
+		Assert.assertTrue(scanner.isTimestampFound());
+		Assert.assertEquals(ESPMessageScanner.NO_TIMESTAMP, scanner.getTimestamp());
+		Assert.assertFalse(scanner.hasNodeId());
+		Assert.assertFalse(scanner.hasMeasuringPointId());
+		
+		scanner.scan("<event><timestamp>12");
+		Assert.assertFalse(scanner.hasNodeId());
+		scanner.scan("<");
+		Assert.assertFalse(scanner.isTimestampFound());
+		scanner.scan(null);
+		Assert.assertFalse(scanner.isTimestampFound());
+	}
+	
+	@Test
+	public void testLatencyPerPair() throws Exception {
+		
+		Map<String, List<String>> properties = new HashMap<String, List<String>>();
+		properties.put("nodeId", Arrays.asList("node1"));
+		properties.put("measuringPointId", Arrays.asList("TCI"));
+		ESPMessageAnalyzer analyzer = new ESPMessageAnalyzer();
+		analyzer.initialize("esp", "jms", properties);
+		
+		MessageEnvelope envelope = new MessageEnvelope();
+		analyze(analyzer, envelope, "<e><timestamp>1000</timestamp><nodeId>node2</nodeId><measuringPointId>MP</measuringPointId></e>", 1005, 0);
+		analyze(analyzer, envelope, "<e><measuringPointId>MP</measuringPointId><nodeId>node2</nodeId><timestamp>1000</timestamp></e>", 1010, 0);
+		// identifiers missing in the message are taken from the settings
+		analyze(analyzer, envelope, "<e><timestamp>1000</timestamp></e>", 1002, 0);
+		analyze(analyzer, envelope, "<e><timestamp>1000</timestamp><nodeId>node2</nodeId></e>", 1001, 0);
+		// the time the message was sent is used in case the payload does not carry a timestamp
+		analyze(analyzer, envelope, "<e><timestamp>x</timestamp></e>", 1003, 1000);
+		analyze(analyzer, envelope, "<e/>", 1003, 0);
+		
+		Assert.assertEquals(6, analyzer.getMessageCount());
+		Assert.assertEquals(5, analyzer.getMeasuredCount());
+		Assert.assertEquals(1, analyzer.getInvalidTimestampCount());
+		Assert.assertEquals(1, analyzer.getMissingTimestampCount());
+		Assert.assertEquals(3, analyzer.getPairCount());
+		
+		LatencyHistogramSnapshot latencies = analyzer.getLatencies("node2", "MP");
+		Assert.assertEquals(2, latencies.getTotalCount());
+		Assert.assertEquals(5000, latencies.getMinValue(), 50);
+		Assert.assertEquals(10000, latencies.getMaxValue(), 100);
+		latencies = analyzer.getLatencies("node1", "TCI");
+		Assert.assertEquals(2, latencies.getTotalCount());
+		Assert.assertEquals(3000, latencies.getMaxValue(), 30);
+		Assert.assertEquals(1, analyzer.getLatencies("node2", "TCI").getTotalCount());
+		
+		XmlResponseWriter writer = new XmlResponseWriter();
+		writer.startElement("stage");
+		analyzer.writeStatistics(writer);
+		String xml = writer.finish().toString(Charset.forName("UTF-8"));
+		Assert.assertTrue(xml, xml.contains("<espLatencies messages=\"6\" measured=\"5\" missingTimestamp=\"1\" invalidTimestamp=\"1\" unassigned=\"0\">"));
+		Assert.assertTrue(xml, xml.contains("<latency nodeId=\"node2\" measuringPointId=\"MP\" unit=\"us\" count=\"2\""));
+	}
+	
+	@Test
+	public void testBinaryPayloadAndPairLimit() throws Exception {
+		
+		Map<String, List<String>> properties = new HashMap<String, List<String>>();
+		properties.put("consumer.async.jms.message-analyzer.esp.maxPairs", Arrays.asList("2"));
+		properties.put("consumer.async.jms.message-analyzer.esp.timestampTag", Arrays.asList("ts"));
+		ESPMessageAnalyzer analyzer = new ESPMessageAnalyzer();
+		analyzer.initialize("esp", "jms", properties);
+		
+		MessageEnvelope envelope = new MessageEnvelope();
+		for(int i = 0; i < 100; i++) {
+			byte[] payload = ("xx<e><ts>1000</ts><nodeId>n" + (i % 3) + "</nodeId></e>").getBytes("UTF-8");
+			setReceiveTimestamp(envelope, 1001, 0);
+			envelope.setPayload(payload, 2, payload.length - 2);
+			analyzer.analyze(envelope);
+		}
+		
+		Assert.assertEquals(2, analyzer.getPairCount());
+		Assert.assertEquals(34, analyzer.getLatencies("n0", "").getTotalCount());
+		Assert.assertEquals(33, analyzer.getLatencies("n1", "").getTotalCount());
+		Assert.assertNull(analyzer.getLatencies("n2", ""));
+		Assert.assertEquals(33, analyzer.getUnassignedCount());
+	}
+	
+	@Test
+	public void testConfiguredThroughPipeline() throws Exception {
+		Map<String, List<String>> properties = new HashMap<String, List<String>>();
+		properties.put("consumer.async.jms.message-analyzer.esp", Arrays.asList(ESPMessageAnalyzer.class.getName()));
+		MessageAnalyzerPipeline pipeline = MessageAnalyzerPipeline.create("test", "jms", properties);
+		IMessageAnalyzer analyzer = pipeline.getAnalyzer(0);
+		Assert.assertTrue(analyzer instanceof ESPMessageAnalyzer);
+		Assert.assertEquals("esp", analyzer.getName());
+	}
+	
+	@Test(expected=AsyncInputConsumerException.class)
+	public void testInvalidPairLimit() throws Exception {
+		Map<String, List<String>> properties = new HashMap<String, List<String>>();
+		properties.put("consumer.async.jms.message-analyzer.esp.maxPairs", Arrays.asList("0"));
+		new ESPMessageAnalyzer().initialize("esp", "jms", properties);
+	}
+	
+	private static void analyze(ESPMessageAnalyzer analyzer, MessageEnvelope envelope, String text, long receiveTimestamp, long sentTimestamp) {
+		setReceiveTimestamp(envelope, receiveTimestamp, sentTimestamp);
+		envelope.setText(text);
+		analyzer.analyze(envelope);
+	}
+	
+	private static void setReceiveTimestamp(MessageEnvelope envelope, long receiveTimestamp, long sentTimestamp) {
+		envelope.reset(0, receiveTimestamp, sentTimestamp);
+	}
+	
+}
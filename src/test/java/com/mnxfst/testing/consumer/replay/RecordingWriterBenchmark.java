@@ -0,0 +1,133 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.replay;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the overhead the {@link RecordingWriter capture} adds to the receive loop per message: appending a record
+ * compared with copying the payload into a heap buffer, which is the least any capture has to do. The retention policy
+ * keeps the disk usage bounded while the benchmark runs. Appended records, dropped records and stalls - full segments 
+ * without a prepared successor - are reported as auxiliary counters next to the time: dropped records skip the write, 
+ * thus the time is only meaningful if none have been dropped. Run via {@link #main(String[])} from the test classpath.
+ * @author ckreutzfeldt
+ * @since 22.03.2012
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordingWriterBenchmark {
+
+	@Param({"64", "1024"})
+	private int payloadSize;
+	
+	private File directory = null;
+	private RecordingWriter writer = null;
+	private byte[] payload = null;
+	private byte[] heapBuffer = null;
+	private int heapPosition = 0;
+	
+	@Setup
+	public void setup() throws Exception {
+		directory = TestRecordingWriter.createDirectory();
+		writer = new RecordingWriter("benchmark", directory, 64 * 1024 * 1024, 256L * 1024 * 1024, 0);
+		writer.open();
+		payload = new byte[payloadSize];
+		for(int i = 0; i < payloadSize; i++)
+			payload[i] = (byte)('a' + (i % 26));
+		heapBuffer = new byte[64 * 1024 * 1024];
+	}
+	
+	@TearDown
+	public void tearDown() {
+		writer.close(5000);
+		TestRecordingWriter.deleteDirectory(directory);
+	}
+	
+	@Benchmark
+	public boolean append(CaptureCounters counters) {
+		boolean appended = writer.append(payload, 0, payload.length, 1000);
+		if(appended)
+			counters.records++;
+		else
+			counters.drop(writer.getStallCount());
+		return appended;
+	}
+	
+	@Benchmark
+	public int heapCopy() {
+		if(heapPosition + payload.length > heapBuffer.length)
+			heapPosition = 0;
+		System.arraycopy(payload, 0, heapBuffer, heapPosition, payload.length);
+		heapPosition += payload.length;
+		return heapPosition;
+	}
+	
+	/**
+	 * Counts the appended records, dropped records and stalls of each iteration. Public fields are reset by JMH
+	 * @author ckreutzfeldt
+	 * @since 22.03.2012
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class CaptureCounters {
+		
+		public long records;
+		public long dropped;
+		public long stalls;
+		private long lastStalls = 0;
+		
+		/**
+		 * Counts a dropped record - every stall drops one, thus the stalls are counted here rather than on tear down 
+		 * which runs after JMH has read the counters
+		 * @param totalStalls stalls of the writer since it has been opened
+		 */
+		public void drop(long totalStalls) {
+			dropped++;
+			stalls += totalStalls - lastStalls;
+			lastStalls = totalStalls;
+		}
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(RecordingWriterBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.replay;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Test case for {@link RecordingReader}
+ * @author ckreutzfeldt
+ * @since 21.03.2012
+ */
+public class TestRecordingReader {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	@Test
+	public void testReadAcrossSegments() throws Exception {
+		
+		// the last record exceeds the segment size and requires a segment of its own
+		String[] payloads = new String[]{"first", "second record", "", "third", "a record larger than any segment"};
+		File file = writeRecording(payloads, 1000, 10, 0);
+		try {
+			RecordingReader reader = new RecordingReader(file, 32);
+			Assert.assertEquals(1000, reader.getBaseTimestamp());
+			for(int i = 0; i < payloads.length; i++) {
+				Assert.assertTrue(reader.next());
+				Assert.assertEquals(1000 + 10 * i, reader.getTimestamp());
+				Assert.assertEquals(payloads[i], payload(reader));
+			}
+			Assert.assertFalse(reader.next());
+			Assert.assertFalse(reader.isTruncated());
+			Assert.assertEquals(reader.getFileSize(), reader.getOffset());
+			reader.close();
+		} finally {
+			file.delete();
+		}
+	}
+	
+	@Test
+	public void testTruncatedRecording() throws Exception {
+		
+		File file = writeRecording(new String[]{"one", "two", "three"}, 0, 1, 2);
+		try {
+			RecordingReader reader = new RecordingReader(file, 64);
+			Assert.assertTrue(reader.next());
+			Assert.assertTrue(reader.next());
+			Assert.assertFalse("The incomplete record must not be returned", reader.next());
+			Assert.assertTrue(reader.isTruncated());
+			reader.close();
+		} finally {
+			file.delete();
+		}
+	}
+	
+	@Test
+	public void testPartitions() throws Exception {
+		
+		String[] payloads = new String[100];
+		for(int i = 0; i < payloads.length; i++)
+			payloads[i] = "record-" + i + (i % 7 == 0 ? "-with some additional bytes" : "");
+		File file = writeRecording(payloads, 0, 1, 0);
+		try {
+			// adjacent ranges split the file without gaps or overlaps
+			int next = 0;
+			for(int partition = 0; partition < 3; partition++) {
+				long[] range = RecordingReader.getPartitionRange(file.length(), 3, partition);
+				RecordingReader reader = new RecordingReader(file, range[0], range[1], 128);
+				Assert.assertEquals("The base timestamp is taken from the first record of the file", 0, reader.getBaseTimestamp());
+				int records = 0;
+				while(reader.next()) {
+					Assert.assertEquals(payloads[next++], payload(reader));
+					records++;
+				}
+				Assert.assertTrue("Each partition must receive records", records > 20);
+				reader.close();
+			}
+			Assert.assertEquals(payloads.length, next);
+		} finally {
+			file.delete();
+		}
+	}
+	
+	@Test
+	public void testIndexedPartitions() throws Exception {
+		
+		String[] payloads = new String[100];
+		for(int i = 0; i < payloads.length; i++)
+			payloads[i] = "record-" + i;
+		File file = writeRecording(payloads, 0, 1, 0);
+		try {
+			// index every 10th record, the end marker and the index follow the last record
+			long end = file.length();
+			long[] offsets = new long[9];
+			long offset = RecordingFormat.FILE_HEADER_SIZE;
+			for(int i = 0; i < payloads.length; i++) {
+				if(i > 0 && i % 10 == 0)
+					offsets[i / 10 - 1] = offset;
+				offset += RecordingFormat.RECORD_HEADER_SIZE + payloads[i].length();
+			}
+			RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+			try {
+				RecordingFormat.writeIndex(randomAccessFile.getChannel(), end, offsets, offsets.length);
+				Assert.assertTrue(Arrays.equals(offsets, RecordingFormat.readIndex(randomAccessFile.getChannel(), randomAccessFile.length())));
+				// records in front of the last indexed one are never visited by a partition starting behind it
+				randomAccessFile.seek(RecordingFormat.FILE_HEADER_SIZE);
+				randomAccessFile.writeInt(-2);
+			} finally {
+				randomAccessFile.close();
+			}
+			
+			long[] range = RecordingReader.getPartitionRange(file.length(), 2, 1);
+			Assert.assertTrue(range[0] < end);
+			RecordingReader reader = new RecordingReader(file, range[0], range[1], 128);
+			int next = -1;
+			while(reader.next()) {
+				String payload = payload(reader);
+				if(next < 0)
+					next = Integer.parseInt(payload.substring("record-".length()));
+				Assert.assertEquals(payloads[next++], payload);
+			}
+			Assert.assertEquals(payloads.length, next);
+			Assert.assertFalse(reader.isTruncated());
+			reader.close();
+			
+			try {
+				new RecordingReader(file, range[0] - 1000, range[1], 128);
+				Assert.fail("Ranges starting in front of the first indexed record must follow the length prefixes from the beginning");
+			} catch(java.io.IOException e) {
+				//
+			}
+		} finally {
+			file.delete();
+		}
+	}
+	
+	@Test
+	public void testEmptyAndInvalidFiles() throws Exception {
+		
+		File file = writeRecording(new String[0], 0, 0, 0);
+		try {
+			RecordingReader reader = new RecordingReader(file, 64);
+			Assert.assertEquals(RecordingReader.NO_TIMESTAMP, reader.getBaseTimestamp());
+			Assert.assertFalse(reader.next());
+			reader.close();
+			
+			FileOutputStream out = new FileOutputStream(file);
+			out.write("no recording at all".getBytes(UTF8));
+			out.close();
+			try {
+				new RecordingReader(file, 64);
+				Assert.fail("Files not starting with a recording header must be rejected");
+			} catch(java.io.IOException e) {
+				//
+			}
+		} finally {
+			file.delete();
+		}
+	}
+	
+	private static String payload(RecordingReader reader) {
+		byte[] bytes = new byte[reader.getPayloadLength()];
+		for(int i = 0; i < bytes.length; i++)
+			bytes[i] = reader.getSegment().get(reader.getPayloadIndex() + i);
+		return new String(bytes, UTF8);
+	}
+	
+	/**
+	 * Writes a recording holding the given payloads
+	 * @param payloads
+	 * @param firstTimestamp
+	 * @param interval time between two records
+	 * @param truncatedBytes number of bytes cut from the end of the file
+	 * @return
+	 * @throws Exception
+	 */
+	protected static File writeRecording(String[] payloads, long firstTimestamp, long interval, int truncatedBytes) throws Exception {
+		int size = RecordingFormat.FILE_HEADER_SIZE;
+		for(String payload : payloads)
+			size += RecordingFormat.RECORD_HEADER_SIZE + payload.getBytes(UTF8).length;
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		RecordingFormat.writeFileHeader(buffer, System.currentTimeMillis());
+		for(int i = 0; i < payloads.length; i++) {
+			byte[] payload = payloads[i].getBytes(UTF8);
+			RecordingFormat.writeRecordHeader(buffer, payload.length, firstTimestamp + interval * i);
+			buffer.put(payload);
+		}
+		File file = File.createTempFile("ptest-recording", ".rec");
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(buffer.array(), 0, size - truncatedBytes);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+}
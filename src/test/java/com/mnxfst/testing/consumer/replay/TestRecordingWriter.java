@@ -0,0 +1,244 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.replay;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mnxfst.testing.consumer.exception.AsyncInputConsumerException;
+
+/**
+ * Test case for {@link RecordingWriter}
+ * @author ckreutzfeldt
+ * @since 22.03.2012
+ */
+public class TestRecordingWriter {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	@Test
+	public void testRollingSegments() throws Exception {
+		
+		File directory = createDirectory();
+		try {
+			RecordingWriter writer = new RecordingWriter("capture-test", directory, RecordingWriter.MIN_SEGMENT_SIZE, 0, 0);
+			writer.open();
+			int appended = 0;
+			for(int i = 0; i < 2000; i++) {
+				byte[] payload = ("payload-" + i).getBytes(UTF8);
+				if(writer.append(payload, 0, payload.length, 1000 + i))
+					appended++;
+				else
+					// the background thread prepares the next segment
+					Thread.sleep(1);
+			}
+			Assert.assertFalse("Records exceeding the segment size must be dropped", writer.append(new byte[RecordingWriter.MIN_SEGMENT_SIZE], 0, RecordingWriter.MIN_SEGMENT_SIZE, 0));
+			writer.close(5000);
+			Assert.assertFalse("Closed writers must not accept records", writer.append(new byte[1], 0, 1, 0));
+			
+			Assert.assertEquals(appended, writer.getRecordCount());
+			Assert.assertEquals(2000 - appended + 2, writer.getDroppedCount());
+			Assert.assertEquals(writer.getStallCount(), 2000 - appended);
+			Assert.assertTrue("The records must span several segments", writer.getSegmentCount() > 5);
+			
+			// completed segments are trimmed and hold all records in order
+			File[] files = listSegments(directory);
+			Assert.assertEquals(writer.getSegmentCount(), files.length);
+			int next = 0;
+			long lastTimestamp = 0;
+			for(File file : files) {
+				Assert.assertTrue(file.length() < RecordingWriter.MIN_SEGMENT_SIZE);
+				RecordingReader reader = new RecordingReader(file, RecordingWriter.MIN_SEGMENT_SIZE);
+				while(reader.next()) {
+					Assert.assertTrue(reader.getTimestamp() > lastTimestamp);
+					lastTimestamp = reader.getTimestamp();
+					Assert.assertEquals("payload-" + (lastTimestamp - 1000), payload(reader));
+					next++;
+				}
+				Assert.assertFalse(reader.isTruncated());
+				reader.close();
+			}
+			Assert.assertEquals(appended, next);
+		} finally {
+			deleteDirectory(directory);
+		}
+	}
+	
+	@Test
+	public void testReadUncompletedSegment() throws Exception {
+		
+		File directory = createDirectory();
+		try {
+			RecordingWriter writer = new RecordingWriter("capture-test", directory, RecordingWriter.MIN_SEGMENT_SIZE, 0, 0);
+			writer.open();
+			for(int i = 0; i < 3; i++)
+				Assert.assertTrue(writer.append(("payload-" + i).getBytes(UTF8), 0, 9, i));
+			
+			// the preallocated file is read up to the end marker
+			File file = new File(directory, "capture-test-000000" + RecordingWriter.FILE_SUFFIX);
+			Assert.assertEquals(RecordingWriter.MIN_SEGMENT_SIZE, file.length());
+			RecordingReader reader = new RecordingReader(file, RecordingWriter.MIN_SEGMENT_SIZE);
+			for(int i = 0; i < 3; i++) {
+				Assert.assertTrue(reader.next());
+				Assert.assertEquals("payload-" + i, payload(reader));
+			}
+			Assert.assertFalse(reader.next());
+			reader.close();
+			writer.close(5000);
+		} finally {
+			deleteDirectory(directory);
+		}
+	}
+	
+	@Test
+	public void testSegmentIndex() throws Exception {
+		
+		File directory = createDirectory();
+		try {
+			// segments of 64k are indexed once per page
+			RecordingWriter writer = new RecordingWriter("capture-test", directory, 65536, 0, 0);
+			writer.open();
+			byte[] payload = new byte[100];
+			for(int i = 0; i < 500; i++)
+				Assert.assertTrue(writer.append(payload, 0, payload.length, i));
+			writer.close(5000);
+			
+			File file = listSegments(directory)[0];
+			RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+			long[] index = null;
+			try {
+				index = RecordingFormat.readIndex(randomAccessFile.getChannel(), randomAccessFile.length());
+			} finally {
+				randomAccessFile.close();
+			}
+			Assert.assertNotNull("Completed segments must be indexed", index);
+			// one entry per page boundary passed by the 500 records
+			Assert.assertEquals((RecordingFormat.FILE_HEADER_SIZE + 499 * 112) / 4096, index.length);
+			for(int i = 0; i < index.length; i++) {
+				Assert.assertEquals("Index entries must point at the first record of each page", 0, (index[i] - RecordingFormat.FILE_HEADER_SIZE) % 112);
+				Assert.assertTrue(index[i] >= 4096 * (i + 1) && index[i] < 4096 * (i + 1) + 112);
+			}
+			
+			// the records are read up to the end marker in front of the index
+			RecordingReader reader = new RecordingReader(file, 65536);
+			int records = 0;
+			while(reader.next())
+				Assert.assertEquals(records++, reader.getTimestamp());
+			Assert.assertEquals(500, records);
+			Assert.assertFalse(reader.isTruncated());
+			reader.close();
+		} finally {
+			deleteDirectory(directory);
+		}
+	}
+	
+	@Test
+	public void testRetention() throws Exception {
+		
+		File directory = createDirectory();
+		try {
+			// segments are about 4k, the retention keeps about 3 of them
+			RecordingWriter writer = new RecordingWriter("capture-test", directory, RecordingWriter.MIN_SEGMENT_SIZE, 3 * RecordingWriter.MIN_SEGMENT_SIZE, 0);
+			writer.open();
+			byte[] payload = new byte[500];
+			while(writer.getSegmentCount() < 10) {
+				if(!writer.append(payload, 0, payload.length, System.currentTimeMillis()))
+					Thread.sleep(1);
+			}
+			writer.close(5000);
+			
+			File[] files = listSegments(directory);
+			Assert.assertTrue("The retention policy must limit the number of files: " + files.length, files.length <= 4);
+			Assert.assertEquals(writer.getSegmentCount() - files.length, writer.getDeletedCount());
+			Assert.assertTrue("The newest segments must be kept", files[files.length - 1].getName().endsWith(String.format("%06d", writer.getSegmentCount() - 1) + RecordingWriter.FILE_SUFFIX));
+		} finally {
+			deleteDirectory(directory);
+		}
+	}
+	
+	@Test
+	public void testCreateFromSettings() throws Exception {
+		
+		File directory = createDirectory();
+		try {
+			Map<String, List<String>> properties = new HashMap<String, List<String>>();
+			Assert.assertNull("No capture must be created unless configured", RecordingWriter.create("capture-1", "jms", properties));
+			
+			properties.put("consumer.async.jms.capture.directory", Arrays.asList(new File(directory, "sub").getPath()));
+			properties.put("consumer.async.jms.capture.segmentSize", Arrays.asList("8192"));
+			RecordingWriter writer = RecordingWriter.create("capture-1", "jms", properties);
+			Assert.assertNotNull(writer);
+			Assert.assertTrue("The directory must be created", new File(directory, "sub/capture-1-000000.rec").isFile());
+			writer.close(5000);
+			
+			properties.put("consumer.async.jms.capture.retention.maxBytes", Arrays.asList("-1"));
+			try {
+				RecordingWriter.create("capture-2", "jms", properties);
+				Assert.fail("Invalid retention settings must be rejected");
+			} catch(AsyncInputConsumerException e) {
+				//
+			}
+		} finally {
+			deleteDirectory(directory);
+		}
+	}
+	
+	private static String payload(RecordingReader reader) {
+		byte[] bytes = new byte[reader.getPayloadLength()];
+		for(int i = 0; i < bytes.length; i++)
+			bytes[i] = reader.getSegment().get(reader.getPayloadIndex() + i);
+		return new String(bytes, UTF8);
+	}
+	
+	private static File[] listSegments(File directory) {
+		File[] files = directory.listFiles();
+		Arrays.sort(files);
+		return files;
+	}
+	
+	protected static File createDirectory() throws Exception {
+		File directory = File.createTempFile("ptest-capture", "");
+		directory.delete();
+		directory.mkdirs();
+		return directory;
+	}
+	
+	protected static void deleteDirectory(File directory) {
+		File[] files = directory.listFiles();
+		if(files != null) {
+			for(File file : files) {
+				if(file.isDirectory())
+					deleteDirectory(file);
+				else
+					file.delete();
+			}
+		}
+		directory.delete();
+	}
+}
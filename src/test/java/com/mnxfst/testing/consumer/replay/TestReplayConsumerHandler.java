@@ -0,0 +1,165 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.replay;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mnxfst.testing.consumer.ConsumerTestSupport;
+import com.mnxfst.testing.consumer.async.IAsyncInputConsumer;
+import com.mnxfst.testing.consumer.exception.AsyncInputConsumerException;
+import com.mnxfst.testing.consumer.handler.XmlResponseWriter;
+
+/**
+ * Test case for {@link ReplayConsumerHandler}
+ * @author ckreutzfeldt
+ * @since 21.03.2012
+ */
+public class TestReplayConsumerHandler {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	@Test
+	public void testPartitionedReplay() throws Exception {
+		
+		String[] payloads = new String[500];
+		for(int i = 0; i < payloads.length; i++)
+			payloads[i] = "record-" + i;
+		File file = TestRecordingReader.writeRecording(payloads, 5000, 1, 0);
+		try {
+			ConsumerTestSupport.PayloadAnalyzer.reset();
+			ReplayConsumerHandler[] consumers = new ReplayConsumerHandler[2];
+			Thread[] threads = new Thread[2];
+			for(int i = 0; i < consumers.length; i++) {
+				Map<String, List<String>> options = replayOptions(file, "max");
+				options.put(ReplayConsumerHandler.CFG_OPT_PARTITIONS, Arrays.asList("2"));
+				options.put(IAsyncInputConsumer.CFG_OPT_SEQUENCE, Arrays.asList(String.valueOf(i)));
+				options.put(ReplayConsumerHandler.CFG_OPT_SEGMENT_SIZE, Arrays.asList("1024"));
+				options.put("consumer.async.replay.message-analyzer.payload", Arrays.asList(ConsumerTestSupport.PayloadAnalyzer.class.getName()));
+				consumers[i] = ConsumerTestSupport.initialize(new ReplayConsumerHandler(), "replay", "replay-" + i, options);
+				threads[i] = new Thread(consumers[i]);
+				threads[i].start();
+			}
+			Assert.assertEquals("Partitions must be assigned in order of the request", 0, consumers[0].getPartition());
+			Assert.assertEquals(1, consumers[1].getPartition());
+			
+			for(Thread thread : threads) {
+				thread.join(10000);
+				Assert.assertFalse("The consumer must finish at the end of its range", thread.isAlive());
+			}
+			
+			Assert.assertEquals(payloads.length, consumers[0].getReplayedRecordCount() + consumers[1].getReplayedRecordCount());
+			Assert.assertEquals(payloads.length, consumers[0].getConsumerStatistics().getMessageCount() + consumers[1].getConsumerStatistics().getMessageCount());
+			Set<String> replayed = new HashSet<String>(ConsumerTestSupport.PayloadAnalyzer.getPayloads());
+			Assert.assertEquals("Each record must be replayed exactly once", payloads.length, ConsumerTestSupport.PayloadAnalyzer.getPayloads().size());
+			Assert.assertEquals(payloads.length, replayed.size());
+			
+			XmlResponseWriter writer = new XmlResponseWriter();
+			writer.startElement("section");
+			consumers[1].writeStatistics(writer);
+			String xml = writer.finish().toString(UTF8);
+			Assert.assertTrue(xml, xml.contains("partition=\"1/2\""));
+			Assert.assertTrue(xml, xml.contains("position=\"" + file.length() + "\""));
+			Assert.assertTrue(xml, xml.contains("speed=\"max\" truncated=\"false\""));
+		} finally {
+			file.delete();
+		}
+	}
+	
+	@Test
+	public void testPacedReplay() throws Exception {
+		
+		// records span 400ms
+		String[] payloads = new String[]{"a", "b", "c", "d", "e"};
+		File file = TestRecordingReader.writeRecording(payloads, 1000, 100, 0);
+		try {
+			long start = System.currentTimeMillis();
+			ReplayConsumerHandler consumer = ConsumerTestSupport.initialize(new ReplayConsumerHandler(), "replay", "replay-1", replayOptions(file, "1"));
+			consumer.run();
+			long duration = System.currentTimeMillis() - start;
+			Assert.assertTrue("Original inter-arrival times must be kept: " + duration, duration >= 350);
+			Assert.assertEquals(5, consumer.getConsumerStatistics().getMessageCount());
+			
+			start = System.currentTimeMillis();
+			consumer = ConsumerTestSupport.initialize(new ReplayConsumerHandler(), "replay", "replay-2", replayOptions(file, "10"));
+			consumer.run();
+			duration = System.currentTimeMillis() - start;
+			Assert.assertTrue("The speed factor must shorten the pauses: " + duration, duration < 300);
+			Assert.assertEquals(5, consumer.getConsumerStatistics().getMessageCount());
+			
+			// shutdown interrupts pauses
+			consumer = ConsumerTestSupport.initialize(new ReplayConsumerHandler(), "replay", "replay-3", replayOptions(file, "0.01"));
+			Thread thread = new Thread(consumer);
+			thread.start();
+			Thread.sleep(50);
+			consumer.shutdown();
+			thread.join(5000);
+			Assert.assertFalse(thread.isAlive());
+			Assert.assertEquals(1, consumer.getConsumerStatistics().getMessageCount());
+		} finally {
+			file.delete();
+		}
+	}
+	
+	@Test
+	public void testInvalidSettings() throws Exception {
+		
+		File file = TestRecordingReader.writeRecording(new String[]{"a"}, 0, 0, 0);
+		try {
+			String[][] invalid = new String[][]{
+					{ReplayConsumerHandler.CFG_OPT_FILE, file.getAbsolutePath() + ".missing"},
+					{ReplayConsumerHandler.CFG_OPT_SPEED, "-1"},
+					{ReplayConsumerHandler.CFG_OPT_SPEED, "fast"},
+					{ReplayConsumerHandler.CFG_OPT_PARTITIONS, "0"},
+					// partitioned files require a partition unless the consumer is started by a request
+					{ReplayConsumerHandler.CFG_OPT_PARTITIONS, "2"},
+					{ReplayConsumerHandler.CFG_OPT_PARTITION, "1"},
+					{ReplayConsumerHandler.CFG_OPT_END_OFFSET, "-5"}};
+			for(String[] setting : invalid) {
+				Map<String, List<String>> options = replayOptions(file, "max");
+				options.put(setting[0], Arrays.asList(setting[1]));
+				if(setting[0].equals(ReplayConsumerHandler.CFG_OPT_END_OFFSET))
+					options.put(ReplayConsumerHandler.CFG_OPT_START_OFFSET, Arrays.asList("100"));
+				try {
+					ConsumerTestSupport.initialize(new ReplayConsumerHandler(), "replay", "replay-1", options).shutdown();
+					Assert.fail("Invalid setting accepted: " + setting[0] + "=" + setting[1]);
+				} catch(AsyncInputConsumerException e) {
+					//
+				}
+			}
+		} finally {
+			file.delete();
+		}
+	}
+	
+	private static Map<String, List<String>> replayOptions(File file, String speed) {
+		return ConsumerTestSupport.options(ReplayConsumerHandler.CFG_OPT_FILE, file.getAbsolutePath(), ReplayConsumerHandler.CFG_OPT_SPEED, speed);
+	}
+	
+}
@@ -0,0 +1,157 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.socket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mnxfst.testing.consumer.exception.AsyncInputConsumerException;
+
+/**
+ * Test case for {@link FrameDecoder}
+ * @author ckreutzfeldt
+ * @since 19.03.2012
+ */
+public class TestFrameDecoder {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	@Test
+	public void testLengthPrefixed() throws Exception {
+		
+		ByteBuffer stream = ByteBuffer.allocate(64);
+		for(String frame : new String[]{"first", "", "third frame"}) {
+			stream.putShort((short)frame.length());
+			stream.put(frame.getBytes(UTF8));
+		}
+		stream.flip();
+		
+		List<String> frames = decodeInChunks(FrameDecoder.lengthPrefixed(2, 100), stream, 3);
+		Assert.assertEquals("[first, , third frame]", frames.toString());
+		
+		ByteBuffer oversized = ByteBuffer.allocateDirect(8);
+		oversized.putInt(101).flip();
+		try {
+			FrameDecoder.lengthPrefixed(4, 100).decode(oversized, new RecordingHandler());
+			Assert.fail("Oversized frames must be rejected");
+		} catch(AsyncInputConsumerException e) {
+			Assert.assertEquals(0, oversized.position());
+		}
+	}
+	
+	@Test
+	public void testDelimited() throws Exception {
+		
+		ByteBuffer stream = ByteBuffer.wrap("a\r\nbb\r\n\r\nccc\r\ndd".getBytes(UTF8));
+		FrameDecoder decoder = FrameDecoder.delimited(FrameDecoder.parseDelimiter("\\r\\n"), 10);
+		List<String> frames = decodeInChunks(decoder, stream, 2);
+		Assert.assertEquals("The trailing frame is incomplete", "[a, bb, , ccc]", frames.toString());
+		
+		ByteBuffer unterminated = ByteBuffer.wrap("0123456789ABC".getBytes(UTF8));
+		try {
+			FrameDecoder.delimited(new byte[]{'\n'}, 10).decode(unterminated, new RecordingHandler());
+			Assert.fail("Frames exceeding the maximum size must be rejected");
+		} catch(AsyncInputConsumerException e) {
+			//
+		}
+		
+		Assert.assertEquals("\n\t\0\\x", new String(FrameDecoder.parseDelimiter("\\n\\t\\0\\\\x"), UTF8));
+	}
+	
+	@Test
+	public void testFixed() throws Exception {
+		ByteBuffer stream = ByteBuffer.wrap("aaabbbcccdd".getBytes(UTF8));
+		Assert.assertEquals("[aaa, bbb, ccc]", decodeInChunks(FrameDecoder.fixed(3), stream, 4).toString());
+	}
+	
+	@Test
+	public void testMissingBytes() throws Exception {
+		
+		// the length field spans both buffers
+		FrameDecoder length = FrameDecoder.lengthPrefixed(2, 100);
+		Assert.assertEquals(1, length.getMissingBytes(ByteBuffer.wrap(new byte[]{0}), ByteBuffer.allocate(0)));
+		Assert.assertEquals(5, length.getMissingBytes(ByteBuffer.wrap(new byte[]{0}), ByteBuffer.wrap(new byte[]{4, 'a', 'b'})));
+		try {
+			length.getMissingBytes(ByteBuffer.wrap(new byte[]{0}), ByteBuffer.wrap(new byte[]{101}));
+			Assert.fail("Oversized frames must be rejected");
+		} catch(AsyncInputConsumerException e) {
+			//
+		}
+		
+		// the delimiter spans both buffers, the bytes following it are not required
+		FrameDecoder delimited = FrameDecoder.delimited(FrameDecoder.parseDelimiter("\\r\\n"), 10);
+		ByteBuffer pending = ByteBuffer.wrap("ab\r".getBytes(UTF8));
+		Assert.assertEquals(0, delimited.decode(pending, new RecordingHandler()));
+		Assert.assertEquals(1, delimited.getMissingBytes(pending, ByteBuffer.wrap("\ncd\r\n".getBytes(UTF8))));
+		Assert.assertEquals(3, delimited.getMissingBytes(pending, ByteBuffer.wrap("c\r\nd\r\n".getBytes(UTF8))));
+		Assert.assertEquals("Unterminated", 3, delimited.getMissingBytes(pending, ByteBuffer.wrap("cd".getBytes(UTF8))));
+		
+		Assert.assertEquals(6, FrameDecoder.fixed(8).getMissingBytes(ByteBuffer.wrap(new byte[2]), ByteBuffer.allocate(10)));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidDelimiter() {
+		FrameDecoder.parseDelimiter("\\x");
+	}
+	
+	/**
+	 * Feeds the stream in chunks of the given size to the decoder, the way a socket read would
+	 * @param decoder
+	 * @param stream
+	 * @param chunkSize
+	 * @return
+	 * @throws AsyncInputConsumerException
+	 */
+	private static List<String> decodeInChunks(FrameDecoder decoder, ByteBuffer stream, int chunkSize) throws AsyncInputConsumerException {
+		RecordingHandler handler = new RecordingHandler();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+		while(stream.hasRemaining()) {
+			for(int i = 0; i < chunkSize && stream.hasRemaining(); i++)
+				buffer.put(stream.get());
+			buffer.flip();
+			decoder.decode(buffer, handler);
+			buffer.compact();
+		}
+		return handler.frames;
+	}
+	
+	/**
+	 * Records all decoded frames
+	 * @author ckreutzfeldt
+	 * @since 19.03.2012
+	 */
+	private static class RecordingHandler implements FrameDecoder.FrameHandler {
+		
+		private final List<String> frames = new ArrayList<String>();
+		
+		public void frame(ByteBuffer buffer, int offset, int length) {
+			byte[] frame = new byte[length];
+			for(int i = 0; i < length; i++)
+				frame[i] = buffer.get(offset + i);
+			frames.add(new String(frame, UTF8));
+		}
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.consumer.socket;
+
+import java.io.DataOutputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mnxfst.testing.consumer.ConsumerTestSupport;
+import com.mnxfst.testing.consumer.exception.AsyncInputConsumerException;
+import com.mnxfst.testing.consumer.handler.XmlResponseWriter;
+
+/**
+ * Test case for {@link SocketConsumerHandler} running over loopback
+ * @author ckreutzfeldt
+ * @since 19.03.2012
+ */
+public class TestSocketConsumerHandler {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	@Test
+	public void testTcpLengthPrefixed() throws Exception {
+		
+		ConsumerTestSupport.PayloadAnalyzer.reset();
+		Map<String, List<String>> options = socketOptions("tcp", "0");
+		options.put("consumer.async.socket.message-analyzer.payload", Arrays.asList(ConsumerTestSupport.PayloadAnalyzer.class.getName()));
+		SocketConsumerHandler consumer = ConsumerTestSupport.initialize(new SocketConsumerHandler(), "socket", "socket-1", options);
+		Assert.assertTrue(consumer.getLocalPort() > 0);
+		Assert.assertEquals(1, consumer.getAnalyzerPipelines().size());
+		Thread thread = ConsumerTestSupport.start(consumer);
+		
+		// two connections, frames are flushed in pieces splitting headers and payloads
+		Socket first = new Socket(InetAddress.getLoopbackAddress(), consumer.getLocalPort());
+		Socket second = new Socket(InetAddress.getLoopbackAddress(), consumer.getLocalPort());
+		DataOutputStream firstOut = new DataOutputStream(first.getOutputStream());
+		DataOutputStream secondOut = new DataOutputStream(second.getOutputStream());
+		for(int i = 0; i < 1000; i++) {
+			byte[] frame = ("frame-" + i).getBytes(UTF8);
+			DataOutputStream out = (i % 2 == 0 ? firstOut : secondOut);
+			out.writeInt(frame.length);
+			out.write(frame, 0, 3);
+			out.flush();
+			out.write(frame, 3, frame.length - 3);
+		}
+		firstOut.flush();
+		secondOut.flush();
+		
+		ConsumerTestSupport.awaitMessages(consumer, 1000);
+		Assert.assertEquals(2, consumer.getOpenConnectionCount());
+		first.close();
+		long deadline = System.currentTimeMillis() + 5000;
+		while(consumer.getOpenConnectionCount() > 1 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		Assert.assertEquals("Closed connections must be released", 1, consumer.getOpenConnectionCount());
+		second.close();
+		
+		consumer.shutdown();
+		thread.join(5000);
+		Assert.assertFalse("The consumer must have returned", thread.isAlive());
+		
+		long bytes = 0;
+		for(int i = 0; i < 1000; i++)
+			bytes += ("frame-" + i).length();
+		Assert.assertEquals(bytes, consumer.getConsumerStatistics().getByteCount());
+		Assert.assertEquals(0, consumer.getConsumerStatistics().getErrorCount());
+		Assert.assertEquals(1000, ConsumerTestSupport.PayloadAnalyzer.getPayloads().size());
+		Assert.assertTrue(ConsumerTestSupport.PayloadAnalyzer.getPayloads().contains("frame-0"));
+		Assert.assertTrue(ConsumerTestSupport.PayloadAnalyzer.getPayloads().contains("frame-999"));
+		
+		XmlResponseWriter writer = new XmlResponseWriter();
+		writer.startElement("section");
+		consumer.writeStatistics(writer);
+		String xml = writer.finish().toString(UTF8);
+		Assert.assertTrue(xml, xml.contains("protocol=\"tcp\" mode=\"listen\""));
+		Assert.assertTrue(xml, xml.contains("connections=\"0\" accepted=\"2\" framingErrors=\"0\""));
+		Assert.assertTrue(xml, xml.contains("<pipeline name=\"analyzer-socket-1\""));
+	}
+	
+	@Test
+	public void testTcpConnectWithFramingError() throws Exception {
+		
+		ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		try {
+			Map<String, List<String>> options = socketOptions("tcp", String.valueOf(server.getLocalPort()));
+			options.put(SocketConsumerHandler.CFG_OPT_MODE, Arrays.asList("connect"));
+			options.put(SocketConsumerHandler.CFG_OPT_HOST, Arrays.asList(InetAddress.getLoopbackAddress().getHostAddress()));
+			options.put(SocketConsumerHandler.CFG_OPT_FRAMING, Arrays.asList("delimiter"));
+			options.put(SocketConsumerHandler.CFG_OPT_MAX_FRAME_SIZE, Arrays.asList("16"));
+			SocketConsumerHandler consumer = ConsumerTestSupport.initialize(new SocketConsumerHandler(), "socket", "socket-1", options);
+			Socket feed = server.accept();
+			Thread thread = ConsumerTestSupport.start(consumer);
+			
+			OutputStream out = feed.getOutputStream();
+			out.write("one\ntwo\nthree\n".getBytes(UTF8));
+			out.flush();
+			ConsumerTestSupport.awaitMessages(consumer, 3);
+			
+			// the feed breaks the framing: the consumer drops the connection and stops
+			out.write("this line is far too long for the consumer\n".getBytes(UTF8));
+			out.flush();
+			thread.join(5000);
+			Assert.assertFalse("The consumer must stop once its connection is gone", thread.isAlive());
+			Assert.assertEquals(1, consumer.getFramingErrorCount());
+			Assert.assertEquals(3, consumer.getConsumerStatistics().getMessageCount());
+			feed.close();
+		} finally {
+			server.close();
+		}
+	}
+	
+	@Test
+	public void testUdpDatagrams() throws Exception {
+		
+		Map<String, List<String>> options = socketOptions("udp", "0");
+		options.put(SocketConsumerHandler.CFG_OPT_HOST, Arrays.asList(InetAddress.getLoopbackAddress().getHostAddress()));
+		options.put(SocketConsumerHandler.CFG_OPT_FRAMING, Arrays.asList("delimiter"));
+		SocketConsumerHandler consumer = ConsumerTestSupport.initialize(new SocketConsumerHandler(), "socket", "socket-1", options);
+		Thread thread = ConsumerTestSupport.start(consumer);
+		
+		DatagramSocket sender = new DatagramSocket();
+		try {
+			// each datagram carries two frames, the last one ends with an incomplete frame
+			for(int i = 0; i < 50; i++) {
+				byte[] datagram = ("a" + i + "\nb" + i + "\n").getBytes(UTF8);
+				sender.send(new DatagramPacket(datagram, datagram.length, InetAddress.getLoopbackAddress(), consumer.getLocalPort()));
+				// loopback buffers are limited, give the consumer a chance to keep up
+				if(i % 10 == 9)
+					Thread.sleep(5);
+			}
+			byte[] broken = "c\nd".getBytes(UTF8);
+			sender.send(new DatagramPacket(broken, broken.length, InetAddress.getLoopbackAddress(), consumer.getLocalPort()));
+		} finally {
+			sender.close();
+		}
+		
+		ConsumerTestSupport.awaitMessages(consumer, 101);
+		long deadline = System.currentTimeMillis() + 5000;
+		while(consumer.getFramingErrorCount() == 0 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		consumer.shutdown();
+		thread.join(5000);
+		Assert.assertFalse(thread.isAlive());
+		Assert.assertEquals(1, consumer.getFramingErrorCount());
+		Assert.assertEquals(1, consumer.getConsumerStatistics().getErrorCount());
+	}
+	
+	@Test
+	public void testInvalidSettings() throws Exception {
+		
+		String[][] invalid = new String[][]{
+				{SocketConsumerHandler.CFG_OPT_FRAMING, "fixed"},
+				{SocketConsumerHandler.CFG_OPT_FRAMING, "datagram"},
+				{SocketConsumerHandler.CFG_OPT_FRAMING, "unknown"},
+				{SocketConsumerHandler.CFG_OPT_LENGTH_FIELD_SIZE, "3"},
+				{SocketConsumerHandler.CFG_OPT_GROUP, "239.1.1.1"},
+				{SocketConsumerHandler.CFG_OPT_MODE, "connect"},
+				{SocketConsumerHandler.CFG_OPT_PORT, "70000"}};
+		for(String[] setting : invalid) {
+			Map<String, List<String>> options = socketOptions("tcp", "0");
+			options.put(setting[0], Arrays.asList(setting[1]));
+			try {
+				ConsumerTestSupport.initialize(new SocketConsumerHandler(), "socket", "socket-1", options).shutdown();
+				Assert.fail("Invalid setting accepted: " + setting[0] + "=" + setting[1]);
+			} catch(AsyncInputConsumerException e) {
+				//
+			}
+		}
+	}
+	
+	private static Map<String, List<String>> socketOptions(String protocol, String port) {
+		return ConsumerTestSupport.options(SocketConsumerHandler.CFG_OPT_PROTOCOL, protocol, SocketConsumerHandler.CFG_OPT_PORT, port, 
+				SocketConsumerHandler.CFG_OPT_SELECT_TIMEOUT_MILLIS, "20");
+	}
+	
+}